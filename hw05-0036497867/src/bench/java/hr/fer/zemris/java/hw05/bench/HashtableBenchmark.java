@@ -0,0 +1,167 @@
+package hr.fer.zemris.java.hw05.bench;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import hr.fer.zemris.java.hw05.collections.LinearProbingHashtable;
+import hr.fer.zemris.java.hw05.collections.SimpleHashtable;
+
+/**
+ * Microbenchmark of the hash tables used as the JMBAG index of the
+ * {@code StudentDatabase}: the chained {@link SimpleHashtable}, the
+ * open-addressing {@link LinearProbingHashtable} and {@link HashMap}.<br>
+ * The keys are JMBAG-like strings (ten digits). Every operation either fills
+ * a new table (with the default capacity) with all keys, or looks up all keys
+ * (and as many missing keys) in a filled table, using equal but distinct
+ * {@code String} instances, as the queries do. The keys are looked up in the
+ * order in which they were stored.
+ * 
+ * @author Mate Gasparini
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashtableBenchmark {
+	
+	/** Number of the keys. */
+	@Param({"100", "10000", "1000000"})
+	public int size;
+	
+	/** Keys stored in the tables. */
+	private String[] keys;
+	
+	/** Copies of the stored keys, followed by the keys which are not stored. */
+	private String[] lookups;
+	
+	/** Filled chained table. */
+	private SimpleHashtable<String, String> simpleHashtable;
+	
+	/** Filled open-addressing table. */
+	private LinearProbingHashtable<String, String> linearProbingHashtable;
+	
+	/** Filled {@code HashMap}. */
+	private Map<String, String> hashMap;
+	
+	/**
+	 * Generates the keys, and fills the tables.
+	 */
+	@Setup
+	public void setup() {
+		keys = new String[size];
+		lookups = new String[2 * size];
+		for (int i = 0; i < size; i ++) {
+			keys[i] = jmbag(2 * i);
+			lookups[i] = new String(keys[i]);
+			lookups[size + i] = jmbag(2 * i + 1);
+		}
+		
+		simpleHashtable = fillSimpleHashtable();
+		linearProbingHashtable = fillLinearProbingHashtable();
+		hashMap = fillHashMap();
+	}
+	
+	/**
+	 * Fills a new {@link SimpleHashtable}.
+	 * 
+	 * @return The filled table.
+	 */
+	@Benchmark
+	public SimpleHashtable<String, String> fillSimpleHashtable() {
+		SimpleHashtable<String, String> table = new SimpleHashtable<>();
+		for (String key : keys) {
+			table.put(key, key);
+		}
+		return table;
+	}
+	
+	/**
+	 * Fills a new {@link LinearProbingHashtable}.
+	 * 
+	 * @return The filled table.
+	 */
+	@Benchmark
+	public LinearProbingHashtable<String, String> fillLinearProbingHashtable() {
+		LinearProbingHashtable<String, String> table = new LinearProbingHashtable<>();
+		for (String key : keys) {
+			table.put(key, key);
+		}
+		return table;
+	}
+	
+	/**
+	 * Fills a new {@link HashMap}.
+	 * 
+	 * @return The filled map.
+	 */
+	@Benchmark
+	public Map<String, String> fillHashMap() {
+		Map<String, String> map = new HashMap<>();
+		for (String key : keys) {
+			map.put(key, key);
+		}
+		return map;
+	}
+	
+	/**
+	 * Looks up the keys in the {@link SimpleHashtable}.
+	 * 
+	 * @param blackhole The sink of the found values.
+	 */
+	@Benchmark
+	public void getSimpleHashtable(Blackhole blackhole) {
+		for (String key : lookups) {
+			blackhole.consume(simpleHashtable.get(key));
+		}
+	}
+	
+	/**
+	 * Looks up the keys in the {@link LinearProbingHashtable}.
+	 * 
+	 * @param blackhole The sink of the found values.
+	 */
+	@Benchmark
+	public void getLinearProbingHashtable(Blackhole blackhole) {
+		for (String key : lookups) {
+			blackhole.consume(linearProbingHashtable.get(key));
+		}
+	}
+	
+	/**
+	 * Looks up the keys in the {@link HashMap}.
+	 * 
+	 * @param blackhole The sink of the found values.
+	 */
+	@Benchmark
+	public void getHashMap(Blackhole blackhole) {
+		for (String key : lookups) {
+			blackhole.consume(hashMap.get(key));
+		}
+	}
+	
+	/**
+	 * Returns the JMBAG-like key with the given index.
+	 * 
+	 * @param index The given index.
+	 * @return The key.
+	 */
+	private static String jmbag(int index) {
+		return String.format("%010d", 36_000_000 + index);
+	}
+}
@@ -0,0 +1,464 @@
+package hr.fer.zemris.java.hw05.collections;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+import hr.fer.zemris.java.hw05.collections.SimpleHashtable.TableEntry;
+
+/**
+ * Class representing a simple iterable hash table which uses open addressing,
+ * as an alternative to the {@link SimpleHashtable} with the same methods and
+ * the same kind of entries.<br>
+ * Every pair ({@code TableEntry}) is stored directly in a slot of the table:
+ * a new key is stored in the first empty slot at or after the slot calculated
+ * for it (linear probing). The number of slots is always a power of two, so
+ * the slot is calculated by masking the (spread) hash code of the key, and
+ * the hash codes are cached alongside the pairs, so they are not calculated
+ * again when the table is expanded, and most pairs with different keys are
+ * skipped without calling {@code equals}.<br>
+ * A removed pair does not leave a marker behind: the following pairs of the
+ * same run of occupied slots are shifted back into the freed slot if they
+ * belong there, so lookups never pass over removed pairs.
+ * 
+ * @author Mate Gasparini
+ * 
+ * @param <K> Type of all keys.
+ * @param <V> Type of all values.
+ */
+public class LinearProbingHashtable<K, V> implements Iterable<TableEntry<K, V>> {
+	
+	/**
+	 * A table of pair slots; each slot is either empty or filled with one pair.
+	 */
+	private TableEntry<K, V>[] table;
+	/**
+	 * Cached (spread) hash codes of the keys of the pairs in the table slots,
+	 * or {@code EMPTY} for the empty slots. The probing reads only this array
+	 * until it finds an equal hash code.
+	 */
+	private int[] hashes;
+	/**
+	 * Mask which maps a hash code to a table slot ({@code table.length - 1}).
+	 */
+	private int mask;
+	/**
+	 * Number of pairs at which the table is expanded.
+	 */
+	private int threshold;
+	/**
+	 * Number of currently stored pairs in the table.
+	 */
+	private int size;
+	/**
+	 * Number of (any structure-changing) modifications performed on the table.
+	 */
+	private int modificationCount;
+	
+	/**
+	 * Cached hash code which marks an empty slot.
+	 */
+	private static final int EMPTY = 0;
+	
+	/**
+	 * Default number of slots in the underlying {@code TableEntry} array.
+	 */
+	public static final int DEFAULT_CAPACITY = 16;
+	/**
+	 * If the ratio between the number of stored pairs and the number of slots
+	 * reaches this constant, the number of slots is doubled.<br>
+	 * It is lower than the one of the {@link SimpleHashtable}, because the runs
+	 * of occupied slots (and with them the lookups of missing keys) grow quickly
+	 * with the ratio. It is always smaller than 1, so the table always has
+	 * an empty slot.
+	 */
+	public static final double FILL_THRESHOLD = 0.5;
+	
+	/**
+	 * Default constructor.
+	 * Constructs a table with {@code DEFAULT_CAPACITY} number of slots.
+	 */
+	public LinearProbingHashtable() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Constructor specifying the initial capacity.
+	 * 
+	 * @param capacity Initial number of table slots
+	 * 			(rounded up to a power of two).
+	 * @throws IllegalArgumentException If {@code capacity} is 0 or negative,
+	 * 			or too large.
+	 */
+	public LinearProbingHashtable(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException(
+				"Initial capacity must be greater than 0."
+			);
+		}
+		if (capacity > 1 << 30) {
+			throw new IllegalArgumentException(
+				"Initial capacity must not be greater than 2^30."
+			);
+		}
+		
+		int correctedCapacity = 1;
+		while (correctedCapacity < capacity) {
+			correctedCapacity <<= 1;
+		}
+		
+		allocate(correctedCapacity);
+	}
+	
+	/**
+	 * If the table already contains a pair with the given key, the pair's
+	 * value is updated with the given value.<br>
+	 * Otherwise, a new pair is constructed and stored in the first empty slot
+	 * at or after the slot calculated for the given key.<br>
+	 * If the number of stored pairs reaches the fill threshold, the table
+	 * is expanded.
+	 * 
+	 * @param key The given key.
+	 * @param value The given value.
+	 * @throws NullPointerException If the given key is {@code null}.
+	 */
+	public void put(K key, V value) {
+		if (key == null) {
+			throw new NullPointerException(
+				"Key cannot be null."
+			);
+		}
+		
+		int hash = hash(key);
+		int slot = hash & mask;
+		int slotHash;
+		while ((slotHash = hashes[slot]) != EMPTY) {
+			if (slotHash == hash && table[slot].getKey().equals(key)) {
+				table[slot].setValue(value);
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		
+		table[slot] = new TableEntry<>(key, value);
+		hashes[slot] = hash;
+		size ++;
+		modificationCount ++;
+		
+		if (size >= threshold) {
+			expandTable();
+			modificationCount ++;
+		}
+	}
+	
+	/**
+	 * Finds a pair with the given key, and returns its value.
+	 * If there is no such pair, {@code null} is returned.<br>
+	 * Bear in mind that {@code null} could also be returned
+	 * if the corresponding value is {@code null}.
+	 * 
+	 * @param key The given key.
+	 * @return The corresponding value.
+	 */
+	public V get(Object key) {
+		int slot = find(key);
+		return slot < 0 ? null : table[slot].getValue();
+	}
+	
+	/**
+	 * Returns the number of currently stored pairs.
+	 * 
+	 * @return The number of stored {@code TableEntry} references.
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Returns {@code true} if the table contains a {@code TableEntry}
+	 * with the given key.
+	 * 
+	 * @param key The given key.
+	 * @return {@code true} if the table contains the given key,
+	 * 			and {@code false} otherwise.
+	 */
+	public boolean containsKey(Object key) {
+		return find(key) >= 0;
+	}
+	
+	/**
+	 * Returns {@code true} if the table contains a {@code TableEntry}
+	 * with the given value.
+	 * 
+	 * @param value The given value.
+	 * @return {@code true} if the table contains the given value,
+	 * 			and {@code false} otherwise.
+	 */
+	public boolean containsValue(Object value) {
+		for (TableEntry<K, V> entry : table) {
+			if (entry != null && Objects.equals(entry.getValue(), value)) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Removes the given key's corresponding {@code TableEntry}
+	 * from the table.<br>
+	 * If the table does not contain the given key, or if the given key
+	 * is {@code null}, this method does nothing.<br>
+	 * Note: do not use this method for removing entries while iterating - use
+	 * {@link IteratorImpl#remove()} instead.
+	 * 
+	 * @param key The given key.
+	 */
+	public void remove(Object key) {
+		int slot = find(key);
+		if (slot >= 0) {
+			removeAt(slot);
+		}
+	}
+	
+	/**
+	 * Returns {@code true} if the number of currently stored pairs is 0.
+	 * 
+	 * @return {@code true} if 0 pairs are currently stored in the table,
+	 * 			and {@code false} otherwise.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * Clears all pairs from the table
+	 * (makes all pairs eligible for garbage collection).
+	 */
+	public void clear() {
+		Arrays.fill(table, null);
+		Arrays.fill(hashes, EMPTY);
+		
+		size = 0;
+		modificationCount ++;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("[");
+		
+		for (TableEntry<K, V> entry : this) {
+			if (builder.length() > 1) {
+				builder.append(", ");
+			}
+			builder.append(entry);
+		}
+		
+		builder.append("]");
+		
+		return builder.toString();
+	}
+	
+	/**
+	 * Calculates the spread hash code of the given key, whose lowest bits
+	 * depend on all bits of the key's hash code. It is never {@code EMPTY}.
+	 * 
+	 * @param key The given key.
+	 * @return The spread hash code.
+	 */
+	private static int hash(Object key) {
+		int hash = key.hashCode() * 0x9E3779B9;
+		hash ^= hash >>> 16;
+		return hash == EMPTY ? 1 : hash;
+	}
+	
+	/**
+	 * Finds the slot of the pair with the given key.
+	 * 
+	 * @param key The given key.
+	 * @return The slot of the pair, or -1 if there is no such pair
+	 * 			(or if the given key is {@code null}).
+	 */
+	private int find(Object key) {
+		if (key == null) {
+			return -1;
+		}
+		
+		int hash = hash(key);
+		int slot = hash & mask;
+		int slotHash;
+		while ((slotHash = hashes[slot]) != EMPTY) {
+			if (slotHash == hash && table[slot].getKey().equals(key)) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		
+		return -1;
+	}
+	
+	/**
+	 * Removes the pair from the given slot, and shifts the following pairs
+	 * of the same run of occupied slots back, so each of them can still be
+	 * found from the slot calculated for its key.
+	 * 
+	 * @param slot The given slot.
+	 */
+	private void removeAt(int slot) {
+		int free = slot;
+		int next = (slot + 1) & mask;
+		while (hashes[next] != EMPTY) {
+			int home = hashes[next] & mask;
+			// The pair can be moved only if the free slot is not before its home slot.
+			if (((next - home) & mask) >= ((next - free) & mask)) {
+				table[free] = table[next];
+				hashes[free] = hashes[next];
+				free = next;
+			}
+			next = (next + 1) & mask;
+		}
+		table[free] = null;
+		hashes[free] = EMPTY;
+		
+		size --;
+		modificationCount ++;
+	}
+	
+	/**
+	 * Doubles the table's capacity (by moving the pairs into a new table,
+	 * using their cached hash codes).
+	 */
+	private void expandTable() {
+		TableEntry<K, V>[] oldTable = table;
+		int[] oldHashes = hashes;
+		allocate(2 * oldTable.length);
+		
+		for (int i = 0; i < oldTable.length; i ++) {
+			if (oldHashes[i] != EMPTY) {
+				int slot = oldHashes[i] & mask;
+				while (hashes[slot] != EMPTY) {
+					slot = (slot + 1) & mask;
+				}
+				table[slot] = oldTable[i];
+				hashes[slot] = oldHashes[i];
+			}
+		}
+	}
+	
+	/**
+	 * Allocates a new (empty) table with the given capacity.
+	 * 
+	 * @param capacity The given capacity (a power of two).
+	 */
+	@SuppressWarnings("unchecked")
+	private void allocate(int capacity) {
+		table = (TableEntry<K, V>[]) new TableEntry[capacity];
+		hashes = new int[capacity];
+		mask = capacity - 1;
+		threshold = (int) (capacity * FILL_THRESHOLD);
+	}
+	
+	@Override
+	public Iterator<TableEntry<K, V>> iterator() {
+		return new IteratorImpl();
+	}
+	
+	/**
+	 * Class representing an iterator implementation
+	 * for the {@code LinearProbingHashtable} class.<br>
+	 * The iteration starts right after an empty slot and goes around the
+	 * table, so no run of occupied slots is split by the start. A removal
+	 * therefore shifts back only the pairs which have not been returned yet.
+	 * 
+	 * @author Mate Gasparini
+	 */
+	private class IteratorImpl implements Iterator<TableEntry<K, V>> {
+		
+		/**
+		 * Slot at which the iteration starts.
+		 */
+		private int start;
+		/**
+		 * Number of slots (from the start) which have already been passed.
+		 */
+		private int passed;
+		/**
+		 * Slot of the pair that the iterator is currently pointing to
+		 * (or -1 if there is no such pair).
+		 */
+		private int currentSlot = -1;
+		/**
+		 * Number of pairs which have not been returned yet.
+		 */
+		private int remaining = size;
+		/**
+		 * Number of (any structure-changing) modifications performed
+		 * by this iterator on the table.
+		 */
+		private int modificationCount;
+		
+		/**
+		 * Default constructor.
+		 */
+		public IteratorImpl() {
+			int empty = 0;
+			while (hashes[empty] != EMPTY) {
+				empty ++;
+			}
+			start = (empty + 1) & mask;
+			
+			modificationCount = LinearProbingHashtable.this.modificationCount;
+		}
+		
+		@Override
+		public boolean hasNext() {
+			if (modificationCount != LinearProbingHashtable.this.modificationCount) {
+				throw new ConcurrentModificationException();
+			}
+			
+			return remaining > 0;
+		}
+		
+		@Override
+		public TableEntry<K, V> next() {
+			if (modificationCount != LinearProbingHashtable.this.modificationCount) {
+				throw new ConcurrentModificationException();
+			}
+			
+			if (remaining == 0) {
+				throw new NoSuchElementException(
+					"End of the table has been reached."
+				);
+			}
+			
+			int slot = (start + passed) & mask;
+			while (hashes[slot] == EMPTY) {
+				passed ++;
+				slot = (start + passed) & mask;
+			}
+			passed ++;
+			remaining --;
+			currentSlot = slot;
+			
+			return table[slot];
+		}
+		
+		@Override
+		public void remove() {
+			if (modificationCount != LinearProbingHashtable.this.modificationCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (currentSlot < 0) {
+				throw new IllegalStateException();
+			}
+			
+			LinearProbingHashtable.this.removeAt(currentSlot);
+			modificationCount ++;
+			// The next pair may have been shifted back into the current slot.
+			passed --;
+			currentSlot = -1;
+		}
+	}
+}
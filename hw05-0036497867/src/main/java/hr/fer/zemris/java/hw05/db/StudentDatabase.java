@@ -3,11 +3,11 @@ package hr.fer.zemris.java.hw05.db;
 import java.util.LinkedList;
 import java.util.List;
 
-import hr.fer.zemris.java.hw05.collections.SimpleHashtable;
+import hr.fer.zemris.java.hw05.collections.LinearProbingHashtable;
 
 /**
  * Class representing a database of students. It provides a {@code List} of
- * student records, as well as an index ({@code SimpleHashtable})
+ * student records, as well as an index ({@code LinearProbingHashtable})
  * for faster retrieval of data.
  * 
  * @author Mate Gasparini
@@ -22,7 +22,7 @@ public class StudentDatabase {
 	 * Index of student records used for faster retrieval of data.
 	 * It uses the student's JMBAG as the key.
 	 */
-	private SimpleHashtable<String, StudentRecord> index;
+	private LinearProbingHashtable<String, StudentRecord> index;
 	
 	/**
 	 * Constructor which accepts a {@code List} of strings (which represent
@@ -32,7 +32,7 @@ public class StudentDatabase {
 	 */
 	public StudentDatabase(List<String> lines) {
 		list = new LinkedList<>();
-		index = new SimpleHashtable<>();
+		index = new LinearProbingHashtable<>();
 		
 		for (String line : lines) {
 			String[] parts = line.split("\\t");
@@ -0,0 +1,292 @@
+package hr.fer.zemris.java.hw05.collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import hr.fer.zemris.java.hw05.collections.SimpleHashtable.TableEntry;
+
+/**
+ * Testing class for the {@code LinearProbingHashtable} class.
+ * 
+ * @author Mate Gasparini
+ */
+public class LinearProbingHashtableTest {
+	
+	private LinearProbingHashtable<String, Integer> table;
+	
+	private static String[] keys = new String[] {
+		"Nulti", "Prvi", "Drugi", "Treći", "Četvrti"
+	};
+	
+	private static Integer[] values = new Integer[] {
+		0, 1, 2, 3, 4
+	};
+	
+	@Before
+	public void setUp() {
+		table = new LinearProbingHashtable<>(1);
+		
+		assertTrue(table.isEmpty());
+		putSomeEntries();
+		assertEquals(5, table.size());
+	}
+	
+	@Test
+	public void putTest() {
+		for (int i = 0; i < keys.length; i ++) {
+			assertTrue(table.containsKey(keys[i]));
+		}
+		assertFalse(table.containsKey("dunno"));
+		
+		for (int i = 0; i < values.length; i ++) {
+			assertTrue(table.containsValue(i));
+		}
+		assertFalse(table.containsValue(999));
+	}
+	
+	@Test
+	public void getTest() {
+		for (int i = 0; i < keys.length; i ++) {
+			assertEquals(Integer.valueOf(i), table.get(keys[i]));
+		}
+	}
+	
+	@Test
+	public void overwriteTest() {
+		for (int i = 0; i < keys.length; i ++) {
+			table.put(keys[i], values[(i+1) % values.length]);
+		}
+		assertEquals(5, table.size());
+		
+		for (int i = 0; i < keys.length; i ++) {
+			assertEquals(values[(i+1) % values.length], table.get(keys[i]));
+		}
+	}
+	
+	@Test
+	public void removeTest() {
+		for (int i = 0; i < keys.length; i ++) {
+			table.remove(keys[i]);
+			assertEquals(keys.length - i - 1, table.size());
+		}
+		assertTrue(table.isEmpty());
+	}
+	
+	@Test
+	public void clearTest() {
+		table.clear();
+		
+		assertTrue(table.isEmpty());
+		
+		for (int i = 0; i < keys.length; i ++) {
+			assertFalse(table.containsKey(keys[i]));
+		}
+		
+		for (int i = 0; i < values.length; i ++) {
+			assertFalse(table.containsValue(values[i]));
+		}
+	}
+	
+	@Test
+	public void iterationRemoveTest() {
+		Iterator<TableEntry<String, Integer>> iter = table.iterator();
+		while (iter.hasNext()) {
+			TableEntry<String, Integer> pair = iter.next();
+			if (pair.getKey().equals(keys[0])) {
+				iter.remove();
+			}
+		}
+		
+		assertEquals(4, table.size());
+		assertFalse(table.containsKey(keys[0]));
+	}
+	
+	@Test
+	public void iterationRemoveAllTest() {
+		Iterator<TableEntry<String, Integer>> iter = table.iterator();
+		while (iter.hasNext()) {
+			iter.next();
+			iter.remove();
+		}
+		
+		assertTrue(table.isEmpty());
+		for (int i = 0; i < keys.length; i ++) {
+			assertFalse(table.containsKey(keys[i]));
+		}
+	}
+	
+	@Test(expected=IllegalStateException.class)
+	public void doubleRemoveExceptionThrown() {
+		Iterator<TableEntry<String, Integer>> iter = table.iterator();
+		while (iter.hasNext()) {
+			TableEntry<String, Integer> pair = iter.next();
+			if (pair.getKey().equals(keys[0])) {
+				iter.remove();
+				iter.remove();
+			}
+		}
+	}
+	
+	@Test(expected=ConcurrentModificationException.class)
+	public void removeOutsideOfIteratorExceptionThrown() {
+		Iterator<TableEntry<String, Integer>> iter = table.iterator();
+		while (iter.hasNext()) {
+			TableEntry<String, Integer> pair = iter.next();
+			if (pair.getKey().equals(keys[0])) {
+				table.remove(keys[0]);
+			}
+		}
+	}
+	
+	@Test
+	public void extremeHashCodesTest() {
+		LinearProbingHashtable<Integer, String> numbers = new LinearProbingHashtable<>(2);
+		numbers.put(Integer.MIN_VALUE, "min");
+		numbers.put(Integer.MAX_VALUE, "max");
+		numbers.put(0, "zero");
+		numbers.put(-1, "minus one");
+		
+		assertEquals(4, numbers.size());
+		assertEquals("min", numbers.get(Integer.MIN_VALUE));
+		assertEquals("max", numbers.get(Integer.MAX_VALUE));
+		assertEquals("zero", numbers.get(0));
+		assertEquals("minus one", numbers.get(-1));
+	}
+	
+	@Test
+	public void nullKeyTest() {
+		assertNull(table.get(null));
+		assertFalse(table.containsKey(null));
+		table.remove(null);
+		assertEquals(5, table.size());
+	}
+	
+	@Test(expected=NullPointerException.class)
+	public void putNullKeyExceptionThrown() {
+		table.put(null, 0);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void zeroCapacityExceptionThrown() {
+		new LinearProbingHashtable<>(0);
+	}
+	
+	@Test
+	public void randomOperationsTest() {
+		// Few distinct keys in a small table, so the runs of occupied slots are long.
+		LinearProbingHashtable<Integer, Integer> numbers = new LinearProbingHashtable<>(1);
+		Map<Integer, Integer> expected = new HashMap<>();
+		Random random = new Random(42);
+		
+		for (int i = 0; i < 100_000; i ++) {
+			Integer key = random.nextInt(200) * 64;
+			if (random.nextInt(3) == 0) {
+				numbers.remove(key);
+				expected.remove(key);
+			} else {
+				numbers.put(key, i);
+				expected.put(key, i);
+			}
+			
+			assertEquals(expected.size(), numbers.size());
+			assertEquals(expected.get(key), numbers.get(key));
+		}
+		
+		for (int key = 0; key < 200 * 64; key ++) {
+			assertEquals(expected.get(key), numbers.get(key));
+		}
+		Map<Integer, Integer> iterated = new HashMap<>();
+		for (TableEntry<Integer, Integer> entry : numbers) {
+			iterated.put(entry.getKey(), entry.getValue());
+		}
+		assertEquals(expected, iterated);
+	}
+	
+	@Test
+	public void iterationRemoveSomeTest() {
+		LinearProbingHashtable<Integer, Integer> numbers = new LinearProbingHashtable<>();
+		for (int i = 0; i < 1000; i ++) {
+			numbers.put(i * 1024, i);
+		}
+		
+		int returned = 0;
+		Iterator<TableEntry<Integer, Integer>> iter = numbers.iterator();
+		while (iter.hasNext()) {
+			TableEntry<Integer, Integer> pair = iter.next();
+			returned ++;
+			if (pair.getValue() % 3 != 0) {
+				iter.remove();
+			}
+		}
+		
+		assertEquals(1000, returned);
+		assertEquals(334, numbers.size());
+		for (int i = 0; i < 1000; i ++) {
+			assertEquals(i % 3 == 0, numbers.containsKey(i * 1024));
+		}
+	}
+	
+	@Test
+	public void iterationSetValueTest() {
+		for (TableEntry<String, Integer> pair : table) {
+			pair.setValue(pair.getValue() + 10);
+		}
+		
+		for (int i = 0; i < keys.length; i ++) {
+			assertEquals(Integer.valueOf(i + 10), table.get(keys[i]));
+		}
+	}
+	
+	@Test(expected=NoSuchElementException.class)
+	public void iterationPastEndExceptionThrown() {
+		Iterator<TableEntry<String, Integer>> iter = table.iterator();
+		while (iter.hasNext()) {
+			iter.next();
+		}
+		iter.next();
+	}
+	
+	@Test(expected=ConcurrentModificationException.class)
+	public void putOutsideOfIteratorExceptionThrown() {
+		Iterator<TableEntry<String, Integer>> iter = table.iterator();
+		iter.next();
+		table.put("Peti", 5);
+		iter.hasNext();
+	}
+	
+	@Test
+	public void overwriteDoesNotInvalidateIteratorTest() {
+		Iterator<TableEntry<String, Integer>> iter = table.iterator();
+		iter.next();
+		table.put(keys[0], 10);
+		assertTrue(iter.hasNext());
+	}
+	
+	@Test
+	public void toStringTest() {
+		LinearProbingHashtable<String, Integer> single = new LinearProbingHashtable<>();
+		assertEquals("[]", single.toString());
+		single.put("a", 1);
+		single.put("b", 2);
+		String string = single.toString();
+		assertTrue(string.equals("[a=1, b=2]") || string.equals("[b=2, a=1]"));
+	}
+	
+	private void putSomeEntries() {
+		for (int i = 0; i < keys.length; i ++) {
+			table.put(keys[i], values[i]);
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package hr.fer.zemris.java.webserver.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * Utility methods for creating the server configurations used by the benchmarks.<br>
+ * The configurations are based on the bundled {@code config/server.properties},
+ * with all paths pointing to the bundled {@code config} and {@code webroot}
+ * directories (relative to the working directory, which is the project
+ * directory when the benchmarks are started using Maven).
+ * 
+ * @author Mate Gasparini
+ */
+class BenchConfig {
+	
+	/**
+	 * Default private constructor.
+	 */
+	private BenchConfig() {
+	}
+	
+	/**
+	 * Returns the path to the bundled {@code config} directory.
+	 * 
+	 * @return The path to the configuration directory.
+	 */
+	static Path configDir() {
+		return Paths.get("config").toAbsolutePath();
+	}
+	
+	/**
+	 * Returns the path to the bundled {@code webroot} directory.
+	 * 
+	 * @return The path to the document root.
+	 */
+	static Path documentRoot() {
+		return Paths.get("webroot").toAbsolutePath();
+	}
+	
+	/**
+	 * Loads the bundled server properties, with the paths resolved against
+	 * the bundled directories and the access log disabled.
+	 * 
+	 * @return The loaded server properties.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	static Properties load() throws IOException {
+		Path configDir = configDir();
+		Properties properties = new Properties();
+		try (InputStream is = Files.newInputStream(configDir.resolve("server.properties"))) {
+			properties.load(is);
+		}
+		properties.setProperty("server.documentRoot", documentRoot().toString());
+		properties.setProperty("server.mimeConfig", configDir.resolve("mime.properties").toString());
+		properties.setProperty("server.workers", configDir.resolve("workers.properties").toString());
+		properties.setProperty(
+			"server.responseCacheConfig", configDir.resolve("cache.properties").toString()
+		);
+		properties.setProperty("server.accessLog", "");
+		return properties;
+	}
+	
+	/**
+	 * Writes the given server properties to a temporary file.
+	 * 
+	 * @param properties The given server properties.
+	 * @return The path to the written file.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	static Path write(Properties properties) throws IOException {
+		Path config = Files.createTempFile("smarthttp-bench", ".properties");
+		try (OutputStream os = Files.newOutputStream(config)) {
+			properties.store(os, "Benchmark configuration");
+		}
+		return config;
+	}
+}
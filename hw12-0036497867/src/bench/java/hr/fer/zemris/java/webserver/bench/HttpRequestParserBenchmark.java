@@ -0,0 +1,203 @@
+package hr.fer.zemris.java.webserver.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hr.fer.zemris.java.webserver.HttpRequestParser;
+import hr.fer.zemris.java.webserver.HttpRequestParser.Result;
+
+/**
+ * Microbenchmark of the {@link HttpRequestParser}, compared with the previous
+ * way of reading requests (byte-by-byte into a {@code String}, which is then
+ * split into lines and parts).<br>
+ * Every operation parses a request, looks up the headers needed by the server
+ * and parses the query parameters.
+ * 
+ * @author Mate Gasparini
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpRequestParserBenchmark {
+	
+	/** Request sent by a browser (with many headers). */
+	private static final String BROWSER_REQUEST =
+		"GET /scripts/zbrajanje.smscr?a=3&b=4 HTTP/1.1\r\n" +
+		"Host: www.localhost.com:5721\r\n" +
+		"User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:61.0) Gecko/20100101 Firefox/61.0\r\n" +
+		"Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n" +
+		"Accept-Language: hr,en-US;q=0.7,en;q=0.3\r\n" +
+		"Accept-Encoding: gzip, deflate\r\n" +
+		"Referer: http://www.localhost.com:5721/index2.html\r\n" +
+		"Cookie: sid=\"ABCDEFGHIJKLMNOPQRST\"; bgcolor=\"FF0000\"\r\n" +
+		"Connection: keep-alive\r\n" +
+		"Upgrade-Insecure-Requests: 1\r\n" +
+		"Cache-Control: max-age=0\r\n" +
+		"\r\n";
+	
+	/** Minimal request (sent e.g. by load generators). */
+	private static final String MINIMAL_REQUEST =
+		"GET /index2.html HTTP/1.1\r\n" +
+		"Host: localhost\r\n" +
+		"\r\n";
+	
+	/** Kind of the benchmarked request. */
+	@Param({"browser", "minimal"})
+	public String request;
+	
+	/** Bytes of the benchmarked request. */
+	private byte[] bytes;
+	
+	/** Stream which provides the request bytes. */
+	private ByteArrayInputStream istream;
+	
+	/** Reused parser. */
+	private HttpRequestParser parser;
+	
+	/**
+	 * Prepares the request bytes and the parser.
+	 */
+	@Setup
+	public void setup() {
+		bytes = (request.equals("browser") ? BROWSER_REQUEST : MINIMAL_REQUEST)
+				.getBytes(StandardCharsets.ISO_8859_1);
+		istream = new ByteArrayInputStream(bytes);
+		parser = new HttpRequestParser(8192, 100);
+	}
+	
+	/**
+	 * Parses the request using the incremental parser.
+	 * 
+	 * @return The parsed parameters.
+	 * @throws IOException Never.
+	 */
+	@Benchmark
+	public Object incrementalParser() throws IOException {
+		istream.reset();
+		parser.read(istream);
+		if (parser.parse() != Result.COMPLETE) {
+			throw new IllegalStateException("Request not parsed.");
+		}
+		
+		Map<String, String> params = new HashMap<>();
+		parser.parseParameters(params);
+		params.put("host", parser.getHeader("Host"));
+		params.put("connection", parser.getHeader("Connection"));
+		params.put("cookie", parser.getHeader("Cookie"));
+		params.put("path", parser.getPath());
+		params.put("method", parser.getMethod());
+		params.put("version", parser.getVersion());
+		parser.next();
+		return params;
+	}
+	
+	/**
+	 * Parses the request the way the server did before the incremental parser.
+	 * 
+	 * @return The parsed parameters.
+	 */
+	@Benchmark
+	public Object lineSplitting() {
+		istream.reset();
+		List<String> lines = readLines();
+		
+		String[] firstLineParts = lines.get(0).split("\\s+");
+		Map<String, String> params = new HashMap<>();
+		String[] pathParts = firstLineParts[1].split("\\?", 2);
+		if (pathParts.length > 1) {
+			for (String parameter : pathParts[1].split("&")) {
+				String[] parts = parameter.split("=", 2);
+				params.put(parts[0], parts.length > 1 ? parts[1] : null);
+			}
+		}
+		params.put("host", findHeader(lines, "host:"));
+		params.put("connection", findHeader(lines, "connection:"));
+		params.put("cookie", findHeader(lines, "cookie:"));
+		params.put("path", pathParts[0]);
+		params.put("method", firstLineParts[0].toUpperCase());
+		params.put("version", firstLineParts[2].toUpperCase());
+		return params;
+	}
+	
+	/**
+	 * Reads the request lines from the stream byte-by-byte, as the previous
+	 * implementation did.
+	 * 
+	 * @return Lines of the request.
+	 */
+	private List<String> readLines() {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		int state = 0;
+		while (true) {
+			int b = istream.read();
+			if (b != 13) bos.write(b);
+			if (state == 0) {
+				if (b == 13) state = 1;
+			} else if (state == 1) {
+				state = b == 10 ? 2 : 0;
+			} else if (state == 2) {
+				state = b == 13 ? 3 : 0;
+			} else if (state == 3) {
+				if (b == 10) break;
+				state = 0;
+			}
+		}
+		
+		List<String> lines = new ArrayList<>();
+		String current = null;
+		for (String s : new String(bos.toByteArray(), StandardCharsets.US_ASCII).split("\n")) {
+			if (s.isEmpty()) break;
+			char c = s.charAt(0);
+			if (c == 9 || c == 32) {
+				current += s;
+			} else {
+				if (current != null) {
+					lines.add(current);
+				}
+				current = s;
+			}
+		}
+		lines.add(current);
+		return lines;
+	}
+	
+	/**
+	 * Returns the trimmed value of the first header line with the given
+	 * (lower case) prefix, or {@code null} if none found.
+	 * 
+	 * @param lines Lines of the request.
+	 * @param prefix The given prefix.
+	 * @return The header value (or {@code null}).
+	 */
+	private static String findHeader(List<String> lines, String prefix) {
+		for (int i = 1, size = lines.size(); i < size; i ++) {
+			String line = lines.get(i);
+			if (line.toLowerCase().startsWith(prefix)) {
+				return line.substring(prefix.length()).trim();
+			}
+		}
+		return null;
+	}
+}
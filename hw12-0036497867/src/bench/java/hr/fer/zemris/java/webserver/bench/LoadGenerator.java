@@ -0,0 +1,699 @@
+package hr.fer.zemris.java.webserver.bench;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP load generator which keeps the given number of persistent connections
+ * open, and requests the given URL paths over them in turn.<br>
+ * In the closed-loop mode ({@link #run(long, long)}), the next request is sent
+ * over a connection as soon as the response to its previous request has been
+ * received, so the load adapts to the server's speed. In the open-loop mode
+ * ({@link #runOpenLoop(double, long, long)}), requests are started at a fixed
+ * rate regardless of the server's speed (waiting for an idle connection if
+ * needed), and the latency of a request is measured from the time it should
+ * have been started, so a stalled server is not hidden by delayed requests.<br>
+ * All connections are driven by a single selector thread, so the number of
+ * simulated clients is limited only by the number of file descriptors.
+ * Connections closed by the server (e.g. after reaching the keep-alive limit)
+ * are reopened, and the session cookie received over a connection is sent
+ * with all of its later requests. Response bodies are delimited by their
+ * length or by the chunked transfer coding.
+ * 
+ * @author Mate Gasparini
+ */
+public class LoadGenerator {
+	
+	/** Size (in bytes) of the buffer used for reading the response headers. */
+	private static final int HEADER_BUFFER_SIZE = 16384;
+	
+	/** End of the response header. */
+	private static final byte[] HEADER_END = {'\r', '\n', '\r', '\n'};
+	
+	/** Address of the server. */
+	private final InetSocketAddress address;
+	
+	/** Requested URL paths. */
+	private final List<String> paths;
+	
+	/** Number of connections. */
+	private final int connections;
+	
+	/** The {@link System#nanoTime()} at which the measurement starts. */
+	private long measureFrom;
+	
+	/** Latencies (in ns) of the requests completed during the measurement. */
+	private long[] latencies = new long[1024];
+	
+	/** Number of the requests completed during the measurement. */
+	private int completed;
+	
+	/** Number of failed requests (error statuses and I/O errors) during the measurement. */
+	private int errors;
+	
+	/** Interval (in ns) between the starts of requests in the open-loop mode (or 0). */
+	private long interval;
+	
+	/** Intended start times of the requests waiting for an idle connection. */
+	private final Deque<Long> waiting = new ArrayDeque<>();
+	
+	/** Idle connections in the open-loop mode. */
+	private final Deque<Connection> idle = new ArrayDeque<>();
+	
+	/**
+	 * Constructor specifying the server address, the requested URL path
+	 * and the number of connections.
+	 * 
+	 * @param address The server address.
+	 * @param path The requested URL path.
+	 * @param connections The number of connections.
+	 */
+	public LoadGenerator(InetSocketAddress address, String path, int connections) {
+		this(address, Collections.singletonList(path), connections);
+	}
+	
+	/**
+	 * Constructor specifying the server address, the requested URL paths
+	 * (requested by every connection in turn) and the number of connections.
+	 * 
+	 * @param address The server address.
+	 * @param paths The requested URL paths.
+	 * @param connections The number of connections.
+	 * @throws IllegalArgumentException If there are no paths or no connections.
+	 */
+	public LoadGenerator(InetSocketAddress address, List<String> paths, int connections) {
+		if (paths.isEmpty() || connections < 1) {
+			throw new IllegalArgumentException("At least one path and one connection are required.");
+		}
+		this.address = address;
+		this.paths = new ArrayList<>(paths);
+		this.connections = connections;
+	}
+	
+	/**
+	 * Generates the closed-loop load for the given warmup and measurement durations.
+	 * 
+	 * @param warmupMillis The warmup duration (in ms), not included in the result.
+	 * @param durationMillis The measurement duration (in ms).
+	 * @return The measured result.
+	 * @throws IOException If the selector cannot be opened.
+	 */
+	public Result run(long warmupMillis, long durationMillis) throws IOException {
+		interval = 0;
+		return generate(warmupMillis, durationMillis);
+	}
+	
+	/**
+	 * Generates the open-loop load of the given rate for the given warmup
+	 * and measurement durations.
+	 * 
+	 * @param rate The number of requests started per second.
+	 * @param warmupMillis The warmup duration (in ms), not included in the result.
+	 * @param durationMillis The measurement duration (in ms).
+	 * @return The measured result.
+	 * @throws IOException If the selector cannot be opened.
+	 * @throws IllegalArgumentException If the rate is not positive.
+	 */
+	public Result runOpenLoop(double rate, long warmupMillis, long durationMillis)
+			throws IOException {
+		if (!(rate > 0)) {
+			throw new IllegalArgumentException("Request rate must be positive.");
+		}
+		interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+		return generate(warmupMillis, durationMillis);
+	}
+	
+	/**
+	 * Generates the load in the current mode for the given warmup and
+	 * measurement durations.
+	 * 
+	 * @param warmupMillis The warmup duration (in ms), not included in the result.
+	 * @param durationMillis The measurement duration (in ms).
+	 * @return The measured result.
+	 * @throws IOException If the selector cannot be opened.
+	 */
+	private Result generate(long warmupMillis, long durationMillis) throws IOException {
+		latencies = new long[1024];
+		completed = 0;
+		errors = 0;
+		waiting.clear();
+		idle.clear();
+		
+		try (Selector selector = Selector.open()) {
+			List<Connection> all = new ArrayList<>(connections);
+			for (int i = 0; i < connections; i ++) {
+				Connection connection = new Connection(i % paths.size());
+				connection.open(selector);
+				all.add(connection);
+			}
+			
+			long nextStart = System.nanoTime();
+			measureFrom = nextStart + TimeUnit.MILLISECONDS.toNanos(warmupMillis);
+			long end = measureFrom + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+			long now;
+			while ((now = System.nanoTime()) < end) {
+				if (interval > 0) {
+					for (; nextStart <= now; nextStart += interval) {
+						waiting.add(nextStart);
+					}
+					while (!waiting.isEmpty() && !idle.isEmpty()) {
+						idle.poll().startRequest(waiting.poll());
+					}
+					long wait = TimeUnit.NANOSECONDS.toMillis(nextStart - now);
+					if (wait > 0) {
+						selector.select(Math.min(wait, 100));
+					} else {
+						selector.selectNow();
+					}
+				} else {
+					selector.select(100);
+				}
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while (it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					Connection connection = (Connection) key.attachment();
+					try {
+						connection.handle(key);
+					} catch (IOException ex) {
+						if (System.nanoTime() >= measureFrom) {
+							errors ++;
+						}
+						connection.reopen(selector);
+					}
+				}
+			}
+			
+			for (Long start : waiting) {
+				if (start >= measureFrom) {
+					record(end - start); // Never started, but its wait is still measured.
+				}
+			}
+			int served = 0;
+			for (Connection connection : all) {
+				if (connection.served) {
+					served ++;
+				}
+				connection.close();
+			}
+			return new Result(Arrays.copyOf(latencies, completed), errors, served, durationMillis);
+		}
+	}
+	
+	/**
+	 * Records the latency of a completed request.
+	 * 
+	 * @param latency The latency (in ns).
+	 */
+	private void record(long latency) {
+		if (completed == latencies.length) {
+			latencies = Arrays.copyOf(latencies, 2 * completed);
+		}
+		latencies[completed ++] = latency;
+	}
+	
+	/**
+	 * Single client connection.
+	 * 
+	 * @author Mate Gasparini
+	 */
+	private class Connection {
+		
+		/** Index of the next requested path. */
+		private int pathIndex;
+		
+		/** Underlying channel. */
+		private SocketChannel channel;
+		
+		/** Selection key of the underlying channel. */
+		private SelectionKey key;
+		
+		/** Request which is being sent. */
+		private ByteBuffer request;
+		
+		/** Received bytes of the response header. */
+		private ByteBuffer header = ByteBuffer.allocate(HEADER_BUFFER_SIZE);
+		
+		/** Marks that the response body is being received (after its header). */
+		private boolean inBody;
+		
+		/** Marks that the response body uses the chunked transfer coding. */
+		private boolean chunked;
+		
+		/**
+		 * Number of body bytes which have not been received yet (or of the current
+		 * chunk's bytes, or -1 while receiving the size of a chunk).
+		 */
+		private long bodyRemaining;
+		
+		/** State of receiving a chunked body. */
+		private ChunkState chunkState;
+		
+		/** Size of the current chunk, parsed so far. */
+		private long chunkSize;
+		
+		/** Session cookie which is sent with the requests (or {@code null}). */
+		private String cookie;
+		
+		/** Marks that the server closes the connection after the current response. */
+		private boolean closeAfter;
+		
+		/** Status code of the current response. */
+		private int status;
+		
+		/**
+		 * The {@link System#nanoTime()} at which the current request has been started
+		 * (or should have been started, in the open-loop mode).
+		 */
+		private long sentAt;
+		
+		/** Marks that at least one request has been completed during the measurement. */
+		private boolean served;
+		
+		/**
+		 * Constructor specifying the index of the first requested path.
+		 * 
+		 * @param pathIndex The index of the first requested path.
+		 */
+		Connection(int pathIndex) {
+			this.pathIndex = pathIndex;
+		}
+		
+		/**
+		 * Opens the connection and, once it is connected, starts its first request
+		 * (or marks it as idle, in the open-loop mode).
+		 * 
+		 * @param selector The selector.
+		 * @throws IOException If the connection cannot be opened.
+		 */
+		void open(Selector selector) throws IOException {
+			channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			key = channel.register(selector, 0, this);
+			sentAt = System.nanoTime();
+			if (channel.connect(address)) {
+				ready(sentAt);
+			} else {
+				key.interestOps(SelectionKey.OP_CONNECT);
+			}
+		}
+		
+		/**
+		 * Starts the next request in the closed-loop mode, or marks the connection
+		 * as idle in the open-loop mode.
+		 * 
+		 * @param now The current {@link System#nanoTime()}.
+		 * @throws IOException If an I/O error occurs.
+		 */
+		private void ready(long now) throws IOException {
+			if (interval > 0) {
+				key.interestOps(0);
+				idle.add(this);
+			} else {
+				startRequest(now);
+			}
+		}
+		
+		/**
+		 * Closes the connection and opens it again.
+		 * 
+		 * @param selector The selector.
+		 */
+		void reopen(Selector selector) {
+			close();
+			try {
+				open(selector);
+			} catch (IOException ex) {
+				throw new IllegalStateException("Connection cannot be reopened.", ex);
+			}
+		}
+		
+		/**
+		 * Closes the connection, ignoring any errors.
+		 */
+		void close() {
+			idle.remove(this);
+			key.cancel();
+			try {
+				channel.close();
+			} catch (IOException ignorable) {}
+		}
+		
+		/**
+		 * Handles the operations for which the given key is ready.
+		 * 
+		 * @param key The given key.
+		 * @throws IOException If an I/O error occurs.
+		 */
+		void handle(SelectionKey key) throws IOException {
+			if (key.isConnectable()) {
+				channel.finishConnect();
+				ready(sentAt);
+			} else if (key.isWritable()) {
+				write();
+			} else if (key.isReadable()) {
+				read();
+			}
+		}
+		
+		/**
+		 * Starts sending the next request.
+		 * 
+		 * @param start The {@link System#nanoTime()} at which the request is
+		 * 			(or should have been) started.
+		 * @throws IOException If an I/O error occurs.
+		 */
+		void startRequest(long start) throws IOException {
+			sentAt = start;
+			String path = paths.get(pathIndex);
+			pathIndex = (pathIndex + 1) % paths.size();
+			request = ByteBuffer.wrap((
+				"GET " + path + " HTTP/1.1\r\n" +
+				"Host: localhost\r\n" +
+				(cookie == null ? "" : "Cookie: " + cookie + "\r\n") +
+				"\r\n"
+			).getBytes(StandardCharsets.ISO_8859_1));
+			header.clear();
+			inBody = false;
+			write();
+		}
+		
+		/**
+		 * Writes as much of the request as possible.
+		 * 
+		 * @throws IOException If an I/O error occurs.
+		 */
+		private void write() throws IOException {
+			channel.write(request);
+			key.interestOps(request.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+		}
+		
+		/**
+		 * Reads the available response bytes and, once the response is complete,
+		 * records it and starts the next request.
+		 * 
+		 * @throws IOException If an I/O error occurs, or if the server closed
+		 * 			the connection before completing the response.
+		 */
+		private void read() throws IOException {
+			boolean complete;
+			if (!inBody) {
+				if (channel.read(header) < 0) {
+					throw new EOFException();
+				}
+				int end = indexOfHeaderEnd();
+				if (end < 0) {
+					if (!header.hasRemaining()) {
+						throw new IOException("Response header is too large.");
+					}
+					return;
+				}
+				parseHeader(end);
+				inBody = true;
+				complete = consume(header.array(), end, header.position() - end);
+			} else {
+				header.clear();
+				int read = channel.read(header);
+				if (read < 0) {
+					throw new EOFException();
+				}
+				complete = consume(header.array(), 0, read);
+			}
+			
+			if (complete) {
+				long now = System.nanoTime();
+				if (now >= measureFrom) {
+					record(now - sentAt);
+					served = true;
+					if (status >= 400) {
+						errors ++;
+					}
+				}
+				if (closeAfter) {
+					reopen(key.selector());
+				} else {
+					ready(now);
+				}
+			}
+		}
+		
+		/**
+		 * Returns the index of the first byte after the end of the response header.
+		 * 
+		 * @return The index of the first body byte, or -1 if the header is incomplete.
+		 */
+		private int indexOfHeaderEnd() {
+			byte[] bytes = header.array();
+			for (int i = 0, last = header.position() - HEADER_END.length; i <= last; i ++) {
+				if (bytes[i] == '\r' && bytes[i + 1] == '\n'
+						&& bytes[i + 2] == '\r' && bytes[i + 3] == '\n') {
+					return i + HEADER_END.length;
+				}
+			}
+			return -1;
+		}
+		
+		/**
+		 * Parses the status, the body length, the connection persistence and the
+		 * session cookie from the received response header.
+		 * 
+		 * @param end The index of the first byte after the header.
+		 * @throws IOException If the header is invalid or the body length is unknown.
+		 */
+		private void parseHeader(int end) throws IOException {
+			String[] lines = new String(header.array(), 0, end, StandardCharsets.ISO_8859_1)
+				.split("\r\n");
+			String[] statusLine = lines[0].split(" ");
+			if (statusLine.length < 2) {
+				throw new IOException("Invalid status line: " + lines[0]);
+			}
+			status = Integer.parseInt(statusLine[1]);
+			bodyRemaining = -1;
+			chunked = false;
+			closeAfter = false;
+			for (int i = 1; i < lines.length; i ++) {
+				String line = lines[i];
+				int colon = line.indexOf(':');
+				if (colon < 0) {
+					continue;
+				}
+				String name = line.substring(0, colon).trim();
+				String value = line.substring(colon + 1).trim();
+				if (name.equalsIgnoreCase("Content-Length")) {
+					bodyRemaining = Long.parseLong(value);
+				} else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+					chunked = value.equalsIgnoreCase("chunked");
+				} else if (name.equalsIgnoreCase("Connection")) {
+					closeAfter = value.equalsIgnoreCase("close");
+				} else if (name.equalsIgnoreCase("Set-Cookie") && value.startsWith("sid=")) {
+					int semicolon = value.indexOf(';');
+					cookie = semicolon < 0 ? value : value.substring(0, semicolon);
+				}
+			}
+			if (chunked) {
+				chunkState = ChunkState.SIZE;
+				chunkSize = 0;
+			} else if (bodyRemaining < 0) {
+				throw new IOException("Response without Content-Length is not supported.");
+			}
+		}
+		
+		/**
+		 * Consumes the given received body bytes.
+		 * 
+		 * @param bytes The array containing the received bytes.
+		 * @param offset The offset of the received bytes.
+		 * @param length The number of the received bytes.
+		 * @return {@code true} if the body is complete.
+		 * @throws IOException If the chunked body is invalid.
+		 */
+		private boolean consume(byte[] bytes, int offset, int length) throws IOException {
+			if (!chunked) {
+				bodyRemaining -= length;
+				return bodyRemaining <= 0;
+			}
+			
+			for (int i = offset, end = offset + length; i < end; i ++) {
+				byte b = bytes[i];
+				switch (chunkState) {
+					case SIZE:
+						int digit = Character.digit(b, 16);
+						if (b == '\n') {
+							endChunkSize();
+						} else if (b == ';') {
+							chunkState = ChunkState.EXTENSION;
+						} else if (digit >= 0) {
+							chunkSize = chunkSize * 16 + digit;
+						} else if (b != '\r' && b != ' ') {
+							throw new IOException("Invalid chunk size.");
+						}
+						break;
+					case EXTENSION:
+						if (b == '\n') {
+							endChunkSize();
+						}
+						break;
+					case DATA:
+						long skipped = Math.min(bodyRemaining, end - i);
+						bodyRemaining -= skipped;
+						i += skipped - 1;
+						if (bodyRemaining == 0) {
+							chunkState = ChunkState.DATA_END;
+						}
+						break;
+					case DATA_END:
+						if (b == '\n') {
+							chunkState = ChunkState.SIZE;
+						}
+						break;
+					case TRAILER:
+						if (b == '\n') {
+							if (bodyRemaining == 0) {
+								return true; // Empty line after the last chunk.
+							}
+							bodyRemaining = 0;
+						} else if (b != '\r') {
+							bodyRemaining = 1; // Inside a trailer field.
+						}
+						break;
+				}
+			}
+			return false;
+		}
+		
+		/**
+		 * Starts receiving the data of the chunk whose size has been received
+		 * (or the trailer, if it is the last chunk).
+		 */
+		private void endChunkSize() {
+			chunkState = chunkSize == 0 ? ChunkState.TRAILER : ChunkState.DATA;
+			bodyRemaining = chunkSize;
+			chunkSize = 0;
+		}
+	}
+	
+	/**
+	 * State of receiving a chunked body.
+	 * 
+	 * @author Mate Gasparini
+	 */
+	private enum ChunkState {
+		
+		/** Receiving the size of a chunk. */
+		SIZE,
+		
+		/** Receiving the extensions after the size of a chunk. */
+		EXTENSION,
+		
+		/** Receiving the data of a chunk. */
+		DATA,
+		
+		/** Receiving the line terminator after the data of a chunk. */
+		DATA_END,
+		
+		/** Receiving the trailer after the last chunk. */
+		TRAILER
+	}
+	
+	/**
+	 * Result of a load generator run.
+	 * 
+	 * @author Mate Gasparini
+	 */
+	public static class Result {
+		
+		/** Sorted latencies (in ns) of the completed requests. */
+		private final long[] latencies;
+		
+		/** Number of failed requests. */
+		private final int errors;
+		
+		/** Number of connections which completed at least one request. */
+		private final int servedConnections;
+		
+		/** Measurement duration (in ms). */
+		private final long durationMillis;
+		
+		/**
+		 * Constructor specifying all the measured values.
+		 * 
+		 * @param latencies The latencies (in ns) of the completed requests.
+		 * @param errors The number of failed requests.
+		 * @param servedConnections The number of served connections.
+		 * @param durationMillis The measurement duration (in ms).
+		 */
+		public Result(long[] latencies, int errors, int servedConnections, long durationMillis) {
+			this.latencies = latencies;
+			Arrays.sort(latencies);
+			this.errors = errors;
+			this.servedConnections = servedConnections;
+			this.durationMillis = durationMillis;
+		}
+		
+		/**
+		 * Returns the number of completed requests.
+		 * 
+		 * @return The number of completed requests.
+		 */
+		public int getCompleted() {
+			return latencies.length;
+		}
+		
+		/**
+		 * Returns the number of failed requests.
+		 * 
+		 * @return The number of failed requests.
+		 */
+		public int getErrors() {
+			return errors;
+		}
+		
+		/**
+		 * Returns the number of connections which completed at least one request.
+		 * 
+		 * @return The number of served connections.
+		 */
+		public int getServedConnections() {
+			return servedConnections;
+		}
+		
+		/**
+		 * Returns the number of completed requests per second.
+		 * 
+		 * @return The throughput.
+		 */
+		public double getThroughput() {
+			return latencies.length * 1000.0 / durationMillis;
+		}
+		
+		/**
+		 * Returns the given percentile of the latencies, in microseconds.
+		 * 
+		 * @param percentile The given percentile (between 0 and 1).
+		 * @return The latency percentile (or 0 if no request has been completed).
+		 */
+		public long getPercentileMicros(double percentile) {
+			if (latencies.length == 0) {
+				return 0;
+			}
+			int index = (int) Math.ceil(percentile * latencies.length) - 1;
+			return TimeUnit.NANOSECONDS.toMicros(latencies[Math.max(0, index)]);
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package hr.fer.zemris.java.webserver.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import hr.fer.zemris.java.custom.scripting.exec.ArrayMultistack;
+import hr.fer.zemris.java.custom.scripting.exec.ObjectMultistack;
+import hr.fer.zemris.java.custom.scripting.exec.ValueWrapper;
+
+/**
+ * Microbenchmark of the multistacks of loop variables, the name-based
+ * {@link ObjectMultistack} and the id-based {@link ArrayMultistack}.<br>
+ * Every operation executes two nested loops the way the
+ * {@code SmartScriptEngine} does (the outer loop has 10 iterations), and the
+ * body of the inner loop reads both loop variables, as an echo node would.
+ * 
+ * @author Mate Gasparini
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultistackBenchmark {
+	
+	/** Number of the iterations of the outer loop. */
+	private static final int OUTER_ITERATIONS = 10;
+	
+	/** Number of the iterations of the inner loop. */
+	@Param({"10", "1000"})
+	public int iterations;
+	
+	/** Name-based multistack, reused by all operations (as by an engine). */
+	private ObjectMultistack objectMultistack = new ObjectMultistack();
+	
+	/** Id-based multistack, reused by all operations (as by an engine). */
+	private ArrayMultistack arrayMultistack = new ArrayMultistack();
+	
+	/**
+	 * Executes the loops using the {@link ObjectMultistack}.
+	 * 
+	 * @param blackhole The sink of the read values.
+	 */
+	@Benchmark
+	public void objectMultistack(Blackhole blackhole) {
+		Integer end = iterations;
+		objectMultistack.push("i", new ValueWrapper(1));
+		while (objectMultistack.peek("i").numCompare(OUTER_ITERATIONS) <= 0) {
+			objectMultistack.push("j", new ValueWrapper(1));
+			while (objectMultistack.peek("j").numCompare(end) <= 0) {
+				blackhole.consume(objectMultistack.peek("i").getValue());
+				blackhole.consume(objectMultistack.peek("j").getValue());
+				objectMultistack.peek("j").add(1);
+			}
+			objectMultistack.pop("j");
+			objectMultistack.peek("i").add(1);
+		}
+		objectMultistack.pop("i");
+	}
+	
+	/**
+	 * Executes the loops using the {@link ArrayMultistack}.
+	 * 
+	 * @param blackhole The sink of the read values.
+	 */
+	@Benchmark
+	public void arrayMultistack(Blackhole blackhole) {
+		Integer end = iterations;
+		int i = arrayMultistack.id("i");
+		arrayMultistack.push(i, 1);
+		while (arrayMultistack.numCompare(i, OUTER_ITERATIONS) <= 0) {
+			int j = arrayMultistack.id("j");
+			arrayMultistack.push(j, 1);
+			while (arrayMultistack.numCompare(j, end) <= 0) {
+				blackhole.consume(arrayMultistack.peekValue(arrayMultistack.lookup("i")));
+				blackhole.consume(arrayMultistack.peekValue(arrayMultistack.lookup("j")));
+				arrayMultistack.add(j, 1);
+			}
+			arrayMultistack.pop(j);
+			arrayMultistack.add(i, 1);
+		}
+		arrayMultistack.pop(i);
+	}
+}
@@ -0,0 +1,135 @@
+package hr.fer.zemris.java.webserver.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Microbenchmark of {@link RequestContext#write(byte[])} and
+ * {@link RequestContext#write(String)}, writing to a stream which discards
+ * the data (so only the buffering, the encoding and the framing are measured).<br>
+ * The streaming benchmarks keep writing to the same response (whose buffer
+ * is flushed whenever it is full), and the {@code smallResponse} benchmark
+ * creates, writes and finishes a whole response.
+ * 
+ * @author Mate Gasparini
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestContextBenchmark {
+	
+	/** Stream which discards all written data. */
+	private static final OutputStream SINK = new OutputStream() {
+		
+		@Override
+		public void write(int b) {
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	};
+	
+	/** Size (in bytes or characters) of a single write. */
+	@Param({"16", "1024", "65536"})
+	public int size;
+	
+	/** Written bytes. */
+	private byte[] bytes;
+	
+	/** Written text. */
+	private String text;
+	
+	/** Response which is written by the streaming benchmarks. */
+	private RequestContext context;
+	
+	/**
+	 * Prepares the written data.
+	 */
+	@Setup
+	public void setup() {
+		bytes = new byte[size];
+		Arrays.fill(bytes, (byte) 'x');
+		char[] chars = new char[size];
+		for (int i = 0; i < size; i ++) {
+			chars[i] = i % 10 == 0 ? '\u010d' : 'x';
+		}
+		text = new String(chars);
+	}
+	
+	/**
+	 * Starts the response written by the streaming benchmarks.
+	 */
+	@Setup(Level.Iteration)
+	public void startResponse() {
+		context = new RequestContext(SINK, null, null, null);
+	}
+	
+	/**
+	 * Finishes the response written by the streaming benchmarks.
+	 * 
+	 * @throws IOException Never.
+	 */
+	@TearDown(Level.Iteration)
+	public void finishResponse() throws IOException {
+		context.finish();
+	}
+	
+	/**
+	 * Writes the bytes to the response.
+	 * 
+	 * @return The response.
+	 * @throws IOException Never.
+	 */
+	@Benchmark
+	public Object writeBytes() throws IOException {
+		return context.write(bytes);
+	}
+	
+	/**
+	 * Encodes and writes the text to the response.
+	 * 
+	 * @return The response.
+	 * @throws IOException Never.
+	 */
+	@Benchmark
+	public Object writeString() throws IOException {
+		return context.write(text);
+	}
+	
+	/**
+	 * Creates a response, writes the text to it and finishes it.
+	 * 
+	 * @return The response.
+	 * @throws IOException Never.
+	 */
+	@Benchmark
+	public Object smallResponse() throws IOException {
+		RequestContext response = new RequestContext(SINK, null, null, null);
+		response.setMimeType("text/plain");
+		response.write(text);
+		response.finish();
+		return response;
+	}
+}
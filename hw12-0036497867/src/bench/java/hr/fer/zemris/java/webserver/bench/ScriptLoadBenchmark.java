@@ -0,0 +1,101 @@
+package hr.fer.zemris.java.webserver.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptBinary;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+
+/**
+ * Microbenchmark of loading a smart script, by parsing its source and by
+ * deserializing its precompiled form ({@link SmartScriptBinary}).<br>
+ * The benchmarked template is made of all the scripts in {@code webroot/scripts}
+ * concatenated the given number of times, so large templates can be measured.
+ * Both forms are loaded from the bytes which would be read from a file.
+ * 
+ * @author Mate Gasparini
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScriptLoadBenchmark {
+	
+	/** Number of times the bundled scripts are concatenated. */
+	@Param({"1", "100", "1000"})
+	public int copies;
+	
+	/** Bytes of the template source. */
+	private byte[] source;
+	
+	/** Bytes of the precompiled template. */
+	private byte[] precompiled;
+	
+	/**
+	 * Builds the template, and precompiles it.
+	 * 
+	 * @throws IOException If the bundled scripts cannot be read.
+	 */
+	@Setup
+	public void setup() throws IOException {
+		List<Path> scripts;
+		try (Stream<Path> files = Files.list(Paths.get("webroot", "scripts"))) {
+			scripts = files.sorted().collect(Collectors.toList());
+		}
+		StringBuilder template = new StringBuilder();
+		for (int i = 0; i < copies; i ++) {
+			for (Path script : scripts) {
+				template.append(new String(Files.readAllBytes(script), StandardCharsets.UTF_8));
+			}
+		}
+		
+		source = template.toString().getBytes(StandardCharsets.UTF_8);
+		DocumentNode document = new SmartScriptParser(template.toString()).getDocumentNode();
+		precompiled = SmartScriptBinary.serialize(document, source.length, 0);
+		if (!SmartScriptBinary.equalTrees(document, load())) {
+			throw new IllegalStateException("Precompiled template differs from its source.");
+		}
+	}
+	
+	/**
+	 * Decodes and parses the template source.
+	 * 
+	 * @return The parsed document tree.
+	 */
+	@Benchmark
+	public DocumentNode parse() {
+		return new SmartScriptParser(new String(source, StandardCharsets.UTF_8)).getDocumentNode();
+	}
+	
+	/**
+	 * Deserializes the precompiled template.
+	 * 
+	 * @return The deserialized document tree.
+	 */
+	@Benchmark
+	public DocumentNode load() {
+		return SmartScriptBinary.deserialize(precompiled, source.length, 0);
+	}
+}
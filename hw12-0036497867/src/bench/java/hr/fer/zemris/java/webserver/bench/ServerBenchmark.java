@@ -0,0 +1,218 @@
+package hr.fer.zemris.java.webserver.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import hr.fer.zemris.java.webserver.SmartHttpServer;
+import hr.fer.zemris.java.webserver.bench.LoadGenerator.Result;
+
+/**
+ * Measures the throughput and the latency of the {@link SmartHttpServer}
+ * serving the bundled {@code webroot} using the bundled {@code config}.<br>
+ * The server is started in-process on an ephemeral port, and every scenario
+ * is measured twice: under the closed-loop load of {@value #CONNECTIONS}
+ * connections (which shows the maximum throughput), and under the open-loop
+ * load of {@value #OPEN_LOOP_LOAD} of that throughput (which shows the latency
+ * at a sustainable load, including the time requests wait for the server).<br>
+ * The scenarios are the static files, the workers mapped in
+ * {@code config/workers.properties}, the workers requested using the
+ * {@code /ext/} prefix, every script in {@code webroot/scripts}, and the
+ * mix of all of them. The program argument is a regular expression which
+ * selects the measured scenarios by their names (all by default).
+ * 
+ * <pre>
+ * mvn -Pbench compile exec:exec -Dbench.main=hr.fer.zemris.java.webserver.bench.ServerBenchmark [-Dbench=regex]
+ * </pre>
+ * 
+ * @author Mate Gasparini
+ */
+public class ServerBenchmark {
+	
+	/** Number of connections of the closed-loop load. */
+	private static final int CONNECTIONS = 32;
+	
+	/** Open-loop request rate, relative to the closed-loop throughput. */
+	private static final double OPEN_LOOP_LOAD = 0.7;
+	
+	/** Warmup duration (in ms). */
+	private static final long WARMUP = 2000;
+	
+	/** Measurement duration (in ms). */
+	private static final long DURATION = 5000;
+	
+	/** Maximum duration (in ms) of waiting for the server to bind its port. */
+	private static final long STARTUP_TIMEOUT = 10000;
+	
+	/** Query sent to the workers and the scripts, providing all the parameters they read. */
+	private static final String QUERY = "?a=3&b=4&name=bench&bgcolor=00FF00";
+	
+	/** Workers which are not mapped, but are requested using the {@code /ext/} prefix. */
+	private static final String[] EXT_ONLY_WORKERS = {"EchoParams"};
+	
+	/**
+	 * Main method which runs the benchmark.
+	 * 
+	 * @param args Regular expression selecting the scenarios (optional).
+	 * @throws Exception If the server cannot be started or the load cannot be generated.
+	 */
+	public static void main(String[] args) throws Exception {
+		Pattern filter = Pattern.compile(args.length > 0 ? args[0] : ".*");
+		Map<String, List<String>> scenarios = new LinkedHashMap<>();
+		for (Map.Entry<String, List<String>> scenario : scenarios().entrySet()) {
+			if (filter.matcher(scenario.getKey()).find()) {
+				scenarios.put(scenario.getKey(), scenario.getValue());
+			}
+		}
+		
+		Properties properties = BenchConfig.load();
+		properties.setProperty("server.port", "0");
+		Path config = BenchConfig.write(properties);
+		BenchServer server = new BenchServer(config.toString());
+		server.start();
+		try {
+			InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.awaitPort());
+			System.out.printf("%-28s %-6s %10s %12s %10s %10s %10s %8s%n", "scenario", "mode",
+				"rate", "requests/s", "p50 (us)", "p99 (us)", "p999 (us)", "errors");
+			for (Map.Entry<String, List<String>> scenario : scenarios.entrySet()) {
+				LoadGenerator generator = new LoadGenerator(address, scenario.getValue(), CONNECTIONS);
+				Result closed = generator.run(WARMUP, DURATION);
+				print(scenario.getKey(), "closed", "-", closed);
+				
+				double rate = closed.getThroughput() * OPEN_LOOP_LOAD;
+				if (rate > 0) {
+					Result open = generator.runOpenLoop(rate, WARMUP, DURATION);
+					print(scenario.getKey(), "open", String.format("%.0f", rate), open);
+				}
+			}
+		} finally {
+			server.stop();
+			Files.delete(config);
+		}
+	}
+	
+	/**
+	 * Prints a row of the results.
+	 * 
+	 * @param scenario The name of the scenario.
+	 * @param mode The load mode.
+	 * @param rate The open-loop request rate.
+	 * @param result The measured result.
+	 */
+	private static void print(String scenario, String mode, String rate, Result result) {
+		System.out.printf("%-28s %-6s %10s %12.0f %10d %10d %10d %8d%n", scenario, mode, rate,
+			result.getThroughput(), result.getPercentileMicros(0.5),
+			result.getPercentileMicros(0.99), result.getPercentileMicros(0.999),
+			result.getErrors());
+	}
+	
+	/**
+	 * Returns all the scenarios (the requested URL paths mapped by the names
+	 * of the scenarios).
+	 * 
+	 * @return The scenarios.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private static Map<String, List<String>> scenarios() throws IOException {
+		Map<String, List<String>> scenarios = new LinkedHashMap<>();
+		Path documentRoot = BenchConfig.documentRoot();
+		try (Stream<Path> files = Files.list(documentRoot)) {
+			for (Path file : files.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+				scenarios.put(
+					"static/" + file.getFileName(), Collections.singletonList("/" + file.getFileName())
+				);
+			}
+		}
+		
+		Properties workers = new Properties();
+		Path workersConfig = BenchConfig.configDir().resolve("workers.properties");
+		try (InputStream is = Files.newInputStream(workersConfig)) {
+			workers.load(is);
+		}
+		List<String> extWorkers = new ArrayList<>();
+		for (String path : new TreeSet<>(workers.stringPropertyNames())) {
+			scenarios.put("worker" + path, Collections.singletonList(path + QUERY));
+			String fqcn = workers.getProperty(path).trim();
+			extWorkers.add(fqcn.substring(fqcn.lastIndexOf('.') + 1));
+		}
+		for (String worker : EXT_ONLY_WORKERS) {
+			extWorkers.add(worker);
+		}
+		for (String worker : extWorkers) {
+			scenarios.put("ext/" + worker, Collections.singletonList("/ext/" + worker + QUERY));
+		}
+		
+		try (Stream<Path> scripts = Files.list(documentRoot.resolve("scripts"))) {
+			for (Path script : scripts.filter(p -> p.toString().endsWith(".smscr")).sorted()
+					.collect(Collectors.toList())) {
+				scenarios.put("script/" + script.getFileName(),
+					Collections.singletonList("/scripts/" + script.getFileName() + QUERY));
+			}
+		}
+		
+		List<String> mixed = new ArrayList<>();
+		for (List<String> paths : scenarios.values()) {
+			mixed.addAll(paths);
+		}
+		scenarios.put("mixed", mixed);
+		return scenarios;
+	}
+	
+	/**
+	 * Server started in-process, whose lifecycle is controlled by the benchmark.
+	 * 
+	 * @author Mate Gasparini
+	 */
+	private static class BenchServer extends SmartHttpServer {
+		
+		/**
+		 * Constructor specifying the path to the configuration file.
+		 * 
+		 * @param configFileName The path to the configuration file.
+		 */
+		BenchServer(String configFileName) {
+			super(configFileName);
+		}
+		
+		@Override
+		public void start() {
+			super.start();
+		}
+		
+		@Override
+		public void stop() {
+			super.stop();
+		}
+		
+		/**
+		 * Waits until the server binds its ephemeral port.
+		 * 
+		 * @return The bound port.
+		 * @throws InterruptedException If the thread is interrupted while waiting.
+		 * @throws IllegalStateException If the server does not bind its port in time.
+		 */
+		int awaitPort() throws InterruptedException {
+			long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT;
+			int port;
+			while ((port = getPort()) == 0) {
+				if (System.currentTimeMillis() > deadline) {
+					throw new IllegalStateException("Server did not bind its port.");
+				}
+				Thread.sleep(10);
+			}
+			return port;
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package hr.fer.zemris.java.webserver.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hr.fer.zemris.java.custom.scripting.exec.CompiledScript;
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptCompiler;
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Microbenchmark of executing the scripts in {@code webroot/scripts}, both by
+ * the {@link SmartScriptEngine} (which interprets the parsed document tree)
+ * and by the {@link CompiledScript} (which the server executes), also with
+ * instrumentation (profiling and an unlimited budget), which shows its overhead.<br>
+ * Every operation executes the script into a new response (with the
+ * parameters {@code a=3} and {@code b=4}) and finishes it, writing to
+ * a stream which discards the data.
+ * 
+ * @author Mate Gasparini
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SmartScriptEngineBenchmark {
+	
+	/** Stream which discards all written data. */
+	private static final OutputStream SINK = new OutputStream() {
+		
+		@Override
+		public void write(int b) {
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	};
+	
+	/** Name of the benchmarked script. */
+	@Param({"osnovni", "brojPoziva", "fibonacci", "fibonaccih", "zbrajanje"})
+	public String script;
+	
+	/** Parsed document tree of the script. */
+	private DocumentNode documentNode;
+	
+	/** Compiled script. */
+	private CompiledScript compiledScript;
+	
+	/** Script compiled with instrumentation. */
+	private CompiledScript instrumentedScript;
+	
+	/**
+	 * Parses and compiles the script.
+	 * 
+	 * @throws IOException If the script cannot be read.
+	 */
+	@Setup
+	public void setup() throws IOException {
+		String body = new String(Files.readAllBytes(
+			Paths.get("webroot", "scripts", script + ".smscr")
+		), StandardCharsets.UTF_8);
+		documentNode = new SmartScriptParser(body).getDocumentNode();
+		compiledScript = SmartScriptCompiler.compile(documentNode);
+		instrumentedScript = SmartScriptCompiler.compile(documentNode, 0, 0);
+	}
+	
+	/**
+	 * Executes the script by interpreting its document tree.
+	 * 
+	 * @return The response.
+	 * @throws IOException Never.
+	 */
+	@Benchmark
+	public Object interpreted() throws IOException {
+		RequestContext context = newContext();
+		new SmartScriptEngine(documentNode, context).execute();
+		context.finish();
+		return context;
+	}
+	
+	/**
+	 * Executes the compiled script.
+	 * 
+	 * @return The response.
+	 * @throws IOException Never.
+	 */
+	@Benchmark
+	public Object compiled() throws IOException {
+		RequestContext context = newContext();
+		compiledScript.execute(context);
+		context.finish();
+		return context;
+	}
+	
+	/**
+	 * Executes the script compiled with instrumentation.
+	 * 
+	 * @return The response.
+	 * @throws IOException Never.
+	 */
+	@Benchmark
+	public Object instrumented() throws IOException {
+		RequestContext context = newContext();
+		instrumentedScript.execute(context);
+		context.finish();
+		return context;
+	}
+	
+	/**
+	 * Creates a new response with the request parameters read by the scripts.
+	 * 
+	 * @return The created response.
+	 */
+	private static RequestContext newContext() {
+		Map<String, String> parameters = new HashMap<>();
+		parameters.put("a", "3");
+		parameters.put("b", "4");
+		return new RequestContext(SINK, parameters, null, null);
+	}
+}
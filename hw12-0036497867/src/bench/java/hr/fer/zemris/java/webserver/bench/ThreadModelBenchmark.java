@@ -0,0 +1,157 @@
+package hr.fer.zemris.java.webserver.bench;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+import hr.fer.zemris.java.webserver.SmartHttpServer;
+import hr.fer.zemris.java.webserver.bench.LoadGenerator.Result;
+
+/**
+ * Compares the thread models of the {@link SmartHttpServer} (the fixed-size
+ * thread pool, a platform thread per task and a virtual thread per task)
+ * under the closed-loop load of 100, 1000 and 10000 concurrent persistent
+ * connections (or the comma-separated numbers given as the program argument).<br>
+ * Virtual threads require Java 21, so the benchmark should be run on it
+ * (otherwise the server falls back to platform threads and reports it).<br>
+ * For every combination, the server is started in a separate JVM (using the
+ * blocking I/O model and {@code config/server.properties} with unlimited
+ * admission), so the server and the load generator do not share file
+ * descriptors and CPU time accounting.
+ * 
+ * <pre>
+ * mvn -Pbench compile exec:exec -Dbench.main=hr.fer.zemris.java.webserver.bench.ThreadModelBenchmark [-Dbench=100,1000]
+ * </pre>
+ * 
+ * @author Mate Gasparini
+ */
+public class ThreadModelBenchmark {
+	
+	/** Requested URL path. */
+	private static final String PATH = "/index.html";
+	
+	/** Warmup duration (in ms). */
+	private static final long WARMUP = 5000;
+	
+	/** Measurement duration (in ms). */
+	private static final long DURATION = 10000;
+	
+	/** Maximum duration (in ms) of waiting for the server to start. */
+	private static final long STARTUP_TIMEOUT = 10000;
+	
+	/**
+	 * Main method which runs the benchmark.
+	 * 
+	 * @param args Comma-separated numbers of concurrent connections (optional).
+	 * @throws Exception If the server cannot be started or the load cannot be generated.
+	 */
+	public static void main(String[] args) throws Exception {
+		int[] counts = {100, 1000, 10000};
+		if (args.length > 0 && args[0].matches("[0-9, ]+")) {
+			String[] parts = args[0].trim().split("[, ]+");
+			counts = new int[parts.length];
+			for (int i = 0; i < parts.length; i ++) {
+				counts[i] = Integer.parseInt(parts[i]);
+			}
+		}
+		
+		System.out.printf("%-8s %11s %12s %10s %10s %10s %10s %8s%n", "model", "connections",
+			"requests/s", "p50 (us)", "p99 (us)", "p999 (us)", "served", "errors");
+		for (String model : new String[] {"pool", "platform", "virtual"}) {
+			for (int connections : counts) {
+				Result result = run(model, connections);
+				System.out.printf("%-8s %11d %12.0f %10d %10d %10d %10d %8d%n", model, connections,
+					result.getThroughput(), result.getPercentileMicros(0.5),
+					result.getPercentileMicros(0.99), result.getPercentileMicros(0.999),
+					result.getServedConnections(), result.getErrors());
+			}
+		}
+	}
+	
+	/**
+	 * Starts the server using the given thread model and measures it
+	 * with the given number of connections.
+	 * 
+	 * @param model The given thread model.
+	 * @param connections The given number of connections.
+	 * @return The measured result.
+	 * @throws Exception If the server cannot be started or the load cannot be generated.
+	 */
+	private static Result run(String model, int connections) throws Exception {
+		int port = findFreePort();
+		Path config = writeConfig(model, port);
+		Process server = new ProcessBuilder(
+			Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+			"-cp", System.getProperty("java.class.path"),
+			SmartHttpServer.class.getName(), config.toString()
+		).inheritIO().start();
+		try {
+			awaitServer(port);
+			return new LoadGenerator(new InetSocketAddress("127.0.0.1", port), PATH, connections)
+				.run(WARMUP, DURATION);
+		} finally {
+			server.destroy();
+			server.waitFor();
+			Files.delete(config);
+		}
+	}
+	
+	/**
+	 * Writes the server configuration for the given thread model and port
+	 * to a temporary file.
+	 * 
+	 * @param model The given thread model.
+	 * @param port The given port.
+	 * @return The path to the written file.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private static Path writeConfig(String model, int port) throws IOException {
+		Properties properties = BenchConfig.load();
+		properties.setProperty("server.port", String.valueOf(port));
+		properties.setProperty("server.ioModel", "blocking");
+		properties.setProperty("server.threadModel", model);
+		properties.setProperty("server.maxConnections", "0");
+		properties.setProperty("server.maxConnectionsPerAddress", "0");
+		properties.setProperty("server.maxQueuedTasks", "100000");
+		properties.setProperty("server.maxVirtualThreads", "100000");
+		properties.setProperty("server.headerReadTimeout", "60");
+		return BenchConfig.write(properties);
+	}
+	
+	/**
+	 * Returns a port which is currently not used.
+	 * 
+	 * @return The free port.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private static int findFreePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+	
+	/**
+	 * Waits until the server accepts connections on the given port.
+	 * 
+	 * @param port The given port.
+	 * @throws Exception If the server does not start in time.
+	 */
+	private static void awaitServer(int port) throws Exception {
+		long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT;
+		while (true) {
+			try (Socket socket = new Socket("127.0.0.1", port)) {
+				return;
+			} catch (IOException ex) {
+				if (System.currentTimeMillis() > deadline) {
+					throw new IllegalStateException("Server did not start on port " + port + ".");
+				}
+				Thread.sleep(100);
+			}
+		}
+	}
+}
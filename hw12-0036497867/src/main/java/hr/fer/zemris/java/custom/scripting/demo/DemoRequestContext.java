@@ -51,6 +51,8 @@ public class DemoRequestContext {
 		
 		// Only at this point will header be created and written...
 		rc.write("Čevapčići i Šiščevapčići.");
+		// ...but it will be written only when the response is finished.
+		rc.finish();
 		
 		os.close();
 	}
@@ -78,6 +80,8 @@ public class DemoRequestContext {
 		
 		// Only at this point will header be created and written...
 		rc.write("Čevapčići i Šiščevapčići.");
+		// ...but it will be written only when the response is finished.
+		rc.finish();
 		
 		os.close();
 	}
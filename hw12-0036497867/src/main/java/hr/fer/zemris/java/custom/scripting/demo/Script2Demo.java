@@ -38,9 +38,13 @@ public class Script2Demo {
 		parameters.put("a", "4");
 		parameters.put("b", "2");
 		
+		RequestContext rc = new RequestContext(
+			System.out, parameters, persistentParameters, cookies);
+		
 		new SmartScriptEngine(
 			new SmartScriptParser(documentBody).getDocumentNode(),
-			new RequestContext(System.out, parameters, persistentParameters, cookies)
+			rc
 		).execute();
+		ScriptDemoUtil.finish(rc);
 	}
 }
@@ -43,6 +43,7 @@ public class Script3Demo {
 			new SmartScriptParser(documentBody).getDocumentNode(),
 			rc
 		).execute();
+		ScriptDemoUtil.finish(rc);
 		System.out.println("Vrijednost u mapi: " + rc.getPersistentParameter("brojPoziva"));
 	}
 }
@@ -36,9 +36,13 @@ public class Script4Demo {
 		Map<String, String> persistentParameters = new HashMap<>();
 		List<RCCookie> cookies = new ArrayList<>();
 		
+		RequestContext rc = new RequestContext(
+			System.out, parameters, persistentParameters, cookies);
+		
 		new SmartScriptEngine(
 			new SmartScriptParser(documentBody).getDocumentNode(),
-			new RequestContext(System.out, parameters, persistentParameters, cookies)
+			rc
 		).execute();
+		ScriptDemoUtil.finish(rc);
 	}
 }
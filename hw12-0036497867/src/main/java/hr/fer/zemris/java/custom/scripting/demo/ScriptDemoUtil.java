@@ -6,6 +6,7 @@ import java.nio.file.Paths;
 import java.util.List;
 
 import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
+import hr.fer.zemris.java.webserver.RequestContext;
 
 /**
  * Utility class used by the {@link SmartScriptEngine} demonstration programs.
@@ -26,4 +27,18 @@ public class ScriptDemoUtil {
 		List<String> lines = Files.readAllLines(Paths.get(fileName));
 		return String.join("\n", lines);
 	}
+	
+	/**
+	 * Finishes the response of the given request context, so the buffered
+	 * output is written to the underlying stream.
+	 * 
+	 * @param context The given request context.
+	 */
+	public static void finish(RequestContext context) {
+		try {
+			context.finish();
+		} catch (IOException ex) {
+			System.out.println("Output could not be written.");
+		}
+	}
 }
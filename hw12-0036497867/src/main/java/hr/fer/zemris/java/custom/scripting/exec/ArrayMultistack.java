@@ -0,0 +1,213 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Alternative to the {@link ObjectMultistack} whose stacks are accessed by
+ * integer ids instead of by names.<br>
+ * A name is mapped to its id only once (see {@link #id(String)}), and every
+ * stack is a growable array segment of {@link ValueWrapper} references.
+ * The wrappers stay in the segment when they are popped, and they are reused
+ * (by setting their values) when the stack grows to them again, so pushing
+ * a value does not allocate anything once the stack has been that deep.<br>
+ * The top value of a stack is updated in place (see {@link #add(int, Object)}),
+ * so it is kept unboxed between the updates, as by the {@link ValueWrapper}.
+ * 
+ * @author Mate Gasparini
+ */
+public class ArrayMultistack {
+	
+	/** Initial capacity of a stack segment. */
+	private static final int INITIAL_CAPACITY = 4;
+	
+	/** Ids of the mapped stacks, mapped by their names. */
+	private Map<String, Integer> ids = new HashMap<>();
+	
+	/** Segments of the stacks, indexed by their ids. */
+	private ValueWrapper[][] stacks = new ValueWrapper[INITIAL_CAPACITY][];
+	
+	/** Sizes of the stacks, indexed by their ids. */
+	private int[] sizes = new int[INITIAL_CAPACITY];
+	
+	/**
+	 * Returns the id of the stack specified by the given name,
+	 * mapping a new (empty) stack if the name is not mapped yet.
+	 * 
+	 * @param name The given name.
+	 * @return The id of the corresponding stack.
+	 * @throws NullPointerException If the given name is null.
+	 */
+	public int id(String name) {
+		Objects.requireNonNull(name, "Name cannot be null.");
+		
+		Integer id = ids.get(name);
+		if (id != null) {
+			return id;
+		}
+		
+		int newId = ids.size();
+		if (newId == stacks.length) {
+			stacks = Arrays.copyOf(stacks, 2 * newId);
+			sizes = Arrays.copyOf(sizes, 2 * newId);
+		}
+		stacks[newId] = new ValueWrapper[INITIAL_CAPACITY];
+		ids.put(name, newId);
+		return newId;
+	}
+	
+	/**
+	 * Returns the id of the already mapped stack specified by the given name.
+	 * 
+	 * @param name The given name.
+	 * @return The id of the corresponding stack.
+	 * @throws NullPointerException If the given name is null.
+	 * @throws NonExistentStackException If the corresponding stack
+	 * 			is not mapped.
+	 */
+	public int lookup(String name) {
+		Objects.requireNonNull(name, "Name cannot be null.");
+		
+		Integer id = ids.get(name);
+		if (id == null) {
+			throw new NonExistentStackException(
+				"Stack with name: " + name + " not mapped."
+			);
+		}
+		return id;
+	}
+	
+	/**
+	 * Pushes the given value to the stack with the given id.
+	 * 
+	 * @param id The given id.
+	 * @param value The given value.
+	 * @throws IndexOutOfBoundsException If the given id is not mapped.
+	 */
+	public void push(int id, Object value) {
+		ValueWrapper[] stack = stacks[checkId(id)];
+		int size = sizes[id];
+		if (size == stack.length) {
+			stack = Arrays.copyOf(stack, 2 * size);
+			stacks[id] = stack;
+		}
+		
+		if (stack[size] == null) {
+			stack[size] = new ValueWrapper(value);
+		} else {
+			stack[size].setValue(value);
+		}
+		sizes[id] = size + 1;
+	}
+	
+	/**
+	 * Pops a value from the stack with the given id and returns it.
+	 * 
+	 * @param id The given id.
+	 * @return The popped value.
+	 * @throws EmptyStackException If the corresponding stack is empty.
+	 * @throws IndexOutOfBoundsException If the given id is not mapped.
+	 */
+	public Object pop(int id) {
+		if (sizes[checkId(id)] == 0) {
+			throw new EmptyStackException(
+				"Empty stack popping not allowed."
+			);
+		}
+		
+		int size = -- sizes[id];
+		return stacks[id][size].getValue();
+	}
+	
+	/**
+	 * Peeks the wrapper of the top value of the stack with the given id.<br>
+	 * The wrapper can be used for updating the value in place, but only until
+	 * the value is popped (the wrapper is then reused by the next push).
+	 * 
+	 * @param id The given id.
+	 * @return The peeked value wrapper.
+	 * @throws EmptyStackException If the corresponding stack is empty.
+	 * @throws IndexOutOfBoundsException If the given id is not mapped.
+	 */
+	public ValueWrapper peek(int id) {
+		int size = sizes[checkId(id)];
+		if (size == 0) {
+			throw new EmptyStackException(
+				"Empty stack peeking not allowed."
+			);
+		}
+		return stacks[id][size - 1];
+	}
+	
+	/**
+	 * Peeks the top value of the stack with the given id and returns it.
+	 * 
+	 * @param id The given id.
+	 * @return The peeked value.
+	 * @throws EmptyStackException If the corresponding stack is empty.
+	 * @throws IndexOutOfBoundsException If the given id is not mapped.
+	 */
+	public Object peekValue(int id) {
+		return peek(id).getValue();
+	}
+	
+	/**
+	 * Sets the top value of the stack with the given id to the calculated
+	 * sum of that value and the given value.
+	 * 
+	 * @param id The given id.
+	 * @param incValue The given value.
+	 * @throws EmptyStackException If the corresponding stack is empty.
+	 * @throws IllegalArgumentException If the operation is not possible
+	 * 			(see {@link ValueWrapper#add(Object)}).
+	 * @throws IndexOutOfBoundsException If the given id is not mapped.
+	 */
+	public void add(int id, Object incValue) {
+		peek(id).add(incValue);
+	}
+	
+	/**
+	 * Numerically compares the top value of the stack with the given id
+	 * with the given value.
+	 * 
+	 * @param id The given id.
+	 * @param withValue The given value.
+	 * @return An integer less than, equal to or greater than zero if the top
+	 * 			value is smaller than, equal to or greater than the given value.
+	 * @throws EmptyStackException If the corresponding stack is empty.
+	 * @throws IllegalArgumentException If the comparison is not possible
+	 * 			(see {@link ValueWrapper#numCompare(Object)}).
+	 * @throws IndexOutOfBoundsException If the given id is not mapped.
+	 */
+	public int numCompare(int id, Object withValue) {
+		return peek(id).numCompare(withValue);
+	}
+	
+	/**
+	 * Returns true if the stack with the given id has no entries.
+	 * 
+	 * @param id The given id.
+	 * @return {@code true} if the corresponding stack is empty,
+	 * 			or {@code false} otherwise.
+	 * @throws IndexOutOfBoundsException If the given id is not mapped.
+	 */
+	public boolean isEmpty(int id) {
+		return sizes[checkId(id)] == 0;
+	}
+	
+	/**
+	 * Checks whether the given id is mapped.
+	 * 
+	 * @param id The given id.
+	 * @return The given id.
+	 * @throws IndexOutOfBoundsException If the given id is not mapped.
+	 */
+	private int checkId(int id) {
+		if (id < 0 || id >= ids.size()) {
+			throw new IndexOutOfBoundsException("Stack with id: " + id + " not mapped.");
+		}
+		return id;
+	}
+}
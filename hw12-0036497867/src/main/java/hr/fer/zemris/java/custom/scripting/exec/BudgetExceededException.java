@@ -0,0 +1,32 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+/**
+ * Thrown to indicate that the execution of a compiled <i>smart script</i>
+ * has been aborted because it exceeded its step or time budget.
+ * 
+ * @author Mate Gasparini
+ */
+public class BudgetExceededException extends RuntimeException {
+	
+	/**
+	 * Generated serial version ID.
+	 */
+	private static final long serialVersionUID = -2519480313386911632L;
+	
+	/**
+	 * Constructs a {@code BudgetExceededException} with no detail message.
+	 */
+	public BudgetExceededException() {
+		super();
+	}
+	
+	/**
+	 * Constructs a {@code BudgetExceededException} with the
+	 * specified detail message.
+	 * 
+	 * @param message The detail message.
+	 */
+	public BudgetExceededException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,211 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import hr.fer.zemris.java.custom.collections.ObjectStack;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * <i>Smart script</i> compiled by the {@link SmartScriptCompiler} into a tree
+ * of pre-linked instructions.<br>
+ * All variables, operators and functions are resolved during the compilation,
+ * so the execution does not perform any lookups by name. Constant expressions
+ * are evaluated in advance, and static text is written from pre-encoded buffers.<br>
+ * A compiled script has no execution state of its own, so it can be executed
+ * any number of times (even concurrently) and produces exactly the same output
+ * as the {@link SmartScriptEngine} executing the original {@link DocumentNode}.<br>
+ * An instrumented script also counts its execution into its {@link ScriptProfile},
+ * and it is aborted (by throwing the {@link BudgetExceededException}) once it
+ * executes more steps (nodes and loop iterations) or runs longer than its budget
+ * allows. A script which is not instrumented does not perform any of this.
+ * 
+ * @author Mate Gasparini
+ */
+public class CompiledScript {
+	
+	/** Number of steps between two checks of the time budget. */
+	private static final int TIME_CHECK_INTERVAL = 1024;
+	
+	/** Root instruction of the compiled script. */
+	private Instruction root;
+	
+	/** Number of loop variable slots needed for the execution. */
+	private int slotCount;
+	
+	/** Profile of the instrumented script (or {@code null} if it is not instrumented). */
+	private ScriptProfile profile;
+	
+	/** Maximum number of steps of an execution (0 for unlimited). */
+	private long maxSteps;
+	
+	/** Maximum duration (in ms) of an execution (0 for unlimited). */
+	private long maxMillis;
+	
+	/**
+	 * Constructor specifying the root instruction and the number of variable slots.
+	 * 
+	 * @param root The root instruction.
+	 * @param slotCount The number of loop variable slots.
+	 */
+	CompiledScript(Instruction root, int slotCount) {
+		this(root, slotCount, null, 0, 0);
+	}
+	
+	/**
+	 * Constructor specifying the root instruction, the number of variable slots,
+	 * the profile and the budget.
+	 * 
+	 * @param root The root instruction.
+	 * @param slotCount The number of loop variable slots.
+	 * @param profile The profile (or {@code null} if the script is not instrumented).
+	 * @param maxSteps The maximum number of steps of an execution (0 for unlimited).
+	 * @param maxMillis The maximum duration (in ms) of an execution (0 for unlimited).
+	 */
+	CompiledScript(Instruction root, int slotCount, ScriptProfile profile,
+			long maxSteps, long maxMillis) {
+		this.root = root;
+		this.slotCount = slotCount;
+		this.profile = profile;
+		this.maxSteps = maxSteps;
+		this.maxMillis = maxMillis;
+	}
+	
+	/**
+	 * Executes the compiled script using the given request context.
+	 * 
+	 * @param requestContext The given request context.
+	 * @throws BudgetExceededException If the instrumented script exceeds its budget.
+	 */
+	public void execute(RequestContext requestContext) {
+		if (profile == null) {
+			root.execute(new Frame(requestContext, slotCount));
+			return;
+		}
+		
+		Frame frame = new Frame(requestContext, slotCount, profile.counterCount(), maxSteps, maxMillis);
+		long start = System.nanoTime();
+		boolean completed = false;
+		try {
+			root.execute(frame);
+			completed = true;
+		} finally {
+			profile.record(frame.counters, System.nanoTime() - start, completed);
+		}
+	}
+	
+	/**
+	 * Returns the profile of the script.
+	 * 
+	 * @return The profile, or {@code null} if the script is not instrumented.
+	 */
+	public ScriptProfile getProfile() {
+		return profile;
+	}
+	
+	/**
+	 * Single executable part of a compiled script.
+	 * 
+	 * @author Mate Gasparini
+	 */
+	interface Instruction {
+		
+		/**
+		 * Executes this instruction using the given execution frame.
+		 * 
+		 * @param frame The given execution frame.
+		 */
+		void execute(Frame frame);
+	}
+	
+	/**
+	 * State of a single execution of a compiled script.
+	 * 
+	 * @author Mate Gasparini
+	 */
+	static class Frame {
+		
+		/** Request context used for the output. */
+		final RequestContext context;
+		
+		/**
+		 * Current values of the loop variables (indexed by their slots), which are
+		 * left set when their loops end, and {@code null} until they are started.
+		 */
+		final ValueWrapper[] slots;
+		
+		/** Temporary stack reused by all echo instructions. */
+		final ObjectStack stack = new ObjectStack();
+		
+		/** Profile counters of this execution (or {@code null} if it is not instrumented). */
+		final long[] counters;
+		
+		/** Maximum number of steps of this execution (0 for unlimited). */
+		private final long maxSteps;
+		
+		/** Maximum duration (in ms) of this execution (0 for unlimited). */
+		private final long maxMillis;
+		
+		/** Value of {@link System#nanoTime()} after which this execution is aborted. */
+		private final long deadline;
+		
+		/** Number of steps left to this execution. */
+		private long remainingSteps;
+		
+		/** Number of steps left until the time budget is checked again. */
+		private int untilTimeCheck = TIME_CHECK_INTERVAL;
+		
+		/**
+		 * Constructor specifying the request context and the number of slots.
+		 * 
+		 * @param context The request context.
+		 * @param slotCount The number of loop variable slots.
+		 */
+		Frame(RequestContext context, int slotCount) {
+			this(context, slotCount, -1, 0, 0);
+		}
+		
+		/**
+		 * Constructor of the frame of an instrumented execution.
+		 * 
+		 * @param context The request context.
+		 * @param slotCount The number of loop variable slots.
+		 * @param counterCount The number of profile counters (or -1 if the
+		 * 			execution is not instrumented).
+		 * @param maxSteps The maximum number of steps (0 for unlimited).
+		 * @param maxMillis The maximum duration in ms (0 for unlimited).
+		 */
+		Frame(RequestContext context, int slotCount, int counterCount, long maxSteps, long maxMillis) {
+			this.context = context;
+			this.slots = new ValueWrapper[slotCount];
+			this.counters = counterCount < 0 ? null : new long[counterCount];
+			this.maxSteps = maxSteps;
+			this.maxMillis = maxMillis;
+			this.remainingSteps = maxSteps > 0 ? maxSteps : Long.MAX_VALUE;
+			this.deadline = System.nanoTime() + maxMillis * 1_000_000;
+		}
+		
+		/**
+		 * Counts the given number of steps of an instrumented execution, and
+		 * aborts the execution if it exceeds its budget. The time is checked
+		 * only once in every {@value #TIME_CHECK_INTERVAL} steps.
+		 * 
+		 * @param steps The number of steps.
+		 * @throws BudgetExceededException If the execution exceeds its budget.
+		 */
+		void step(int steps) {
+			remainingSteps -= steps;
+			if (remainingSteps < 0) {
+				throw new BudgetExceededException(
+					"Script exceeded its budget of " + maxSteps + " steps."
+				);
+			}
+			if (maxMillis > 0 && (untilTimeCheck -= steps) <= 0) {
+				untilTimeCheck = TIME_CHECK_INTERVAL;
+				if (System.nanoTime() - deadline > 0) {
+					throw new BudgetExceededException(
+						"Script exceeded its budget of " + maxMillis + " ms."
+					);
+				}
+			}
+		}
+	}
+}
@@ -109,6 +109,17 @@ public class Functions {
 		MAP.get(function).accept(stack, context);
 	}
 	
+	/**
+	 * Returns the function specified by the given function name,
+	 * or {@code null} if the given function is not supported.
+	 * 
+	 * @param function The given function name.
+	 * @return The corresponding function (or {@code null}).
+	 */
+	public static BiConsumer<ObjectStack, RequestContext> get(String function) {
+		return MAP.get(function);
+	}
+	
 	/**
 	 * Pops the default value and the name of a stored value from the given stack.
 	 * Using the popped value name and the given getter, a value is obtained.
@@ -52,15 +52,39 @@ public final class Operations {
 	 * @throws IllegalArgumentException If the given operator is not valid/supported.
 	 */
 	public static void calculate(String operator, ObjectStack stack) {
-		if (!MAP.containsKey(operator)) {
+		BiFunction<ValueWrapper, Object, Object> operation = get(operator);
+		if (operation == null) {
 			// Won't happen in our homework, but provides easier future debugging.
 			throw new IllegalArgumentException("Invalid operator: " + operator);
 		}
+		calculate(operation, stack);
+	}
+	
+	/**
+	 * Pops two values from the given stack, calculates the result
+	 * of the given (already resolved) operation, and pushes it on the given stack.
+	 * 
+	 * @param operation The given operation.
+	 * @param stack The given stack.
+	 */
+	public static void calculate(BiFunction<ValueWrapper, Object, Object> operation,
+			ObjectStack stack) {
 		stack.push(
-			MAP.get(operator).apply(
+			operation.apply(
 				new ValueWrapper(stack.pop()),
 				stack.pop()
 			)
 		);
 	}
+	
+	/**
+	 * Returns the operation specified by the given operator,
+	 * or {@code null} if the given operator is not supported.
+	 * 
+	 * @param operator The given operator.
+	 * @return The corresponding operation (or {@code null}).
+	 */
+	public static BiFunction<ValueWrapper, Object, Object> get(String operator) {
+		return MAP.get(operator);
+	}
 }
@@ -0,0 +1,233 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Execution profile of a compiled <i>smart script</i>, aggregated over all
+ * executions of the script.<br>
+ * The counters are laid out by the {@link SmartScriptCompiler} while it
+ * instruments the script: the executed nodes, the executions, iterations
+ * and time of every for loop, and the invocations of every operator and
+ * function. Every execution counts into its own array of counters, which
+ * is added to the profile only once the execution ends, so the executions
+ * do not contend with each other.
+ * 
+ * @author Mate Gasparini
+ */
+public class ScriptProfile {
+	
+	/** Index of the counter of the executed nodes. */
+	static final int NODES = 0;
+	
+	/** Offset of the counter of the executions of a loop, from its first counter. */
+	static final int LOOP_EXECUTIONS = 0;
+	
+	/** Offset of the counter of the iterations of a loop, from its first counter. */
+	static final int LOOP_ITERATIONS = 1;
+	
+	/** Offset of the counter of the time (in ns) of a loop, from its first counter. */
+	static final int LOOP_NANOS = 2;
+	
+	/** Number of the counters of a loop. */
+	private static final int LOOP_COUNTERS = 3;
+	
+	/** Tags of the profiled loops, in the order of their first counters. */
+	private final List<String> loops = new ArrayList<>();
+	
+	/** Indexes of the first counters of the profiled loops. */
+	private final List<Integer> loopCounters = new ArrayList<>();
+	
+	/** Indexes of the counters of the operators, mapped by their symbols. */
+	private final Map<String, Integer> operators = new LinkedHashMap<>();
+	
+	/** Indexes of the counters of the functions, mapped by their names. */
+	private final Map<String, Integer> functions = new LinkedHashMap<>();
+	
+	/** Number of the counters laid out so far. */
+	private int counterCount = NODES + 1;
+	
+	/** Totals of the counters of all executions. */
+	private long[] totals = new long[0];
+	
+	/** Number of the executions. */
+	private long executions;
+	
+	/** Number of the aborted executions. */
+	private long aborted;
+	
+	/** Total time (in ns) of the executions. */
+	private long nanos;
+	
+	/**
+	 * Package-private constructor (profiles are created by the compiler).
+	 */
+	ScriptProfile() {
+	}
+	
+	/**
+	 * Lays out the counters of the loop with the given tag.
+	 * 
+	 * @param tag The tag of the loop (as written in the script).
+	 * @return The index of the first counter of the loop.
+	 */
+	int addLoop(String tag) {
+		int first = counterCount;
+		counterCount += LOOP_COUNTERS;
+		loops.add(tag);
+		loopCounters.add(first);
+		return first;
+	}
+	
+	/**
+	 * Returns the index of the counter of the operator with the given symbol,
+	 * laying it out if needed.
+	 * 
+	 * @param symbol The symbol of the operator.
+	 * @return The index of the counter.
+	 */
+	int operator(String symbol) {
+		return operators.computeIfAbsent(symbol, s -> counterCount ++);
+	}
+	
+	/**
+	 * Returns the index of the counter of the function with the given name,
+	 * laying it out if needed.
+	 * 
+	 * @param name The name of the function.
+	 * @return The index of the counter.
+	 */
+	int function(String name) {
+		return functions.computeIfAbsent(name, n -> counterCount ++);
+	}
+	
+	/**
+	 * Returns the number of the counters of a single execution.
+	 * 
+	 * @return The number of the counters.
+	 */
+	int counterCount() {
+		return counterCount;
+	}
+	
+	/**
+	 * Adds the counters of a single execution to this profile.
+	 * 
+	 * @param counters The counters of the execution.
+	 * @param duration The duration (in ns) of the execution.
+	 * @param completed {@code false} if the execution was aborted.
+	 */
+	synchronized void record(long[] counters, long duration, boolean completed) {
+		if (totals.length < counters.length) {
+			totals = Arrays.copyOf(totals, counters.length);
+		}
+		for (int i = 0; i < counters.length; i ++) {
+			totals[i] += counters[i];
+		}
+		executions ++;
+		nanos += duration;
+		if (!completed) {
+			aborted ++;
+		}
+	}
+	
+	/**
+	 * Returns the number of the executions of the script.
+	 * 
+	 * @return The number of the executions.
+	 */
+	public synchronized long getExecutions() {
+		return executions;
+	}
+	
+	/**
+	 * Returns the total time (in ns) of the executions of the script.
+	 * 
+	 * @return The total time of the executions.
+	 */
+	public synchronized long getNanos() {
+		return nanos;
+	}
+	
+	/**
+	 * Writes the hot-spot report of the script with the given name: the totals
+	 * of its executions, its loops ordered by their total time (which includes
+	 * the time of their nested loops), and its operator and function invocations
+	 * ordered by their counts.
+	 * 
+	 * @param builder The builder to which the report is written.
+	 * @param name The name of the script.
+	 */
+	public synchronized void writeReport(StringBuilder builder, String name) {
+		builder.append(name).append(": ")
+			.append(executions).append(" executions (").append(aborted).append(" aborted), ")
+			.append(millis(nanos)).append(" ms, ")
+			.append(total(NODES)).append(" nodes\n");
+		
+		Integer[] order = new Integer[loops.size()];
+		for (int i = 0; i < order.length; i ++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Long.compare(
+			total(loopCounters.get(b) + LOOP_NANOS), total(loopCounters.get(a) + LOOP_NANOS)
+		));
+		for (int loop : order) {
+			int first = loopCounters.get(loop);
+			long loopNanos = total(first + LOOP_NANOS);
+			builder.append("  ").append(millis(loopNanos)).append(" ms");
+			if (nanos > 0) {
+				builder.append(" (").append(100 * loopNanos / nanos).append("%)");
+			}
+			builder.append(' ').append(loops.get(loop))
+				.append(" executions=").append(total(first + LOOP_EXECUTIONS))
+				.append(" iterations=").append(total(first + LOOP_ITERATIONS)).append('\n');
+		}
+		
+		writeInvocations(builder, "operators", operators);
+		writeInvocations(builder, "functions", functions);
+	}
+	
+	/**
+	 * Writes the line of the invocations counted by the given counters,
+	 * ordered by their counts.
+	 * 
+	 * @param builder The builder to which the line is written.
+	 * @param title The title of the line.
+	 * @param counters The indexes of the counters mapped by the invoked names.
+	 */
+	private void writeInvocations(StringBuilder builder, String title, Map<String, Integer> counters) {
+		if (counters.isEmpty()) return;
+		
+		List<Map.Entry<String, Integer>> entries = new ArrayList<>(counters.entrySet());
+		entries.sort((a, b) -> Long.compare(total(b.getValue()), total(a.getValue())));
+		builder.append("  ").append(title).append(':');
+		for (Map.Entry<String, Integer> entry : entries) {
+			builder.append(' ').append(entry.getKey()).append('=').append(total(entry.getValue()));
+		}
+		builder.append('\n');
+	}
+	
+	/**
+	 * Returns the total of the counter with the given index.
+	 * 
+	 * @param index The given index.
+	 * @return The total of the counter.
+	 */
+	private long total(int index) {
+		return index < totals.length ? totals[index] : 0;
+	}
+	
+	/**
+	 * Formats the given duration (in ns) in milliseconds.
+	 * 
+	 * @param nanos The given duration.
+	 * @return The formatted duration.
+	 */
+	private static String millis(long nanos) {
+		return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+	}
+}
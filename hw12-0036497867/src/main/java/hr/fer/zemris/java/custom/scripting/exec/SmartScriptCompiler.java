@@ -0,0 +1,704 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+import hr.fer.zemris.java.custom.collections.ObjectStack;
+import hr.fer.zemris.java.custom.scripting.elems.Element;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantDouble;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantInteger;
+import hr.fer.zemris.java.custom.scripting.elems.ElementFunction;
+import hr.fer.zemris.java.custom.scripting.elems.ElementOperator;
+import hr.fer.zemris.java.custom.scripting.elems.ElementString;
+import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+import hr.fer.zemris.java.custom.scripting.exec.CompiledScript.Frame;
+import hr.fer.zemris.java.custom.scripting.exec.CompiledScript.Instruction;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
+import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
+import hr.fer.zemris.java.custom.scripting.nodes.Node;
+import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Class which compiles a {@link DocumentNode} tree into a {@link CompiledScript}.<br>
+ * Every loop variable gets its own slot, and every variable reference is linked
+ * to the slot of the innermost enclosing loop with the same name. Operators and
+ * functions are linked to their implementations from {@link Operations} and
+ * {@link Functions}.<br>
+ * Constant sub-expressions of echo nodes (operators and side-effect free
+ * functions applied to constants) are evaluated during the compilation, and
+ * every run of consecutive text nodes and fully constant echo nodes is merged
+ * into a single instruction, which writes its text pre-encoded by the charset
+ * of the response (so static parts of a script are a single buffer copy).<br>
+ * Errors which the {@link SmartScriptEngine} reports only when it reaches the
+ * invalid element (e.g. unsupported functions) are reported by the compiled
+ * script at the same point of its execution.<br>
+ * A script can also be compiled with instrumentation, which profiles its
+ * executions and enforces its budget (see {@link CompiledScript}). Scripts
+ * compiled without instrumentation do not contain any of its code.
+ * 
+ * @author Mate Gasparini
+ */
+public class SmartScriptCompiler {
+	
+	/**
+	 * Numbers of the values which the known functions pop from the stack and
+	 * push on it, mapped by their names.
+	 */
+	private static final Map<String, int[]> FUNCTION_ARITIES = Map.ofEntries(
+		Map.entry("sin", new int[] {1, 1}),
+		Map.entry("decfmt", new int[] {2, 1}),
+		Map.entry("dup", new int[] {1, 2}),
+		Map.entry("swap", new int[] {2, 2}),
+		Map.entry("setMimeType", new int[] {1, 0}),
+		Map.entry("paramGet", new int[] {2, 1}),
+		Map.entry("pparamGet", new int[] {2, 1}),
+		Map.entry("pparamSet", new int[] {2, 0}),
+		Map.entry("pparamDel", new int[] {1, 0}),
+		Map.entry("tparamGet", new int[] {2, 1}),
+		Map.entry("tparamSet", new int[] {2, 0}),
+		Map.entry("tparamDel", new int[] {1, 0})
+	);
+	
+	/** Names of the functions without side effects, which can be evaluated in advance. */
+	private static final Set<String> PURE_FUNCTIONS = Set.of("sin", "decfmt", "dup", "swap");
+	
+	/** Slots of the loop variables which are currently in scope. */
+	private Map<String, Integer> scope = new HashMap<>();
+	
+	/** Slots of all loop variables (mapped by their names). */
+	private Map<String, List<Integer>> declaredSlots = new HashMap<>();
+	
+	/** Number of slots allocated so far. */
+	private int slotCount;
+	
+	/** Profile of the instrumented script (or {@code null} if it is not instrumented). */
+	private ScriptProfile profile;
+	
+	/**
+	 * Private constructor (use {@link #compile(DocumentNode)}).
+	 */
+	private SmartScriptCompiler() {
+	}
+	
+	/**
+	 * Compiles the given parsed document tree.
+	 * 
+	 * @param documentNode The given document tree.
+	 * @return The compiled script.
+	 */
+	public static CompiledScript compile(DocumentNode documentNode) {
+		SmartScriptCompiler compiler = new SmartScriptCompiler();
+		Instruction root = compiler.compileChildren(documentNode);
+		return new CompiledScript(root, compiler.slotCount);
+	}
+	
+	/**
+	 * Compiles the given parsed document tree with instrumentation, so the
+	 * executions of the compiled script are profiled and limited by the
+	 * given budget.
+	 * 
+	 * @param documentNode The given document tree.
+	 * @param maxSteps The maximum number of steps (executed nodes and loop
+	 * 			iterations) of an execution (0 for unlimited).
+	 * @param maxMillis The maximum duration (in ms) of an execution (0 for unlimited).
+	 * @return The compiled script.
+	 * @throws IllegalArgumentException If a budget limit is negative.
+	 */
+	public static CompiledScript compile(DocumentNode documentNode, long maxSteps, long maxMillis) {
+		if (maxSteps < 0 || maxMillis < 0) {
+			throw new IllegalArgumentException("Budget limits must not be negative.");
+		}
+		SmartScriptCompiler compiler = new SmartScriptCompiler();
+		compiler.profile = new ScriptProfile();
+		Instruction root = compiler.compileChildren(documentNode);
+		return new CompiledScript(root, compiler.slotCount, compiler.profile, maxSteps, maxMillis);
+	}
+	
+	/**
+	 * Compiles all children of the given node into a single instruction.<br>
+	 * Every run of consecutive text nodes and constant echo nodes is compiled
+	 * into a single text instruction.
+	 * 
+	 * @param node The given node.
+	 * @return The compiled instruction.
+	 */
+	private Instruction compileChildren(Node node) {
+		int numberOfChildren = node.numberOfChildren();
+		List<Instruction> children = new ArrayList<>();
+		int i = 0;
+		while (i < numberOfChildren) {
+			List<String> texts = new ArrayList<>();
+			boolean writes = false;
+			int first = i;
+			for (; i < numberOfChildren; i ++) {
+				Node child = node.getChild(i);
+				if (child instanceof TextNode) {
+					texts.add(((TextNode) child).getText());
+					writes = true;
+					continue;
+				}
+				if (!(child instanceof EchoNode)) break;
+				
+				Object[] values = constantValues(fold(((EchoNode) child).getElements()));
+				if (values == null) break;
+				for (Object value : values) {
+					texts.add(String.valueOf(value));
+				}
+				writes |= values.length > 0;
+			}
+			
+			if (i > first) {
+				children.add(counted(compileText(texts, writes), i - first));
+			} else {
+				children.add(counted(compileNode(node.getChild(i ++)), 1));
+			}
+		}
+		
+		if (children.size() == 1) {
+			return children.get(0);
+		}
+		Instruction[] instructions = children.toArray(new Instruction[children.size()]);
+		return frame -> {
+			for (Instruction instruction : instructions) {
+				instruction.execute(frame);
+			}
+		};
+	}
+	
+	/**
+	 * Returns the given instruction of the given number of nodes, which counts
+	 * its executions as steps if the script is instrumented.
+	 * 
+	 * @param instruction The given instruction.
+	 * @param nodes The number of nodes compiled into the instruction.
+	 * @return The (counted) instruction.
+	 */
+	private Instruction counted(Instruction instruction, int nodes) {
+		if (profile == null) {
+			return instruction;
+		}
+		return frame -> {
+			frame.step(nodes);
+			frame.counters[ScriptProfile.NODES] += nodes;
+			instruction.execute(frame);
+		};
+	}
+	
+	/**
+	 * Compiles the text which consists of the given parts.<br>
+	 * The text is written as a single byte array, which is encoded by the
+	 * charset of the response when it is first written in that charset. Even
+	 * an empty text is written (which generates the header) if any of its
+	 * nodes writes.
+	 * 
+	 * @param texts The given parts of the text.
+	 * @param writes {@code true} if any of the nodes of the text writes.
+	 * @return The compiled instruction.
+	 */
+	private static Instruction compileText(List<String> texts, boolean writes) {
+		if (!writes) {
+			return frame -> {};
+		}
+		
+		String[] parts = texts.toArray(new String[texts.size()]);
+		Map<String, byte[]> encoded = new ConcurrentHashMap<>();
+		encoded.put(StandardCharsets.UTF_8.name(), encode(parts, StandardCharsets.UTF_8));
+		return frame -> {
+			String encoding = frame.context.getEncoding();
+			byte[] bytes = encoded.get(encoding);
+			if (bytes == null) {
+				bytes = encoded.computeIfAbsent(encoding, e -> encode(parts, Charset.forName(e)));
+			}
+			try {
+				frame.context.write(bytes);
+			} catch (IOException ignorable) {}
+		};
+	}
+	
+	/**
+	 * Encodes the given parts of a text by the given charset. Every part is
+	 * encoded on its own, exactly as it would be written by itself.
+	 * 
+	 * @param parts The given parts.
+	 * @param charset The given charset.
+	 * @return The encoded text.
+	 */
+	private static byte[] encode(String[] parts, Charset charset) {
+		if (parts.length == 1) {
+			return parts[0].getBytes(charset);
+		}
+		
+		byte[][] encodedParts = new byte[parts.length][];
+		int length = 0;
+		for (int i = 0; i < parts.length; i ++) {
+			encodedParts[i] = parts[i].getBytes(charset);
+			length += encodedParts[i].length;
+		}
+		byte[] bytes = new byte[length];
+		int offset = 0;
+		for (byte[] part : encodedParts) {
+			System.arraycopy(part, 0, bytes, offset, part.length);
+			offset += part.length;
+		}
+		return bytes;
+	}
+	
+	/**
+	 * Compiles the given (non-document) node.
+	 * 
+	 * @param node The given node.
+	 * @return The compiled instruction.
+	 */
+	private Instruction compileNode(Node node) {
+		if (node instanceof TextNode) {
+			String text = ((TextNode) node).getText();
+			return frame -> {
+				try {
+					frame.context.write(text);
+				} catch (IOException ignorable) {}
+			};
+		} else if (node instanceof EchoNode) {
+			return compileEcho((EchoNode) node);
+		} else if (node instanceof ForLoopNode) {
+			return compileForLoop((ForLoopNode) node);
+		}
+		throw new IllegalArgumentException("Unsupported node: " + node);
+	}
+	
+	/**
+	 * Compiles the given for loop node.
+	 * 
+	 * @param node The given for loop node.
+	 * @return The compiled instruction.
+	 */
+	private Instruction compileForLoop(ForLoopNode node) {
+		String name = node.getVariable().getName();
+		ValueSource start = valueOf(node.getStartExpression());
+		ValueSource end = operandOf(node.getEndExpression());
+		ValueSource step = operandOf(node.getStepExpression());
+		
+		int slot = slotCount ++;
+		int counters = profile == null ? -1 : profile.addLoop(node.toString());
+		declaredSlots.computeIfAbsent(name, key -> new ArrayList<>()).add(slot);
+		Integer outerSlot = scope.put(name, slot);
+		Instruction body = compileChildren(node);
+		if (outerSlot == null) {
+			scope.remove(name);
+		} else {
+			scope.put(name, outerSlot);
+		}
+		
+		if (profile != null) {
+			return frame -> {
+				long loopStart = System.nanoTime();
+				ValueWrapper current = new ValueWrapper(start.get());
+				frame.slots[slot] = current;
+				Object endValue = end.get();
+				Object stepValue = step.get();
+				
+				long[] profileCounters = frame.counters;
+				try {
+					while (current.numCompare(endValue) <= 0) {
+						frame.step(1);
+						profileCounters[counters + ScriptProfile.LOOP_ITERATIONS] ++;
+						body.execute(frame);
+						current.add(stepValue);
+					}
+				} finally {
+					profileCounters[counters + ScriptProfile.LOOP_EXECUTIONS] ++;
+					profileCounters[counters + ScriptProfile.LOOP_NANOS] += System.nanoTime() - loopStart;
+				}
+			};
+		}
+		
+		return frame -> {
+			ValueWrapper current = new ValueWrapper(start.get());
+			frame.slots[slot] = current;
+			Object endValue = end.get();
+			Object stepValue = step.get();
+			
+			while (current.numCompare(endValue) <= 0) {
+				body.execute(frame);
+				current.add(stepValue);
+			}
+		};
+	}
+	
+	/**
+	 * Compiles the given echo node.
+	 * 
+	 * @param node The given echo node.
+	 * @return The compiled instruction.
+	 */
+	private Instruction compileEcho(EchoNode node) {
+		Element[] elements = fold(node.getElements());
+		EchoOperation[] operations = new EchoOperation[elements.length];
+		for (int i = 0; i < elements.length; i ++) {
+			operations[i] = compileElement(elements[i]);
+		}
+		
+		return frame -> {
+			ObjectStack stack = frame.stack;
+			for (EchoOperation operation : operations) {
+				operation.apply(stack, frame);
+			}
+			writeStack(stack, frame.context);
+		};
+	}
+	
+	/**
+	 * Evaluates the constant sub-expressions of the given echo node elements.
+	 * An operator or a side-effect free function whose operands are all pushed
+	 * by the constants immediately preceding it is replaced (together with these
+	 * constants) by the constants of its results.<br>
+	 * Operations which fail are not evaluated, so they fail when executed.
+	 * The elements after an unknown function (or an operation without enough
+	 * operands) are left as they are.
+	 * 
+	 * @param elements The given elements.
+	 * @return The folded elements.
+	 */
+	private static Element[] fold(Element[] elements) {
+		List<Element> folded = new ArrayList<>();
+		// Index of the folded element which pushed every value (-1 if not a constant).
+		List<Integer> stack = new ArrayList<>();
+		for (int i = 0; i < elements.length; i ++) {
+			Element element = elements[i];
+			int popped;
+			int pushed;
+			boolean pure;
+			if (element instanceof ElementVariable) {
+				popped = 0;
+				pushed = 1;
+				pure = false;
+			} else if (element instanceof ElementOperator
+					&& Operations.get(((ElementOperator) element).getSymbol()) != null) {
+				popped = 2;
+				pushed = 1;
+				pure = true;
+			} else if (element instanceof ElementFunction
+					&& FUNCTION_ARITIES.containsKey(((ElementFunction) element).getName())) {
+				String name = ((ElementFunction) element).getName();
+				popped = FUNCTION_ARITIES.get(name)[0];
+				pushed = FUNCTION_ARITIES.get(name)[1];
+				pure = PURE_FUNCTIONS.contains(name);
+			} else if (constantValue(element) != null) {
+				stack.add(folded.size());
+				folded.add(element);
+				continue;
+			} else {
+				popped = -1;
+				pushed = 0;
+				pure = false;
+			}
+			
+			if (popped < 0 || popped > stack.size()) {
+				for (; i < elements.length; i ++) {
+					folded.add(elements[i]);
+				}
+				break;
+			}
+			
+			Element[] results = pure ? evaluate(element, folded, stack, popped) : null;
+			stack.subList(stack.size() - popped, stack.size()).clear();
+			if (results == null) {
+				folded.add(element);
+				for (int j = 0; j < pushed; j ++) {
+					stack.add(-1);
+				}
+			} else {
+				folded.subList(folded.size() - popped, folded.size()).clear();
+				for (Element result : results) {
+					stack.add(folded.size());
+					folded.add(result);
+				}
+			}
+		}
+		return folded.toArray(new Element[folded.size()]);
+	}
+	
+	/**
+	 * Evaluates the given operation if its operands are pushed by the last of
+	 * the given folded elements.
+	 * 
+	 * @param operation The given operator or function element.
+	 * @param folded The folded elements.
+	 * @param stack Indexes of the folded elements which pushed the values on the stack.
+	 * @param popped The number of the operands.
+	 * @return The constants of the results, or {@code null} if the operation
+	 * 			cannot be evaluated in advance.
+	 */
+	private static Element[] evaluate(Element operation, List<Element> folded,
+			List<Integer> stack, int popped) {
+		for (int i = 1; i <= popped; i ++) {
+			if (stack.get(stack.size() - i) != folded.size() - i) {
+				return null;
+			}
+		}
+		
+		ObjectStack values = new ObjectStack();
+		for (int i = folded.size() - popped; i < folded.size(); i ++) {
+			values.push(constantValue(folded.get(i)));
+		}
+		try {
+			if (operation instanceof ElementOperator) {
+				Operations.calculate(((ElementOperator) operation).getSymbol(), values);
+			} else {
+				Functions.calculate(((ElementFunction) operation).getName(), values, null);
+			}
+		} catch (RuntimeException ex) {
+			return null;
+		}
+		
+		Element[] results = new Element[values.size()];
+		for (int i = results.length - 1; i >= 0; i --) {
+			results[i] = constantElement(values.pop());
+			if (results[i] == null) {
+				return null;
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * Returns the values of the given echo node elements if they are all constants.
+	 * 
+	 * @param elements The given elements.
+	 * @return The values, or {@code null} if any element is not a constant.
+	 */
+	private static Object[] constantValues(Element[] elements) {
+		Object[] values = new Object[elements.length];
+		for (int i = 0; i < elements.length; i ++) {
+			values[i] = constantValue(elements[i]);
+			if (values[i] == null) {
+				return null;
+			}
+		}
+		return values;
+	}
+	
+	/**
+	 * Returns the value of the given element if it is a constant.
+	 * 
+	 * @param element The given element.
+	 * @return The value, or {@code null} if the element is not a constant.
+	 */
+	private static Object constantValue(Element element) {
+		if (element instanceof ElementConstantInteger) {
+			return ((ElementConstantInteger) element).getValue();
+		} else if (element instanceof ElementConstantDouble) {
+			return ((ElementConstantDouble) element).getValue();
+		} else if (element instanceof ElementString) {
+			return ((ElementString) element).getValue();
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns the constant element of the given value.
+	 * 
+	 * @param value The given value.
+	 * @return The constant element, or {@code null} if the value cannot be
+	 * 			a constant.
+	 */
+	private static Element constantElement(Object value) {
+		if (value instanceof Integer) {
+			return new ElementConstantInteger((Integer) value);
+		} else if (value instanceof Double) {
+			return new ElementConstantDouble((Double) value);
+		} else if (value instanceof String) {
+			return new ElementString((String) value);
+		}
+		return null;
+	}
+	
+	/**
+	 * Compiles a single echo node element.
+	 * 
+	 * @param element The given element.
+	 * @return The compiled operation.
+	 */
+	private EchoOperation compileElement(Element element) {
+		if (element instanceof ElementConstantInteger) {
+			Object value = ((ElementConstantInteger) element).getValue();
+			return (stack, frame) -> stack.push(value);
+		} else if (element instanceof ElementConstantDouble) {
+			Object value = ((ElementConstantDouble) element).getValue();
+			return (stack, frame) -> stack.push(value);
+		} else if (element instanceof ElementString) {
+			Object value = ((ElementString) element).getValue();
+			return (stack, frame) -> stack.push(value);
+		} else if (element instanceof ElementVariable) {
+			return compileVariable(((ElementVariable) element).getName());
+		} else if (element instanceof ElementOperator) {
+			String operator = ((ElementOperator) element).getSymbol();
+			BiFunction<ValueWrapper, Object, Object> operation = Operations.get(operator);
+			if (operation == null) {
+				return counted((stack, frame) -> Operations.calculate(operator, stack),
+					profile == null ? -1 : profile.operator(operator));
+			}
+			return counted((stack, frame) -> Operations.calculate(operation, stack),
+				profile == null ? -1 : profile.operator(operator));
+		} else if (element instanceof ElementFunction) {
+			String name = ((ElementFunction) element).getName();
+			BiConsumer<ObjectStack, RequestContext> function = Functions.get(name);
+			if (function == null) {
+				return counted((stack, frame) -> Functions.calculate(name, stack, frame.context),
+					profile == null ? -1 : profile.function(name));
+			}
+			return counted((stack, frame) -> function.accept(stack, frame.context),
+				profile == null ? -1 : profile.function(name));
+		}
+		return (stack, frame) -> {};
+	}
+	
+	/**
+	 * Returns the given operation, which counts its invocations using the
+	 * profile counter with the given index if the script is instrumented.
+	 * 
+	 * @param operation The given operation.
+	 * @param counter The index of the profile counter (or -1 if the script
+	 * 			is not instrumented).
+	 * @return The (counted) operation.
+	 */
+	private static EchoOperation counted(EchoOperation operation, int counter) {
+		if (counter < 0) {
+			return operation;
+		}
+		return (stack, frame) -> {
+			frame.counters[counter] ++;
+			operation.apply(stack, frame);
+		};
+	}
+	
+	/**
+	 * Compiles a reference to the loop variable with the given name.<br>
+	 * If no enclosing loop declares the variable, the operation throws the same
+	 * exception which the {@link ObjectMultistack} would throw, so it checks
+	 * whether a loop with the same name has already been started by the
+	 * execution (such a loop leaves its slot set).
+	 * 
+	 * @param name The given variable name.
+	 * @return The compiled operation.
+	 */
+	private EchoOperation compileVariable(String name) {
+		Integer slot = scope.get(name);
+		if (slot != null) {
+			int index = slot;
+			return (stack, frame) -> stack.push(frame.slots[index].getValue());
+		}
+		
+		// Slots of the loops compiled later are added to the same list.
+		List<Integer> slots = declaredSlots.computeIfAbsent(name, key -> new ArrayList<>());
+		return (stack, frame) -> {
+			for (int declared : slots) {
+				if (frame.slots[declared] != null) {
+					throw new EmptyStackException("Empty stack peeking not allowed.");
+				}
+			}
+			throw new NonExistentStackException("Stack with name: " + name + " not mapped.");
+		};
+	}
+	
+	/**
+	 * Returns the source of the value of the given for loop parameter.<br>
+	 * If the given element does not have a value, the source throws the same
+	 * exception which the {@link SmartScriptEngine} would throw.
+	 * 
+	 * @param element The given element.
+	 * @return The value source.
+	 */
+	private static ValueSource valueOf(Element element) {
+		Object value = constantValue(element);
+		if (value == null) {
+			return () -> {
+				throw new IllegalArgumentException("Given element does not have a value.");
+			};
+		}
+		return () -> value;
+	}
+	
+	/**
+	 * Returns the source of the value of the given for loop parameter which is
+	 * used only as an operand (i.e. the end and the step expression).<br>
+	 * Valid {@code String} constants are converted to numbers in advance,
+	 * so they are not parsed again in every iteration.
+	 * 
+	 * @param element The given element.
+	 * @return The value source.
+	 */
+	private static ValueSource operandOf(Element element) {
+		ValueSource source = valueOf(element);
+		if (element instanceof ElementString) {
+			try {
+				Object number = ValueWrapper.asNumber(source.get());
+				return () -> number;
+			} catch (IllegalArgumentException ex) {
+				// Reported when (and if) the loop is executed.
+			}
+		}
+		return source;
+	}
+	
+	/**
+	 * Writes the contents of the given stack in reverse-stack order (FIFO)
+	 * and leaves the stack empty.
+	 * 
+	 * @param stack The given stack.
+	 * @param context The request context used for writing.
+	 */
+	private static void writeStack(ObjectStack stack, RequestContext context) {
+		Object[] values = new Object[stack.size()];
+		for (int i = values.length - 1; i >= 0; i --) {
+			values[i] = stack.pop();
+		}
+		
+		try {
+			for (Object value : values) {
+				context.write(String.valueOf(value));
+			}
+		} catch (IOException ignorable) {}
+	}
+	
+	/**
+	 * Compiled echo node element.
+	 * 
+	 * @author Mate Gasparini
+	 */
+	private interface EchoOperation {
+		
+		/**
+		 * Applies this operation on the given stack.
+		 * 
+		 * @param stack The given stack.
+		 * @param frame The current execution frame.
+		 */
+		void apply(ObjectStack stack, Frame frame);
+	}
+	
+	/**
+	 * Source of a for loop parameter value.
+	 * 
+	 * @author Mate Gasparini
+	 */
+	private interface ValueSource {
+		
+		/**
+		 * Returns the value.
+		 * 
+		 * @return The value.
+		 */
+		Object get();
+	}
+}
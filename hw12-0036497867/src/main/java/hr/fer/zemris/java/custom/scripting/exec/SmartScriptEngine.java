@@ -16,6 +16,7 @@ import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
 import hr.fer.zemris.java.custom.scripting.nodes.INodeVisitor;
 import hr.fer.zemris.java.custom.scripting.nodes.Node;
 import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
 import hr.fer.zemris.java.webserver.RequestContext;
 
 /**
@@ -32,8 +33,8 @@ public class SmartScriptEngine {
 	/** Specified request context. */
 	private RequestContext requestContext;
 	
-	/** Multistack used during the execution. */
-	private ObjectMultistack multistack = new ObjectMultistack();
+	/** Multistack of the loop variables used during the execution. */
+	private ArrayMultistack multistack = new ArrayMultistack();
 	
 	/** Node visitor used for executing all parts of the document tree. */
 	private INodeVisitor visitor = new INodeVisitor() {
@@ -47,21 +48,17 @@ public class SmartScriptEngine {
 		
 		@Override
 		public void visitForLoopNode(ForLoopNode node) {
-			String name = node.getVariable().getName();
-			multistack.push(name, new ValueWrapper(getValue(node.getStartExpression())));
+			int variable = multistack.id(node.getVariable().getName());
+			multistack.push(variable, getValue(node.getStartExpression()));
 			Object end = getValue(node.getEndExpression());
 			Object step = getValue(node.getStepExpression());
 			
-			while (true) {
-				ValueWrapper current = multistack.peek(name);
-				if (current.numCompare(end) > 0) {
-					break;
-				}
+			while (multistack.numCompare(variable, end) <= 0) {
 				visitChildren(node);
-				current.add(step);
+				multistack.add(variable, step);
 			}
 			
-			multistack.pop(name);
+			multistack.pop(variable);
 		}
 		
 		@Override
@@ -77,7 +74,7 @@ public class SmartScriptEngine {
 					temporaryStack.push(((ElementString) element).getValue());
 				} else if (element instanceof ElementVariable) {
 					String name = ((ElementVariable) element).getName();
-					temporaryStack.push(multistack.peek(name).getValue());
+					temporaryStack.push(multistack.peekValue(multistack.lookup(name)));
 				} else if (element instanceof ElementOperator) {
 					String operator = ((ElementOperator) element).getSymbol();
 					Operations.calculate(operator, temporaryStack);
@@ -153,10 +150,38 @@ public class SmartScriptEngine {
 		this.requestContext = requestContext;
 	}
 	
+	/**
+	 * Constructor specifying only the request context, used for executing
+	 * <i>smart scripts</i> in the streaming mode.
+	 * 
+	 * @param requestContext The specified request context.
+	 * @see #execute(Readable)
+	 */
+	public SmartScriptEngine(RequestContext requestContext) {
+		this.requestContext = requestContext;
+	}
+	
 	/**
 	 * Executes the specified <i>smart script</i>.
+	 * 
+	 * @throws NullPointerException If the document tree was not specified.
 	 */
 	public void execute() {
 		documentNode.accept(visitor);
 	}
+	
+	/**
+	 * Executes the <i>smart script</i> read from the given source while it is
+	 * being parsed, so its output starts before the whole script is read,
+	 * and neither the whole script nor its whole tree is ever held.<br>
+	 * If the script is invalid, the output of the part of the script which
+	 * precedes the problem has already been written.
+	 * 
+	 * @param source The given source (e.g. a <code>Reader</code>).
+	 * @throws hr.fer.zemris.java.custom.scripting.parser.SmartScriptParserException
+	 * 			If the script cannot be parsed or read.
+	 */
+	public void execute(Readable source) {
+		new SmartScriptParser(source, visitor);
+	}
 }
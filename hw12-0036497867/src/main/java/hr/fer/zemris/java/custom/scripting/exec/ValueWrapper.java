@@ -3,17 +3,64 @@ package hr.fer.zemris.java.custom.scripting.exec;
 /**
  * Class that wraps an {@code Object} read-write property.
  * It provides methods used for basic arithmetic operations
- * upon this value, as well as a numerical comparison method.
+ * upon this value, as well as a numerical comparison method.<p>
+ * Numeric values are internally kept unboxed: the wrapped value is converted
+ * to a number only once (and not before every operation), results of the
+ * operations are boxed only when {@link #getValue()} is called, and the most
+ * recently used {@code String} operand is parsed only once.</p>
  * 
  * @author Mate Gasparini
  */
 public class ValueWrapper {
 	
+	/** Marks that the numeric kind of a value has not been determined yet. */
+	private static final int UNKNOWN = 0;
+	
+	/** Marks an integer number. */
+	private static final int INTEGER = 1;
+	
+	/** Marks a decimal (double) number. */
+	private static final int DOUBLE = 2;
+	
 	/**
 	 * The wrapped value. Can be null.
+	 * Outdated if {@code boxed} is {@code false}.
 	 */
 	private Object value;
 	
+	/** Marks that the wrapped value object represents the current value. */
+	private boolean boxed = true;
+	
+	/** Numeric kind of the wrapped value. */
+	private int kind = UNKNOWN;
+	
+	/** The wrapped value as an integer (valid if its kind is {@code INTEGER}). */
+	private int intValue;
+	
+	/** The wrapped value as a double (valid if its kind is {@code DOUBLE}). */
+	private double doubleValue;
+	
+	/** Numeric kind of the current operand. */
+	private int operandKind;
+	
+	/** The current operand as an integer. */
+	private int operandInt;
+	
+	/** The current operand as a double. */
+	private double operandDouble;
+	
+	/** Most recently parsed {@code String} operand. */
+	private String cachedString;
+	
+	/** Numeric kind of the most recently parsed {@code String} operand. */
+	private int cachedKind;
+	
+	/** Most recently parsed {@code String} operand as an integer. */
+	private int cachedInt;
+	
+	/** Most recently parsed {@code String} operand as a double. */
+	private double cachedDouble;
+	
 	/**
 	 * Constructor specifying the value.
 	 * 
@@ -29,6 +76,14 @@ public class ValueWrapper {
 	 * @return The wrapped value.
 	 */
 	public Object getValue() {
+		if (!boxed) {
+			if (kind == INTEGER) {
+				value = Integer.valueOf(intValue);
+			} else {
+				value = Double.valueOf(doubleValue);
+			}
+			boxed = true;
+		}
 		return value;
 	}
 	
@@ -39,6 +94,24 @@ public class ValueWrapper {
 	 */
 	public void setValue(Object value) {
 		this.value = value;
+		boxed = true;
+		kind = UNKNOWN;
+	}
+	
+	/**
+	 * Returns the given valid operand converted to an {@link Integer}
+	 * or a {@link Double}, exactly as it is interpreted by the arithmetic
+	 * and the comparison methods.<br>
+	 * Can be used to convert constant operands in advance.
+	 * 
+	 * @param operand The given operand.
+	 * @return The numeric value of the given operand.
+	 * @throws IllegalArgumentException If the given operand
+	 * 			cannot be represented as a valid number.
+	 */
+	public static Number asNumber(Object operand) {
+		checkOneValueType(operand);
+		return convertToValidOperand(operand);
 	}
 	
 	/**
@@ -51,15 +124,12 @@ public class ValueWrapper {
 	 * 			cannot be represented as a valid number.
 	 */
 	public void add(Object incValue) {
-		checkValueTypes(incValue);
-		
-		Number first = convertToValidOperand(value);
-		Number second = convertToValidOperand(incValue);
+		prepareOperands(incValue);
 		
-		if (first instanceof Integer && second instanceof Integer) {
-			value = first.intValue() + second.intValue();
+		if (kind == INTEGER && operandKind == INTEGER) {
+			setInt(intValue + operandInt);
 		} else {
-			value = first.doubleValue() + second.doubleValue();
+			setDouble(doubleOf() + operandDoubleOf());
 		}
 	}
 	
@@ -73,15 +143,12 @@ public class ValueWrapper {
 	 * 			cannot be represented as a valid number.
 	 */
 	public void subtract(Object decValue) {
-		checkValueTypes(decValue);
+		prepareOperands(decValue);
 		
-		Number first = convertToValidOperand(value);
-		Number second = convertToValidOperand(decValue);
-		
-		if (first instanceof Integer && second instanceof Integer) {
-			value = first.intValue() - second.intValue();
+		if (kind == INTEGER && operandKind == INTEGER) {
+			setInt(intValue - operandInt);
 		} else {
-			value = first.doubleValue() - second.doubleValue();
+			setDouble(doubleOf() - operandDoubleOf());
 		}
 	}
 	
@@ -95,15 +162,12 @@ public class ValueWrapper {
 	 * 			cannot be represented as a valid number.
 	 */
 	public void multiply(Object mulValue) {
-		checkValueTypes(mulValue);
-		
-		Number first = convertToValidOperand(value);
-		Number second = convertToValidOperand(mulValue);
+		prepareOperands(mulValue);
 		
-		if (first instanceof Integer && second instanceof Integer) {
-			value = first.intValue() * second.intValue();
+		if (kind == INTEGER && operandKind == INTEGER) {
+			setInt(intValue * operandInt);
 		} else {
-			value = first.doubleValue() * second.doubleValue();
+			setDouble(doubleOf() * operandDoubleOf());
 		}
 	}
 	
@@ -118,15 +182,12 @@ public class ValueWrapper {
 	 * @throws ArithmeticException If the given value is zero.
 	 */
 	public void divide(Object divValue) {
-		checkValueTypes(divValue);
+		prepareOperands(divValue);
 		
-		Number first = convertToValidOperand(value);
-		Number second = convertToValidOperand(divValue);
-		
-		if (first instanceof Integer && second instanceof Integer) {
-			value = first.intValue() / second.intValue();
+		if (kind == INTEGER && operandKind == INTEGER) {
+			setInt(intValue / operandInt);
 		} else {
-			value = first.doubleValue() / second.doubleValue();
+			setDouble(doubleOf() / operandDoubleOf());
 		}
 	}
 	
@@ -144,24 +205,108 @@ public class ValueWrapper {
 	 * 			cannot be represented as a valid number.
 	 */
 	public int numCompare(Object withValue) {
-		checkValueTypes(withValue);
+		prepareOperands(withValue);
 		
-		Number first = convertToValidOperand(value);
-		Number second = convertToValidOperand(withValue);
+		if (kind == INTEGER && operandKind == INTEGER) {
+			return Integer.compare(intValue, operandInt);
+		} else {
+			return Double.compare(doubleOf(), operandDoubleOf());
+		}
+	}
+	
+	/**
+	 * Converts the wrapped value (if not already converted) and the given
+	 * operand to numbers.
+	 * 
+	 * @param operand The given operand.
+	 * @throws IllegalArgumentException If the wrapped value or the given
+	 * 			operand cannot be represented as a valid number.
+	 */
+	private void prepareOperands(Object operand) {
+		if (kind == UNKNOWN) {
+			checkOneValueType(value);
+			checkOneValueType(operand);
+			Number number = convertToValidOperand(value);
+			if (number instanceof Integer) {
+				intValue = number.intValue();
+				kind = INTEGER;
+			} else {
+				doubleValue = number.doubleValue();
+				kind = DOUBLE;
+			}
+		}
 		
-		if (first instanceof Integer && second instanceof Integer) {
-			return ((Integer) first).compareTo((Integer) second);
+		if (operand instanceof Integer) {
+			operandInt = (Integer) operand;
+			operandKind = INTEGER;
+		} else if (operand instanceof Double) {
+			operandDouble = (Double) operand;
+			operandKind = DOUBLE;
+		} else if (operand == null) {
+			operandInt = 0;
+			operandKind = INTEGER;
+		} else if (operand == cachedString) {
+			operandInt = cachedInt;
+			operandDouble = cachedDouble;
+			operandKind = cachedKind;
 		} else {
-			return ((Double) first.doubleValue()).compareTo(second.doubleValue());
+			checkOneValueType(operand);
+			Number number = convertToValidOperand(operand);
+			if (number instanceof Integer) {
+				operandInt = number.intValue();
+				operandKind = INTEGER;
+			} else {
+				operandDouble = number.doubleValue();
+				operandKind = DOUBLE;
+			}
+			cachedString = (String) operand;
+			cachedInt = operandInt;
+			cachedDouble = operandDouble;
+			cachedKind = operandKind;
 		}
 	}
 	
-	private void checkValueTypes(Object givenValue) {
-		checkOneValueType(value);
-		checkOneValueType(givenValue);
+	/**
+	 * Sets the wrapped value to the given integer (without boxing it).
+	 * 
+	 * @param result The given integer.
+	 */
+	private void setInt(int result) {
+		intValue = result;
+		kind = INTEGER;
+		boxed = false;
+	}
+	
+	/**
+	 * Sets the wrapped value to the given double (without boxing it).
+	 * 
+	 * @param result The given double.
+	 */
+	private void setDouble(double result) {
+		doubleValue = result;
+		kind = DOUBLE;
+		boxed = false;
+	}
+	
+	/**
+	 * Returns the (already converted) wrapped value as a double.
+	 * 
+	 * @return The wrapped value as a double.
+	 */
+	private double doubleOf() {
+		return kind == INTEGER ? intValue : doubleValue;
+	}
+	
+	/**
+	 * Returns the (already converted) current operand as a double.
+	 * 
+	 * @return The current operand as a double.
+	 */
+	private double operandDoubleOf() {
+		return operandKind == INTEGER ? operandInt : operandDouble;
 	}
 	
-	private void checkOneValueType(Object givenValue) {
+	private static void checkOneValueType(Object givenValue) {
 		if (givenValue == null
 				|| givenValue instanceof Integer
 				|| givenValue instanceof Double
@@ -172,7 +317,7 @@ public class ValueWrapper {
 		}
 	}
 	
-	private Number convertToValidOperand(Object value) {
+	private static Number convertToValidOperand(Object value) {
 		Object validOperand = value;
 		
 		if (value == null) {
@@ -1,23 +1,76 @@
 package hr.fer.zemris.java.custom.scripting.lexer;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.CharBuffer;
+
 /**
  * Class that represents a lexer which returns tokens based on the
- * input data (as specified in the second part of the homework).
+ * input data (as specified in the second part of the homework).<br>
+ * The input data is read incrementally through a fixed-size window, so the
+ * lexer never holds the whole input (which can be a <code>Reader</code>, a
+ * <code>CharBuffer</code> or any other <code>Readable</code>). Text tokens
+ * are slices of the window (unescaped in place), which are valid only until
+ * the next token is generated, and a text longer than the window is split
+ * into several consecutive text tokens.
  * 
  * @author Mate Gasparini
  */
 public class Lexer {
 	
 	/**
-	 * Data which needs to be tokenized.
+	 * Default size of the window through which the data is read.
+	 */
+	private static final int WINDOW_SIZE = 8192;
+	/**
+	 * Minimum size of the window (it must fit the longest lookahead).
+	 */
+	private static final int MIN_WINDOW_SIZE = 16;
+	
+	/**
+	 * Source from which the data which needs to be tokenized is read.
+	 */
+	private Readable source;
+	/**
+	 * Window containing the currently read part of the data.
 	 */
 	private char[] data;
+	/**
+	 * Buffer wrapping the window, used for reading from the source.
+	 */
+	private CharBuffer window;
+	/**
+	 * Number of valid characters in the window.
+	 */
+	private int limit;
+	/**
+	 * Flag specifying whether the whole source has been read.
+	 */
+	private boolean endOfInput;
+	/**
+	 * Flag specifying whether the EOF token has been already generated.
+	 */
+	private boolean endOfFile;
+	/**
+	 * Index of the first character of the text token which is being
+	 * generated, or -1 if no text token is being generated.
+	 */
+	private int textStart = -1;
+	/**
+	 * Index after the last (unescaped) character of the text token
+	 * which is being generated.
+	 */
+	private int textEnd;
+	/**
+	 * Builder reused for the values of the tag tokens.
+	 */
+	private StringBuilder builder = new StringBuilder();
 	/**
 	 * Current token.
 	 */
 	private Token token;
 	/**
-	 * Index of the current data character.
+	 * Index of the current data character (in the window).
 	 */
 	private int currentIndex;
 	/**
@@ -32,14 +85,64 @@ public class Lexer {
 	 * @throws NullPointerException If the input text is null.
 	 */
 	public Lexer(String text) {
-		if (text == null) {
-			throw new NullPointerException("Text must not be null.");
+		this(
+			new StringReader(requireText(text)),
+			Math.min(text.length(), WINDOW_SIZE)
+		);
+	}
+	
+	/**
+	 * Constructor specifying the source (e.g. a <code>Reader</code> or a
+	 * <code>CharBuffer</code>) from which the data which needs to be
+	 * tokenized is read incrementally. I/O errors of the source are
+	 * reported as <code>LexerException</code>s.
+	 * 
+	 * @param source Source of the data which needs to be tokenized.
+	 * @throws NullPointerException If the source is null.
+	 */
+	public Lexer(Readable source) {
+		this(
+			source,
+			source instanceof CharBuffer
+				? Math.min(((CharBuffer) source).remaining(), WINDOW_SIZE)
+				: WINDOW_SIZE
+		);
+	}
+	
+	/**
+	 * Constructor specifying the source of the data and the size of the window
+	 * through which it is read. Text longer than the window is generated as
+	 * several consecutive text tokens.
+	 * 
+	 * @param source Source of the data which needs to be tokenized.
+	 * @param windowSize The window size (raised to the minimum window size).
+	 * @throws NullPointerException If the source is null.
+	 */
+	public Lexer(Readable source, int windowSize) {
+		if (source == null) {
+			throw new NullPointerException("Source must not be null.");
 		}
 		
-		data = text.toCharArray();
+		this.source = source;
+		data = new char[Math.max(windowSize, MIN_WINDOW_SIZE)];
+		window = CharBuffer.wrap(data);
 		state = LexerState.TEXT;
 	}
 	
+	/**
+	 * Returns the given text if it is not null.
+	 * 
+	 * @param text The given text.
+	 * @return The given text.
+	 * @throws NullPointerException If the given text is null.
+	 */
+	private static String requireText(String text) {
+		if (text == null) {
+			throw new NullPointerException("Text must not be null.");
+		}
+		return text;
+	}
+	
 	/**
 	 * Generates the next <code>Token</code> and returns it.
 	 * 
@@ -48,19 +151,16 @@ public class Lexer {
 	 * 			if this method was called after EOF has been already reached.
 	 */
 	public Token nextToken() {
-		if (currentIndex < data.length) {
-			if (state == LexerState.TEXT) {
-				tokenizeText();
-			} else {
-				tokenizeTag();
-			}
-		} else if (currentIndex == data.length) {
-			token = new Token(TokenType.EOF, null);
-			currentIndex ++;
-		} else {
+		if (endOfFile) {
 			throw new LexerException("There are no tokens after EOF.");
 		}
 		
+		if (state == LexerState.TEXT) {
+			tokenizeText();
+		} else {
+			tokenizeTag();
+		}
+		
 		return token;
 	}
 	
@@ -83,20 +183,75 @@ public class Lexer {
 		this.state = state;
 	}
 	
+	/**
+	 * Returns the character at the given offset from the current character,
+	 * reading more data from the source if needed.
+	 * 
+	 * @param offset The given offset (0 or 1).
+	 * @return The character, or -1 if the data ends before it.
+	 */
+	private int peek(int offset) {
+		while (currentIndex + offset >= limit && !endOfInput) {
+			if (!fill()) {
+				break;
+			}
+		}
+		
+		return currentIndex + offset < limit ? data[currentIndex + offset] : -1;
+	}
+	
+	/**
+	 * Compacts the window (keeping the text token which is being generated
+	 * and the unread characters), and reads more data into it.
+	 * 
+	 * @return <code>false</code> if the window is full, and
+	 * 			<code>true</code> otherwise.
+	 * @throws LexerException If the data cannot be read.
+	 */
+	private boolean fill() {
+		int retained = textStart < 0 ? 0 : textEnd - textStart;
+		int unread = limit - currentIndex;
+		
+		if (retained > 0) {
+			System.arraycopy(data, textStart, data, 0, retained);
+		}
+		System.arraycopy(data, currentIndex, data, retained, unread);
+		if (textStart >= 0) {
+			textStart = 0;
+			textEnd = retained;
+		}
+		currentIndex = retained;
+		limit = retained + unread;
+		
+		if (limit == data.length) {
+			return false;
+		}
+		
+		window.clear();
+		window.position(limit);
+		int read;
+		try {
+			read = source.read(window);
+		} catch (IOException ex) {
+			throw new LexerException("Cannot read the data: " + ex.getMessage(), ex);
+		}
+		
+		if (read < 0) {
+			endOfInput = true;
+		} else {
+			limit += read;
+		}
+		return true;
+	}
+	
 	/**
 	 * Skips all ignorable characters (as specified in
 	 * the <code>isIgnorable</code> method).
 	 */
 	private void skipIgnorable() {
-		while (currentIndex < data.length) {
-			char current = data[currentIndex];
-			
-			if (isIgnorable(current)) {
-				currentIndex ++;
-				continue;
-			} else {
-				break;
-			}
+		int current;
+		while ((current = peek(0)) >= 0 && isIgnorable((char) current)) {
+			currentIndex ++;
 		}
 	}
 	
@@ -154,6 +309,25 @@ public class Lexer {
 		);
 	}
 	
+	/**
+	 * Returns the escaped character of the escape sequence which starts
+	 * at the current character.
+	 * 
+	 * @return A valid escaped character.
+	 * @throws LexerException If the escape sequence is empty or invalid.
+	 */
+	private char readEscape() {
+		int escaped = peek(1);
+		
+		if (escaped < 0) {
+			throw new LexerException(
+				"Empty escape sequence not allowed."
+			);
+		}
+		
+		return generateValidEscape((char) escaped);
+	}
+	
 	/**
 	 * Returns true if the following data contains a sequence representing
 	 * a tag opening.
@@ -162,9 +336,7 @@ public class Lexer {
 	 * 			<code>false</code> otherwise.
 	 */
 	private boolean followsValidTagOpening() {
-		return data[currentIndex] == '{'
-				&& currentIndex + 1 < data.length
-				&& data[currentIndex + 1] == '$';
+		return peek(0) == '{' && peek(1) == '$';
 	}
 	
 	/**
@@ -175,9 +347,7 @@ public class Lexer {
 	 * 			<code>false</code> otherwise.
 	 */
 	private boolean followsValidTagClosure() {
-		return data[currentIndex] == '$'
-				&& currentIndex + 1 < data.length
-				&& data[currentIndex + 1] == '}';
+		return peek(0) == '$' && peek(1) == '}';
 	}
 	
 	/**
@@ -188,16 +358,19 @@ public class Lexer {
 	 * 			and <code>false</code> otherwise.
 	 */
 	private boolean followsNegativeNumber() {
-		return data[currentIndex] == '-'
-				&& currentIndex + 1 < data.length
-				&& Character.isDigit(data[currentIndex + 1]);
+		int next;
+		return peek(0) == '-'
+				&& (next = peek(1)) >= 0
+				&& Character.isDigit((char) next);
 	}
 	
 	/**
-	 * Generates either a tag opening token, or a text token.
+	 * Generates either a tag opening token, a text token, or the EOF token.
 	 */
 	private void tokenizeText() {
-		if (followsValidTagOpening()) {
+		if (peek(0) < 0) {
+			generateEOFToken();
+		} else if (followsValidTagOpening()) {
 			currentIndex += 2;
 			
 			token = new Token(TokenType.TAG_OPENED, null);
@@ -212,7 +385,12 @@ public class Lexer {
 	private void tokenizeTag() {
 		skipIgnorable();
 		
-		char current = data[currentIndex];
+		int next = peek(0);
+		if (next < 0) {
+			generateEOFToken();
+			return;
+		}
+		char current = (char) next;
 		
 		if (followsValidTagClosure()) {
 			currentIndex += 2;
@@ -249,43 +427,46 @@ public class Lexer {
 		}
 	}
 	
+	/**
+	 * Generates the EOF token.
+	 */
+	private void generateEOFToken() {
+		token = new Token(TokenType.EOF, null);
+		endOfFile = true;
+	}
+	
 	/**
 	 * Generates a basic text token (including specified escape characters).
+	 * The escape sequences are replaced in place, so the token is a slice of
+	 * the window. If the window fills up, the token ends, and the rest of
+	 * the text is returned as the next text token.
 	 */
 	private void generateTextToken() {
-		StringBuilder builder = new StringBuilder();
+		textStart = currentIndex;
+		textEnd = currentIndex;
 		
-		while (currentIndex < data.length) {
-			char current = data[currentIndex];
+		while (true) {
+			int next = peek(1);
+			if (next < 0 && !endOfInput) {
+				break; // The window is full.
+			}
+			int current = peek(0);
 			
-			if (followsValidTagOpening()) {
+			if (current < 0 || current == '{' && next == '$') {
 				break;
 			} else if (current == '\\') {
-				currentIndex ++;
-				
-				if (currentIndex < data.length) {
-					current = data[currentIndex];
-					
-					try {
-						builder.append(generateValidEscape(current));
-					} catch (LexerException ex) {
-						throw new LexerException(
-							ex.getMessage()
-						);
-					}
-				} else {
-					throw new LexerException(
-						"Empty escape sequence not allowed."
-					);
-				}
+				data[textEnd ++] = readEscape();
+				currentIndex += 2;
 			} else {
-				builder.append(current);
+				data[textEnd ++] = (char) current;
+				currentIndex ++;
 			}
-			
-			currentIndex ++;
 		}
 		
-		token = new Token(TokenType.TEXT, builder.toString());
+		token = new Token(
+			TokenType.TEXT, CharBuffer.wrap(data, textStart, textEnd - textStart)
+		);
+		textStart = -1;
 	}
 	
 	/**
@@ -295,19 +476,21 @@ public class Lexer {
 	 * @return A String representing a valid name.
 	 */
 	private String getValidName() {
-		StringBuilder builder = new StringBuilder();
+		builder.setLength(0);
 		
-		if (currentIndex < data.length &&
-				!Character.isLetter(data[currentIndex])) {
+		int first = peek(0);
+		if (first < 0 || !Character.isLetter((char) first)) {
 			throw new LexerException(
-				"Invalid character: " + data[currentIndex] + "."
+				"Invalid character: " + (first < 0 ? "EOF" : (char) first) + "."
 			);
 		} else {
-			builder.append(data[currentIndex ++]);
+			builder.append((char) first);
+			currentIndex ++;
 		}
 		
-		while (currentIndex < data.length) {
-			char current = data[currentIndex];
+		int next;
+		while ((next = peek(0)) >= 0) {
+			char current = (char) next;
 			
 			if (Character.isLetterOrDigit(current) || current == '_') {
 				builder.append(current);
@@ -328,16 +511,18 @@ public class Lexer {
 	 * @return A Number representing a valid Integer/Double.
 	 */
 	private Number getValidNumber() {
-		StringBuilder builder = new StringBuilder();
+		builder.setLength(0);
 		
-		if (data[currentIndex] == '-') {
+		if (peek(0) == '-') {
 			builder.append('-');
+			currentIndex ++;
 		}
 		
 		boolean isDouble = false;
 		
-		while (currentIndex < data.length) {
-			char current = data[currentIndex];
+		int next;
+		while ((next = peek(0)) >= 0) {
+			char current = (char) next;
 			
 			if (Character.isDigit(current)) {
 				builder.append(current);
@@ -374,38 +559,23 @@ public class Lexer {
 	 * @return A valid String.
 	 */
 	private String getValidString() {
-		StringBuilder builder = new StringBuilder();
+		builder.setLength(0);
 		
-		while (currentIndex < data.length) {
-			char current = data[currentIndex];
+		int next;
+		while ((next = peek(0)) >= 0) {
+			char current = (char) next;
 			
 			// String is valid only if it ends with quotes.
 			if (current == '\"') {
 				currentIndex ++;
 				return builder.toString();
 			} else if (current == '\\') {
-				currentIndex ++;
-				
-				if (currentIndex < data.length) {
-					current = data[currentIndex];
-					
-					try {
-						builder.append(generateValidEscape(current));
-					} catch (LexerException ex) {
-						throw new LexerException(
-							ex.getMessage()
-						);
-					}
-				} else {
-					throw new LexerException(
-						"Empty escape sequence not allowed."
-					);
-				}
+				builder.append(readEscape());
+				currentIndex += 2;
 			} else {
 				builder.append(current);
+				currentIndex ++;
 			}
-			
-			currentIndex ++;
 		}
 		
 		throw new LexerException("Invalid String. Expected \" at the end.");
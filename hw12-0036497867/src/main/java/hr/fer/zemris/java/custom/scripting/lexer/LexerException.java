@@ -29,4 +29,15 @@ public class LexerException extends RuntimeException {
 	public LexerException(String message) {
 		super(message);
 	}
+	
+	/**
+	 * Constructs a <code>LexerException</code> with the
+	 * specified detail message and cause.
+	 * 
+	 * @param message The detail message.
+	 * @param cause The cause.
+	 */
+	public LexerException(String message, Throwable cause) {
+		super(message, cause);
+	}
 }
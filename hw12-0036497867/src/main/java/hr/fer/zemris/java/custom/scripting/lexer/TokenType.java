@@ -12,6 +12,9 @@ public enum TokenType {
 	EOF,
 	/**
 	 * Basic text, it appears when lexer is in the <code>TEXT</code> state.
+	 * Its value is a <code>CharSequence</code> which is valid only until
+	 * the next token is generated, and a long text can be split into
+	 * several consecutive text tokens.
 	 */
 	TEXT,
 	/**
@@ -0,0 +1,451 @@
+package hr.fer.zemris.java.custom.scripting.parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import hr.fer.zemris.java.custom.scripting.elems.Element;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantDouble;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantInteger;
+import hr.fer.zemris.java.custom.scripting.elems.ElementFunction;
+import hr.fer.zemris.java.custom.scripting.elems.ElementOperator;
+import hr.fer.zemris.java.custom.scripting.elems.ElementString;
+import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
+import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
+import hr.fer.zemris.java.custom.scripting.nodes.Node;
+import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
+
+/**
+ * Compact binary format of the parsed <i>smart script</i> document trees,
+ * which can be loaded without lexing and parsing the script.<br>
+ * The format starts with a header (the magic number, the format version,
+ * and the size and the last modification time of the source script, so a
+ * stale precompiled script can be detected). The header is followed by the
+ * children of the document node, every node written as its tag followed by
+ * its content:
+ * <ul>
+ * <li>text node - the text</li>
+ * <li>echo node - the number of elements and the elements</li>
+ * <li>for-loop node - the variable, the start, end and (possibly missing) step
+ * expression, the number of children and the children</li>
+ * </ul>
+ * Every element is written as its tag followed by its value (the integer,
+ * the double or the string). Strings are written as their length in UTF-8
+ * bytes (in the variable-length format) followed by the bytes.
+ * 
+ * @author Mate Gasparini
+ */
+public class SmartScriptBinary {
+	
+	/** Magic number at the beginning of every precompiled script ("SMSB"). */
+	private static final int MAGIC = 0x534D5342;
+	
+	/** Version of the format. */
+	private static final byte VERSION = 1;
+	
+	/** Tag of the text node. */
+	private static final byte TEXT_NODE = 1;
+	
+	/** Tag of the echo node. */
+	private static final byte ECHO_NODE = 2;
+	
+	/** Tag of the for-loop node. */
+	private static final byte FOR_LOOP_NODE = 3;
+	
+	/** Tag of a missing element (the step expression of a for-loop). */
+	private static final byte NO_ELEMENT = 0;
+	
+	/** Tag of the variable element. */
+	private static final byte VARIABLE = 1;
+	
+	/** Tag of the integer constant element. */
+	private static final byte INTEGER = 2;
+	
+	/** Tag of the double constant element. */
+	private static final byte DOUBLE = 3;
+	
+	/** Tag of the string element. */
+	private static final byte STRING = 4;
+	
+	/** Tag of the function element. */
+	private static final byte FUNCTION = 5;
+	
+	/** Tag of the operator element. */
+	private static final byte OPERATOR = 6;
+	
+	/**
+	 * Default private constructor.
+	 */
+	private SmartScriptBinary() {
+	}
+	
+	/**
+	 * Serializes the given document tree parsed from the source script with
+	 * the given size and last modification time.
+	 * 
+	 * @param document The given document tree.
+	 * @param sourceSize The size (in bytes) of the source script.
+	 * @param sourceModified The last modification time (in ms since the epoch)
+	 * 			of the source script.
+	 * @return The serialized document tree.
+	 */
+	public static byte[] serialize(DocumentNode document, long sourceSize, long sourceModified) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeLong(sourceSize);
+			out.writeLong(sourceModified);
+			writeChildren(out, document);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex); // Never thrown by the byte array stream.
+		}
+		return bytes.toByteArray();
+	}
+	
+	/**
+	 * Deserializes the document tree from the given data, if it has been
+	 * serialized from the source script with the given size and last
+	 * modification time.
+	 * 
+	 * @param data The given data.
+	 * @param sourceSize The size (in bytes) of the source script.
+	 * @param sourceModified The last modification time (in ms since the epoch)
+	 * 			of the source script.
+	 * @return The document tree, or {@code null} if the data has been serialized
+	 * 			from another version of the source script.
+	 * @throws SmartScriptParserException If the data is not a valid serialized
+	 * 			document tree.
+	 */
+	public static DocumentNode deserialize(byte[] data, long sourceSize, long sourceModified) {
+		ByteBuffer in = ByteBuffer.wrap(data);
+		try {
+			if (in.getInt() != MAGIC || in.get() != VERSION) {
+				throw new SmartScriptParserException("Unsupported precompiled script format.");
+			}
+			if (in.getLong() != sourceSize || in.getLong() != sourceModified) {
+				return null;
+			}
+			
+			DocumentNode document = new DocumentNode();
+			readChildren(in, document);
+			if (in.hasRemaining()) {
+				throw new SmartScriptParserException("Unexpected data after the precompiled script.");
+			}
+			return document;
+		} catch (BufferUnderflowException | IllegalArgumentException ex) {
+			throw new SmartScriptParserException("Precompiled script is corrupted.", ex);
+		}
+	}
+	
+	/**
+	 * Returns {@code true} if the given trees are equal (their nodes are of the
+	 * same types, in the same order, and with the same texts and elements).
+	 * 
+	 * @param first The first tree.
+	 * @param second The second tree.
+	 * @return {@code true} if the trees are equal.
+	 */
+	public static boolean equalTrees(Node first, Node second) {
+		if (first.getClass() != second.getClass()
+				|| first.numberOfChildren() != second.numberOfChildren()) {
+			return false;
+		}
+		
+		if (first instanceof TextNode) {
+			if (!((TextNode) first).getText().equals(((TextNode) second).getText())) {
+				return false;
+			}
+		} else if (first instanceof EchoNode) {
+			Element[] firstElements = ((EchoNode) first).getElements();
+			Element[] secondElements = ((EchoNode) second).getElements();
+			if (firstElements.length != secondElements.length) {
+				return false;
+			}
+			for (int i = 0; i < firstElements.length; i ++) {
+				if (!equalElements(firstElements[i], secondElements[i])) {
+					return false;
+				}
+			}
+		} else if (first instanceof ForLoopNode) {
+			ForLoopNode firstLoop = (ForLoopNode) first;
+			ForLoopNode secondLoop = (ForLoopNode) second;
+			if (!equalElements(firstLoop.getVariable(), secondLoop.getVariable())
+					|| !equalElements(firstLoop.getStartExpression(), secondLoop.getStartExpression())
+					|| !equalElements(firstLoop.getEndExpression(), secondLoop.getEndExpression())
+					|| !equalElements(firstLoop.getStepExpression(), secondLoop.getStepExpression())) {
+				return false;
+			}
+		}
+		
+		for (int i = 0, n = first.numberOfChildren(); i < n; i ++) {
+			if (!equalTrees(first.getChild(i), second.getChild(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns {@code true} if the given (possibly {@code null}) elements are
+	 * of the same type and have the same value.
+	 * 
+	 * @param first The first element.
+	 * @param second The second element.
+	 * @return {@code true} if the elements are equal.
+	 */
+	private static boolean equalElements(Element first, Element second) {
+		if (first == null || second == null) {
+			return first == second;
+		}
+		return first.getClass() == second.getClass() && first.asText().equals(second.asText());
+	}
+	
+	/**
+	 * Writes the number of children of the given node and the children.
+	 * 
+	 * @param out The output stream.
+	 * @param node The given node.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private static void writeChildren(DataOutputStream out, Node node) throws IOException {
+		int count = node.numberOfChildren();
+		writeLength(out, count);
+		for (int i = 0; i < count; i ++) {
+			writeNode(out, node.getChild(i));
+		}
+	}
+	
+	/**
+	 * Writes the given node.
+	 * 
+	 * @param out The output stream.
+	 * @param node The given node.
+	 * @throws IOException If an I/O error occurs.
+	 * @throws IllegalArgumentException If the node is of an unknown type.
+	 */
+	private static void writeNode(DataOutputStream out, Node node) throws IOException {
+		if (node instanceof TextNode) {
+			out.writeByte(TEXT_NODE);
+			writeString(out, ((TextNode) node).getText());
+		} else if (node instanceof EchoNode) {
+			Element[] elements = ((EchoNode) node).getElements();
+			out.writeByte(ECHO_NODE);
+			writeLength(out, elements.length);
+			for (Element element : elements) {
+				writeElement(out, element);
+			}
+		} else if (node instanceof ForLoopNode) {
+			ForLoopNode loop = (ForLoopNode) node;
+			out.writeByte(FOR_LOOP_NODE);
+			writeElement(out, loop.getVariable());
+			writeElement(out, loop.getStartExpression());
+			writeElement(out, loop.getEndExpression());
+			writeElement(out, loop.getStepExpression());
+			writeChildren(out, loop);
+		} else {
+			throw new IllegalArgumentException("Unknown node: " + node.getClass().getName());
+		}
+	}
+	
+	/**
+	 * Writes the given (possibly {@code null}) element.
+	 * 
+	 * @param out The output stream.
+	 * @param element The given element.
+	 * @throws IOException If an I/O error occurs.
+	 * @throws IllegalArgumentException If the element is of an unknown type.
+	 */
+	private static void writeElement(DataOutputStream out, Element element) throws IOException {
+		if (element == null) {
+			out.writeByte(NO_ELEMENT);
+		} else if (element instanceof ElementVariable) {
+			out.writeByte(VARIABLE);
+			writeString(out, ((ElementVariable) element).getName());
+		} else if (element instanceof ElementConstantInteger) {
+			out.writeByte(INTEGER);
+			out.writeInt(((ElementConstantInteger) element).getValue());
+		} else if (element instanceof ElementConstantDouble) {
+			out.writeByte(DOUBLE);
+			out.writeDouble(((ElementConstantDouble) element).getValue());
+		} else if (element instanceof ElementString) {
+			out.writeByte(STRING);
+			writeString(out, ((ElementString) element).getValue());
+		} else if (element instanceof ElementFunction) {
+			out.writeByte(FUNCTION);
+			writeString(out, ((ElementFunction) element).getName());
+		} else if (element instanceof ElementOperator) {
+			out.writeByte(OPERATOR);
+			writeString(out, ((ElementOperator) element).getSymbol());
+		} else {
+			throw new IllegalArgumentException("Unknown element: " + element.getClass().getName());
+		}
+	}
+	
+	/**
+	 * Writes the given string (its length in UTF-8 bytes and the bytes).
+	 * 
+	 * @param out The output stream.
+	 * @param value The given string.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeLength(out, bytes.length);
+		out.write(bytes);
+	}
+	
+	/**
+	 * Writes the given non-negative number in the variable-length format
+	 * (7 bits per byte, the highest bit marking that more bytes follow).
+	 * 
+	 * @param out The output stream.
+	 * @param value The given number.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private static void writeLength(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+	
+	/**
+	 * Reads the children of the given node.
+	 * 
+	 * @param in The input buffer.
+	 * @param node The given node.
+	 */
+	private static void readChildren(ByteBuffer in, Node node) {
+		for (int count = readLength(in); count > 0; count --) {
+			node.addChildNode(readNode(in));
+		}
+	}
+	
+	/**
+	 * Reads a node.
+	 * 
+	 * @param in The input buffer.
+	 * @return The read node.
+	 * @throws SmartScriptParserException If the node is invalid.
+	 */
+	private static Node readNode(ByteBuffer in) {
+		byte tag = in.get();
+		switch (tag) {
+			case TEXT_NODE:
+				return new TextNode(readString(in));
+			case ECHO_NODE:
+				int count = readLength(in);
+				if (count > in.remaining()) {
+					throw new BufferUnderflowException();
+				}
+				Element[] elements = new Element[count];
+				for (int i = 0; i < elements.length; i ++) {
+					elements[i] = readRequiredElement(in);
+				}
+				return new EchoNode(elements);
+			case FOR_LOOP_NODE:
+				Element variable = readElement(in);
+				if (!(variable instanceof ElementVariable)) {
+					throw new SmartScriptParserException("Invalid for-loop variable.");
+				}
+				ForLoopNode loop = new ForLoopNode(
+					(ElementVariable) variable, readRequiredElement(in), readRequiredElement(in), readElement(in)
+				);
+				readChildren(in, loop);
+				return loop;
+			default:
+				throw new SmartScriptParserException("Invalid node tag: " + tag);
+		}
+	}
+	
+	/**
+	 * Reads an element which must not be {@code null}, since the parser never
+	 * produces such echo elements or for-loop start and end expressions.
+	 * 
+	 * @param in The input buffer.
+	 * @return The read element.
+	 * @throws SmartScriptParserException If the element is invalid or missing.
+	 */
+	private static Element readRequiredElement(ByteBuffer in) {
+		Element element = readElement(in);
+		if (element == null) {
+			throw new SmartScriptParserException("Missing element in the precompiled script.");
+		}
+		return element;
+	}
+	
+	/**
+	 * Reads a (possibly {@code null}) element.
+	 * 
+	 * @param in The input buffer.
+	 * @return The read element (or {@code null}).
+	 * @throws SmartScriptParserException If the element is invalid.
+	 */
+	private static Element readElement(ByteBuffer in) {
+		byte tag = in.get();
+		switch (tag) {
+			case NO_ELEMENT:
+				return null;
+			case VARIABLE:
+				return new ElementVariable(readString(in));
+			case INTEGER:
+				return new ElementConstantInteger(in.getInt());
+			case DOUBLE:
+				return new ElementConstantDouble(in.getDouble());
+			case STRING:
+				return new ElementString(readString(in));
+			case FUNCTION:
+				return new ElementFunction(readString(in));
+			case OPERATOR:
+				return new ElementOperator(readString(in));
+			default:
+				throw new SmartScriptParserException("Invalid element tag: " + tag);
+		}
+	}
+	
+	/**
+	 * Reads a string (its length in UTF-8 bytes and the bytes).
+	 * 
+	 * @param in The input buffer.
+	 * @return The read string.
+	 */
+	private static String readString(ByteBuffer in) {
+		int length = readLength(in);
+		if (length > in.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		String value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+		in.position(in.position() + length);
+		return value;
+	}
+	
+	/**
+	 * Reads a non-negative number written in the variable-length format.
+	 * 
+	 * @param in The input buffer.
+	 * @return The read number.
+	 * @throws SmartScriptParserException If the number is too large.
+	 */
+	private static int readLength(ByteBuffer in) {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			byte b = in.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				if (value < 0) {
+					break;
+				}
+				return value;
+			}
+		}
+		throw new SmartScriptParserException("Invalid length in the precompiled script.");
+	}
+}
@@ -17,12 +17,18 @@ import hr.fer.zemris.java.custom.scripting.lexer.TokenType;
 import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
 import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
 import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
+import hr.fer.zemris.java.custom.scripting.nodes.INodeVisitor;
 import hr.fer.zemris.java.custom.scripting.nodes.Node;
 import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
 
 /**
  * Class that represents a parser which, parsing the lexer's tokens,
- * constructs a tree-like structure for the given input data.
+ * constructs a tree-like structure for the given input data.<br>
+ * The data can also be parsed in the streaming mode, in which every
+ * top-level node is passed to the given visitor as soon as it is parsed
+ * (instead of being added to the document), so the data can be executed
+ * while it is being read, without holding either the whole data or the
+ * whole tree (only the for-loop nodes are held until their END tags).
  * 
  * @author Mate Gasparini
  */
@@ -41,6 +47,11 @@ public class SmartScriptParser {
 	 * A stack used for easier DocumentNode tree construction.
 	 */
 	private ObjectStack stack;
+	/**
+	 * Visitor which accepts the top-level nodes in the streaming mode,
+	 * or null if the tree is constructed.
+	 */
+	private INodeVisitor visitor;
 	
 	/**
 	 * Constructor specifying the input data which needs to be parsed.
@@ -49,7 +60,60 @@ public class SmartScriptParser {
 	 * @throws SmartScriptParserException If a problem occurred during parsing.
 	 */
 	public SmartScriptParser(String data) {
-		lexer = new Lexer(data);
+		this(new Lexer(data), null);
+	}
+	
+	/**
+	 * Constructor specifying the source (e.g. a <code>Reader</code>) from
+	 * which the input data which needs to be parsed is read incrementally.
+	 * 
+	 * @param source Source of the data which needs to be parsed.
+	 * @throws SmartScriptParserException If a problem occurred during parsing,
+	 * 			or if the data could not be read.
+	 */
+	public SmartScriptParser(Readable source) {
+		this(new Lexer(source), null);
+	}
+	
+	/**
+	 * Constructor specifying the lexer which generates the tokens of the
+	 * input data which needs to be parsed.
+	 * 
+	 * @param lexer Lexer which generates tokens for this parser.
+	 * @throws SmartScriptParserException If a problem occurred during parsing,
+	 * 			or if the data could not be read.
+	 */
+	public SmartScriptParser(Lexer lexer) {
+		this(lexer, null);
+	}
+	
+	/**
+	 * Constructor which parses the data read from the given source in the
+	 * streaming mode, passing every top-level node to the given visitor as
+	 * soon as it is parsed. If a problem occurs, the nodes preceding it have
+	 * already been visited.
+	 * 
+	 * @param source Source of the data which needs to be parsed.
+	 * @param visitor Visitor which accepts the top-level nodes.
+	 * @throws SmartScriptParserException If a problem occurred during parsing,
+	 * 			or if the data could not be read.
+	 * @throws NullPointerException If the visitor is null.
+	 */
+	public SmartScriptParser(Readable source, INodeVisitor visitor) {
+		this(new Lexer(source), requireVisitor(visitor));
+	}
+	
+	/**
+	 * Constructor specifying the lexer and the visitor of the top-level nodes.
+	 * 
+	 * @param lexer Lexer which generates tokens for this parser.
+	 * @param visitor Visitor which accepts the top-level nodes, or null
+	 * 			if the tree is constructed.
+	 * @throws SmartScriptParserException If a problem occurred during parsing.
+	 */
+	private SmartScriptParser(Lexer lexer, INodeVisitor visitor) {
+		this.lexer = lexer;
+		this.visitor = visitor;
 		
 		try {
 			parseData();
@@ -60,10 +124,26 @@ public class SmartScriptParser {
 		}
 	}
 	
+	/**
+	 * Returns the given visitor if it is not null.
+	 * 
+	 * @param visitor The given visitor.
+	 * @return The given visitor.
+	 * @throws NullPointerException If the given visitor is null.
+	 */
+	private static INodeVisitor requireVisitor(INodeVisitor visitor) {
+		if (visitor == null) {
+			throw new NullPointerException("Visitor must not be null.");
+		}
+		return visitor;
+	}
+	
 	/**
 	 * If the data was parsed without problems, this method returns
 	 * the resulting <code>DocumentNode</code> (from which a tree
-	 * can be generated). Otherwise, it returns null.
+	 * can be generated). Otherwise, it returns null.<br>
+	 * In the streaming mode, the document does not contain the nodes
+	 * which were passed to the visitor.
 	 * 
 	 * @return The resulting document.
 	 */
@@ -79,14 +159,16 @@ public class SmartScriptParser {
 		stack = new ObjectStack();
 		stack.push(documentNode);
 		
-		while (lexer.nextToken().getType() != TokenType.EOF) {
-			Token token = lexer.getToken();
-			
+		Token token = lexer.nextToken();
+		while (token.getType() != TokenType.EOF) {
 			if (token.getType() == TokenType.TEXT) {
-				parseText();
-			} else if (token.getType() == TokenType.TAG_OPENED) {
-				lexer.setState(LexerState.TAG);
-				parseTag();
+				token = parseText();
+			} else {
+				if (token.getType() == TokenType.TAG_OPENED) {
+					lexer.setState(LexerState.TAG);
+					parseTag();
+				}
+				token = lexer.nextToken();
 			}
 		}
 		
@@ -98,15 +180,53 @@ public class SmartScriptParser {
 	}
 	
 	/**
-	 * Constructs a new <code>TextNode</code> from the text token,
-	 * and adds it as a child to the node at the top of the stack.
+	 * Constructs a new <code>TextNode</code> from the text token (joined
+	 * with the following text tokens into which the lexer has split the
+	 * text), and adds it as a child to the node at the top of the stack.
+	 * In the streaming mode, a top-level text is passed to the visitor
+	 * token by token, so a long text is never held as a whole.
+	 * 
+	 * @return The first token following the text.
 	 */
-	private void parseText() {
-		TextNode textNode = new TextNode(
-			(String) lexer.getToken().getValue()
-		);
+	private Token parseText() {
+		String text = lexer.getToken().getValue().toString();
+		Token token = lexer.nextToken();
 		
-		((Node) stack.peek()).addChildNode(textNode);
+		if (visitor != null && stack.peek() == documentNode) {
+			addNode(new TextNode(text));
+			return token;
+		}
+		
+		if (token.getType() == TokenType.TEXT) {
+			StringBuilder builder = new StringBuilder(text);
+			
+			do {
+				builder.append((CharSequence) token.getValue());
+				token = lexer.nextToken();
+			} while (token.getType() == TokenType.TEXT);
+			
+			text = builder.toString();
+		}
+		
+		addNode(new TextNode(text));
+		return token;
+	}
+	
+	/**
+	 * Adds the given node as a child to the node at the top of the stack,
+	 * or passes it to the visitor if it is a top-level node in the
+	 * streaming mode.
+	 * 
+	 * @param node The given node.
+	 */
+	private void addNode(Node node) {
+		Node parent = (Node) stack.peek();
+		
+		if (visitor != null && parent == documentNode) {
+			node.accept(visitor);
+		} else {
+			parent.addChildNode(node);
+		}
 	}
 	
 	/**
@@ -169,7 +289,7 @@ public class SmartScriptParser {
 		
 		lexer.setState(LexerState.TEXT);
 		
-		((Node) stack.peek()).addChildNode(new EchoNode(
+		addNode(new EchoNode(
 				(Element[]) elements.toArray())
 		);
 	}
@@ -219,7 +339,9 @@ public class SmartScriptParser {
 			variable, startExpression, endExpression, stepExpression
 		);
 		
-		((Node) stack.peek()).addChildNode(forLoopNode);
+		if (visitor == null || stack.peek() != documentNode) {
+			((Node) stack.peek()).addChildNode(forLoopNode);
+		}
 		stack.push(forLoopNode);
 	}
 	
@@ -245,13 +367,17 @@ public class SmartScriptParser {
 		lexer.setState(LexerState.TEXT);
 		
 		// Should not throw EmptyStackException (because of DocumentNode).
-		stack.pop();
+		Node closed = (Node) stack.pop();
 		
 		if (stack.size() == 0) {
 			throw new SmartScriptParserException(
 				"There are more END tags than opened non-empty tags."
 			);
 		}
+		
+		if (visitor != null && stack.peek() == documentNode) {
+			closed.accept(visitor);
+		}
 	}
 	
 	/**
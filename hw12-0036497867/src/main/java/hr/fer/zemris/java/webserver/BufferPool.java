@@ -0,0 +1,58 @@
+package hr.fer.zemris.java.webserver;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Bounded pool of equally sized byte arrays which can be shared by all threads.<br>
+ * If the pool is empty, a new array is allocated, and if the pool is full,
+ * the released array is discarded, so the pool never blocks.
+ * 
+ * @author Mate Gasparini
+ */
+public class BufferPool {
+	
+	/** Length of every array of this pool. */
+	private final int bufferLength;
+	
+	/** Idle arrays. */
+	private final Queue<byte[]> pool;
+	
+	/**
+	 * Constructor specifying the length of the arrays and the pool size.
+	 * 
+	 * @param bufferLength The length of every array.
+	 * @param poolSize The maximum number of idle arrays.
+	 * @throws IllegalArgumentException If the length or the pool size is not positive.
+	 */
+	public BufferPool(int bufferLength, int poolSize) {
+		if (bufferLength < 1 || poolSize < 1) {
+			throw new IllegalArgumentException("Buffer length and pool size must be positive.");
+		}
+		this.bufferLength = bufferLength;
+		this.pool = new ArrayBlockingQueue<>(poolSize);
+	}
+	
+	/**
+	 * Returns an array from the pool, or a newly allocated array if the pool is empty.
+	 * The contents of the returned array are undefined.
+	 * 
+	 * @return The array of length {@code bufferLength}.
+	 */
+	public byte[] acquire() {
+		byte[] buffer = pool.poll();
+		return buffer != null ? buffer : new byte[bufferLength];
+	}
+	
+	/**
+	 * Returns the given array to the pool.<br>
+	 * The array must not be used by the caller afterwards.
+	 * 
+	 * @param buffer The given array.
+	 */
+	public void release(byte[] buffer) {
+		if (buffer.length == bufferLength) {
+			pool.offer(buffer);
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package hr.fer.zemris.java.webserver;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Single satisfiable byte range of a resource, requested using
+ * the HTTP {@code Range} header.<br>
+ * Both the first and the last byte position are inclusive.
+ * 
+ * @author Mate Gasparini
+ */
+public class ByteRange {
+	
+	/** Unit prefix of every supported {@code Range} header value. */
+	private static final String BYTES_UNIT = "bytes=";
+	
+	/** Maximum number of ranges accepted in a single request. */
+	private static final int MAX_RANGES = 16;
+	
+	/** Position of the first byte of the range. */
+	private final long first;
+	
+	/** Position of the last byte of the range. */
+	private final long last;
+	
+	/**
+	 * Constructor specifying the first and the last byte position.
+	 * 
+	 * @param first The position of the first byte.
+	 * @param last The position of the last byte.
+	 */
+	public ByteRange(long first, long last) {
+		this.first = first;
+		this.last = last;
+	}
+	
+	/**
+	 * Parses the given {@code Range} header value for a resource of the given size.<br>
+	 * If the header is syntactically invalid (or not a byte range header),
+	 * {@code null} is returned, meaning that the header should be ignored.<br>
+	 * If none of the ranges can be satisfied, an empty {@code List} is returned.<br>
+	 * Overlapping and adjacent ranges are coalesced, so the returned ranges are
+	 * disjoint and ordered by their positions.
+	 * 
+	 * @param headerValue The given header value.
+	 * @param size The size of the resource (in bytes).
+	 * @return The satisfiable ranges (or {@code null}).
+	 */
+	public static List<ByteRange> parse(String headerValue, long size) {
+		if (!headerValue.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length())) {
+			return null;
+		}
+		
+		String[] specs = headerValue.substring(BYTES_UNIT.length()).split(",");
+		if (specs.length > MAX_RANGES) {
+			return null;
+		}
+		
+		List<ByteRange> ranges = new ArrayList<>();
+		for (String spec : specs) {
+			spec = spec.trim();
+			int dash = spec.indexOf('-');
+			if (dash < 0) {
+				return null;
+			}
+			
+			try {
+				if (dash == 0) {
+					long suffixLength = parsePosition(spec.substring(1));
+					if (suffixLength > 0 && size > 0) {
+						ranges.add(new ByteRange(Math.max(0, size - suffixLength), size - 1));
+					}
+					continue;
+				}
+				
+				long first = parsePosition(spec.substring(0, dash));
+				long last = dash == spec.length() - 1 ?
+						Long.MAX_VALUE : parsePosition(spec.substring(dash + 1));
+				if (last < first) {
+					return null;
+				}
+				if (first < size) {
+					ranges.add(new ByteRange(first, Math.min(last, size - 1)));
+				}
+			} catch (NumberFormatException ex) {
+				return null;
+			}
+		}
+		return coalesce(ranges);
+	}
+	
+	/**
+	 * Parses the given byte position, which must consist of decimal digits only
+	 * (unlike {@link Long#parseLong(String)}, which also accepts a sign).
+	 * 
+	 * @param value The given byte position.
+	 * @return The parsed byte position.
+	 * @throws NumberFormatException If the position is invalid.
+	 */
+	private static long parsePosition(String value) {
+		for (int i = 0, length = value.length(); i < length; i ++) {
+			char c = value.charAt(i);
+			if (c < '0' || c > '9') {
+				throw new NumberFormatException("Invalid byte position: " + value);
+			}
+		}
+		return Long.parseLong(value);
+	}
+	
+	/**
+	 * Coalesces the overlapping and adjacent ranges of the given list, so a
+	 * client cannot request the same bytes multiple times.
+	 * 
+	 * @param ranges The given ranges.
+	 * @return The disjoint ranges ordered by their positions.
+	 */
+	private static List<ByteRange> coalesce(List<ByteRange> ranges) {
+		if (ranges.size() < 2) {
+			return ranges;
+		}
+		
+		ranges.sort(Comparator.comparingLong(ByteRange::getFirst));
+		List<ByteRange> coalesced = new ArrayList<>();
+		ByteRange current = ranges.get(0);
+		for (int i = 1, n = ranges.size(); i < n; i ++) {
+			ByteRange next = ranges.get(i);
+			if (next.first <= current.last + 1) {
+				current = new ByteRange(current.first, Math.max(current.last, next.last));
+			} else {
+				coalesced.add(current);
+				current = next;
+			}
+		}
+		coalesced.add(current);
+		return coalesced;
+	}
+	
+	/**
+	 * Returns the position of the first byte of the range.
+	 * 
+	 * @return The position of the first byte.
+	 */
+	public long getFirst() {
+		return first;
+	}
+	
+	/**
+	 * Returns the position of the last byte of the range.
+	 * 
+	 * @return The position of the last byte.
+	 */
+	public long getLast() {
+		return last;
+	}
+	
+	/**
+	 * Returns the number of bytes in the range.
+	 * 
+	 * @return The length of the range.
+	 */
+	public long length() {
+		return last - first + 1;
+	}
+	
+	/**
+	 * Returns the {@code Content-Range} header value of this range
+	 * for a resource of the given size.
+	 * 
+	 * @param size The size of the resource (in bytes).
+	 * @return The {@code Content-Range} header value.
+	 */
+	public String toContentRange(long size) {
+		return "bytes " + first + "-" + last + "/" + size;
+	}
+}
@@ -0,0 +1,135 @@
+package hr.fer.zemris.java.webserver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Policy of caching the responses of a single route (a worker or a smart script)
+ * in the {@link ResponseCache}.<br>
+ * It defines how long a cached response is valid, and which request parameters
+ * and persistent parameters (together with the URL path) select the response.
+ * 
+ * @author Mate Gasparini
+ */
+public class CachePolicy {
+	
+	/** Duration (in ms) for which a cached response is valid. */
+	private final long ttl;
+	
+	/** Names of the request parameters the response depends on. */
+	private final String[] parameters;
+	
+	/** Names of the persistent parameters the response depends on. */
+	private final String[] persistentParameters;
+	
+	/**
+	 * Constructor specifying the time to live and the parameters.
+	 * 
+	 * @param ttl The duration (in ms) for which a cached response is valid.
+	 * @param parameters The names of the request parameters.
+	 * @param persistentParameters The names of the persistent parameters.
+	 * @throws IllegalArgumentException If the time to live is not positive.
+	 */
+	public CachePolicy(long ttl, String[] parameters, String[] persistentParameters) {
+		if (ttl < 1) {
+			throw new IllegalArgumentException("Time to live must be positive.");
+		}
+		this.ttl = ttl;
+		this.parameters = parameters;
+		this.persistentParameters = persistentParameters;
+	}
+	
+	/**
+	 * Returns the policy declared by the {@link Cacheable} annotation
+	 * of the given worker class.
+	 * 
+	 * @param workerClass The given worker class.
+	 * @return The declared policy, or {@code null} if the class is not annotated.
+	 */
+	public static CachePolicy of(Class<?> workerClass) {
+		Cacheable annotation = workerClass.getAnnotation(Cacheable.class);
+		if (annotation == null) {
+			return null;
+		}
+		return new CachePolicy(
+			1000L * annotation.ttl(), annotation.parameters(), annotation.persistentParameters()
+		);
+	}
+	
+	/**
+	 * Returns the policy of the given URL path defined in the given properties.<br>
+	 * The time to live (in seconds) is the value of the path itself, while the
+	 * comma-separated names of the parameters and the persistent parameters are
+	 * the values of the path followed by {@code .parameters} and
+	 * {@code .persistentParameters}.
+	 * 
+	 * @param properties The given properties.
+	 * @param urlPath The given URL path (starting with a slash).
+	 * @return The defined policy, or {@code null} if none is defined.
+	 * @throws IllegalArgumentException If the policy is invalid.
+	 */
+	public static CachePolicy of(Properties properties, String urlPath) {
+		String ttl = properties.getProperty(urlPath);
+		if (ttl == null) {
+			return null;
+		}
+		try {
+			return new CachePolicy(
+				1000L * Integer.parseInt(ttl.trim()),
+				split(properties.getProperty(urlPath + ".parameters")),
+				split(properties.getProperty(urlPath + ".persistentParameters"))
+			);
+		} catch (NumberFormatException ex) {
+			throw new IllegalArgumentException("Invalid cache time to live of " + urlPath + ".");
+		}
+	}
+	
+	/**
+	 * Returns the duration (in ms) for which a cached response is valid.
+	 * 
+	 * @return The time to live (in ms).
+	 */
+	public long getTtl() {
+		return ttl;
+	}
+	
+	/**
+	 * Returns the key of the cached response to the request with the given
+	 * URL path and context.<br>
+	 * Keys are compared by their elements, so values containing any characters
+	 * (and missing values) cannot make two different requests share a key.
+	 * 
+	 * @param urlPath The given URL path.
+	 * @param context The context of the request.
+	 * @return The key of the response.
+	 */
+	public List<String> key(String urlPath, RequestContext context) {
+		List<String> key = new ArrayList<>(1 + parameters.length + persistentParameters.length);
+		key.add(urlPath);
+		for (String name : parameters) {
+			key.add(context.getParameter(name));
+		}
+		for (String name : persistentParameters) {
+			key.add(context.getPersistentParameter(name));
+		}
+		return key;
+	}
+	
+	/**
+	 * Splits the given comma-separated names.
+	 * 
+	 * @param names The given names (or {@code null}).
+	 * @return The array of the trimmed names (empty if none are given).
+	 */
+	private static String[] split(String names) {
+		if (names == null || names.trim().isEmpty()) {
+			return new String[0];
+		}
+		String[] parts = names.split(",");
+		for (int i = 0; i < parts.length; i ++) {
+			parts[i] = parts[i].trim();
+		}
+		return parts;
+	}
+}
@@ -0,0 +1,44 @@
+package hr.fer.zemris.java.webserver;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation which declares that the responses of an {@link IWebWorker}
+ * can be cached by the {@link SmartHttpServer}'s {@link ResponseCache}.<br>
+ * A worker may be annotated only if its response depends on nothing but the
+ * URL path and the declared parameters, and if it does not change any state
+ * (e.g. set cookies or persistent parameters), because cached responses are
+ * sent without calling the worker.
+ * 
+ * @author Mate Gasparini
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Cacheable {
+	
+	/**
+	 * Returns the duration (in seconds) for which a cached response is valid.
+	 * 
+	 * @return The time to live (in seconds).
+	 */
+	int ttl();
+	
+	/**
+	 * Returns the names of the request parameters the response depends on.
+	 * 
+	 * @return The names of the parameters.
+	 */
+	String[] parameters() default {};
+	
+	/**
+	 * Returns the names of the persistent (session) parameters the response depends on.
+	 * 
+	 * @return The names of the persistent parameters.
+	 */
+	String[] persistentParameters() default {};
+}
@@ -0,0 +1,200 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link OutputStream} which writes to a (possibly non-blocking) {@link SocketChannel}.<br>
+ * When the socket's send buffer is full, the calling thread waits for the channel
+ * to become writable using its own temporary {@link Selector}, so the channel
+ * can stay registered with the server's main selector in non-blocking mode.
+ * 
+ * @author Mate Gasparini
+ */
+public class ChannelOutputStream extends OutputStream {
+	
+	/** Maximum duration (in ms) of waiting for the channel to become writable. */
+	private static final long WRITE_TIMEOUT = 30_000;
+	
+	/**
+	 * Idle selectors used only for waiting on full send buffers. They are shared
+	 * instead of being per-thread, so short-lived (virtual) threads do not
+	 * leave open selectors behind.
+	 */
+	private static final Queue<Selector> WRITE_SELECTORS = new ConcurrentLinkedQueue<>();
+	
+	/** Underlying socket channel. */
+	private SocketChannel channel;
+	
+	/** Counter of the written bytes (or {@code null} if the bytes are not counted). */
+	private LongAdder bytesWritten;
+	
+	/** Number of bytes written to this stream. */
+	private long totalWritten;
+	
+	/**
+	 * Constructor specifying the underlying socket channel.
+	 * 
+	 * @param channel The specified socket channel.
+	 */
+	public ChannelOutputStream(SocketChannel channel) {
+		this(channel, null);
+	}
+	
+	/**
+	 * Constructor specifying the underlying socket channel and the counter
+	 * which is increased by the number of every written byte.
+	 * 
+	 * @param channel The specified socket channel.
+	 * @param bytesWritten The counter of the written bytes (or {@code null}).
+	 */
+	public ChannelOutputStream(SocketChannel channel, LongAdder bytesWritten) {
+		this.channel = channel;
+		this.bytesWritten = bytesWritten;
+	}
+	
+	/**
+	 * Returns the underlying socket channel.
+	 * 
+	 * @return The underlying socket channel.
+	 */
+	public SocketChannel getChannel() {
+		return channel;
+	}
+	
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] {(byte) b}, 0, 1);
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		writeFully(ByteBuffer.wrap(b, off, len));
+	}
+	
+	/**
+	 * Writes all remaining bytes of the given buffer to the underlying channel.
+	 * 
+	 * @param buffer The given buffer.
+	 * @throws IOException If an I/O error occurs, or if the client does not
+	 * 			accept any data for longer than the write timeout.
+	 */
+	public void writeFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			int written = channel.write(buffer);
+			if (written == 0) {
+				awaitWritable();
+			} else {
+				count(written);
+			}
+		}
+	}
+	
+	/**
+	 * Writes all remaining bytes of the given buffers (in the given order) to the
+	 * underlying channel, using as few system calls as possible (gathering write).
+	 * 
+	 * @param buffers The given buffers.
+	 * @throws IOException If an I/O error occurs, or if the client does not
+	 * 			accept any data for longer than the write timeout.
+	 */
+	public void writeFully(ByteBuffer... buffers) throws IOException {
+		for (int first = 0; first < buffers.length; ) {
+			if (!buffers[first].hasRemaining()) {
+				first ++;
+			} else {
+				long written = channel.write(buffers, first, buffers.length - first);
+				if (written == 0) {
+					awaitWritable();
+				} else {
+					count(written);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Transfers {@code count} bytes of the given file starting at the given position
+	 * directly to the underlying channel, without copying them through the heap
+	 * (if supported by the operating system).
+	 * 
+	 * @param file The given file.
+	 * @param position The position of the first transferred byte.
+	 * @param count The number of bytes to transfer.
+	 * @throws IOException If an I/O error occurs, if the file is shorter than
+	 * 			expected, or if the client does not accept any data for longer
+	 * 			than the write timeout.
+	 */
+	public void transferFrom(FileChannel file, long position, long count) throws IOException {
+		while (count > 0) {
+			long transferred = file.transferTo(position, count, channel);
+			if (transferred > 0) {
+				count(transferred);
+				position += transferred;
+				count -= transferred;
+			} else if (position >= file.size()) {
+				throw new EOFException("File was truncated during the transfer.");
+			} else {
+				awaitWritable();
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of bytes written to this stream (by any of its methods).
+	 * 
+	 * @return The number of written bytes.
+	 */
+	public long getTotalWritten() {
+		return totalWritten;
+	}
+	
+	/**
+	 * Adds the given number of written bytes to this stream's total and
+	 * to the counter (if there is one).
+	 * 
+	 * @param written The given number of written bytes.
+	 */
+	private void count(long written) {
+		totalWritten += written;
+		if (bytesWritten != null) {
+			bytesWritten.add(written);
+		}
+	}
+	
+	/**
+	 * Blocks the calling thread until the underlying channel becomes writable.
+	 * 
+	 * @throws IOException If an I/O error occurs, or if the write timeout expires.
+	 */
+	private void awaitWritable() throws IOException {
+		Selector selector = WRITE_SELECTORS.poll();
+		if (selector == null) {
+			selector = Selector.open();
+		}
+		
+		try {
+			SelectionKey key = channel.register(selector, SelectionKey.OP_WRITE);
+			try {
+				if (selector.select(WRITE_TIMEOUT) == 0) {
+					throw new SocketTimeoutException("Client stopped reading the response.");
+				}
+			} finally {
+				key.cancel();
+				selector.selectNow(); // Deregisters the cancelled key.
+			}
+		} finally {
+			WRITE_SELECTORS.offer(selector);
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package hr.fer.zemris.java.webserver;
+
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import hr.fer.zemris.java.webserver.metrics.ServerMetrics.Rejection;
+
+/**
+ * Limiter of the number of simultaneously open connections, both in total
+ * and per client address.<br>
+ * Every admitted connection must be released exactly once when it is closed.
+ * A limit less than 1 means that the number of connections is not limited.
+ * 
+ * @author Mate Gasparini
+ */
+public class ConnectionLimiter {
+	
+	/** Maximum number of open connections. */
+	private final int maxConnections;
+	
+	/** Maximum number of open connections from a single client address. */
+	private final int maxPerAddress;
+	
+	/** Number of open connections. */
+	private final AtomicInteger connections = new AtomicInteger();
+	
+	/** Numbers of open connections per client address (only non-zero ones are stored). */
+	private final ConcurrentMap<InetAddress, Integer> perAddress = new ConcurrentHashMap<>();
+	
+	/**
+	 * Constructor specifying the total and the per-address connection limits.
+	 * 
+	 * @param maxConnections The maximum number of open connections.
+	 * @param maxPerAddress The maximum number of open connections from a single address.
+	 */
+	public ConnectionLimiter(int maxConnections, int maxPerAddress) {
+		this.maxConnections = maxConnections;
+		this.maxPerAddress = maxPerAddress;
+	}
+	
+	/**
+	 * Tries to admit a new connection from the given client address.
+	 * 
+	 * @param address The given client address.
+	 * @return {@code null} if the connection is admitted,
+	 * 			or the reason of its rejection otherwise.
+	 */
+	public Rejection tryAcquire(InetAddress address) {
+		if (connections.incrementAndGet() > maxConnections && maxConnections > 0) {
+			connections.decrementAndGet();
+			return Rejection.CONNECTIONS;
+		}
+		if (maxPerAddress > 0 && perAddress.merge(address, 1, Integer::sum) > maxPerAddress) {
+			releaseAddress(address);
+			connections.decrementAndGet();
+			return Rejection.ADDRESS;
+		}
+		return null;
+	}
+	
+	/**
+	 * Releases a previously admitted connection from the given client address.
+	 * 
+	 * @param address The given client address.
+	 */
+	public void release(InetAddress address) {
+		if (maxPerAddress > 0) {
+			releaseAddress(address);
+		}
+		connections.decrementAndGet();
+	}
+	
+	/**
+	 * Decrements the number of connections from the given address,
+	 * removing its entry when it drops to zero.
+	 * 
+	 * @param address The given client address.
+	 */
+	private void releaseAddress(InetAddress address) {
+		perAddress.computeIfPresent(address, (key, count) -> count == 1 ? null : count - 1);
+	}
+}
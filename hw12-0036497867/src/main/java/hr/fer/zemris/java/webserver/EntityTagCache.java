@@ -0,0 +1,155 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Server-wide cache of strong entity tags (ETags) of static files,
+ * mapped using their paths.<br>
+ * An entity tag is calculated as a digest of the whole file content, so it is
+ * calculated only once and reused as long as the last modification time and
+ * the size of its file do not change. When the cache is full, the least
+ * recently used entry is evicted.
+ * 
+ * @author Mate Gasparini
+ */
+public class EntityTagCache {
+	
+	/** Algorithm used for calculating the file digests. */
+	private static final String DIGEST_ALGORITHM = "SHA-256";
+	
+	/** Number of digest bytes used in an entity tag. */
+	private static final int TAG_BYTES = 16;
+	
+	/** Size (in bytes) of the buffer used for reading the files. */
+	private static final int BUFFER_SIZE = 65536;
+	
+	/** Maximum number of cached entity tags. */
+	private final int capacity;
+	
+	/** Cached entries in the access order (least recently used first). */
+	private final Map<Path, CacheEntry> entries;
+	
+	/**
+	 * Constructor specifying the maximum number of cached entity tags.
+	 * 
+	 * @param capacity The maximum number of cached entity tags.
+	 * @throws IllegalArgumentException If the given capacity is less than 1.
+	 */
+	public EntityTagCache(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Cache capacity must be positive.");
+		}
+		this.capacity = capacity;
+		this.entries = new LinkedHashMap<Path, CacheEntry>(16, 0.75f, true) {
+			
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Path, CacheEntry> eldest) {
+				return size() > EntityTagCache.this.capacity;
+			}
+		};
+	}
+	
+	/**
+	 * Returns the (quoted) strong entity tag of the file located at the given path.<br>
+	 * The file is read only if its entity tag is not cached yet, or if the file
+	 * was modified since it was cached.
+	 * 
+	 * @param path The given path.
+	 * @param attributes The current attributes of the file.
+	 * @return The entity tag of the file.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public String get(Path path, BasicFileAttributes attributes) throws IOException {
+		FileTime lastModified = attributes.lastModifiedTime();
+		
+		CacheEntry entry;
+		synchronized (entries) {
+			entry = entries.get(path);
+		}
+		if (entry != null && entry.lastModified.equals(lastModified)
+				&& entry.size == attributes.size()) {
+			return entry.etag;
+		}
+		
+		entry = new CacheEntry(calculate(path), lastModified, attributes.size());
+		synchronized (entries) {
+			entries.put(path, entry);
+		}
+		return entry.etag;
+	}
+	
+	/**
+	 * Calculates the entity tag of the file located at the given path.
+	 * 
+	 * @param path The given path.
+	 * @return The calculated entity tag.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private static String calculate(Path path) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+		
+		try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			while (file.read(buffer) > 0) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		}
+		
+		byte[] hash = digest.digest();
+		StringBuilder builder = new StringBuilder("\"");
+		for (int i = 0; i < TAG_BYTES; i ++) {
+			builder.append(Character.forDigit((hash[i] >> 4) & 0xF, 16))
+					.append(Character.forDigit(hash[i] & 0xF, 16));
+		}
+		return builder.append('"').toString();
+	}
+	
+	/**
+	 * Cached entity tag with the last modification time and the size of its file.
+	 * 
+	 * @author Mate Gasparini
+	 */
+	private static class CacheEntry {
+		
+		/** Entity tag of the file. */
+		String etag;
+		
+		/** Last modification time of the file at the moment of reading. */
+		FileTime lastModified;
+		
+		/** Size of the file at the moment of reading. */
+		long size;
+		
+		/**
+		 * Constructor specifying the entity tag, the modification time and the size.
+		 * 
+		 * @param etag The entity tag.
+		 * @param lastModified The last modification time of the file.
+		 * @param size The size of the file.
+		 */
+		public CacheEntry(String etag, FileTime lastModified, long size) {
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.size = size;
+		}
+	}
+}
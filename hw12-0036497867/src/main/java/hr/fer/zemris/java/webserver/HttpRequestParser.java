@@ -0,0 +1,674 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Incremental parser of HTTP request headers which works directly on the bytes
+ * received from the client.<br>
+ * The received bytes are kept in a fixed-size buffer (filled either from an
+ * {@link InputStream} or from a {@link ReadableByteChannel}), and every call of
+ * {@link #parse()} continues where the previous call stopped, so each byte is
+ * examined only once. The parser only records the offsets of the request line
+ * parts and of the header names and values; Strings are created only when they
+ * are requested.<br>
+ * The whole header must fit into the buffer, and the number of header fields
+ * is limited as well. After a request is processed, {@link #next()} prepares
+ * the parser for the next request, keeping any already received (pipelined)
+ * bytes.<br>
+ * The parser is not thread-safe.
+ * 
+ * @author Mate Gasparini
+ */
+public class HttpRequestParser {
+	
+	/**
+	 * Result of parsing the received bytes.
+	 * 
+	 * @author Mate Gasparini
+	 */
+	public enum Result {
+		
+		/** The header is not complete yet, so more bytes must be received. */
+		INCOMPLETE,
+		
+		/** The header is complete and valid. */
+		COMPLETE,
+		
+		/** The header is not a valid HTTP request header. */
+		INVALID,
+		
+		/** The header exceeds the size or the header count limit. */
+		TOO_LARGE
+	}
+	
+	/** State before the request line (where empty lines are ignored). */
+	private static final int REQUEST_LINE_START = 0;
+	
+	/** State inside the request method. */
+	private static final int METHOD = 1;
+	
+	/** State before the request target. */
+	private static final int TARGET_START = 2;
+	
+	/** State inside the request target. */
+	private static final int TARGET = 3;
+	
+	/** State before the HTTP version. */
+	private static final int VERSION_START = 4;
+	
+	/** State inside the HTTP version. */
+	private static final int VERSION = 5;
+	
+	/** State after the HTTP version (where only whitespace is allowed). */
+	private static final int VERSION_END = 6;
+	
+	/** State at the beginning of a header line. */
+	private static final int LINE_START = 7;
+	
+	/** State inside a header name. */
+	private static final int NAME = 8;
+	
+	/** State before a header value. */
+	private static final int VALUE_START = 9;
+	
+	/** State inside a header value. */
+	private static final int VALUE = 10;
+	
+	/** State after a CR which ends a line. */
+	private static final int LINE_LF = 11;
+	
+	/** State after a CR which ends the whole header. */
+	private static final int HEADER_LF = 12;
+	
+	/** Number of offsets recorded for every header field. */
+	private static final int HEADER_FIELDS = 4;
+	
+	/** Characters allowed in the request method and in the header names. */
+	private static final boolean[] TOKEN = new boolean[128];
+	
+	static {
+		for (char c : "!#$%&'*+-.^_`|~0123456789".toCharArray()) {
+			TOKEN[c] = true;
+		}
+		for (char c = 'a'; c <= 'z'; c ++) {
+			TOKEN[c] = true;
+			TOKEN[Character.toUpperCase(c)] = true;
+		}
+	}
+	
+	/** Buffer containing the received bytes. */
+	private final byte[] data;
+	
+	/** View of the buffer used for reading from channels. */
+	private final ByteBuffer view;
+	
+	/** Maximum number of header fields. */
+	private final int maxHeaderCount;
+	
+	/**
+	 * Offsets of the header fields: name start, name end, value start and value end
+	 * (without the surrounding whitespace) of every header field.
+	 */
+	private final int[] headers;
+	
+	/** Flags which mark the header fields whose values span multiple lines. */
+	private final boolean[] folded;
+	
+	/** Number of received bytes in the buffer. */
+	private int limit;
+	
+	/** Index of the next byte which should be parsed. */
+	private int position;
+	
+	/** Current state. */
+	private int state;
+	
+	/** Result of the last parsing. */
+	private Result result;
+	
+	/** Index of the first byte of the request line. */
+	private int start;
+	
+	/** Index right after the header (valid if the header is complete). */
+	private int end;
+	
+	/** Index right after the method. */
+	private int methodEnd;
+	
+	/** Index of the first byte of the request target. */
+	private int targetStart;
+	
+	/** Index of the first byte of the query (or -1 if the target has no query). */
+	private int queryStart;
+	
+	/** Index right after the request target. */
+	private int targetEnd;
+	
+	/** Index of the first byte of the HTTP version. */
+	private int versionStart;
+	
+	/** Index right after the HTTP version. */
+	private int versionEnd;
+	
+	/** Number of header fields. */
+	private int headerCount;
+	
+	/** Decoded method (or {@code null} if not decoded yet). */
+	private String method;
+	
+	/** Decoded path (or {@code null} if not decoded yet). */
+	private String path;
+	
+	/** Decoded HTTP version (or {@code null} if not decoded yet). */
+	private String version;
+	
+	/**
+	 * Constructor specifying the maximum size of the header and the maximum
+	 * number of header fields.
+	 * 
+	 * @param maxHeaderSize The maximum size (in bytes) of the whole header.
+	 * @param maxHeaderCount The maximum number of header fields.
+	 * @throws IllegalArgumentException If a limit is not positive.
+	 */
+	public HttpRequestParser(int maxHeaderSize, int maxHeaderCount) {
+		if (maxHeaderSize < 1 || maxHeaderCount < 1) {
+			throw new IllegalArgumentException("Header limits must be positive.");
+		}
+		this.data = new byte[maxHeaderSize];
+		this.view = ByteBuffer.wrap(data);
+		this.maxHeaderCount = maxHeaderCount;
+		this.headers = new int[HEADER_FIELDS * maxHeaderCount];
+		this.folded = new boolean[maxHeaderCount];
+		reset();
+	}
+	
+	/**
+	 * Reads the available bytes from the given input stream into the buffer
+	 * (blocking until at least one byte is available).
+	 * 
+	 * @param istream The given input stream.
+	 * @return The number of read bytes, or -1 if the end of the stream is reached.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public int read(InputStream istream) throws IOException {
+		int count = istream.read(data, limit, data.length - limit);
+		if (count > 0) {
+			limit += count;
+		}
+		return count;
+	}
+	
+	/**
+	 * Reads the available bytes from the given channel into the buffer.
+	 * 
+	 * @param channel The given channel.
+	 * @return The number of read bytes, or -1 if the end of the stream is reached.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public int read(ReadableByteChannel channel) throws IOException {
+		view.limit(data.length).position(limit);
+		int count = channel.read(view);
+		if (count > 0) {
+			limit += count;
+		}
+		return count;
+	}
+	
+	/**
+	 * Returns {@code true} if no bytes of the next request have been received.
+	 * 
+	 * @return {@code true} if the buffer is empty.
+	 */
+	public boolean isEmpty() {
+		return limit == 0;
+	}
+	
+	/**
+	 * Parses the bytes received since the last call.
+	 * 
+	 * @return {@link Result#INCOMPLETE} if more bytes are needed, or the final
+	 * 			result of parsing the current request header.
+	 */
+	public Result parse() {
+		if (result != Result.INCOMPLETE) {
+			return result;
+		}
+		
+		byte[] data = this.data;
+		int state = this.state;
+		int current = headerCount - 1;
+		for (int i = position; i < limit; i ++) {
+			int b = data[i] & 0xFF;
+			switch (state) {
+				case REQUEST_LINE_START:
+					if (b == '\r' || b == '\n') {
+						start = i + 1; // Empty lines before the request are ignored.
+					} else if (isToken(b)) {
+						state = METHOD;
+					} else {
+						return result = Result.INVALID;
+					}
+					break;
+				case METHOD:
+					if (b == ' ') {
+						methodEnd = i;
+						state = TARGET_START;
+					} else if (!isToken(b)) {
+						return result = Result.INVALID;
+					}
+					break;
+				case TARGET_START:
+				case TARGET:
+					if (b == ' ' || b == '\t') {
+						if (state == TARGET) {
+							targetEnd = i;
+							state = VERSION_START;
+						}
+					} else if (b < ' ' || b == 127) {
+						return result = Result.INVALID;
+					} else {
+						if (state == TARGET_START) {
+							targetStart = i;
+							state = TARGET;
+						}
+						if (b == '?' && queryStart < 0) {
+							queryStart = i + 1;
+						}
+					}
+					break;
+				case VERSION_START:
+				case VERSION:
+				case VERSION_END:
+					if (b == '\r' || b == '\n') {
+						if (state == VERSION_START) {
+							return result = Result.INVALID;
+						}
+						if (state == VERSION) {
+							versionEnd = i;
+						}
+						state = b == '\r' ? LINE_LF : LINE_START;
+					} else if (b == ' ' || b == '\t') {
+						if (state == VERSION) {
+							versionEnd = i;
+							state = VERSION_END;
+						}
+					} else if (state == VERSION_END || b < ' ' || b == 127) {
+						return result = Result.INVALID;
+					} else if (state == VERSION_START) {
+						versionStart = i;
+						state = VERSION;
+					}
+					break;
+				case LINE_START:
+					if (b == '\r') {
+						state = HEADER_LF;
+					} else if (b == '\n') {
+						return complete(i + 1);
+					} else if (b == ' ' || b == '\t') {
+						if (current < 0) {
+							return result = Result.INVALID;
+						}
+						// Obsolete line folding: the line continues the previous value.
+						folded[current] = true;
+						int offset = HEADER_FIELDS * current;
+						state = headers[offset + 2] == headers[offset + 3] ? VALUE_START : VALUE;
+					} else if (isToken(b)) {
+						if (headerCount == maxHeaderCount) {
+							return result = Result.TOO_LARGE;
+						}
+						current = headerCount ++;
+						headers[HEADER_FIELDS * current] = i;
+						folded[current] = false;
+						state = NAME;
+					} else {
+						return result = Result.INVALID;
+					}
+					break;
+				case NAME:
+					if (b == ':') {
+						int offset = HEADER_FIELDS * current;
+						headers[offset + 1] = i;
+						headers[offset + 2] = i + 1;
+						headers[offset + 3] = i + 1;
+						state = VALUE_START;
+					} else if (!isToken(b)) {
+						return result = Result.INVALID;
+					}
+					break;
+				case VALUE_START:
+				case VALUE:
+					if (b == '\r') {
+						state = LINE_LF;
+					} else if (b == '\n') {
+						state = LINE_START;
+					} else if (b == ' ' || b == '\t') {
+						if (state == VALUE_START) {
+							headers[HEADER_FIELDS * current + 2] = i + 1;
+							headers[HEADER_FIELDS * current + 3] = i + 1;
+						}
+					} else if (b < ' ' || b == 127) {
+						return result = Result.INVALID;
+					} else {
+						headers[HEADER_FIELDS * current + 3] = i + 1;
+						state = VALUE;
+					}
+					break;
+				case LINE_LF:
+					if (b != '\n') {
+						return result = Result.INVALID;
+					}
+					state = LINE_START;
+					break;
+				case HEADER_LF:
+					if (b != '\n') {
+						return result = Result.INVALID;
+					}
+					return complete(i + 1);
+				default:
+					throw new IllegalStateException("Unknown parser state: " + state);
+			}
+		}
+		
+		this.state = state;
+		this.position = limit;
+		if (limit == data.length) {
+			result = Result.TOO_LARGE; // Buffer is full, but the header is not complete.
+		}
+		return result;
+	}
+	
+	/**
+	 * Discards the current request (and resets the parser), keeping the bytes
+	 * of the following requests which have already been received.
+	 */
+	public void next() {
+		int remaining = result == Result.COMPLETE ? limit - end : 0;
+		System.arraycopy(data, limit - remaining, data, 0, remaining);
+		limit = remaining;
+		reset();
+	}
+	
+	/**
+	 * Returns the request method.
+	 * 
+	 * @return The request method.
+	 */
+	public String getMethod() {
+		if (method == null) {
+			method = decode(start, methodEnd);
+		}
+		return method;
+	}
+	
+	/**
+	 * Returns the path of the request target (without the query).
+	 * 
+	 * @return The requested path.
+	 */
+	public String getPath() {
+		if (path == null) {
+			path = decode(targetStart, queryStart < 0 ? targetEnd : queryStart - 1);
+		}
+		return path;
+	}
+	
+	/**
+	 * Returns the query of the request target (without the question mark),
+	 * or {@code null} if the target has no query.
+	 * 
+	 * @return The query (or {@code null}).
+	 */
+	public String getQuery() {
+		return queryStart < 0 ? null : decode(queryStart, targetEnd);
+	}
+	
+	/**
+	 * Returns the HTTP version of the request.
+	 * 
+	 * @return The HTTP version.
+	 */
+	public String getVersion() {
+		if (version == null) {
+			version = decode(versionStart, versionEnd);
+		}
+		return version;
+	}
+	
+	/**
+	 * Returns the number of header fields.
+	 * 
+	 * @return The number of header fields.
+	 */
+	public int getHeaderCount() {
+		return headerCount;
+	}
+	
+	/**
+	 * Returns the name of the header field with the given index.
+	 * 
+	 * @param index The given index.
+	 * @return The header name.
+	 * @throws IndexOutOfBoundsException If the index is invalid.
+	 */
+	public String getHeaderName(int index) {
+		checkIndex(index);
+		return decode(headers[HEADER_FIELDS * index], headers[HEADER_FIELDS * index + 1]);
+	}
+	
+	/**
+	 * Returns the value (without the surrounding whitespace) of the header field
+	 * with the given index.<br>
+	 * Line terminators of a value which spans multiple lines are removed.
+	 * 
+	 * @param index The given index.
+	 * @return The header value.
+	 * @throws IndexOutOfBoundsException If the index is invalid.
+	 */
+	public String getHeaderValue(int index) {
+		checkIndex(index);
+		int from = headers[HEADER_FIELDS * index + 2];
+		int to = headers[HEADER_FIELDS * index + 3];
+		if (!folded[index]) {
+			return decode(from, to);
+		}
+		
+		StringBuilder builder = new StringBuilder(to - from);
+		for (int i = from; i < to; i ++) {
+			if (data[i] != '\r' && data[i] != '\n') {
+				builder.append((char) (data[i] & 0xFF));
+			}
+		}
+		return builder.toString();
+	}
+	
+	/**
+	 * Returns the value of the first header field with the given name.<br>
+	 * If none found, {@code null} is returned instead.
+	 * 
+	 * @param name The given header name (case-insensitive).
+	 * @return The header value (or {@code null}).
+	 */
+	public String getHeader(String name) {
+		int index = indexOfHeader(name);
+		return index < 0 ? null : getHeaderValue(index);
+	}
+	
+	/**
+	 * Returns the index of the first header field with the given name,
+	 * or -1 if none found. No Strings are created.
+	 * 
+	 * @param name The given header name (case-insensitive).
+	 * @return The index of the header field (or -1).
+	 */
+	public int indexOfHeader(String name) {
+		int length = name.length();
+		for (int index = 0; index < headerCount; index ++) {
+			int from = headers[HEADER_FIELDS * index];
+			if (headers[HEADER_FIELDS * index + 1] - from == length
+					&& equalsIgnoreCase(from, name)) {
+				return index;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Parses the query parameters ({@code name=value} pairs separated by
+	 * {@code &}) and stores them in the given map. The value of a parameter
+	 * without {@code =} is {@code null}.<br>
+	 * Names and values are decoded as form data: {@code +} is a space, and
+	 * {@code %xx} is the byte with the given hexadecimal value (the bytes are
+	 * decoded as UTF-8). A {@code %} which is not followed by two hexadecimal
+	 * digits is kept as it is.
+	 * 
+	 * @param parameters The given map of parameters.
+	 */
+	public void parseParameters(Map<String, String> parameters) {
+		if (queryStart < 0) {
+			return;
+		}
+		
+		for (int from = queryStart; from <= targetEnd; ) {
+			int to = from;
+			int separator = -1;
+			while (to < targetEnd && data[to] != '&') {
+				if (data[to] == '=' && separator < 0) {
+					separator = to;
+				}
+				to ++;
+			}
+			if (to > from) {
+				if (separator < 0) {
+					parameters.put(decodeParameter(from, to), null);
+				} else {
+					parameters.put(decodeParameter(from, separator), decodeParameter(separator + 1, to));
+				}
+			}
+			from = to + 1;
+		}
+	}
+	
+	/**
+	 * Resets the parser state for the next request.
+	 */
+	private void reset() {
+		position = 0;
+		state = REQUEST_LINE_START;
+		result = Result.INCOMPLETE;
+		start = 0;
+		end = 0;
+		queryStart = -1;
+		headerCount = 0;
+		method = null;
+		path = null;
+		version = null;
+	}
+	
+	/**
+	 * Marks the header as complete.
+	 * 
+	 * @param end The index right after the header.
+	 * @return {@link Result#COMPLETE}.
+	 */
+	private Result complete(int end) {
+		this.end = end;
+		this.position = end;
+		return result = Result.COMPLETE;
+	}
+	
+	/**
+	 * Checks whether the given header field index is valid.
+	 * 
+	 * @param index The given index.
+	 * @throws IndexOutOfBoundsException If the index is invalid.
+	 */
+	private void checkIndex(int index) {
+		if (index < 0 || index >= headerCount) {
+			throw new IndexOutOfBoundsException("Invalid header index: " + index);
+		}
+	}
+	
+	/**
+	 * Decodes the bytes between the given indexes (ISO-8859-1).
+	 * 
+	 * @param from The index of the first byte.
+	 * @param to The index right after the last byte.
+	 * @return The decoded String.
+	 */
+	private String decode(int from, int to) {
+		return new String(data, from, to - from, StandardCharsets.ISO_8859_1);
+	}
+	
+	/**
+	 * Decodes the form-encoded parameter name or value between the given
+	 * indexes (see {@link #parseParameters(Map)}).
+	 * 
+	 * @param from The index of the first byte.
+	 * @param to The index right after the last byte.
+	 * @return The decoded String.
+	 */
+	private String decodeParameter(int from, int to) {
+		byte[] bytes = new byte[to - from];
+		int length = 0;
+		for (int i = from; i < to; i ++) {
+			byte b = data[i];
+			if (b == '+') {
+				b = ' ';
+			} else if (b == '%' && i + 2 < to) {
+				int high = Character.digit(data[i + 1], 16);
+				int low = Character.digit(data[i + 2], 16);
+				if (high >= 0 && low >= 0) {
+					b = (byte) (high << 4 | low);
+					i += 2;
+				}
+			}
+			bytes[length ++] = b;
+		}
+		return new String(bytes, 0, length, StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Returns {@code true} if the bytes starting at the given index are equal
+	 * to the given (ASCII) String, ignoring the case.
+	 * 
+	 * @param from The given index.
+	 * @param name The given String.
+	 * @return {@code true} if the bytes match the String.
+	 */
+	private boolean equalsIgnoreCase(int from, String name) {
+		for (int i = 0, length = name.length(); i < length; i ++) {
+			int b = data[from + i];
+			int c = name.charAt(i);
+			if (b != c && toLowerCase(b) != toLowerCase(c)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Converts the given ASCII character to lower case.
+	 * 
+	 * @param c The given character.
+	 * @return The lower case character.
+	 */
+	private static int toLowerCase(int c) {
+		return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+	}
+	
+	/**
+	 * Returns {@code true} if the given byte is allowed in a token
+	 * (i.e. in the method or in a header name).
+	 * 
+	 * @param b The given (unsigned) byte.
+	 * @return {@code true} if the byte is a token character.
+	 */
+	private static boolean isToken(int b) {
+		return b < TOKEN.length && TOKEN[b];
+	}
+}
@@ -10,8 +10,11 @@ public interface IWebWorker {
 	
 	/**
 	 * Process the request specified by the given context in some specific way.<br>
-	 * Should be explicitly synchronized in specific implementations,
-	 * as multiple threads can call it at the same time.
+	 * Should be explicitly synchronized in specific implementations
+	 * used as singletons, as multiple threads can call it at the same time.<br>
+	 * Pooled and prototype instances are used by one request at a time,
+	 * so they need no synchronization (which would, while blocked on I/O,
+	 * also pin the carrier of a virtual thread).
 	 * 
 	 * @param context The given request context.
 	 * @throws Exception If some type of error (e.g. I/O) occurs.
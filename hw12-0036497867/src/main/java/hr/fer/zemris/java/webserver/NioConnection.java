@@ -0,0 +1,166 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * State of a single client connection handled by the {@link SmartHttpServer}'s
+ * selector thread.<br>
+ * The request header is read and parsed incrementally without blocking, and
+ * once it is complete, the connection (together with its parser) is handed
+ * to a worker thread.
+ * 
+ * @author Mate Gasparini
+ */
+public class NioConnection {
+	
+	/** Underlying non-blocking socket channel. */
+	private SocketChannel channel;
+	
+	/** Parser of the received request bytes. */
+	private HttpRequestParser request;
+	
+	/** Output stream used by the worker threads for writing the response. */
+	private OutputStream outputStream;
+	
+	/** Selection key of the underlying channel. */
+	private SelectionKey key;
+	
+	/** Timestamp (in ms) of the last activity on this connection. */
+	private volatile long lastActive = System.currentTimeMillis();
+	
+	/**
+	 * Timestamp (in ms) at which receiving the current request header started,
+	 * or 0 if the connection is waiting for the next request.
+	 */
+	private volatile long requestStart = lastActive;
+	
+	/** Number of requests received over this connection. */
+	private int requestCount;
+	
+	/**
+	 * Constructor specifying the underlying non-blocking socket channel,
+	 * the parser of its requests and the counter of written bytes.
+	 * 
+	 * @param channel The specified socket channel.
+	 * @param request The specified request parser.
+	 * @param bytesWritten The counter of bytes written to the channel (or {@code null}).
+	 */
+	public NioConnection(SocketChannel channel, HttpRequestParser request,
+			LongAdder bytesWritten) {
+		this.channel = channel;
+		this.request = request;
+		this.outputStream = new ChannelOutputStream(channel, bytesWritten);
+	}
+	
+	/**
+	 * Returns the underlying socket channel.
+	 * 
+	 * @return The underlying socket channel.
+	 */
+	public SocketChannel getChannel() {
+		return channel;
+	}
+	
+	/**
+	 * Returns the parser of the requests received over this connection.
+	 * 
+	 * @return The request parser.
+	 */
+	public HttpRequestParser getRequest() {
+		return request;
+	}
+	
+	/**
+	 * Returns the output stream which writes to the underlying channel.
+	 * 
+	 * @return The output stream.
+	 */
+	public OutputStream getOutputStream() {
+		return outputStream;
+	}
+	
+	/**
+	 * Returns the selection key of the underlying channel.
+	 * 
+	 * @return The selection key.
+	 */
+	public SelectionKey getKey() {
+		return key;
+	}
+	
+	/**
+	 * Sets the selection key of the underlying channel.
+	 * 
+	 * @param key The selection key.
+	 */
+	public void setKey(SelectionKey key) {
+		this.key = key;
+	}
+	
+	/**
+	 * Returns the timestamp (in ms) of the last activity on this connection.
+	 * 
+	 * @return The timestamp of the last activity.
+	 */
+	public long getLastActive() {
+		return lastActive;
+	}
+	
+	/**
+	 * Marks this connection as active at the current moment.
+	 */
+	public void touch() {
+		lastActive = System.currentTimeMillis();
+	}
+	
+	/**
+	 * Returns the timestamp (in ms) at which receiving the current request header
+	 * started.
+	 * 
+	 * @return The timestamp, or 0 if the connection is waiting for the next request.
+	 */
+	public long getRequestStart() {
+		return requestStart;
+	}
+	
+	/**
+	 * Marks that receiving the current request header started at the current
+	 * moment, unless it has already been marked.
+	 */
+	public void markRequestStart() {
+		if (requestStart == 0) {
+			requestStart = System.currentTimeMillis();
+		}
+	}
+	
+	/**
+	 * Marks that the connection is waiting for the next request.
+	 */
+	public void clearRequestStart() {
+		requestStart = 0;
+	}
+	
+	/**
+	 * Increments the number of requests received over this connection.
+	 * 
+	 * @return The number of requests received so far (including the current one).
+	 */
+	public int countRequest() {
+		return ++ requestCount;
+	}
+	
+	/**
+	 * Reads all currently available bytes from the underlying channel
+	 * into the request parser.
+	 * 
+	 * @return The number of read bytes, or -1 if the client closed the connection.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public int read() throws IOException {
+		return request.read(channel);
+	}
+}
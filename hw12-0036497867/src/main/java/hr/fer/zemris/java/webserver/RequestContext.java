@@ -2,7 +2,12 @@ package hr.fer.zemris.java.webserver;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -10,7 +15,12 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 
 /**
  * Class which contains context for the simple web server.
@@ -31,6 +41,51 @@ public class RequestContext {
 	/** Default mime type. */
 	private static final String DEFAULT_MIME_TYPE = "text/html";
 	
+	/** Line terminator which ends every chunk. */
+	private static final byte[] CRLF = {'\r', '\n'};
+	
+	/** Last (empty) chunk which ends the chunked body. */
+	private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+	
+	/** Digits used for writing the chunk sizes. */
+	private static final byte[] HEX_DIGITS = {
+		'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+	};
+	
+	/** Maximum number of body bytes kept in the output buffer. */
+	private static final int BUFFER_CAPACITY = 16384;
+	
+	/** Space (in bytes) reserved before the body data for the chunk size line. */
+	private static final int CHUNK_HEADER_RESERVE = 10;
+	
+	/** Space (in bytes) reserved after the body data for the end of the (last) chunk. */
+	private static final int CHUNK_TRAILER_RESERVE = CRLF.length + LAST_CHUNK.length;
+	
+	/** Maximum number of idle output buffers kept in the pool. */
+	private static final int BUFFER_POOL_SIZE = 256;
+	
+	/** Pool of output buffers shared by all contexts. */
+	private static final BufferPool BUFFERS = new BufferPool(
+		CHUNK_HEADER_RESERVE + BUFFER_CAPACITY + CHUNK_TRAILER_RESERVE, BUFFER_POOL_SIZE
+	);
+	
+	/** Header of the gzip member written before the compressed body. */
+	private static final byte[] GZIP_HEADER = {
+		0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+	};
+	
+	/** Length of the gzip trailer (CRC-32 and the size of the uncompressed body). */
+	private static final int GZIP_TRAILER_LENGTH = 8;
+	
+	/** Maximum number of idle deflaters kept in the pool. */
+	private static final int DEFLATER_POOL_SIZE = 64;
+	
+	/** Pool of deflaters shared by all contexts. */
+	private static final Queue<Deflater> DEFLATERS = new ArrayBlockingQueue<>(DEFLATER_POOL_SIZE);
+	
+	/** Per-thread encoders, reused by all contexts of a thread. */
+	private static final ThreadLocal<CharsetEncoder> ENCODERS = new ThreadLocal<>();
+	
 	/** Underlying stream where data is written. */
 	private OutputStream outputStream;
 	
@@ -64,9 +119,63 @@ public class RequestContext {
 	/** Once set to true, it marks that the header has been generated. */
 	private boolean headerGenerated;
 	
+	/** Once set to true, it marks that the header has been written to the output stream. */
+	private boolean headerWritten;
+	
+	/** Output buffer (or {@code null} if it has not been acquired). */
+	private byte[] buffer;
+	
+	/** Number of body bytes in the output buffer. */
+	private int buffered;
+	
 	/** Size of the requested content (in bytes). */
 	private Long contentLength;
 	
+	/**
+	 * Marks whether the connection is kept alive after the response
+	 * (or {@code null} if no {@code Connection} header should be generated).
+	 */
+	private Boolean keepAlive;
+	
+	/** Once set to true, it marks that the body is written using chunked encoding. */
+	private boolean chunked;
+	
+	/** Additional headers (names and values). */
+	private List<String[]> headers = new ArrayList<>();
+	
+	/**
+	 * Marks that only the body is written to the output stream (without the header
+	 * and the chunk framing), which is used for capturing cacheable responses.
+	 */
+	private boolean bodyOnly;
+	
+	/**
+	 * Mime types whose body may be compressed, so their responses vary by the
+	 * {@code Accept-Encoding} header (or {@code null} if nothing is compressed).
+	 */
+	private Predicate<String> compressibleTypes;
+	
+	/** Minimum size (in bytes) of a body which is compressed. */
+	private int compressionThreshold;
+	
+	/** Marks that the body may be compressed (i.e. the client accepts gzip). */
+	private boolean compressionEnabled;
+	
+	/** Once set to true, it marks that it has been decided whether the body is compressed. */
+	private boolean compressionDecided;
+	
+	/** Deflater which compresses the body (or {@code null} if it is not compressed). */
+	private Deflater deflater;
+	
+	/** Checksum of the uncompressed body. */
+	private CRC32 checksum;
+	
+	/** Buffer of the compressed body (or {@code null} if it has not been acquired). */
+	private byte[] compressed;
+	
+	/** Number of compressed bytes in the buffer of the compressed body. */
+	private int compressedCount;
+	
 	/** Read-only dispatcher. */
 	private IDispatcher dispatcher;
 	
@@ -166,6 +275,136 @@ public class RequestContext {
 		this.contentLength = contentLength;
 	}
 	
+	/**
+	 * Sets the flag which marks whether the connection is kept alive after
+	 * this response.<br>
+	 * If the connection is kept alive and the content length is not known
+	 * when the header is generated, the body is written using the chunked
+	 * transfer encoding, so the client can detect the end of the response.
+	 * 
+	 * @param keepAlive {@code true} if the connection is kept alive.
+	 * @throws RuntimeException If the header has already been generated.
+	 */
+	public void setKeepAlive(boolean keepAlive) {
+		if (headerGenerated) throw new RuntimeException("Header already generated.");
+		this.keepAlive = keepAlive;
+	}
+	
+	/**
+	 * Sets the compression of the body using the gzip content coding.<br>
+	 * A body is compressed only if compression is enabled (i.e. the client
+	 * accepts it), if its mime type is compressible, if it is not smaller than
+	 * the given threshold and if no {@code Content-Encoding} header has been
+	 * added. Responses of compressible types get the {@code Vary} header
+	 * either way. The size of the body is known if the content length is set,
+	 * or if the whole body fits into the output buffer, so larger bodies of
+	 * unknown length are always compressed.
+	 * 
+	 * @param compressibleTypes The predicate which tests the mime types whose
+	 * 			body may be compressed (or {@code null} if nothing is compressed).
+	 * @param threshold The minimum size (in bytes) of a compressed body.
+	 * @param enabled {@code true} if the body may be compressed.
+	 * @throws RuntimeException If the header has already been generated.
+	 */
+	public void setCompression(Predicate<String> compressibleTypes, int threshold,
+			boolean enabled) {
+		if (headerGenerated) throw new RuntimeException("Header already generated.");
+		this.compressibleTypes = compressibleTypes;
+		this.compressionThreshold = Math.min(threshold, BUFFER_CAPACITY);
+		this.compressionEnabled = enabled;
+	}
+	
+	/**
+	 * Adds the header with the given name and value to the response.<br>
+	 * Headers generated by this context (e.g. {@code Content-Length})
+	 * should not be added this way.
+	 * 
+	 * @param name The given header name.
+	 * @param value The given header value.
+	 * @throws IllegalArgumentException If the name or the value contains
+	 * 			a line terminator.
+	 * @throws RuntimeException If the header has already been generated.
+	 */
+	public void addHeader(String name, String value) {
+		if (headerGenerated) throw new RuntimeException("Header already generated.");
+		if (name.indexOf('\r') >= 0 || name.indexOf('\n') >= 0
+				|| value.indexOf('\r') >= 0 || value.indexOf('\n') >= 0) {
+			throw new IllegalArgumentException("Header must not contain line terminators.");
+		}
+		headers.add(new String[] {name, value});
+	}
+	
+	/**
+	 * Returns the status code.
+	 * 
+	 * @return The status code.
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+	
+	/**
+	 * Returns the status text.
+	 * 
+	 * @return The status text.
+	 */
+	public String getStatusText() {
+		return statusText;
+	}
+	
+	/**
+	 * Returns the mime type.
+	 * 
+	 * @return The mime type.
+	 */
+	public String getMimeType() {
+		return mimeType;
+	}
+	
+	/**
+	 * Returns the encoding name.
+	 * 
+	 * @return The encoding name.
+	 */
+	public String getEncoding() {
+		return encoding;
+	}
+	
+	/**
+	 * Returns the headers added to the response (as arrays of their names
+	 * and values).
+	 * 
+	 * @return The unmodifiable list of the added headers.
+	 */
+	public List<String[]> getHeaders() {
+		return Collections.unmodifiableList(headers);
+	}
+	
+	/**
+	 * Creates the context which writes only the response body to the given stream,
+	 * so the response can be captured (e.g. for caching) instead of being sent.<br>
+	 * The created context shares the parameters, the cookies and the dispatcher
+	 * of this context, and starts with its status, mime type, encoding and headers.
+	 * 
+	 * @param bodyStream The given stream.
+	 * @return The capturing context.
+	 * @throws RuntimeException If the header has already been generated.
+	 */
+	public RequestContext createCapture(OutputStream bodyStream) {
+		if (headerGenerated) throw new RuntimeException("Header already generated.");
+		RequestContext capture = new RequestContext(
+			bodyStream, parameters, persistentParameters, outputCookies,
+			temporaryParameters, dispatcher
+		);
+		capture.statusCode = statusCode;
+		capture.statusText = statusText;
+		capture.mimeType = mimeType;
+		capture.encoding = encoding;
+		capture.headers = new ArrayList<>(headers);
+		capture.bodyOnly = true;
+		return capture;
+	}
+	
 	/**
 	 * Returns the specified dispatcher.
 	 * 
@@ -286,9 +525,11 @@ public class RequestContext {
 	
 	/**
 	 * Writes {@code len} bytes from the given byte array starting at the given offset
-	 * to the underlying output stream.<br>
-	 * Before that, the header may also generated and written to the underlying
-	 * output stream (if this has not been done yet).
+	 * to the output buffer.<br>
+	 * Before that, the header may also generated (if this has not been done yet).
+	 * The header and the buffered data are written to the underlying output stream
+	 * once the buffer is full, or when the response is finished. Large arrays may
+	 * be written to the underlying output stream directly.
 	 * 
 	 * @param data The given byte array.
 	 * @param offset The given offset.
@@ -297,20 +538,30 @@ public class RequestContext {
 	 * @throws IOException If an I/O error occurs.
 	 */
 	public RequestContext write(byte[] data, int offset, int len) throws IOException {
-		if (!headerGenerated) {
-			generateHeader();
-		}
-		
-		outputStream.write(data, offset, len);
+		commitHeader();
 		
+		while (len > 0) {
+			if (buffered == 0 && len >= BUFFER_CAPACITY && isFramed() && !chunked && deflater == null) {
+				writeOut(headerWritten ? null : renderHeader(), data, offset, len);
+				return this;
+			}
+			
+			int copied = Math.min(len, BUFFER_CAPACITY - buffered);
+			System.arraycopy(data, offset, buffer(), CHUNK_HEADER_RESERVE + buffered, copied);
+			buffered += copied;
+			offset += copied;
+			len -= copied;
+			if (buffered == BUFFER_CAPACITY) {
+				flushBuffer(false);
+			}
+		}
 		return this;
 	}
 	
 	/**
 	 * Writes {@code data.length} bytes from the given byte array to the
-	 * underlying output stream.<br>
-	 * Before that, the header may also generated and written to the underlying
-	 * output stream (if this has not been done yet).
+	 * output buffer.<br>
+	 * Before that, the header may also generated (if this has not been done yet).
 	 * 
 	 * @param data The given byte array.
 	 * @return Reference to this {@code RequestContext}.
@@ -321,37 +572,427 @@ public class RequestContext {
 	}
 	
 	/**
-	 * Writes {@code text.length} bytes from the byte array generated from
-	 * the given text (by using the current context charset) to the
-	 * underlying output stream.<br>
-	 * Before that, the header may also generated and written to the underlying
-	 * output stream (if this has not been done yet).
+	 * Encodes the given text (by using the current context charset) directly
+	 * into the output buffer.<br>
+	 * Before that, the header may also generated (if this has not been done yet).
 	 * 
 	 * @param text The given text.
 	 * @return Reference to this {@code RequestContext}.
 	 * @throws IOException If an I/O error occurs.
 	 */
 	public RequestContext write(String text) throws IOException {
+		commitHeader();
+		
+		CharsetEncoder encoder = encoder();
+		CharBuffer in = CharBuffer.wrap(text);
+		ByteBuffer out = ByteBuffer.wrap(
+			buffer(), CHUNK_HEADER_RESERVE + buffered, BUFFER_CAPACITY - buffered
+		);
+		while (encoder.encode(in, out, true).isOverflow()) {
+			flushEncoded(out);
+		}
+		while (encoder.flush(out).isOverflow()) {
+			flushEncoded(out);
+		}
+		buffered = out.position() - CHUNK_HEADER_RESERVE;
+		if (buffered == BUFFER_CAPACITY) {
+			flushBuffer(false);
+		}
+		return this;
+	}
+	
+	/**
+	 * Writes {@code count} bytes of the given file starting at the given position
+	 * to the underlying output stream.<br>
+	 * Before that, the header and the buffered data are written to the underlying
+	 * output stream.<br>
+	 * If the underlying stream is a {@link ChannelOutputStream} and the chunked
+	 * transfer encoding is not used, the bytes are transferred directly from
+	 * the file to the socket (zero-copy). Otherwise, they are read directly
+	 * into the output buffer.
+	 * 
+	 * @param file The given file.
+	 * @param position The position of the first written byte.
+	 * @param count The number of bytes to write.
+	 * @return Reference to this {@code RequestContext}.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public RequestContext write(FileChannel file, long position, long count)
+			throws IOException {
+		commitHeader();
+		
+		if (isFramed() && !chunked && deflater == null
+				&& outputStream instanceof ChannelOutputStream) {
+			flushBuffer(false);
+			outputStream.flush();
+			((ChannelOutputStream) outputStream).transferFrom(file, position, count);
+			return this;
+		}
+		
+		ByteBuffer in = ByteBuffer.wrap(buffer());
+		while (count > 0) {
+			int start = CHUNK_HEADER_RESERVE + buffered;
+			in.limit(start + (int) Math.min(count, BUFFER_CAPACITY - buffered)).position(start);
+			int readCount = file.read(in, position);
+			if (readCount < 1) break;
+			buffered += readCount;
+			position += readCount;
+			count -= readCount;
+			if (buffered == BUFFER_CAPACITY) {
+				flushBuffer(false);
+			}
+		}
+		return this;
+	}
+	
+	/**
+	 * Completes the response.<br>
+	 * If the header has not been written yet, the whole body is in the output
+	 * buffer, so its length is generated in the header (unless it was set).
+	 * Then the header and the buffered data are written to the underlying output
+	 * stream. If the chunked transfer encoding is used, the last (empty) chunk is
+	 * written together with the data.
+	 * 
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public void finish() throws IOException {
+		commitHeader();
+		if (!headerWritten && contentLength == null && hasBody()) {
+			contentLength = (long) buffered;
+		}
+		flushBuffer(true);
+		outputStream.flush();
+		releaseBuffers();
+	}
+	
+	/**
+	 * Abandons the response if nothing has been written to the underlying
+	 * output stream yet, discarding the buffered body, so another response
+	 * (e.g. an error) can be written instead. The context must not be used
+	 * afterwards.
+	 * 
+	 * @return {@code true} if the response was abandoned, and {@code false}
+	 * 			if its header has already been written (so nothing is changed).
+	 */
+	public boolean abandon() {
+		if (headerWritten) {
+			return false;
+		}
+		buffered = 0;
+		releaseBuffers();
+		return true;
+	}
+	
+	/**
+	 * Returns the output buffer, the buffer of the compressed body and the
+	 * deflater to their pools.
+	 */
+	private void releaseBuffers() {
+		if (buffer != null) {
+			BUFFERS.release(buffer);
+			buffer = null;
+		}
+		if (deflater != null) {
+			BUFFERS.release(compressed);
+			compressed = null;
+			deflater.reset();
+			if (!DEFLATERS.offer(deflater)) {
+				deflater.end();
+			}
+			deflater = null;
+		}
+	}
+	
+	/**
+	 * Marks the header as generated, so its properties cannot be changed anymore.
+	 * The header itself is rendered only when it is written.
+	 */
+	private void commitHeader() {
 		if (!headerGenerated) {
-			generateHeader(); // Redundant, but charset must be set.
+			charset = Charset.forName(encoding);
+			headerGenerated = true;
+			if (contentLength != null) {
+				decideCompression(contentLength);
+			}
+		}
+	}
+	
+	/**
+	 * Decides whether the body of the given size is compressed, and if it is,
+	 * prepares the deflater and the gzip header. The content length is unset
+	 * then, because it is the length of the uncompressed body.
+	 * 
+	 * @param size The size (in bytes) of the body.
+	 */
+	private void decideCompression(long size) {
+		if (compressionDecided) return;
+		compressionDecided = true;
+		if (!compressionEnabled || compressibleTypes == null || bodyOnly || !hasBody() || size < compressionThreshold
+				|| !compressibleTypes.test(mimeType) || hasHeader("Content-Encoding")) {
+			return;
+		}
+		
+		deflater = DEFLATERS.poll();
+		if (deflater == null) {
+			deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		}
+		checksum = new CRC32();
+		compressed = BUFFERS.acquire();
+		System.arraycopy(GZIP_HEADER, 0, compressed, CHUNK_HEADER_RESERVE, GZIP_HEADER.length);
+		compressedCount = GZIP_HEADER.length;
+		contentLength = null;
+	}
+	
+	/**
+	 * Returns {@code true} if the header with the given name has been added.
+	 * 
+	 * @param name The given header name.
+	 * @return {@code true} if the header has been added.
+	 */
+	private boolean hasHeader(String name) {
+		for (String[] header : headers) {
+			if (header[0].equalsIgnoreCase(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns {@code true} if the framing of the body is already known, i.e.
+	 * if the header has been written, or if the content length is set.
+	 * 
+	 * @return {@code true} if the framing of the body is known.
+	 */
+	private boolean isFramed() {
+		return headerWritten || contentLength != null;
+	}
+	
+	/**
+	 * Returns the output buffer, which is acquired from the pool if needed.<br>
+	 * Body data is kept between {@code CHUNK_HEADER_RESERVE} and
+	 * {@code CHUNK_HEADER_RESERVE + buffered}, so the chunk framing can be
+	 * added around it without copying.
+	 * 
+	 * @return The output buffer.
+	 */
+	private byte[] buffer() {
+		if (buffer == null) {
+			buffer = BUFFERS.acquire();
+		}
+		return buffer;
+	}
+	
+	/**
+	 * Writes the data encoded into the output buffer through the given view of it,
+	 * and resets the view to the empty buffer.
+	 * 
+	 * @param out The view of the output buffer used by the encoder.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private void flushEncoded(ByteBuffer out) throws IOException {
+		buffered = out.position() - CHUNK_HEADER_RESERVE;
+		flushBuffer(false);
+		out.limit(CHUNK_HEADER_RESERVE + BUFFER_CAPACITY).position(CHUNK_HEADER_RESERVE);
+	}
+	
+	/**
+	 * Returns the encoder of the current context charset, which is reused by
+	 * all contexts of the calling thread.
+	 * 
+	 * @return The reset encoder.
+	 */
+	private CharsetEncoder encoder() {
+		CharsetEncoder encoder = ENCODERS.get();
+		if (encoder == null || !encoder.charset().equals(charset)) {
+			encoder = charset.newEncoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			ENCODERS.set(encoder);
+		}
+		return encoder.reset();
+	}
+	
+	/**
+	 * Writes the buffered data (and the header, if it has not been written yet)
+	 * to the underlying output stream, compressing it if the body is compressed.<br>
+	 * When the buffered data is flushed for the first time, the size of the body
+	 * is known only if this is the last data, so it is decided then whether the
+	 * body is compressed.
+	 * 
+	 * @param last {@code true} if this is the last data of the response.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private void flushBuffer(boolean last) throws IOException {
+		if (!headerWritten) {
+			decideCompression(last ? buffered : Long.MAX_VALUE);
+		}
+		if (deflater != null) {
+			flushCompressed(last);
+			return;
+		}
+		int length = buffered;
+		buffered = 0;
+		writeFramed(buffer(), length, last);
+	}
+	
+	/**
+	 * Compresses the buffered data into the buffer of the compressed body,
+	 * which is written to the underlying output stream whenever it is full.
+	 * After the last data, the rest of the compressed body and the gzip
+	 * trailer are written. If the header has not been written until then,
+	 * the length of the compressed body is generated in it.
+	 * 
+	 * @param last {@code true} if this is the last data of the response.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private void flushCompressed(boolean last) throws IOException {
+		if (!headerWritten) {
+			// The length is known only once the whole compressed body is buffered.
+			contentLength = null;
+		}
+		checksum.update(buffer(), CHUNK_HEADER_RESERVE, buffered);
+		deflater.setInput(buffer, CHUNK_HEADER_RESERVE, buffered);
+		buffered = 0;
+		if (last) {
+			deflater.finish();
+		}
+		
+		while (last ? !deflater.finished() : !deflater.needsInput()) {
+			compressedCount += deflater.deflate(
+				compressed, CHUNK_HEADER_RESERVE + compressedCount,
+				BUFFER_CAPACITY - compressedCount
+			);
+			if (compressedCount == BUFFER_CAPACITY) {
+				writeCompressed(false);
+			}
 		}
+		if (!last) return;
 		
-		return write(text.getBytes(charset));
+		if (BUFFER_CAPACITY - compressedCount < GZIP_TRAILER_LENGTH) {
+			writeCompressed(false);
+		}
+		int end = CHUNK_HEADER_RESERVE + compressedCount;
+		writeIntLE(compressed, end, (int) checksum.getValue());
+		writeIntLE(compressed, end + 4, (int) deflater.getBytesRead());
+		compressedCount += GZIP_TRAILER_LENGTH;
+		if (!headerWritten) {
+			contentLength = (long) compressedCount;
+		}
+		writeCompressed(true);
+	}
+	
+	/**
+	 * Writes the buffer of the compressed body to the underlying output stream.
+	 * 
+	 * @param last {@code true} if this is the last data of the response.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private void writeCompressed(boolean last) throws IOException {
+		int length = compressedCount;
+		compressedCount = 0;
+		writeFramed(compressed, length, last);
+	}
+	
+	/**
+	 * Writes the given integer to the given array in the little-endian byte order.
+	 * 
+	 * @param array The given array.
+	 * @param offset The offset of the first written byte.
+	 * @param value The given integer.
+	 */
+	private static void writeIntLE(byte[] array, int offset, int value) {
+		for (int i = 0; i < 4; i ++) {
+			array[offset + i] = (byte) (value >>> (8 * i));
+		}
 	}
 	
 	/**
-	 * Generates the header and writes it to the underlying output stream.
+	 * Writes the given body data (and the header, if it has not been written yet)
+	 * to the underlying output stream in a single write, adding the chunk framing
+	 * if the chunked transfer encoding is used.<br>
+	 * The data is located in the given buffer after {@code CHUNK_HEADER_RESERVE}
+	 * bytes, which are used for the chunk size line.
 	 * 
+	 * @param data The given buffer.
+	 * @param length The length of the data.
+	 * @param last {@code true} if this is the last data of the response.
 	 * @throws IOException If an I/O error occurs.
 	 */
-	private void generateHeader() throws IOException {
-		charset = Charset.forName(encoding);
+	private void writeFramed(byte[] data, int length, boolean last) throws IOException {
+		byte[] header = headerWritten ? null : renderHeader();
+		int start = CHUNK_HEADER_RESERVE;
+		int end = CHUNK_HEADER_RESERVE + length;
+		if (chunked) {
+			if (length > 0) {
+				// Chunk size is written right before the data.
+				data[-- start] = '\n';
+				data[-- start] = '\r';
+				for (int size = length; size != 0; size >>>= 4) {
+					data[-- start] = HEX_DIGITS[size & 0xF];
+				}
+				System.arraycopy(CRLF, 0, data, end, CRLF.length);
+				end += CRLF.length;
+			}
+			if (last) {
+				System.arraycopy(LAST_CHUNK, 0, data, end, LAST_CHUNK.length);
+				end += LAST_CHUNK.length;
+				chunked = false;
+			}
+		}
 		
+		if (header != null || end > start) {
+			writeOut(header, data, start, end - start);
+		}
+	}
+	
+	/**
+	 * Writes {@code len} bytes from the given byte array starting at the given
+	 * offset to the underlying output stream, preceded by the given header
+	 * (if it is not {@code null}, and if not only the body is written).<br>
+	 * If the underlying stream is a {@link ChannelOutputStream}, the header and
+	 * the data are written using a single gathering write.
+	 * 
+	 * @param header The given header (or {@code null}).
+	 * @param data The given byte array.
+	 * @param offset The given offset.
+	 * @param len The number of bytes to write.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private void writeOut(byte[] header, byte[] data, int offset, int len) throws IOException {
+		if (header == null || bodyOnly) {
+			outputStream.write(data, offset, len);
+		} else if (outputStream instanceof ChannelOutputStream) {
+			((ChannelOutputStream) outputStream).writeFully(
+				ByteBuffer.wrap(header), ByteBuffer.wrap(data, offset, len)
+			);
+		} else {
+			outputStream.write(header);
+			outputStream.write(data, offset, len);
+		}
+	}
+	
+	/**
+	 * Renders the header and marks it as written.
+	 * 
+	 * @return The rendered header bytes.
+	 */
+	private byte[] renderHeader() {
 		StringBuilder builder = new StringBuilder("HTTP/1.1 ");
 		builder.append(statusCode).append(" ").append(statusText).append("\r\n");
 		
-		if (contentLength != null) {
-			builder.append("Content-Length: ").append(contentLength).append("\r\n");
+		if (hasBody()) {
+			if (contentLength != null) {
+				builder.append("Content-Length: ").append(contentLength).append("\r\n");
+			} else if (Boolean.TRUE.equals(keepAlive)) {
+				builder.append("Transfer-Encoding: chunked\r\n");
+				chunked = true;
+			}
+		}
+		
+		if (keepAlive != null) {
+			builder.append("Connection: ")
+					.append(keepAlive ? "keep-alive" : "close").append("\r\n");
 		}
 		
 		builder.append("Content-Type: ").append(mimeType);
@@ -360,6 +1001,17 @@ public class RequestContext {
 		}
 		builder.append("\r\n");
 		
+		if (deflater != null) {
+			builder.append("Content-Encoding: gzip\r\n");
+		}
+		if (compressibleTypes != null && compressibleTypes.test(mimeType)) {
+			builder.append("Vary: Accept-Encoding\r\n");
+		}
+		
+		for (String[] header : headers) {
+			builder.append(header[0]).append(": ").append(header[1]).append("\r\n");
+		}
+		
 		for (RCCookie cookie : outputCookies) {
 			builder.append("Set-Cookie: ")
 					.append(cookie.name).append("=\"").append(cookie.value).append("\"");
@@ -370,8 +1022,18 @@ public class RequestContext {
 		}
 		builder.append("\r\n");
 		
-		outputStream.write(builder.toString().getBytes(StandardCharsets.ISO_8859_1));
-		headerGenerated = true;
+		headerWritten = true;
+		return builder.toString().getBytes(StandardCharsets.ISO_8859_1);
+	}
+	
+	/**
+	 * Returns {@code true} if a response with the current status code has a body
+	 * (i.e. if it is not a 1xx, 204 or 304 response).
+	 * 
+	 * @return {@code true} if the response has a body.
+	 */
+	private boolean hasBody() {
+		return statusCode >= 200 && statusCode != 204 && statusCode != 304;
 	}
 	
 	/**
@@ -0,0 +1,307 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Server-wide in-memory cache of the rendered responses of cacheable routes,
+ * mapped using the keys defined by their {@link CachePolicy}.<br>
+ * An entry is valid until its time to live expires. Responses larger than the
+ * maximum entry size are never cached. When the total size of the cached bodies
+ * exceeds the capacity, the least recently used entries are evicted.<br>
+ * Concurrent misses of the same key are collapsed: only the first request renders
+ * the response, while the others wait for it and reuse it.<br>
+ * The numbers of cache hits, misses and collapsed misses are counted.
+ * 
+ * @author Mate Gasparini
+ */
+public class ResponseCache {
+	
+	/** Maximum total size (in bytes) of the cached bodies. */
+	private final long capacity;
+	
+	/** Maximum size (in bytes) of a single cached body. */
+	private final long maxEntrySize;
+	
+	/** Cached entries in the access order (least recently used first). */
+	private final Map<List<String>, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	
+	/** Responses which are currently being rendered. */
+	private final Map<List<String>, CompletableFuture<CachedResponse>> pending =
+		new ConcurrentHashMap<>();
+	
+	/** Total size (in bytes) of the cached bodies. */
+	private long totalSize;
+	
+	/** Number of cache hits. */
+	private final AtomicLong hits = new AtomicLong();
+	
+	/** Number of cache misses. */
+	private final AtomicLong misses = new AtomicLong();
+	
+	/** Number of misses which waited for the response rendered by another request. */
+	private final AtomicLong collapsed = new AtomicLong();
+	
+	/**
+	 * Constructor specifying the capacity and the maximum size of a cached body.
+	 * 
+	 * @param capacity The maximum total size (in bytes) of the cached bodies.
+	 * @param maxEntrySize The maximum size (in bytes) of a single cached body.
+	 * @throws IllegalArgumentException If any of the given sizes is negative.
+	 */
+	public ResponseCache(long capacity, long maxEntrySize) {
+		if (capacity < 0 || maxEntrySize < 0) {
+			throw new IllegalArgumentException("Cache sizes must not be negative.");
+		}
+		this.capacity = capacity;
+		this.maxEntrySize = Math.min(maxEntrySize, capacity);
+	}
+	
+	/**
+	 * Returns the cached response with the given key, or renders it using the
+	 * given renderer if it is not cached (or has expired).<br>
+	 * If the same response is already being rendered by another thread, the
+	 * calling thread waits for it instead. A successful ({@code 200}) response
+	 * is cached for the given duration.
+	 * 
+	 * @param key The given key.
+	 * @param ttl The duration (in ms) for which the rendered response is valid.
+	 * @param renderer The renderer of the response, which returns {@code null}
+	 * 			if the response has not been rendered (e.g. an error has been sent).
+	 * @return The response, or {@code null} if the renderer returned {@code null}.
+	 * @throws Exception If the renderer throws an exception.
+	 */
+	public CachedResponse get(List<String> key, long ttl, Callable<CachedResponse> renderer)
+			throws Exception {
+		CachedResponse response = lookup(key);
+		if (response != null) {
+			hits.incrementAndGet();
+			return response;
+		}
+		
+		CompletableFuture<CachedResponse> future = new CompletableFuture<>();
+		CompletableFuture<CachedResponse> other = pending.putIfAbsent(key, future);
+		if (other != null) {
+			collapsed.incrementAndGet();
+			try {
+				response = other.get();
+			} catch (ExecutionException ex) {
+				response = null;
+			}
+			// If the other request did not render the response, this one does it alone.
+			return response != null ? response : renderer.call();
+		}
+		
+		misses.incrementAndGet();
+		try {
+			response = renderer.call();
+			if (response != null && response.isCacheable()
+					&& response.body.length <= maxEntrySize) {
+				store(key, response, System.currentTimeMillis() + ttl);
+			}
+			future.complete(response);
+			return response;
+		} catch (Exception | Error ex) {
+			future.completeExceptionally(ex);
+			throw ex;
+		} finally {
+			pending.remove(key, future);
+		}
+	}
+	
+	/**
+	 * Returns the number of cache hits.
+	 * 
+	 * @return The number of cache hits.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+	
+	/**
+	 * Returns the number of cache misses (excluding the collapsed ones).
+	 * 
+	 * @return The number of cache misses.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+	
+	/**
+	 * Returns the number of misses which reused the response rendered
+	 * by another request.
+	 * 
+	 * @return The number of collapsed misses.
+	 */
+	public long getCollapsed() {
+		return collapsed.get();
+	}
+	
+	/**
+	 * Returns the total size (in bytes) of the currently cached bodies.
+	 * 
+	 * @return The total size of the cached bodies.
+	 */
+	public long size() {
+		synchronized (entries) {
+			return totalSize;
+		}
+	}
+	
+	/**
+	 * Returns the valid cached response with the given key, removing it if it
+	 * has expired.
+	 * 
+	 * @param key The given key.
+	 * @return The cached response, or {@code null} if there is no valid one.
+	 */
+	private CachedResponse lookup(List<String> key) {
+		synchronized (entries) {
+			CacheEntry entry = entries.get(key);
+			if (entry == null) {
+				return null;
+			}
+			if (entry.expiresAt > System.currentTimeMillis()) {
+				return entry.response;
+			}
+			entries.remove(key);
+			totalSize -= entry.response.body.length;
+			return null;
+		}
+	}
+	
+	/**
+	 * Stores the given response with the given key and expiration time,
+	 * and evicts the least recently used entries if needed.
+	 * 
+	 * @param key The given key.
+	 * @param response The given response.
+	 * @param expiresAt The expiration time (in ms).
+	 */
+	private void store(List<String> key, CachedResponse response, long expiresAt) {
+		synchronized (entries) {
+			CacheEntry old = entries.put(key, new CacheEntry(response, expiresAt));
+			if (old != null) {
+				totalSize -= old.response.body.length;
+			}
+			totalSize += response.body.length;
+			
+			long now = System.currentTimeMillis();
+			Iterator<CacheEntry> it = entries.values().iterator();
+			while (it.hasNext()) {
+				CacheEntry entry = it.next();
+				if (totalSize <= capacity && entry.expiresAt > now) {
+					break;
+				}
+				totalSize -= entry.response.body.length;
+				it.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Rendered response, i.e. its status, its headers (except the cookies and
+	 * the headers generated by the {@link RequestContext}) and its body.
+	 * 
+	 * @author Mate Gasparini
+	 */
+	public static class CachedResponse {
+		
+		/** Status code. */
+		private final int statusCode;
+		
+		/** Status text. */
+		private final String statusText;
+		
+		/** Mime type. */
+		private final String mimeType;
+		
+		/** Encoding name. */
+		private final String encoding;
+		
+		/** Added headers (names and values). */
+		private final List<String[]> headers;
+		
+		/** Body. */
+		private final byte[] body;
+		
+		/**
+		 * Constructor specifying the context which rendered the response
+		 * and the rendered body.
+		 * 
+		 * @param context The context which rendered the response.
+		 * @param body The rendered body.
+		 */
+		public CachedResponse(RequestContext context, byte[] body) {
+			this.statusCode = context.getStatusCode();
+			this.statusText = context.getStatusText();
+			this.mimeType = context.getMimeType();
+			this.encoding = context.getEncoding();
+			this.headers = new ArrayList<>(context.getHeaders());
+			this.body = body;
+		}
+		
+		/**
+		 * Returns {@code true} if the response can be cached, i.e. if it is
+		 * a successful ({@code 200}) response.
+		 * 
+		 * @return {@code true} if the response can be cached.
+		 */
+		public boolean isCacheable() {
+			return statusCode == 200;
+		}
+		
+		/**
+		 * Writes this response using the given context, whose header has not
+		 * been generated yet.
+		 * 
+		 * @param context The given context.
+		 * @throws IOException If an I/O error occurs.
+		 */
+		public void writeTo(RequestContext context) throws IOException {
+			context.setStatusCode(statusCode);
+			context.setStatusText(statusText);
+			context.setMimeType(mimeType);
+			context.setEncoding(encoding);
+			for (String[] header : headers) {
+				context.addHeader(header[0], header[1]);
+			}
+			context.setContentLength((long) body.length);
+			context.write(body);
+		}
+	}
+	
+	/**
+	 * Cached response with its expiration time.
+	 * 
+	 * @author Mate Gasparini
+	 */
+	private static class CacheEntry {
+		
+		/** Cached response. */
+		CachedResponse response;
+		
+		/** Expiration time (in ms). */
+		long expiresAt;
+		
+		/**
+		 * Constructor specifying the response and its expiration time.
+		 * 
+		 * @param response The response.
+		 * @param expiresAt The expiration time (in ms).
+		 */
+		public CacheEntry(CachedResponse response, long expiresAt) {
+			this.response = response;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -1,33 +1,96 @@
 package hr.fer.zemris.java.webserver;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PushbackInputStream;
-import java.net.ServerSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.Random;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
 
-import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
-import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.custom.scripting.exec.BudgetExceededException;
+import hr.fer.zemris.java.webserver.HttpRequestParser.Result;
 import hr.fer.zemris.java.webserver.RequestContext.RCCookie;
+import hr.fer.zemris.java.webserver.ResponseCache.CachedResponse;
+import hr.fer.zemris.java.webserver.WorkerRegistry.WorkerFactory;
+import hr.fer.zemris.java.webserver.WorkerScope.Scope;
+import hr.fer.zemris.java.webserver.log.AccessLog;
+import hr.fer.zemris.java.webserver.log.AccessLogFormat;
+import hr.fer.zemris.java.webserver.metrics.ServerMetrics;
+import hr.fer.zemris.java.webserver.metrics.ServerMetrics.Rejection;
+import hr.fer.zemris.java.webserver.metrics.ServerMetrics.Route;
+import hr.fer.zemris.java.webserver.session.ISessionStore;
+import hr.fer.zemris.java.webserver.session.InMemorySessionStore;
+import hr.fer.zemris.java.webserver.session.SessionEntry;
+import hr.fer.zemris.java.webserver.workers.MetricsWorker;
+import hr.fer.zemris.java.webserver.workers.ScriptProfileWorker;
 
 /**
  * Simple web server that provides functionality to process HTTP requests
  * and generating corresponding responses.<br>
- * It uses a fixed-size thread pool for processing the requests.<br>
+ * It uses a fixed-size thread pool with a bounded queue for processing the
+ * requests, or (in the <i>platform</i> and <i>virtual</i> thread models) a new
+ * platform or virtual thread for every task, with a limited number of tasks
+ * executed at the same time.<br>
+ * Under overload, connections exceeding the configured limits (in total or per
+ * client address) and requests which do not fit into the queue are answered
+ * with {@code 503 Service Unavailable}, and clients which do not send a request
+ * header in time are disconnected.<br>
+ * Connections are accepted either by a blocking server thread, or (in the
+ * <i>nio</i> I/O model) by a selector thread which reads the request headers
+ * without blocking and dispatches only complete requests to the thread pool.<br>
+ * Runtime metrics of the server are served in the Prometheus text format by a
+ * built-in worker (on the {@code /metrics} path by default).<br>
+ * Smart scripts can be instrumented, so their hot-spot profiles are served by
+ * another built-in worker (on the {@code /scriptProfile} path by default), and
+ * their executions are aborted with {@code 500 Internal Server Error} once they
+ * exceed the configured step or time budget.<br>
+ * Served requests can be recorded in an {@link AccessLog}, which is written
+ * asynchronously, so the worker threads never wait for the disk.<br>
+ * Responses of the workers annotated as {@link Cacheable} and of the routes
+ * listed in the cache configuration file (e.g. smart scripts) are rendered
+ * into memory and kept in a {@link ResponseCache}, so repeated direct requests
+ * with the same relevant parameters are answered without rendering them.<br>
+ * Bodies of compressible mime types are compressed using gzip for the clients
+ * which accept it: static files are served from their precompressed {@code .gz}
+ * siblings or from the compressed contents kept by the static file cache, while
+ * dynamic output is compressed while it is written.<br>
  * Most of the attributes are initialized using the server configuration file.<br>
  * When the program starts with a valid configuration path argument, the server
  * is constructed and the server thread is started.
@@ -36,12 +99,88 @@ import hr.fer.zemris.java.webserver.RequestContext.RCCookie;
  */
 public class SmartHttpServer {
 	
-	/** Duration (in ms) of the interval between every sessions map cleaning. */
-	private static final long SESSION_CLEANER_PERIOD = 300_000;
+	/** Duration (in ms) of the interval between every removal of expired sessions. */
+	private static final long SESSION_CLEANER_PERIOD = 1000;
 	
 	/** Session ID length. */
 	private static final int SID_LENGTH = 20;
 	
+	/** Default duration (in seconds) of waiting for the next request on a persistent connection. */
+	private static final int DEFAULT_KEEP_ALIVE_TIMEOUT = 5;
+	
+	/** Default maximum number of requests served over a single persistent connection. */
+	private static final int DEFAULT_KEEP_ALIVE_MAX_REQUESTS = 100;
+	
+	/** Duration (in ms) of the interval between every check for idle nio connections. */
+	private static final long IDLE_CHECK_PERIOD = 1000;
+	
+	/** Default maximum number of cached parsed smart scripts. */
+	private static final int DEFAULT_SCRIPT_CACHE_SIZE = 64;
+	
+	/** Default maximum total size (in bytes) of cached static files. */
+	private static final long DEFAULT_STATIC_CACHE_SIZE = 4 * 1024 * 1024;
+	
+	/** Default maximum size (in bytes) of a single cached static file. */
+	private static final long DEFAULT_STATIC_CACHE_MAX_FILE_SIZE = 64 * 1024;
+	
+	/** Default maximum number of cached entity tags of static files. */
+	private static final int DEFAULT_ETAG_CACHE_SIZE = 1024;
+	
+	/** Default maximum size (in bytes) of a request header. */
+	private static final int DEFAULT_MAX_HEADER_SIZE = 8192;
+	
+	/** Default maximum number of header fields of a request. */
+	private static final int DEFAULT_MAX_HEADER_COUNT = 100;
+	
+	/** Default maximum number of open connections. */
+	private static final int DEFAULT_MAX_CONNECTIONS = 1024;
+	
+	/** Default maximum number of open connections from a single client address (unlimited). */
+	private static final int DEFAULT_MAX_CONNECTIONS_PER_ADDRESS = 0;
+	
+	/** Default maximum number of tasks executed at the same time by their own threads. */
+	private static final int DEFAULT_MAX_VIRTUAL_THREADS = 10000;
+	
+	/** Default maximum number of requests waiting for a worker thread. */
+	private static final int DEFAULT_MAX_QUEUED_TASKS = 256;
+	
+	/** Default duration (in seconds) of waiting for a complete request header. */
+	private static final int DEFAULT_HEADER_READ_TIMEOUT = 10;
+	
+	/** Default number of seconds after which a rejected client may retry. */
+	private static final int DEFAULT_RETRY_AFTER = 1;
+	
+	/** Default maximum total size (in bytes) of cached responses. */
+	private static final long DEFAULT_RESPONSE_CACHE_SIZE = 8 * 1024 * 1024;
+	
+	/** Default maximum size (in bytes) of a single cached response. */
+	private static final long DEFAULT_RESPONSE_CACHE_MAX_ENTRY_SIZE = 256 * 1024;
+	
+	/** Default mime types (or their {@code type/*} ranges) whose bodies are compressed. */
+	private static final String DEFAULT_COMPRESSIBLE_TYPES =
+		"text/*, application/javascript, application/json, image/svg+xml";
+	
+	/** Default minimum size (in bytes) of a compressed body. */
+	private static final int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+	
+	/** Suffix of the precompressed siblings of static files. */
+	private static final String GZIP_SUFFIX = ".gz";
+	
+	/** Default number of access log records buffered before they are written. */
+	private static final int DEFAULT_ACCESS_LOG_BUFFER_SIZE = 8192;
+	
+	/** Default maximum size (in bytes) of the access log file. */
+	private static final long DEFAULT_ACCESS_LOG_MAX_FILE_SIZE = 10 * 1024 * 1024;
+	
+	/** Default number of kept rotated access log files. */
+	private static final int DEFAULT_ACCESS_LOG_MAX_FILES = 5;
+	
+	/** Default URL path of the built-in metrics worker. */
+	private static final String DEFAULT_METRICS_PATH = "/metrics";
+	
+	/** Default URL path of the built-in script profile worker. */
+	private static final String DEFAULT_SCRIPT_PROFILE_PATH = "/scriptProfile";
+	
 	/** Server's IP address. */
 	@SuppressWarnings("unused")
 	private String address;
@@ -49,20 +188,66 @@ public class SmartHttpServer {
 	/** Server's domain name. */
 	private String domainName;
 	
-	/** Port used by the server. */
-	private int port;
+	/** Port used by the server (configured as 0, it is replaced by the bound ephemeral port). */
+	private volatile int port;
 	
 	/** Number of worker threads. */
 	private int workerThreads;
 	
+	/**
+	 * Thread model of the tasks: {@code pool} (the fixed-size thread pool),
+	 * {@code platform} (a new platform thread per task) or {@code virtual}
+	 * (a new virtual thread per task).
+	 */
+	private String threadModel;
+	
+	/** Permits of the tasks executed at the same time by their own threads (or {@code null}). */
+	private Semaphore taskPermits;
+	
+	/** Lock which guards starting and stopping the server. */
+	private final Lock lifecycleLock = new ReentrantLock();
+	
+	/** Flag which marks that the selector-driven (nio) I/O model is used. */
+	private boolean nioMode;
+	
 	/** Cookie session duration. */
 	private int sessionTimeout;
 	
+	/** Duration (in ms) of waiting for the next request on a persistent connection. */
+	private int keepAliveTimeout;
+	
+	/** Maximum number of requests served over a single persistent connection. */
+	private int keepAliveMaxRequests;
+	
+	/** Maximum size (in bytes) of a request header. */
+	private int maxHeaderSize;
+	
+	/** Maximum number of header fields of a request. */
+	private int maxHeaderCount;
+	
+	/** Maximum number of requests waiting for a worker thread. */
+	private int maxQueuedTasks;
+	
+	/** Duration (in ms) of waiting for a complete request header. */
+	private int headerReadTimeout;
+	
+	/** Limiter of the number of open connections. */
+	private ConnectionLimiter connectionLimiter;
+	
+	/** Response sent to the rejected clients. */
+	private byte[] serviceUnavailable;
+	
+	/** Mime types whose bodies are compressed (or {@code null} if nothing is compressed). */
+	private Predicate<String> compressibleTypes;
+	
+	/** Minimum size (in bytes) of a compressed body. */
+	private int compressionThreshold;
+	
 	/** Map containing all supported mime types. */
 	private Map<String, String> mimeTypes;
 	
 	/** Server thread that delegates accepted client requests to the worker threads. */
-	private ServerThread serverThread;
+	private Thread serverThread;
 	
 	/** Worker threads' thread pool. */
 	private ExecutorService threadPool;
@@ -70,14 +255,35 @@ public class SmartHttpServer {
 	/** Server's web root directory */
 	private Path documentRoot;
 	
-	/** Map containing all supported {@link IWebWorker}s. */
-	private Map<String, IWebWorker> workersMap;
+	/** Map containing factories of all {@link IWebWorker}s mapped to URL paths. */
+	private Map<String, WorkerFactory> workersMap;
+	
+	/** Registry of the convention-based {@link IWebWorker}s. */
+	private WorkerRegistry workerRegistry;
+	
+	/** Cache of compiled smart scripts. */
+	private SmartScriptCache scriptCache;
+	
+	/** Cache of small static files. */
+	private StaticFileCache fileCache;
+	
+	/** Cache of entity tags of static files. */
+	private EntityTagCache etagCache;
+	
+	/** Cache of rendered responses (or {@code null} if responses are not cached). */
+	private ResponseCache responseCache;
+	
+	/** Cache policies of the routes given by the cache configuration file (mapped to URL paths). */
+	private Map<String, CachePolicy> cachePolicies = new HashMap<>();
 	
-	/** Map containing all currently active sessions (mapped using session IDs). */
-	private Map<String, SessionMapEntry> sessions = new HashMap<>();
+	/** Store containing all currently active sessions (mapped using session IDs). */
+	private ISessionStore sessions;
 	
-	/** Random number generator used for generating session IDs. */
-	private Random sessionRandom = new Random();
+	/** Access log of the served requests (or {@code null} if requests are not logged). */
+	private AccessLog accessLog;
+	
+	/** Runtime metrics of the server. */
+	private ServerMetrics metrics = new ServerMetrics(() -> sessions.size());
 	
 	/**
 	 * Constructor specifying the file name of the server configuration file name.
@@ -97,13 +303,158 @@ public class SmartHttpServer {
 		domainName = serverProperties.getProperty("server.domainName");
 		port = Integer.parseInt(serverProperties.getProperty("server.port"));
 		workerThreads = Integer.parseInt(serverProperties.getProperty("server.workerThreads"));
+		nioMode = "nio".equalsIgnoreCase(
+			serverProperties.getProperty("server.ioModel", "blocking").trim()
+		);
+		threadModel = serverProperties.getProperty("server.threadModel", "pool").trim().toLowerCase();
+		if (!threadModel.equals("platform") && !threadModel.equals("virtual")) {
+			threadModel = "pool";
+		} else {
+			taskPermits = new Semaphore(Integer.parseInt(serverProperties.getProperty(
+				"server.maxVirtualThreads", String.valueOf(DEFAULT_MAX_VIRTUAL_THREADS)
+			).trim()));
+		}
 		sessionTimeout = Integer.parseInt(serverProperties.getProperty("session.timeout"));
+		keepAliveTimeout = 1000 * Integer.parseInt(serverProperties.getProperty(
+			"server.keepAliveTimeout", String.valueOf(DEFAULT_KEEP_ALIVE_TIMEOUT)
+		).trim());
+		keepAliveMaxRequests = Integer.parseInt(serverProperties.getProperty(
+			"server.keepAliveMaxRequests", String.valueOf(DEFAULT_KEEP_ALIVE_MAX_REQUESTS)
+		).trim());
+		maxHeaderSize = Integer.parseInt(serverProperties.getProperty(
+			"server.maxHeaderSize", String.valueOf(DEFAULT_MAX_HEADER_SIZE)
+		).trim());
+		maxHeaderCount = Integer.parseInt(serverProperties.getProperty(
+			"server.maxHeaderCount", String.valueOf(DEFAULT_MAX_HEADER_COUNT)
+		).trim());
+		connectionLimiter = new ConnectionLimiter(
+			Integer.parseInt(serverProperties.getProperty(
+				"server.maxConnections", String.valueOf(DEFAULT_MAX_CONNECTIONS)
+			).trim()),
+			Integer.parseInt(serverProperties.getProperty(
+				"server.maxConnectionsPerAddress", String.valueOf(DEFAULT_MAX_CONNECTIONS_PER_ADDRESS)
+			).trim())
+		);
+		maxQueuedTasks = Integer.parseInt(serverProperties.getProperty(
+			"server.maxQueuedTasks", String.valueOf(DEFAULT_MAX_QUEUED_TASKS)
+		).trim());
+		headerReadTimeout = 1000 * Integer.parseInt(serverProperties.getProperty(
+			"server.headerReadTimeout", String.valueOf(DEFAULT_HEADER_READ_TIMEOUT)
+		).trim());
+		serviceUnavailable = (
+			"HTTP/1.1 503 Service Unavailable\r\n" +
+			"Retry-After: " + serverProperties.getProperty(
+				"server.retryAfter", String.valueOf(DEFAULT_RETRY_AFTER)
+			).trim() + "\r\n" +
+			"Content-Length: 0\r\n" +
+			"Connection: close\r\n\r\n"
+		).getBytes(StandardCharsets.ISO_8859_1);
 		documentRoot = Paths.get(serverProperties.getProperty("server.documentRoot"));
+		int scriptCacheSize = Integer.parseInt(serverProperties.getProperty(
+			"server.scriptCacheSize", String.valueOf(DEFAULT_SCRIPT_CACHE_SIZE)
+		).trim());
+		if (Boolean.parseBoolean(serverProperties.getProperty(
+				"server.precompiledScripts", "false").trim())) {
+			String precompiledDir = serverProperties.getProperty(
+				"server.precompiledScriptsDir", ""
+			).trim();
+			scriptCache = new SmartScriptCache(scriptCacheSize,
+				precompiledDir.isEmpty() ? null : Paths.get(precompiledDir), documentRoot);
+		} else {
+			scriptCache = new SmartScriptCache(scriptCacheSize);
+		}
+		boolean scriptProfiling = Boolean.parseBoolean(serverProperties.getProperty(
+			"server.scriptProfiling", "false"
+		).trim());
+		long scriptMaxSteps = Long.parseLong(serverProperties.getProperty(
+			"server.scriptMaxSteps", "0"
+		).trim());
+		long scriptMaxTime = Long.parseLong(serverProperties.getProperty(
+			"server.scriptMaxTime", "0"
+		).trim());
+		if (scriptProfiling || scriptMaxSteps > 0 || scriptMaxTime > 0) {
+			scriptCache.instrument(scriptMaxSteps, scriptMaxTime);
+		}
+		fileCache = new StaticFileCache(
+			Long.parseLong(serverProperties.getProperty(
+				"server.staticCacheSize", String.valueOf(DEFAULT_STATIC_CACHE_SIZE)
+			).trim()),
+			Long.parseLong(serverProperties.getProperty(
+				"server.staticCacheMaxFileSize", String.valueOf(DEFAULT_STATIC_CACHE_MAX_FILE_SIZE)
+			).trim())
+		);
+		etagCache = new EntityTagCache(Integer.parseInt(serverProperties.getProperty(
+			"server.etagCacheSize", String.valueOf(DEFAULT_ETAG_CACHE_SIZE)
+		).trim()));
+		long responseCacheSize = Long.parseLong(serverProperties.getProperty(
+			"server.responseCacheSize", String.valueOf(DEFAULT_RESPONSE_CACHE_SIZE)
+		).trim());
+		if (responseCacheSize > 0) {
+			responseCache = new ResponseCache(
+				responseCacheSize,
+				Long.parseLong(serverProperties.getProperty(
+					"server.responseCacheMaxEntrySize",
+					String.valueOf(DEFAULT_RESPONSE_CACHE_MAX_ENTRY_SIZE)
+				).trim())
+			);
+			String cacheConfig = serverProperties.getProperty("server.responseCacheConfig");
+			if (cacheConfig != null) {
+				initCachePolicies(cacheConfig.trim());
+			}
+		}
+		initCompressibleTypes(serverProperties.getProperty(
+			"server.compressibleTypes", DEFAULT_COMPRESSIBLE_TYPES
+		));
+		compressionThreshold = Integer.parseInt(serverProperties.getProperty(
+			"server.compressionThreshold", String.valueOf(DEFAULT_COMPRESSION_THRESHOLD)
+		).trim());
 		
 		initMimeTypes(serverProperties.getProperty("server.mimeConfig"));
 		initWorkersMap(serverProperties.getProperty("server.workers"));
+		String metricsPath = serverProperties.getProperty(
+			"server.metricsPath", DEFAULT_METRICS_PATH
+		).trim();
+		if (!metricsPath.isEmpty()) {
+			workersMap.putIfAbsent(
+				metricsPath.substring(1), WorkerRegistry.singletonFactory(new MetricsWorker(metrics))
+			);
+		}
+		String scriptProfilePath = serverProperties.getProperty(
+			"server.scriptProfilePath", DEFAULT_SCRIPT_PROFILE_PATH
+		).trim();
+		if (scriptProfiling && !scriptProfilePath.isEmpty()) {
+			workersMap.putIfAbsent(
+				scriptProfilePath.substring(1),
+				WorkerRegistry.singletonFactory(new ScriptProfileWorker(scriptCache, documentRoot))
+			);
+		}
+		workerRegistry = new WorkerRegistry(
+			ClientWorker.WORKERS_PACKAGE, this.getClass().getClassLoader()
+		);
+		initSessionStore(serverProperties.getProperty(
+			"session.store", InMemorySessionStore.class.getName()
+		).trim(), serverProperties);
+		String accessLogPath = serverProperties.getProperty("server.accessLog", "").trim();
+		if (!accessLogPath.isEmpty()) {
+			accessLog = new AccessLog(
+				Paths.get(accessLogPath),
+				new AccessLogFormat(serverProperties.getProperty(
+					"server.accessLogFormat", AccessLogFormat.DEFAULT_PATTERN
+				).trim()),
+				Integer.parseInt(serverProperties.getProperty(
+					"server.accessLogBufferSize", String.valueOf(DEFAULT_ACCESS_LOG_BUFFER_SIZE)
+				).trim()),
+				Long.parseLong(serverProperties.getProperty(
+					"server.accessLogMaxFileSize", String.valueOf(DEFAULT_ACCESS_LOG_MAX_FILE_SIZE)
+				).trim()),
+				Integer.parseInt(serverProperties.getProperty(
+					"server.accessLogMaxFiles", String.valueOf(DEFAULT_ACCESS_LOG_MAX_FILES)
+				).trim()),
+				metrics.getAccessLogDropped()
+			);
+		}
 		
-		serverThread = new ServerThread();
+		serverThread = nioMode ? new SelectorThread() : new ServerThread();
 		startSessionCleaner();
 	}
 	
@@ -125,21 +476,167 @@ public class SmartHttpServer {
 	/**
 	 * Starts the server thread and initializes the worker threads.
 	 */
-	protected synchronized void start() {
-		if (!serverThread.isAlive()) {
-			serverThread.start();
+	protected void start() {
+		lifecycleLock.lock();
+		try {
+			if (accessLog != null && !serverThread.isAlive()) {
+				try {
+					accessLog.start();
+				} catch (IOException ex) {
+					throw new IllegalStateException("Access log cannot be opened.", ex);
+				}
+			}
+			if (threadModel.equals("virtual")) {
+				threadPool = newVirtualThreadExecutor();
+			} else if (threadModel.equals("platform")) {
+				threadPool = Executors.newCachedThreadPool();
+			} else {
+				threadPool = new ThreadPoolExecutor(
+					workerThreads, workerThreads, 0, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<>(maxQueuedTasks)
+				);
+			}
+			if (!serverThread.isAlive()) {
+				serverThread.start();
+			}
+		} finally {
+			lifecycleLock.unlock();
+		}
+	}
+	
+	/**
+	 * Interrupts the server thread and shuts down the worker thread pool.<br>
+	 * The access log is closed once the already started requests are served.
+	 */
+	protected void stop() {
+		lifecycleLock.lock();
+		try {
+			if (serverThread.isAlive()) {
+				serverThread.interrupt();
+			}
+			threadPool.shutdown();
+			if (accessLog != null) {
+				try {
+					threadPool.awaitTermination(keepAliveTimeout, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+				accessLog.close();
+			}
+		} finally {
+			lifecycleLock.unlock();
+		}
+	}
+	
+	/**
+	 * Returns the port used by the server.<br>
+	 * If the server is configured to use port 0, the bound ephemeral port
+	 * is returned once the server thread has bound it (and 0 before that).
+	 * 
+	 * @return The port used by the server.
+	 */
+	protected int getPort() {
+		return port;
+	}
+	
+	/**
+	 * Creates the executor which starts a new virtual thread for every task.<br>
+	 * Virtual threads are available since Java 21, so the executor is created
+	 * reflectively. On older runtimes, a new platform thread is started for
+	 * every task instead.
+	 * 
+	 * @return The created executor.
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class
+				.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException ex) {
+			System.err.println("Virtual threads are not supported, platform threads are used instead.");
+			return Executors.newCachedThreadPool();
+		}
+	}
+	
+	/**
+	 * Submits the given client worker to the worker thread pool.<br>
+	 * If the pool's queue is full (or all thread-per-task permits are taken),
+	 * the worker rejects its connection instead.
+	 * 
+	 * @param worker The given client worker.
+	 */
+	private void submit(ClientWorker worker) {
+		metrics.taskQueued();
+		Runnable task = worker;
+		if (taskPermits != null) {
+			if (!taskPermits.tryAcquire()) {
+				metrics.taskRejected();
+				worker.reject();
+				return;
+			}
+			task = () -> {
+				try {
+					worker.run();
+				} finally {
+					taskPermits.release();
+				}
+			};
+		}
+		
+		try {
+			threadPool.execute(task);
+		} catch (RejectedExecutionException ex) {
+			if (taskPermits != null) {
+				taskPermits.release();
+			}
+			metrics.taskRejected();
+			worker.reject();
 		}
-		threadPool = Executors.newFixedThreadPool(workerThreads);
 	}
 	
 	/**
-	 * Interrupts the server thread and shuts down the worker thread pool.
+	 * Admits the given newly accepted connection if the connection limits
+	 * allow it. Otherwise, the connection is rejected and closed.
+	 * 
+	 * @param channel The given connection.
+	 * @return {@code true} if the connection is admitted.
 	 */
-	protected synchronized void stop() {
-		if (serverThread.isAlive()) {
-			serverThread.interrupt();
+	private boolean admit(SocketChannel channel) {
+		metrics.connectionAccepted();
+		Rejection rejection = connectionLimiter.tryAcquire(channel.socket().getInetAddress());
+		if (rejection == null) {
+			return true;
 		}
-		threadPool.shutdown();
+		metrics.connectionRejected(rejection);
+		writeServiceUnavailable(channel);
+		try {
+			channel.close();
+		} catch (IOException ignorable) {}
+		metrics.connectionClosed();
+		return false;
+	}
+	
+	/**
+	 * Releases the limits taken by an admitted connection from the given
+	 * client address, which has been closed.
+	 * 
+	 * @param address The given client address.
+	 */
+	private void released(InetAddress address) {
+		connectionLimiter.release(address);
+		metrics.connectionClosed();
+	}
+	
+	/**
+	 * Writes the {@code 503 Service Unavailable} response to the given channel
+	 * without waiting (as much of it as fits into the socket's send buffer),
+	 * ignoring any errors.
+	 * 
+	 * @param channel The given channel.
+	 */
+	private void writeServiceUnavailable(SocketChannel channel) {
+		try {
+			channel.write(ByteBuffer.wrap(serviceUnavailable));
+		} catch (IOException ignorable) {}
 	}
 	
 	/**
@@ -162,6 +659,35 @@ public class SmartHttpServer {
 		}
 	}
 	
+	/**
+	 * Initializes the predicate of compressible mime types using the given
+	 * comma-separated mime types, where {@code type/*} matches all subtypes
+	 * of the type. If no types are given, nothing is compressed.
+	 * 
+	 * @param types The given comma-separated mime types.
+	 */
+	private void initCompressibleTypes(String types) {
+		Set<String> typeSet = new HashSet<>();
+		for (String type : types.split(",")) {
+			if (!type.trim().isEmpty()) {
+				typeSet.add(type.trim().toLowerCase());
+			}
+		}
+		if (typeSet.isEmpty()) {
+			return;
+		}
+		
+		compressibleTypes = mimeType -> {
+			String type = mimeType.toLowerCase();
+			int semicolon = type.indexOf(';');
+			if (semicolon >= 0) {
+				type = type.substring(0, semicolon).trim();
+			}
+			return typeSet.contains(type)
+				|| typeSet.contains(type.substring(0, type.indexOf('/') + 1) + "*");
+		};
+	}
+	
 	/**
 	 * Initializes the {@code Map} of supported workers.
 	 * 
@@ -185,15 +711,66 @@ public class SmartHttpServer {
 			String fqcn = workersProperties.getProperty(propertyName);
 			try {
 				Class<?> referenceToClass = this.getClass().getClassLoader().loadClass(fqcn);
-				Object newObject = referenceToClass.getConstructor().newInstance();
-				IWebWorker iww = (IWebWorker) newObject;
-				workersMap.put(path, iww);
+				WorkerFactory factory = WorkerRegistry.createFactory(referenceToClass, Scope.SINGLETON);
+				if (factory == null) {
+					throw new IllegalArgumentException("Invalid worker class: " + fqcn);
+				}
+				workersMap.put(path, factory);
 			} catch (ReflectiveOperationException ex) {
 				ex.printStackTrace();
 			}
 		}
 	}
 	
+	/**
+	 * Initializes the {@code Map} of cache policies of the routes which cannot
+	 * declare their own policy (e.g. smart scripts).
+	 * 
+	 * @param configFileName Path to the cache configuration file.
+	 * @throws IllegalArgumentException If the file cannot be read or a policy is invalid.
+	 */
+	private void initCachePolicies(String configFileName) {
+		Properties cacheProperties = new Properties();
+		try {
+			cacheProperties.load(Files.newInputStream(Paths.get(configFileName)));
+		} catch (IOException ex) {
+			throw new IllegalArgumentException(
+				"Invalid cache config file path: " + configFileName);
+		}
+		for (String propertyName : cacheProperties.stringPropertyNames()) {
+			if (propertyName.endsWith(".parameters")
+					|| propertyName.endsWith(".persistentParameters")) {
+				continue;
+			}
+			cachePolicies.put(
+				propertyName.substring(1), CachePolicy.of(cacheProperties, propertyName)
+			);
+		}
+	}
+	
+	/**
+	 * Instantiates the session store given by its fully qualified class name.<br>
+	 * If the session store has a constructor accepting the server properties,
+	 * it is used instead of the default constructor.
+	 * 
+	 * @param fqcn The fully qualified class name of the session store.
+	 * @param serverProperties The server properties.
+	 * @throws IllegalArgumentException If the session store cannot be instantiated.
+	 */
+	private void initSessionStore(String fqcn, Properties serverProperties) {
+		try {
+			Class<?> referenceToClass = this.getClass().getClassLoader().loadClass(fqcn);
+			try {
+				sessions = (ISessionStore) referenceToClass.getConstructor(Properties.class)
+					.newInstance(serverProperties);
+			} catch (NoSuchMethodException ex) {
+				sessions = (ISessionStore) referenceToClass.getConstructor().newInstance();
+			}
+		} catch (ReflectiveOperationException | ClassCastException ex) {
+			throw new IllegalArgumentException("Invalid session store: " + fqcn, ex);
+		}
+	}
+	
 	/**
 	 * Starts the daemonic session cleaner thread.
 	 */
@@ -203,13 +780,7 @@ public class SmartHttpServer {
 				try {
 					Thread.sleep(SESSION_CLEANER_PERIOD);
 				} catch (InterruptedException ignorable) {}
-				synchronized (sessions) {
-					sessions.entrySet().removeIf(
-						session -> !SmartUtil.timestampStillValid(
-							session.getValue().validUntil
-						)
-					);
-				}
+				sessions.removeExpired();
 			}
 		});
 		sessionCleaner.setDaemon(true);
@@ -218,7 +789,9 @@ public class SmartHttpServer {
 	
 	/**
 	 * Server thread used for accepting client requests and delegating them
-	 * to the worker thread pool.
+	 * to the worker thread pool.<br>
+	 * Connections are accepted as (blocking) socket channels, so static files
+	 * can be transferred to them directly.
 	 * 
 	 * @author Mate Gasparini
 	 */
@@ -226,12 +799,17 @@ public class SmartHttpServer {
 		
 		@Override
 		public void run() {
-			try (ServerSocket serverSocket = new ServerSocket(port)) {
-				while (true) {
-					Socket client = serverSocket.accept();
-					ClientWorker cw = new ClientWorker(client);
-					threadPool.submit(cw);
+			try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+				serverChannel.bind(new InetSocketAddress(port));
+				port = ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+				while (!isInterrupted()) {
+					SocketChannel client = serverChannel.accept();
+					if (admit(client)) {
+						submit(new ClientWorker(client.socket()));
+					}
 				}
+			} catch (ClosedByInterruptException ex) {
+				// The server has been stopped.
 			} catch (IOException ex) {
 				ex.printStackTrace();
 			}
@@ -239,8 +817,220 @@ public class SmartHttpServer {
 	}
 	
 	/**
-	 * {@code Runnable} class used for processing a request from the specified
-	 * client socket.
+	 * Server thread used in the <i>nio</i> I/O model.<br>
+	 * A single {@link Selector} is used for accepting connections and reading
+	 * request headers from all of them without blocking. Only complete requests
+	 * are delegated to the worker thread pool, so idle or slow clients
+	 * do not occupy any worker threads.
+	 * 
+	 * @author Mate Gasparini
+	 */
+	protected class SelectorThread extends Thread {
+		
+		/** Persistent connections which should be registered for reading again. */
+		private Queue<NioConnection> resumed = new ConcurrentLinkedQueue<>();
+		
+		/** Selector used by this thread. */
+		private volatile Selector selector;
+		
+		/** Timestamp (in ms) of the last check for idle connections. */
+		private long lastIdleCheck;
+		
+		@Override
+		public void run() {
+			try (Selector selector = Selector.open();
+					ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+				this.selector = selector;
+				serverChannel.bind(new InetSocketAddress(port));
+				port = ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+				serverChannel.configureBlocking(false);
+				serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+				
+				while (!isInterrupted()) {
+					selector.select(keepAliveTimeout);
+					registerResumed();
+					closeIdle(selector);
+					Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+					while (it.hasNext()) {
+						SelectionKey key = it.next();
+						it.remove();
+						try {
+							if (!key.isValid()) {
+								continue;
+							}
+							if (key.isAcceptable()) {
+								accept(serverChannel, selector);
+							} else if (key.isReadable()) {
+								read(key);
+							}
+						} catch (IOException ex) {
+							closeQuietly(key);
+						}
+					}
+				}
+			} catch (IOException ex) {
+				ex.printStackTrace();
+			}
+		}
+		
+		/**
+		 * Accepts all pending connections and registers them for reading.
+		 * 
+		 * @param serverChannel The server socket channel.
+		 * @param selector The selector.
+		 * @throws IOException If an I/O error occurs.
+		 */
+		private void accept(ServerSocketChannel serverChannel, Selector selector)
+				throws IOException {
+			SocketChannel channel;
+			while ((channel = serverChannel.accept()) != null) {
+				channel.configureBlocking(false);
+				if (!admit(channel)) {
+					continue;
+				}
+				NioConnection connection = new NioConnection(
+					channel, new HttpRequestParser(maxHeaderSize, maxHeaderCount),
+					metrics.getBytesWritten()
+				);
+				connection.setKey(channel.register(selector, SelectionKey.OP_READ, connection));
+			}
+		}
+		
+		/**
+		 * Called by a worker thread when it finished a response on the given
+		 * persistent connection.<br>
+		 * If the next (pipelined) request has already been received, it is
+		 * immediately delegated to the worker thread pool. Otherwise, the
+		 * connection is registered for reading again.
+		 * 
+		 * @param connection The given connection.
+		 */
+		public void resume(NioConnection connection) {
+			HttpRequestParser request = connection.getRequest();
+			request.next();
+			Result result = request.parse();
+			if (result != Result.INCOMPLETE) {
+				submit(new ClientWorker(this, connection, result));
+				return;
+			}
+			
+			connection.touch();
+			connection.clearRequestStart();
+			if (!request.isEmpty()) {
+				connection.markRequestStart();
+			}
+			resumed.add(connection);
+			selector.wakeup();
+		}
+		
+		/**
+		 * Registers all resumed connections for reading.
+		 */
+		private void registerResumed() {
+			NioConnection connection;
+			while ((connection = resumed.poll()) != null) {
+				SelectionKey key = connection.getKey();
+				if (key.isValid()) {
+					key.interestOps(SelectionKey.OP_READ);
+				}
+			}
+		}
+		
+		/**
+		 * Closes all connections which are waiting for a request for longer than
+		 * the keep-alive timeout, and all connections which have not sent
+		 * a complete request header within the header read timeout.
+		 * 
+		 * @param selector The selector.
+		 */
+		private void closeIdle(Selector selector) {
+			long now = System.currentTimeMillis();
+			if (now - lastIdleCheck < IDLE_CHECK_PERIOD) {
+				return;
+			}
+			lastIdleCheck = now;
+			for (SelectionKey key : selector.keys()) {
+				if (!key.isValid() || key.interestOps() != SelectionKey.OP_READ) {
+					continue;
+				}
+				NioConnection connection = (NioConnection) key.attachment();
+				long requestStart = connection.getRequestStart();
+				if (requestStart != 0) {
+					if (now - requestStart > headerReadTimeout) {
+						metrics.connectionRejected(Rejection.TIMEOUT);
+						closeQuietly(key);
+					}
+				} else if (now - connection.getLastActive() > keepAliveTimeout) {
+					closeQuietly(key);
+				}
+			}
+		}
+		
+		/**
+		 * Reads and parses the available request bytes from the connection attached
+		 * to the given key and, once the request header is complete (or invalid),
+		 * delegates it to the worker thread pool.
+		 * 
+		 * @param key The given selection key.
+		 * @throws IOException If an I/O error occurs.
+		 */
+		private void read(SelectionKey key) throws IOException {
+			NioConnection connection = (NioConnection) key.attachment();
+			if (connection.read() < 0) {
+				closeQuietly(key);
+				return;
+			}
+			connection.touch();
+			connection.markRequestStart();
+			
+			Result result = connection.getRequest().parse();
+			if (result != Result.INCOMPLETE) {
+				key.interestOps(0);
+				submit(new ClientWorker(this, connection, result));
+			}
+		}
+		
+		/**
+		 * Cancels the given key and closes its channel, ignoring any errors.
+		 * 
+		 * @param key The given selection key.
+		 */
+		private void closeQuietly(SelectionKey key) {
+			InetAddress address = key.attachment() instanceof NioConnection
+				? ((SocketChannel) key.channel()).socket().getInetAddress()
+				: null;
+			key.cancel();
+			try {
+				key.channel().close();
+			} catch (IOException ignorable) {}
+			if (address != null) {
+				released(address);
+			}
+		}
+	}
+	
+	/**
+	 * Renderer of the response of a single route, which writes it using
+	 * the current request context.
+	 * 
+	 * @author Mate Gasparini
+	 */
+	private interface Renderer {
+		
+		/**
+		 * Renders the response.
+		 * 
+		 * @throws Exception If some type of error (e.g. I/O) occurs.
+		 */
+		void render() throws Exception;
+	}
+	
+	/**
+	 * {@code Runnable} class used for processing requests from the specified
+	 * client socket.<br>
+	 * Persistent (keep-alive) connections are supported: requests received over
+	 * the same connection (including pipelined ones) are processed in order,
+	 * until the client or the server decides to close the connection.
 	 * 
 	 * @author Mate Gasparini
 	 */
@@ -258,8 +1048,8 @@ public class SmartHttpServer {
 		/** Specified client socket. */
 		private Socket csocket;
 		
-		/** Wrapped client socket's input stream. */
-		private PushbackInputStream istream;
+		/** Client socket's input stream. */
+		private InputStream istream;
 		
 		/** Client socket's output stream. */
 		private OutputStream ostream;
@@ -291,6 +1081,36 @@ public class SmartHttpServer {
 		/** Request context reference. */
 		private RequestContext context;
 		
+		/** Parser of the requests received from the client. */
+		private HttpRequestParser request;
+		
+		/** Result of parsing the request which has already been read by the selector thread. */
+		private Result parseResult;
+		
+		/** Connection accepted by the selector thread (or {@code null}). */
+		private NioConnection connection;
+		
+		/** Selector thread which accepted the connection (or {@code null}). */
+		private SelectorThread selectorThread;
+		
+		/** Marks whether the connection is kept alive after the current response. */
+		private boolean keepAlive;
+		
+		/** Marks whether the client accepts gzip-compressed bodies of the current response. */
+		private boolean gzipAccepted;
+		
+		/** Marks that an error response has been sent for the current request. */
+		private boolean errorSent;
+		
+		/** Status code of the error response sent for the current request. */
+		private int errorStatus;
+		
+		/** The {@link System#nanoTime()} at which this worker was submitted to the pool. */
+		private final long queuedAt = System.nanoTime();
+		
+		/** Type of the route which serves the current request (or {@code null}). */
+		private Route route;
+		
 		/**
 		 * Constructor specifying the client socket.
 		 * 
@@ -300,120 +1120,297 @@ public class SmartHttpServer {
 			this.csocket = csocket;
 		}
 		
+		/**
+		 * Constructor specifying the connection accepted by the given selector thread
+		 * and the result of parsing its already read request header.
+		 * 
+		 * @param selectorThread The given selector thread.
+		 * @param connection The specified connection.
+		 * @param parseResult The result of parsing the already read request header.
+		 */
+		public ClientWorker(SelectorThread selectorThread,
+				NioConnection connection, Result parseResult) {
+			this.selectorThread = selectorThread;
+			this.connection = connection;
+			this.csocket = connection.getChannel().socket();
+			this.ostream = connection.getOutputStream();
+			this.request = connection.getRequest();
+			this.parseResult = parseResult;
+		}
+		
 		@Override
 		public void run() {
+			metrics.taskStarted(queuedAt);
 			try {
-				istream = new PushbackInputStream(csocket.getInputStream());
-				ostream = csocket.getOutputStream();
-				
-				List<String> request = SmartUtil.readRequest(istream);
-				if (request.isEmpty()) {
-					sendError(400, "Bad request");
-					return;
-				}
-				
-				String firstLine = request.get(0);
-				String[] firstLineParts = firstLine.split("\\s+");
-				if (firstLineParts.length != 3) {
-					sendError(400, "Bad request");
+				if (connection != null) {
+					boolean mayKeepAlive = connection.countRequest() < keepAliveMaxRequests;
+					if (processRequest(parseResult, mayKeepAlive)) {
+						selectorThread.resume(connection);
+					} else {
+						closeConnection();
+					}
 					return;
 				}
 				
-				method = firstLineParts[0].toUpperCase();
-				String requestedPath = firstLineParts[1];
-				version = firstLineParts[2].toUpperCase();
-				if (!version.equals("HTTP/1.1") && !version.equals("HTTP/1.0")
-						|| !method.equals("GET")) {
-					sendError(400, "Bad request");
-					return;
+				istream = csocket.getInputStream();
+				ostream = new ChannelOutputStream(csocket.getChannel(), metrics.getBytesWritten());
+				request = new HttpRequestParser(maxHeaderSize, maxHeaderCount);
+				for (int served = 0; ; ) {
+					Result result = readRequest(served == 0);
+					if (result == null) {
+						break; // Client closed the (persistent) connection.
+					}
+					served ++;
+					if (!processRequest(result, served < keepAliveMaxRequests)) {
+						break;
+					}
+					request.next();
 				}
-				
-				setHost(request);
-				checkSession(request);
-				
-				String[] requestedPathParts = requestedPath.split("\\?", 2);
-				String path = requestedPathParts[0];
-				if (requestedPathParts.length != 1) {
-					parseParameters(requestedPathParts[1]);
+				closeConnection();
+			} catch (SocketTimeoutException ex) {
+				closeConnection();
+			} catch (BudgetExceededException ex) {
+				closeConnection(); // Already logged when the script was aborted.
+			} catch (Exception ex) {
+				closeConnection();
+				ex.printStackTrace();
+			}
+		}
+		
+		/**
+		 * Rejects the connection because the worker thread pool's queue is full,
+		 * by sending the {@code 503 Service Unavailable} response and closing it.
+		 */
+		private void reject() {
+			writeServiceUnavailable(csocket.getChannel());
+			closeConnection();
+		}
+		
+		/**
+		 * Closes the client socket, ignoring any errors.
+		 */
+		private void closeConnection() {
+			InetAddress address = csocket.getInetAddress();
+			try {
+				csocket.close();
+			} catch (IOException ignorable) {}
+			released(address);
+		}
+		
+		/**
+		 * Reads from the client socket until the next request header is complete
+		 * (or invalid).<br>
+		 * The header must be received within the header read timeout, measured
+		 * from the start of the first request of the connection, or from the
+		 * first received byte of a later request. Until then, the persistent
+		 * connection may stay idle for the keep-alive timeout.
+		 * 
+		 * @param first {@code true} if the first request of the connection is read.
+		 * @return The result of parsing the request header, or {@code null} if the
+		 * 			client closed (or left idle) the connection without sending a new request.
+		 * @throws SocketTimeoutException If the header is not received in time.
+		 * @throws IOException If an I/O error occurs.
+		 */
+		private Result readRequest(boolean first) throws IOException {
+			long deadline = first || !request.isEmpty()
+				? System.currentTimeMillis() + headerReadTimeout
+				: 0;
+			Result result;
+			while ((result = request.parse()) == Result.INCOMPLETE) {
+				int timeout = keepAliveTimeout;
+				if (deadline != 0) {
+					timeout = (int) (deadline - System.currentTimeMillis());
+					if (timeout <= 0) {
+						throw headerTimeout();
+					}
 				}
+				csocket.setSoTimeout(timeout);
 				
-				internalDispatchRequest(path, true);
-			} catch (Exception ex) {
+				int read;
 				try {
-					csocket.close();
-				} catch (IOException ignorable) {}
-				ex.printStackTrace();
+					read = request.read(istream);
+				} catch (SocketTimeoutException ex) {
+					if (deadline == 0) {
+						return null; // Persistent connection was idle for too long.
+					}
+					throw headerTimeout();
+				}
+				if (read < 0) {
+					return request.isEmpty() ? null : Result.INVALID;
+				}
+				if (deadline == 0) {
+					deadline = System.currentTimeMillis() + headerReadTimeout;
+				}
 			}
+			return result;
 		}
 		
 		/**
-		 * Parses all parameters from the given String
-		 * and stores them in the map of parameters.
+		 * Records that the request header has not been received in time
+		 * and returns the corresponding exception.
 		 * 
-		 * @param paramString The given String of parameters.
+		 * @return The exception which should be thrown.
 		 */
-		private void parseParameters(String paramString) {
-			String[] parameters = paramString.split("&");
-			for (String parameter : parameters) {
-				String parts[] = parameter.split("=", 2);
-				params.put(parts[0], parts.length > 1 ? parts[1] : null);
+		private SocketTimeoutException headerTimeout() {
+			metrics.connectionRejected(Rejection.TIMEOUT);
+			return new SocketTimeoutException("Request header was not received in time.");
+		}
+		
+		/**
+		 * Processes the request whose header has been parsed with the given result
+		 * and writes the whole response.<br>
+		 * If the access log is used, the request is recorded in it afterwards
+		 * (with the status 500 if serving it failed).
+		 * 
+		 * @param result The result of parsing the request header.
+		 * @param mayKeepAlive {@code false} if the connection must be closed
+		 * 			after this request regardless of the request headers.
+		 * @return {@code true} if the connection is kept alive for the next request.
+		 * @throws Exception If some type of error (e.g. I/O) occurs.
+		 */
+		private boolean processRequest(Result result, boolean mayKeepAlive)
+				throws Exception {
+			long start = System.nanoTime();
+			if (accessLog == null) {
+				return serveRequest(result, mayKeepAlive, start);
+			}
+			
+			long writtenBefore = totalWritten();
+			boolean served = false;
+			try {
+				boolean keptAlive = serveRequest(result, mayKeepAlive, start);
+				served = true;
+				return keptAlive;
+			} finally {
+				boolean complete = result == Result.COMPLETE;
+				accessLog.log(
+					csocket.getInetAddress(),
+					complete ? request.getMethod() : null,
+					complete ? request.getPath() : null,
+					complete ? request.getQuery() : null,
+					!served ? 500 : errorSent || context == null ? errorStatus : context.getStatusCode(),
+					totalWritten() - writtenBefore,
+					System.nanoTime() - start,
+					SID
+				);
 			}
 		}
 		
 		/**
-		 * Sets the host to the request's host header value,
-		 * or if none present, sets it to the server's domain name.
+		 * Returns the number of bytes written to the client over this connection.
 		 * 
-		 * @param request
-		 */
-		private void setHost(List<String> request) {
-			host = domainName;
-			for (int i = 1, size = request.size(); i < size; i ++) {
-				String line = request.get(i);
-				if (line.toLowerCase().startsWith("host:")) {
-					host = line.split(":")[1].trim();
-					return;
+		 * @return The number of written bytes.
+		 */
+		private long totalWritten() {
+			return ((ChannelOutputStream) ostream).getTotalWritten();
+		}
+		
+		/**
+		 * Serves the request whose header has been parsed with the given result.
+		 * 
+		 * @param result The result of parsing the request header.
+		 * @param mayKeepAlive {@code false} if the connection must be closed
+		 * 			after this request regardless of the request headers.
+		 * @param start The {@link System#nanoTime()} at which serving the request started.
+		 * @return {@code true} if the connection is kept alive for the next request.
+		 * @throws Exception If some type of error (e.g. I/O) occurs.
+		 */
+		private boolean serveRequest(Result result, boolean mayKeepAlive, long start)
+				throws Exception {
+			resetRequestState();
+			
+			if (result == Result.TOO_LARGE) {
+				sendError(431, "Request Header Fields Too Large");
+				return false;
+			}
+			if (result != Result.COMPLETE) {
+				sendError(400, "Bad request");
+				return false;
+			}
+			
+			method = request.getMethod().toUpperCase();
+			version = request.getVersion().toUpperCase();
+			if (!version.equals("HTTP/1.1") && !version.equals("HTTP/1.0")
+					|| !method.equals("GET")) {
+				sendError(400, "Bad request");
+				return false;
+			}
+			
+			keepAlive = mayKeepAlive && SmartUtil.isKeepAlive(request, version);
+			gzipAccepted = compressibleTypes != null && SmartUtil.acceptsGzip(request);
+			setHost();
+			checkSession();
+			request.parseParameters(params);
+			
+			internalDispatchRequest(request.getPath(), true);
+			if (!errorSent) {
+				context.finish();
+				if (route != null) {
+					metrics.requestServed(route, System.nanoTime() - start);
 				}
 			}
+			return keepAlive;
 		}
 		
 		/**
-		 * Checks if the given lines of request contain a cookie header and,
+		 * Clears all the state of the previous request served by this worker.
+		 */
+		private void resetRequestState() {
+			params = new HashMap<>();
+			tempParams = new HashMap<>();
+			outputCookies = new ArrayList<>();
+			context = null;
+			SID = null;
+			keepAlive = false;
+			gzipAccepted = false;
+			errorSent = false;
+			route = null;
+		}
+		
+		/**
+		 * Sets the host to the request's host header value,
+		 * (without the port), or if none present, sets it to the server's domain name.
+		 */
+		private void setHost() {
+			String hostHeader = request.getHeader("Host");
+			if (hostHeader == null) {
+				host = domainName;
+				return;
+			}
+			int colon = hostHeader.indexOf(':');
+			host = colon < 0 ? hostHeader : hostHeader.substring(0, colon).trim();
+		}
+		
+		/**
+		 * Checks if the request contains a cookie header and,
 		 * if it does, it's session ID is checked for validity.<br>
-		 * The corresponding session entry in the {@code Map} of sessions
-		 * is updated or removed and re-generated.<br>
+		 * The corresponding session entry in the store of sessions
+		 * is updated, or a new session is generated.<br>
 		 * Also, an {@link RCCookie} is added to the output cookies.
-		 * 
-		 * @param request The given lines of request.
 		 */
-		private void checkSession(List<String> request) {
+		private void checkSession() {
 			String[] cookies = SmartUtil.extractCookies(request);
 			permParams = new ConcurrentHashMap<>();
 			
-			synchronized (sessions) {
-				if (cookies != null) {
-					String sidCandidate = SmartUtil.getSIDCandidate(cookies, permParams);
-					
-					if (sidCandidate != null && sessions.containsKey(sidCandidate)) {
-						SessionMapEntry sessionEntry = sessions.get(sidCandidate);
-						if (sessionEntry.host.equals(host)) {
-							if (SmartUtil.timestampStillValid(sessionEntry.validUntil)) {
-								sessionEntry.updateValidUntil(sessionTimeout);
-								permParams = sessionEntry.map;
-								return;
-							} else {
-								sessions.remove(sidCandidate);
-							}
-						}
+			if (cookies != null) {
+				String sidCandidate = SmartUtil.getSIDCandidate(cookies, permParams);
+				
+				if (sidCandidate != null) {
+					SessionEntry sessionEntry = sessions.get(sidCandidate);
+					if (sessionEntry != null && sessionEntry.getHost().equals(host)) {
+						sessions.touch(sessionEntry, sessionTimeout);
+						permParams = sessionEntry.getMap();
+						return;
 					}
 				}
-				
-				generateNewSID();
-				sessions.put(
-					SID,
-					new SessionMapEntry(SID, host, sessionTimeout, permParams)
-				);
 			}
+			
+			SessionEntry sessionEntry;
+			do {
+				generateNewSID();
+				sessionEntry = sessions.create(SID, host, sessionTimeout, permParams);
+			} while (!sessions.add(sessionEntry));
+			permParams = sessionEntry.getMap();
 			outputCookies.add(new RCCookie("sid", SID, null, host, "/"));
 		}
 		
@@ -421,15 +1418,16 @@ public class SmartHttpServer {
 		 * Generates a new session ID and stores it in the corresponding attribute.<br>
 		 * It is generated randomly and contains {@code SID_LENGHT} uppercase English
 		 * letters.<br>
-		 * Should be synchronized using the generator, but called only inside an
-		 * existing synchronized block.
+		 * The thread's own random number generator is used, so no synchronization
+		 * is needed.
 		 */
 		private void generateNewSID() {
 			final int alphabetLength = 26;
+			ThreadLocalRandom random = ThreadLocalRandom.current();
 			
 			char[] sequence = new char[SID_LENGTH];
 			for (int i = 0; i < SID_LENGTH; i ++) {
-				sequence[i] = (char) ('A' + sessionRandom.nextInt(alphabetLength));
+				sequence[i] = (char) ('A' + random.nextInt(alphabetLength));
 			}
 			
 			SID = new String(sequence);
@@ -437,7 +1435,8 @@ public class SmartHttpServer {
 		
 		/**
 		 * Writes the error response to the client using the given status
-		 * code and the given status text.
+		 * code and the given status text.<br>
+		 * The connection is closed afterwards only if it is not kept alive.
 		 * 
 		 * @param statusCode The given status code.
 		 * @param statusText The given status text.
@@ -449,10 +1448,12 @@ public class SmartHttpServer {
 				"Server: Smart Http Server\r\n"+
 				"Content-Type: text/plain;charset=UTF-8\r\n"+
 				"Content-Length: 0\r\n"+
-				"Connection: close\r\n"+
+				"Connection: "+(keepAlive ? "keep-alive" : "close")+"\r\n"+
 				"\r\n").getBytes(StandardCharsets.UTF_8)
 			);
-			csocket.close();
+			ostream.flush();
+			errorSent = true;
+			errorStatus = statusCode;
 		}
 
 		@Override
@@ -483,19 +1484,23 @@ public class SmartHttpServer {
 				context = new RequestContext(
 					ostream, params, permParams, outputCookies, tempParams, this
 				);
+				context.setKeepAlive(keepAlive);
+				context.setCompression(compressibleTypes, compressionThreshold, gzipAccepted);
 			}
 			context.setStatusCode(200);
 			context.setStatusText("OK");
 			
-			if (workersMap.containsKey(urlPath)) {
-				workersMap.get(urlPath).processRequest(context);
-				csocket.close();
+			WorkerFactory factory = workersMap.get(urlPath);
+			if (factory != null) {
+				setRoute(Route.WORKER);
+				render(directCall, urlPath, factory.getCachePolicy(),
+					() -> processWorkerRequest(factory));
 				return;
 			}
 			
 			if (urlPath.startsWith(EXT)) {
-				processExtRequest(urlPath);
-				csocket.close();
+				setRoute(Route.EXT);
+				processExtRequest(urlPath, directCall);
 				return;
 			}
 			
@@ -510,6 +1515,11 @@ public class SmartHttpServer {
 			}
 			
 			String fileName = resolvedPath.getFileName().toString();
+			if (fileName.endsWith(SmartScriptCache.PRECOMPILED_EXTENSION)) {
+				// Precompiled scripts reveal the scripts, just as their sources would.
+				sendError(404, "File not found");
+				return;
+			}
 			if (fileName.startsWith(".")) {
 				// Remove leading dot from hidden files' file names.
 				fileName = fileName.substring(1);
@@ -527,112 +1537,315 @@ public class SmartHttpServer {
 			context.setMimeType(mimeType);
 			
 			if ("smscr".equals(fileExtension)) {
-				processSmartScript(resolvedPath);
+				setRoute(Route.SCRIPT);
+				render(directCall, urlPath, null, () -> processSmartScript(resolvedPath));
 			} else {
-				processStaticFile(resolvedPath);
+				setRoute(Route.STATIC);
+				processStaticFile(resolvedPath, mimeType);
 			}
-			csocket.close();
 		}
 		
 		/**
-		 * Instantiates the {@link IWebWorker} using the given URL path
-		 * and processes its request using the specified request context.
+		 * Sets the route type of the current request to the given type, unless it
+		 * has already been set (by the route which dispatched this request).
+		 * 
+		 * @param route The given route type.
+		 */
+		private void setRoute(Route route) {
+			if (this.route == null) {
+				this.route = route;
+			}
+		}
+		
+		/**
+		 * Resolves the {@link IWebWorker} using the given URL path (from the
+		 * server's worker registry) and processes its request using the specified
+		 * request context.<br>
+		 * If no such worker exists, an error response is sent.
 		 * 
 		 * @param urlPath The given URL path.
+		 * @param directCall The given boolean flag which marks the directness of the call.
 		 * @throws Exception If some type of error (e.g. I/O) occurs.
 		 */
-		private void processExtRequest(String urlPath) throws Exception {
+		private void processExtRequest(String urlPath, boolean directCall) throws Exception {
 			String className = urlPath.substring(EXT.length());
-			String fqcn = WORKERS_PACKAGE.concat(className);
-			Class<?> referenceToClass = this.getClass().getClassLoader().loadClass(fqcn);
-			Object newObject = referenceToClass.getConstructor().newInstance();
-			IWebWorker iww = (IWebWorker) newObject;
-			iww.processRequest(context);
+			WorkerFactory factory = workerRegistry.resolve(className);
+			if (factory == null) {
+				sendError(404, "File not found");
+				return;
+			}
+			render(directCall, urlPath, factory.getCachePolicy(),
+				() -> processWorkerRequest(factory));
+		}
+		
+		/**
+		 * Renders the response of the route with the given URL path using the
+		 * given renderer.<br>
+		 * If the route is cacheable (by the policy from the cache configuration
+		 * file, or else by the given declared policy) and the request is direct,
+		 * the response is taken from the server's response cache, where it is
+		 * rendered into memory on a miss. Otherwise, it is rendered directly.
+		 * 
+		 * @param directCall The given boolean flag which marks the directness of the call.
+		 * @param urlPath The given URL path (without the leading slash).
+		 * @param declared The policy declared by the route (or {@code null}).
+		 * @param renderer The given renderer.
+		 * @throws Exception If some type of error (e.g. I/O) occurs.
+		 */
+		private void render(boolean directCall, String urlPath, CachePolicy declared,
+				Renderer renderer) throws Exception {
+			CachePolicy policy = cachePolicies.getOrDefault(urlPath, declared);
+			if (!directCall || policy == null || responseCache == null) {
+				renderer.render();
+				return;
+			}
+			
+			CachedResponse response = responseCache.get(
+				policy.key(urlPath, context), policy.getTtl(), () -> capture(renderer)
+			);
+			if (response != null) {
+				response.writeTo(context);
+			}
 		}
 		
 		/**
-		 * Executes the smart script located at the given path.
+		 * Renders the response using the given renderer into memory, through
+		 * a capturing context which replaces the request context meanwhile.
+		 * 
+		 * @param renderer The given renderer.
+		 * @return The rendered response, or {@code null} if an error has been sent.
+		 * @throws Exception If some type of error (e.g. I/O) occurs.
+		 */
+		private CachedResponse capture(Renderer renderer) throws Exception {
+			RequestContext original = context;
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			RequestContext capture = original.createCapture(body);
+			context = capture;
+			try {
+				renderer.render();
+				capture.finish();
+			} finally {
+				context = original;
+			}
+			return errorSent ? null : new CachedResponse(capture, body.toByteArray());
+		}
+		
+		/**
+		 * Processes the request using a worker instance acquired from the given
+		 * factory, and releases the instance afterwards.
+		 * 
+		 * @param factory The given worker factory.
+		 * @throws Exception If some type of error (e.g. I/O) occurs.
+		 */
+		private void processWorkerRequest(WorkerFactory factory) throws Exception {
+			IWebWorker worker = factory.acquire();
+			try {
+				worker.processRequest(context);
+			} finally {
+				factory.release(worker);
+			}
+		}
+		
+		/**
+		 * Executes the smart script located at the given path.<br>
+		 * The compiled script is taken from the server's script cache.<br>
+		 * If the script exceeds its budget, its output is discarded and an error
+		 * response is sent instead, unless the output has already been written
+		 * (in which case the connection is closed).
 		 * 
 		 * @param resolvedPath The given path.
 		 * @throws IOException If an I/O error occurs.
 		 */
 		private void processSmartScript(Path resolvedPath) throws IOException {
-			String script = new String(
-				Files.readAllBytes(resolvedPath),
-				StandardCharsets.UTF_8
-			);
-			new SmartScriptEngine(
-				new SmartScriptParser(script).getDocumentNode(),
-				context
-			).execute();
+			try {
+				scriptCache.get(resolvedPath).execute(context);
+			} catch (BudgetExceededException ex) {
+				if (!context.abandon()) {
+					System.err.println("Smart script " + resolvedPath + " aborted after its output was sent"
+						+ " (the connection is closed): " + ex.getMessage());
+					throw ex;
+				}
+				System.err.println("Smart script " + resolvedPath + " aborted: " + ex.getMessage());
+				sendError(500, "Internal Server Error");
+			}
 		}
 		
 		/**
 		 * Writes the content of the static file (e.g. text, image)
 		 * given by the specified path.<br>
 		 * The content length is also provided to the request context
-		 * because it is always known.
+		 * because it is always known.<br>
+		 * Small files are served from the server's static file cache, while
+		 * larger ones are transferred directly from the file to the socket.<br>
+		 * If the client accepts gzip and the file is compressible, the up-to-date
+		 * precompressed {@code .gz} sibling of the file is served instead, or else
+		 * the compressed content from the static file cache (if the file is large
+		 * enough and its compressed content is smaller). The compressed variant has
+		 * its own entity tag, and ranges refer to the compressed variant.<br>
+		 * Conditional requests ({@code If-None-Match} and {@code If-Modified-Since})
+		 * are answered with 304 if the file has not been modified, and requests
+		 * with the {@code Range} header are answered with 206 (a single range
+		 * or multiple ranges as {@code multipart/byteranges}).
 		 * 
 		 * @param resolvedPath The specified path.
+		 * @param mimeType The mime type of the file.
 		 * @throws IOException If an I/O error occurs.
 		 */
-		private void processStaticFile(Path resolvedPath) throws IOException {
-			context.setContentLength(Files.size(resolvedPath));
-			try (InputStream fis = Files.newInputStream(resolvedPath)) {
-				byte[] buffer = new byte[1024];
-				while (true) {
-					int readCount = fis.read(buffer);
-					if (readCount < 1) break;
-					context.write(buffer, 0, readCount);
+		private void processStaticFile(Path resolvedPath, String mimeType) throws IOException {
+			BasicFileAttributes attributes =
+					Files.readAttributes(resolvedPath, BasicFileAttributes.class);
+			// Static files are compressed only here, not again by the context.
+			context.setCompression(compressibleTypes, compressionThreshold, false);
+			byte[] compressed = null;
+			if (gzipAccepted && compressibleTypes.test(mimeType)) {
+				Path sibling = resolvedPath.resolveSibling(
+					resolvedPath.getFileName() + GZIP_SUFFIX
+				);
+				BasicFileAttributes siblingAttributes = Files.isRegularFile(sibling)
+						? Files.readAttributes(sibling, BasicFileAttributes.class) : null;
+				if (siblingAttributes != null && siblingAttributes.lastModifiedTime()
+						.compareTo(attributes.lastModifiedTime()) >= 0) {
+					resolvedPath = sibling;
+					attributes = siblingAttributes;
+					context.addHeader("Content-Encoding", "gzip");
+				} else if (attributes.size() >= compressionThreshold) {
+					compressed = fileCache.getCompressed(resolvedPath);
+					if (compressed != null) {
+						context.addHeader("Content-Encoding", "gzip");
+					}
+				}
+			}
+			
+			String etag = etagCache.get(resolvedPath, attributes);
+			if (compressed != null) {
+				etag = etag.substring(0, etag.length() - 1) + "-gzip\"";
+			}
+			String lastModified = SmartUtil.formatHttpDate(attributes.lastModifiedTime());
+			context.addHeader("ETag", etag);
+			context.addHeader("Last-Modified", lastModified);
+			context.addHeader("Accept-Ranges", "bytes");
+			
+			if (isNotModified(etag, attributes)) {
+				context.setStatusCode(304);
+				context.setStatusText("Not Modified");
+				return;
+			}
+			
+			String range = request.getHeader("Range");
+			String ifRange = request.getHeader("If-Range");
+			if (ifRange != null && !ifRange.equals(etag) && !ifRange.equals(lastModified)) {
+				range = null; // The client's copy is outdated, so the whole file is sent.
+			}
+			
+			byte[] content = compressed != null ? compressed : fileCache.get(resolvedPath);
+			try (FileChannel file = content == null ?
+					FileChannel.open(resolvedPath, StandardOpenOption.READ) : null) {
+				long size = content != null ? content.length : file.size();
+				List<ByteRange> ranges = range == null ? null : ByteRange.parse(range, size);
+				
+				if (ranges == null) {
+					context.setContentLength(size);
+					writeFileRange(content, file, 0, size);
+				} else if (ranges.isEmpty()) {
+					context.setStatusCode(416);
+					context.setStatusText("Range Not Satisfiable");
+					context.addHeader("Content-Range", "bytes */" + size);
+					context.setContentLength(0L);
+				} else if (ranges.size() == 1) {
+					ByteRange byteRange = ranges.get(0);
+					context.setStatusCode(206);
+					context.setStatusText("Partial Content");
+					context.addHeader("Content-Range", byteRange.toContentRange(size));
+					context.setContentLength(byteRange.length());
+					writeFileRange(content, file, byteRange.getFirst(), byteRange.length());
+				} else {
+					writeMultipleRanges(content, file, size, ranges, mimeType);
 				}
 			}
 		}
-	}
-	
-	/**
-	 * Map entry representing a session with its session ID used as the key.
-	 * 
-	 * @author Mate Gasparini
-	 */
-	private static class SessionMapEntry {
-		
-		/** Session ID. */
-		@SuppressWarnings("unused")
-		String sid;
-		
-		/** Exact session host. */
-		String host;
 		
-		/** Timestamp representing the time until the session is valid. */
-		long validUntil;
-		
-		/** Map of all session's cookies. */
-		Map<String, String> map;
+		/**
+		 * Returns {@code true} if the request is conditional and the client's copy
+		 * of the file with the given entity tag and attributes is still valid.<br>
+		 * The {@code If-Modified-Since} header is ignored if the
+		 * {@code If-None-Match} header is present.
+		 * 
+		 * @param etag The entity tag of the file.
+		 * @param attributes The attributes of the file.
+		 * @return {@code true} if the file has not been modified.
+		 */
+		private boolean isNotModified(String etag, BasicFileAttributes attributes) {
+			String ifNoneMatch = request.getHeader("If-None-Match");
+			if (ifNoneMatch != null) {
+				return SmartUtil.matchesETag(ifNoneMatch, etag);
+			}
+			
+			String ifModifiedSince = request.getHeader("If-Modified-Since");
+			if (ifModifiedSince != null) {
+				long since = SmartUtil.parseHttpDate(ifModifiedSince);
+				return since >= 0
+						&& attributes.lastModifiedTime().toMillis() / 1000L <= since;
+			}
+			return false;
+		}
 		
 		/**
-		 * Constructor specifying the session ID, the host, the cookie map and
-		 * the session timeout used for calculating the <i>valid until</i> timestamp.
+		 * Writes the given ranges of the file as a {@code multipart/byteranges} body.
 		 * 
-		 * @param sid The specified session ID.
-		 * @param host The exact specified session host.
-		 * @param timeout Session timeout value.
-		 * @param map The specified cookie map.
+		 * @param content The cached file content (or {@code null}).
+		 * @param file The opened file (used if the content is not cached).
+		 * @param size The size of the file.
+		 * @param ranges The requested ranges.
+		 * @param mimeType The mime type of the file.
+		 * @throws IOException If an I/O error occurs.
 		 */
-		public SessionMapEntry(String sid, String host,
-				int timeout, Map<String, String> map) {
-			this.sid = sid;
-			this.host = host;
-			updateValidUntil(timeout);
-			this.map = map;
+		private void writeMultipleRanges(byte[] content, FileChannel file, long size,
+				List<ByteRange> ranges, String mimeType) throws IOException {
+			String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong());
+			
+			List<byte[]> partHeaders = new ArrayList<>();
+			long contentLength = 0;
+			for (ByteRange byteRange : ranges) {
+				byte[] partHeader = (
+					"\r\n--" + boundary + "\r\n" +
+					"Content-Type: " + mimeType + "\r\n" +
+					"Content-Range: " + byteRange.toContentRange(size) + "\r\n\r\n"
+				).getBytes(StandardCharsets.ISO_8859_1);
+				partHeaders.add(partHeader);
+				contentLength += partHeader.length + byteRange.length();
+			}
+			byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
+			contentLength += closing.length;
+			
+			context.setStatusCode(206);
+			context.setStatusText("Partial Content");
+			context.setMimeType("multipart/byteranges; boundary=" + boundary);
+			context.setContentLength(contentLength);
+			for (int i = 0, n = ranges.size(); i < n; i ++) {
+				ByteRange byteRange = ranges.get(i);
+				context.write(partHeaders.get(i));
+				writeFileRange(content, file, byteRange.getFirst(), byteRange.length());
+			}
+			context.write(closing);
 		}
 		
 		/**
-		 * Updates the <i>valid until</i> timestamp using the given timeout value.
+		 * Writes {@code count} bytes of the file starting at the given position,
+		 * either from its cached content or directly from the opened file.
 		 * 
-		 * @param timeout The given timeout value.
+		 * @param content The cached file content (or {@code null}).
+		 * @param file The opened file (used if the content is not cached).
+		 * @param position The position of the first written byte.
+		 * @param count The number of bytes to write.
+		 * @throws IOException If an I/O error occurs.
 		 */
-		public void updateValidUntil(int timeout) {
-			validUntil = SmartUtil.generateUntilValidTimestamp(timeout);
+		private void writeFileRange(byte[] content, FileChannel file,
+				long position, long count) throws IOException {
+			if (content != null) {
+				context.write(content, (int) position, (int) count);
+			} else {
+				context.write(file, position, count);
+			}
 		}
 	}
 }
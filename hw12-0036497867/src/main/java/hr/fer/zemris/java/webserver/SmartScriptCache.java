@@ -0,0 +1,457 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import hr.fer.zemris.java.custom.scripting.exec.CompiledScript;
+import hr.fer.zemris.java.custom.scripting.exec.ScriptProfile;
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptCompiler;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptBinary;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParserException;
+
+/**
+ * Server-wide cache of parsed and compiled smart scripts, mapped using their paths.<br>
+ * An entry is valid as long as the last modification time and the size of
+ * its file do not change (the size also detects rewrites within the
+ * modification time's granularity). When the cache is full, the least
+ * recently used entry is evicted.<br>
+ * Concurrent misses of the same script are collapsed: the script is loaded
+ * and compiled by one request, while the others wait for it.<br>
+ * The numbers of cache hits and misses are counted.<br>
+ * If precompiled scripts are enabled, the parsed document tree of a script is
+ * loaded from its precompiled file (in the {@link SmartScriptBinary} format)
+ * instead of parsing the script, as long as the precompiled file matches the
+ * script's size and last modification time. Otherwise, the script is parsed
+ * and its precompiled file is (re)written. Precompiled files are kept either
+ * alongside the scripts, or in a directory which mirrors the document root.<br>
+ * If instrumentation is enabled, the scripts are compiled with instrumentation
+ * (see {@link SmartScriptCompiler#compile(DocumentNode, long, long)}), so their
+ * profiles can be reported and their budgets are enforced.
+ * 
+ * @author Mate Gasparini
+ */
+public class SmartScriptCache {
+	
+	/** Extension of the smart scripts. */
+	public static final String SCRIPT_EXTENSION = ".smscr";
+	
+	/** Extension of the precompiled smart scripts. */
+	public static final String PRECOMPILED_EXTENSION = ".smscb";
+	
+	/** Maximum number of cached scripts. */
+	private final int capacity;
+	
+	/** Cached entries in the access order (least recently used first). */
+	private final Map<Path, CacheEntry> entries;
+	
+	/** Number of cache hits. */
+	private final AtomicLong hits = new AtomicLong();
+	
+	/** Number of cache misses. */
+	private final AtomicLong misses = new AtomicLong();
+	
+	/** Number of misses which waited for the script loaded by another request. */
+	private final AtomicLong collapsed = new AtomicLong();
+	
+	/** Scripts which are currently being loaded, mapped by their paths, modification times and sizes. */
+	private final Map<List<Object>, CompletableFuture<CompiledScript>> pending =
+		new ConcurrentHashMap<>();
+	
+	/** Marks that the precompiled scripts are used. */
+	private final boolean precompiled;
+	
+	/** Directory of the precompiled scripts (or {@code null} if they are kept alongside the scripts). */
+	private final Path precompiledDir;
+	
+	/** Document root, mirrored by the directory of the precompiled scripts. */
+	private final Path documentRoot;
+	
+	/** Marks that the scripts are compiled with instrumentation. */
+	private volatile boolean instrumented;
+	
+	/** Maximum number of steps of an execution of an instrumented script (0 for unlimited). */
+	private volatile long maxSteps;
+	
+	/** Maximum duration (in ms) of an execution of an instrumented script (0 for unlimited). */
+	private volatile long maxMillis;
+	
+	/**
+	 * Constructor specifying the maximum number of cached scripts.
+	 * Precompiled scripts are not used.
+	 * 
+	 * @param capacity The maximum number of cached scripts.
+	 * @throws IllegalArgumentException If the given capacity is less than 1.
+	 */
+	public SmartScriptCache(int capacity) {
+		this(capacity, false, null, null);
+	}
+	
+	/**
+	 * Constructor specifying the maximum number of cached scripts, and the
+	 * location of the precompiled scripts, which are used.
+	 * 
+	 * @param capacity The maximum number of cached scripts.
+	 * @param precompiledDir The directory of the precompiled scripts (or
+	 * 			{@code null} if they are kept alongside the scripts).
+	 * @param documentRoot The document root, mirrored by the directory of the
+	 * 			precompiled scripts.
+	 * @throws IllegalArgumentException If the given capacity is less than 1.
+	 */
+	public SmartScriptCache(int capacity, Path precompiledDir, Path documentRoot) {
+		this(capacity, true, precompiledDir, documentRoot);
+	}
+	
+	/**
+	 * Constructor specifying all the properties of the cache.
+	 * 
+	 * @param capacity The maximum number of cached scripts.
+	 * @param precompiled {@code true} if the precompiled scripts are used.
+	 * @param precompiledDir The directory of the precompiled scripts (or
+	 * 			{@code null} if they are kept alongside the scripts).
+	 * @param documentRoot The document root, mirrored by the directory of the
+	 * 			precompiled scripts.
+	 * @throws IllegalArgumentException If the given capacity is less than 1.
+	 */
+	private SmartScriptCache(int capacity, boolean precompiled, Path precompiledDir,
+			Path documentRoot) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Cache capacity must be positive.");
+		}
+		this.capacity = capacity;
+		this.precompiled = precompiled;
+		this.precompiledDir = precompiledDir;
+		this.documentRoot = documentRoot;
+		this.entries = new LinkedHashMap<Path, CacheEntry>(16, 0.75f, true) {
+			
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Path, CacheEntry> eldest) {
+				return size() > SmartScriptCache.this.capacity;
+			}
+		};
+	}
+	
+	/**
+	 * Returns the compiled smart script located at the given path.<br>
+	 * The script is read (or its precompiled document tree is loaded), parsed
+	 * and compiled only if it is not cached yet, or if it was modified since
+	 * it was cached. If the same version of the script is already being loaded
+	 * by another thread, the calling thread waits for it instead (and gets
+	 * the same exception if the loading fails).
+	 * 
+	 * @param path The given path.
+	 * @return The compiled script.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public CompiledScript get(Path path) throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		FileTime lastModified = attributes.lastModifiedTime();
+		long size = attributes.size();
+		
+		CompiledScript script = lookup(path, lastModified, size);
+		if (script != null) {
+			hits.incrementAndGet();
+			return script;
+		}
+		
+		List<Object> key = Arrays.asList(path, lastModified, size);
+		CompletableFuture<CompiledScript> future = new CompletableFuture<>();
+		CompletableFuture<CompiledScript> other = pending.putIfAbsent(key, future);
+		if (other != null) {
+			collapsed.incrementAndGet();
+			return await(other);
+		}
+		
+		try {
+			// Another thread may have cached the script after the lookup.
+			script = lookup(path, lastModified, size);
+			if (script != null) {
+				hits.incrementAndGet();
+			} else {
+				misses.incrementAndGet();
+				DocumentNode document = load(path, lastModified, size);
+				script = instrumented
+					? SmartScriptCompiler.compile(document, maxSteps, maxMillis)
+					: SmartScriptCompiler.compile(document);
+				synchronized (entries) {
+					entries.put(path, new CacheEntry(script, lastModified, size));
+				}
+			}
+			future.complete(script);
+			return script;
+		} catch (IOException | RuntimeException | Error ex) {
+			future.completeExceptionally(ex);
+			throw ex;
+		} finally {
+			pending.remove(key, future);
+		}
+	}
+	
+	/**
+	 * Returns the cached script located at the given path, if its entry
+	 * matches the given modification time and size.
+	 * 
+	 * @param path The given path.
+	 * @param lastModified The last modification time of the script.
+	 * @param size The size of the script.
+	 * @return The cached script, or {@code null} if none matches.
+	 */
+	private CompiledScript lookup(Path path, FileTime lastModified, long size) {
+		CacheEntry entry;
+		synchronized (entries) {
+			entry = entries.get(path);
+		}
+		return entry != null && entry.lastModified.equals(lastModified) && entry.size == size
+			? entry.script
+			: null;
+	}
+	
+	/**
+	 * Waits for the script loaded by another thread.
+	 * 
+	 * @param future The future of the loaded script.
+	 * @return The loaded script.
+	 * @throws IOException If the loading failed with an I/O error, or the
+	 * 			waiting has been interrupted.
+	 */
+	private static CompiledScript await(CompletableFuture<CompiledScript> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the script.");
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw (Error) cause;
+		}
+	}
+	
+	/**
+	 * Returns the document tree of the script located at the given path, loaded
+	 * from its precompiled file if it is up to date, or parsed otherwise
+	 * (in which case the precompiled file is written).
+	 * 
+	 * @param path The given path.
+	 * @param lastModified The last modification time of the script.
+	 * @param size The size of the script.
+	 * @return The document tree.
+	 * @throws IOException If the script cannot be read.
+	 */
+	private DocumentNode load(Path path, FileTime lastModified, long size) throws IOException {
+		Path precompiledPath = precompiled
+			? precompiledPath(path, documentRoot, precompiledDir)
+			: null;
+		if (precompiledPath != null && Files.isRegularFile(precompiledPath)) {
+			try {
+				DocumentNode document = SmartScriptBinary.deserialize(
+					Files.readAllBytes(precompiledPath), size, lastModified.toMillis()
+				);
+				if (document != null) {
+					return document;
+				}
+			} catch (IOException | SmartScriptParserException ex) {
+				System.err.println("Precompiled script " + precompiledPath + " is ignored: "
+					+ ex.getMessage());
+			}
+		}
+		
+		DocumentNode document;
+		try (Reader reader = new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8)) {
+			document = new SmartScriptParser(reader).getDocumentNode();
+		}
+		if (precompiledPath != null) {
+			try {
+				write(precompiledPath,
+					SmartScriptBinary.serialize(document, size, lastModified.toMillis()));
+			} catch (IOException ex) {
+				System.err.println("Precompiled script " + precompiledPath + " cannot be written: "
+					+ ex.getMessage());
+			}
+		}
+		return document;
+	}
+	
+	/**
+	 * Returns the path to the precompiled file of the script located at the
+	 * given path. It is kept alongside the script, or in the given directory
+	 * at the same path relative to it as the script's path relative to the
+	 * document root.
+	 * 
+	 * @param path The given path.
+	 * @param documentRoot The document root.
+	 * @param precompiledDir The directory of the precompiled scripts (or
+	 * 			{@code null} if they are kept alongside the scripts).
+	 * @return The path to the precompiled file, or {@code null} if the script
+	 * 			is outside the document root.
+	 */
+	public static Path precompiledPath(Path path, Path documentRoot, Path precompiledDir) {
+		String fileName = path.getFileName().toString();
+		if (fileName.endsWith(SCRIPT_EXTENSION)) {
+			fileName = fileName.substring(0, fileName.length() - SCRIPT_EXTENSION.length());
+		}
+		fileName += PRECOMPILED_EXTENSION;
+		if (precompiledDir == null) {
+			return path.resolveSibling(fileName);
+		}
+		
+		Path relative = documentRoot.toAbsolutePath().normalize()
+			.relativize(path.toAbsolutePath().normalize());
+		if (relative.startsWith("..")) {
+			return null;
+		}
+		return precompiledDir.resolve(relative).resolveSibling(fileName);
+	}
+	
+	/**
+	 * Writes the given data to the file at the given path, replacing it
+	 * atomically (so a partially written file is never loaded).
+	 * 
+	 * @param path The given path.
+	 * @param data The given data.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	static void write(Path path, byte[] data) throws IOException {
+		Path dir = path.toAbsolutePath().getParent();
+		Files.createDirectories(dir);
+		Path temporary = Files.createTempFile(dir, ".precompiled", ".tmp");
+		try {
+			Files.write(temporary, data);
+			Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+	
+	/**
+	 * Enables the instrumentation of the scripts compiled from now on, with the
+	 * given budget of every execution.<br>
+	 * It should be called before the cache is used, so all the cached scripts
+	 * are instrumented.
+	 * 
+	 * @param maxSteps The maximum number of steps of an execution (0 for unlimited).
+	 * @param maxMillis The maximum duration (in ms) of an execution (0 for unlimited).
+	 * @throws IllegalArgumentException If a budget limit is negative.
+	 */
+	public void instrument(long maxSteps, long maxMillis) {
+		if (maxSteps < 0 || maxMillis < 0) {
+			throw new IllegalArgumentException("Budget limits must not be negative.");
+		}
+		this.maxSteps = maxSteps;
+		this.maxMillis = maxMillis;
+		this.instrumented = true;
+	}
+	
+	/**
+	 * Returns the profiles of the currently cached instrumented scripts,
+	 * mapped by their paths.<br>
+	 * A profile covers the executions since the script was compiled, so it
+	 * is lost when the script is modified or evicted from the cache.
+	 * 
+	 * @return The profiles of the cached scripts.
+	 */
+	public Map<Path, ScriptProfile> getProfiles() {
+		Map<Path, ScriptProfile> profiles = new LinkedHashMap<>();
+		synchronized (entries) {
+			for (Map.Entry<Path, CacheEntry> entry : entries.entrySet()) {
+				ScriptProfile profile = entry.getValue().script.getProfile();
+				if (profile != null) {
+					profiles.put(entry.getKey(), profile);
+				}
+			}
+		}
+		return profiles;
+	}
+	
+	/**
+	 * Returns the number of cache hits.
+	 * 
+	 * @return The number of cache hits.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+	
+	/**
+	 * Returns the number of cache misses (excluding the collapsed ones).
+	 * 
+	 * @return The number of cache misses.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+	
+	/**
+	 * Returns the number of misses which reused the script loaded by another request.
+	 * 
+	 * @return The number of collapsed misses.
+	 */
+	public long getCollapsed() {
+		return collapsed.get();
+	}
+	
+	/**
+	 * Returns the number of currently cached scripts.
+	 * 
+	 * @return The number of cached scripts.
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+	
+	/**
+	 * Cached compiled script with the last modification time and the size of its file.
+	 * 
+	 * @author Mate Gasparini
+	 */
+	private static class CacheEntry {
+		
+		/** Compiled script. */
+		CompiledScript script;
+		
+		/** Last modification time of the file at the moment of parsing. */
+		FileTime lastModified;
+		
+		/** Size of the file at the moment of parsing. */
+		long size;
+		
+		/**
+		 * Constructor specifying the compiled script, the modification time and the size.
+		 * 
+		 * @param script The compiled script.
+		 * @param lastModified The last modification time of the file.
+		 * @param size The size of the file.
+		 */
+		public CacheEntry(CompiledScript script, FileTime lastModified, long size) {
+			this.script = script;
+			this.lastModified = lastModified;
+			this.size = size;
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptBinary;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParserException;
+
+/**
+ * Program which precompiles all smart scripts in the document root into the
+ * files used by the {@link SmartScriptCache} (alongside the scripts, or in the
+ * given directory which mirrors the document root).<br>
+ * In the verification mode ({@code -verify}), nothing is written. Instead,
+ * every script is parsed and its tree is compared with the tree loaded from
+ * its precompiled file, and the program fails if any precompiled file is
+ * missing, stale or different.
+ * 
+ * <pre>
+ * SmartScriptPrecompiler [-verify] documentRoot [precompiledDir]
+ * </pre>
+ * 
+ * @author Mate Gasparini
+ */
+public class SmartScriptPrecompiler {
+	
+	/**
+	 * Main method which is called when the program starts.
+	 * 
+	 * @param args Optional {@code -verify} flag, the document root and the
+	 * 			optional directory of the precompiled scripts.
+	 * @throws IOException If the document root cannot be listed.
+	 */
+	public static void main(String[] args) throws IOException {
+		boolean verify = args.length > 0 && args[0].equals("-verify");
+		int first = verify ? 1 : 0;
+		if (args.length - first < 1 || args.length - first > 2) {
+			System.out.println("Expected arguments: [-verify] documentRoot [precompiledDir]");
+			return;
+		}
+		
+		Path documentRoot = Paths.get(args[first]);
+		Path precompiledDir = args.length - first == 2 ? Paths.get(args[first + 1]) : null;
+		List<Path> scripts;
+		try (Stream<Path> files = Files.walk(documentRoot)) {
+			scripts = files
+				.filter(p -> p.getFileName().toString().endsWith(SmartScriptCache.SCRIPT_EXTENSION))
+				.filter(Files::isRegularFile)
+				.sorted()
+				.collect(Collectors.toList());
+		}
+		
+		int failed = 0;
+		for (Path script : scripts) {
+			Path precompiledPath = SmartScriptCache.precompiledPath(
+				script, documentRoot, precompiledDir
+			);
+			try {
+				String status = null;
+				if (verify) {
+					status = verify(script, precompiledPath);
+				} else {
+					precompile(script, precompiledPath);
+				}
+				if (status != null) {
+					failed ++;
+				}
+				System.out.println((status == null ? "OK " : status + " ") + script);
+			} catch (IOException | SmartScriptParserException ex) {
+				failed ++;
+				System.out.println("FAILED " + script + ": " + ex.getMessage());
+			}
+		}
+		System.out.println(scripts.size() + " scripts, " + failed + " failed.");
+		if (failed > 0) {
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Parses the given script and writes its precompiled file.
+	 * 
+	 * @param script The path to the given script.
+	 * @param precompiledPath The path to the precompiled file.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private static void precompile(Path script, Path precompiledPath) throws IOException {
+		long size = Files.size(script);
+		long lastModified = Files.getLastModifiedTime(script).toMillis();
+		SmartScriptCache.write(
+			precompiledPath, SmartScriptBinary.serialize(parse(script), size, lastModified)
+		);
+	}
+	
+	/**
+	 * Parses the given script and compares its tree with the tree loaded from
+	 * its precompiled file.
+	 * 
+	 * @param script The path to the given script.
+	 * @param precompiledPath The path to the precompiled file.
+	 * @return {@code null} if the trees are equal, or the description of the failure.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private static String verify(Path script, Path precompiledPath) throws IOException {
+		if (!Files.isRegularFile(precompiledPath)) {
+			return "MISSING";
+		}
+		DocumentNode loaded = SmartScriptBinary.deserialize(
+			Files.readAllBytes(precompiledPath),
+			Files.size(script), Files.getLastModifiedTime(script).toMillis()
+		);
+		if (loaded == null) {
+			return "STALE";
+		}
+		return SmartScriptBinary.equalTrees(parse(script), loaded) ? null : "DIFFERENT";
+	}
+	
+	/**
+	 * Parses the given script.
+	 * 
+	 * @param script The path to the given script.
+	 * @return The parsed document tree.
+	 * @throws IOException If the script cannot be read.
+	 */
+	private static DocumentNode parse(Path script) throws IOException {
+		try (Reader reader = new InputStreamReader(Files.newInputStream(script), StandardCharsets.UTF_8)) {
+			return new SmartScriptParser(reader).getDocumentNode();
+		}
+	}
+}
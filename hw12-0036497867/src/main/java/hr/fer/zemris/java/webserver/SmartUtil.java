@@ -1,21 +1,26 @@
 package hr.fer.zemris.java.webserver;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.PushbackInputStream;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
 import java.util.Map;
 
 /**
- * {@link SmartHttpServer} utility class used for reading requests, extracting
+ * {@link SmartHttpServer} utility class used for interpreting requests, extracting
  * cookies from requests, generating timestamps used for cookie managment etc.
  * 
  * @author Mate Gasparini
  */
 public class SmartUtil {
 	
+	/** Format of the dates generated for HTTP headers (e.g. {@code Last-Modified}). */
+	private static final DateTimeFormatter HTTP_DATE_FORMAT =
+		DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+	
 	/**
 	 * Default private constructor.
 	 */
@@ -23,97 +28,139 @@ public class SmartUtil {
 	}
 	
 	/**
-	 * Returns a {@code List} of all lines of the request acquired from the given
-	 * input stream.
+	 * Returns {@code true} if the connection should be kept alive after the
+	 * given request.<br>
+	 * HTTP/1.1 connections are persistent unless the {@code Connection: close}
+	 * header is present. HTTP/1.0 connections are always closed, because
+	 * the chunked transfer encoding is not available to HTTP/1.0 clients.
 	 * 
-	 * @param istream The given input stream.
-	 * @return Lines of request content.
-	 * @throws IOException If the given input stream has been closed,
-	 * 			or if an I/O error occurred.
+	 * @param request The given (parsed) request.
+	 * @param version The request's HTTP version.
+	 * @return {@code true} if the connection should be kept alive.
 	 */
-	public static List<String> readRequest(PushbackInputStream istream) throws IOException {
-		List<String> lines = new ArrayList<>();
-		
-		byte[] bytes = readRequestAsByteArray(istream);
-		if (bytes == null) {
-			return lines;
+	public static boolean isKeepAlive(HttpRequestParser request, String version) {
+		if (!version.equals("HTTP/1.1")) {
+			return false;
+		}
+		String connection = request.getHeader("Connection");
+		return connection == null || !connection.equalsIgnoreCase("close");
+	}
+	
+	/**
+	 * Returns {@code true} if the client accepts the gzip content coding,
+	 * according to the {@code Accept-Encoding} header of the given request.<br>
+	 * The coding is accepted if {@code gzip} (or {@code x-gzip}) is listed with
+	 * a positive quality value, or if it is not listed, but {@code *} is.
+	 * 
+	 * @param request The given (parsed) request.
+	 * @return {@code true} if the client accepts gzip.
+	 */
+	public static boolean acceptsGzip(HttpRequestParser request) {
+		String acceptEncoding = request.getHeader("Accept-Encoding");
+		if (acceptEncoding == null) {
+			return false;
 		}
 		
-		String current = null;
-		for (String s : new String(bytes, StandardCharsets.US_ASCII).split("\n")) {
-			if (s.isEmpty()) break;
-			char c = s.charAt(0);
-			if (c == 9 || c == 32) {
-				current += s;
-			} else {
-				if (current != null) {
-					lines.add(current);
+		Double gzipQuality = null;
+		Double anyQuality = null;
+		for (String coding : acceptEncoding.split(",")) {
+			String[] parts = coding.split(";");
+			String name = parts[0].trim().toLowerCase(Locale.ROOT);
+			double quality = 1;
+			for (int i = 1; i < parts.length; i ++) {
+				String parameter = parts[i].trim();
+				if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+					try {
+						quality = Double.parseDouble(parameter.substring(2).trim());
+					} catch (NumberFormatException ex) {
+						quality = 0;
+					}
 				}
-				current = s;
+			}
+			
+			if (name.equals("gzip") || name.equals("x-gzip")) {
+				gzipQuality = quality;
+			} else if (name.equals("*")) {
+				anyQuality = quality;
 			}
 		}
-		if (!current.isEmpty()) {
-			lines.add(current);
+		if (gzipQuality != null) {
+			return gzipQuality > 0;
 		}
-		
-		return lines;
+		return anyQuality != null && anyQuality > 0;
 	}
 	
 	/**
-	 * Reads the request from the given input stream byte-by-byte and, when
-	 * the ending sequence CR-LF-CR-LF is read, returns all read bytes as an array.<br>
-	 * If the end of the request is reached before reading the ending sequence,
-	 * {@code null} is returned instead.
+	 * Returns {@code true} if the given {@code If-None-Match} header value
+	 * matches the given entity tag. The weak comparison is used, and the
+	 * value {@code *} matches any entity tag.
 	 * 
-	 * @param istream The given input stream.
-	 * @return Byte array generated from the read request.
-	 * @throws IOException If the given input stream has been closed,
-	 * 			or if an I/O error occurred.
+	 * @param headerValue The given header value.
+	 * @param etag The given entity tag.
+	 * @return {@code true} if the header value matches the entity tag.
 	 */
-	private static byte[] readRequestAsByteArray(PushbackInputStream istream)
-			throws IOException {
-		ByteArrayOutputStream bos = new ByteArrayOutputStream();
-		int state = 0;
-		
-		while (true) {
-			int b = istream.read();
-			if (b == -1) return null;
-			if (b != 13) bos.write(b);
-			
-			if (state == 0) {
-				if (b == 13) state = 1;
-				else if (b == 10) state = 0;
-			} else if (state == 1) {
-				if (b == 10) state = 2;
-				else state = 0;
-			} else if (state == 2) {
-				if (b == 13) state = 3;
-				else state = 0;
-			} else if (state == 3) {
-				if (b == 10) break;
-				else state = 0;
+	public static boolean matchesETag(String headerValue, String etag) {
+		if (headerValue.trim().equals("*")) {
+			return true;
+		}
+		String opaqueTag = stripWeakPrefix(etag);
+		for (String candidate : headerValue.split(",")) {
+			if (stripWeakPrefix(candidate.trim()).equals(opaqueTag)) {
+				return true;
 			}
 		}
-		
-		return bos.toByteArray();
+		return false;
+	}
+	
+	/**
+	 * Removes the weakness indicator {@code W/} from the given entity tag.
+	 * 
+	 * @param etag The given entity tag.
+	 * @return The opaque part of the given entity tag.
+	 */
+	private static String stripWeakPrefix(String etag) {
+		return etag.startsWith("W/") ? etag.substring(2) : etag;
+	}
+	
+	/**
+	 * Formats the given file time as an HTTP date (with the precision of seconds).
+	 * 
+	 * @param time The given file time.
+	 * @return The formatted HTTP date.
+	 */
+	public static String formatHttpDate(FileTime time) {
+		return HTTP_DATE_FORMAT.format(
+			ZonedDateTime.ofInstant(Instant.ofEpochSecond(time.toMillis() / 1000L), ZoneOffset.UTC)
+		);
 	}
 	
 	/**
-	 * Reads the given lines of request and returns all parts of the cookie header
+	 * Parses the given HTTP date and returns it as the number of seconds since the epoch.<br>
+	 * If the given date is not valid, -1 is returned instead.
+	 * 
+	 * @param date The given HTTP date.
+	 * @return The number of seconds since the epoch (or -1).
+	 */
+	public static long parseHttpDate(String date) {
+		try {
+			return ZonedDateTime.parse(date.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+					.toEpochSecond();
+		} catch (DateTimeParseException ex) {
+			return -1;
+		}
+	}
+	
+	/**
+	 * Returns all parts of the cookie header of the given request
 	 * as an array of Strings.<br>
 	 * If none found, {@code null} is returned instead.
 	 * 
-	 * @param request The given lines of request.
+	 * @param request The given (parsed) request.
 	 * @return A String array containing the cookies (or {@code null}).
 	 */
-	public static String[] extractCookies(List<String> request) {
-		for (int i = 1, size = request.size(); i < size; i ++) {
-			String line = request.get(i);
-			if (line.toLowerCase().startsWith("cookie:")) {
-				return line.split(":", 2)[1].trim().split(";");
-			}
-		}
-		return null;
+	public static String[] extractCookies(HttpRequestParser request) {
+		String cookies = request.getHeader("Cookie");
+		return cookies == null ? null : cookies.split(";");
 	}
 	
 	/**
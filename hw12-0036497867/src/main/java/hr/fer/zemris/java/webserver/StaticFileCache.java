@@ -0,0 +1,251 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Server-wide in-memory cache of the contents of small static files,
+ * mapped using their paths.<br>
+ * An entry is valid as long as the last modification time and the size
+ * of its file do not change. Files larger than the maximum file size are
+ * never cached. When the total size of the cached contents exceeds the
+ * capacity, the least recently used entries are evicted.<br>
+ * The gzip-compressed content of a cached file is computed on demand and kept
+ * in its entry (counting towards the capacity), until the file changes.<br>
+ * The numbers of cache hits and misses are counted.
+ * 
+ * @author Mate Gasparini
+ */
+public class StaticFileCache {
+	
+	/** Maximum total size (in bytes) of the cached contents. */
+	private final long capacity;
+	
+	/** Maximum size (in bytes) of a single cached file. */
+	private final long maxFileSize;
+	
+	/** Cached entries in the access order (least recently used first). */
+	private final Map<Path, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	
+	/** Total size (in bytes) of the cached contents. */
+	private long totalSize;
+	
+	/** Number of cache hits. */
+	private final AtomicLong hits = new AtomicLong();
+	
+	/** Number of cache misses. */
+	private final AtomicLong misses = new AtomicLong();
+	
+	/**
+	 * Constructor specifying the capacity and the maximum size of a cached file.
+	 * 
+	 * @param capacity The maximum total size (in bytes) of the cached contents.
+	 * @param maxFileSize The maximum size (in bytes) of a single cached file.
+	 * @throws IllegalArgumentException If any of the given sizes is negative.
+	 */
+	public StaticFileCache(long capacity, long maxFileSize) {
+		if (capacity < 0 || maxFileSize < 0) {
+			throw new IllegalArgumentException("Cache sizes must not be negative.");
+		}
+		this.capacity = capacity;
+		this.maxFileSize = Math.min(maxFileSize, capacity);
+	}
+	
+	/**
+	 * Returns the content of the file located at the given path, or {@code null}
+	 * if the file is too large to be cached.<br>
+	 * The file is read only if it is not cached yet, or if it was modified
+	 * since it was cached.
+	 * 
+	 * @param path The given path.
+	 * @return The content of the file, or {@code null}.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public byte[] get(Path path) throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		if (attributes.size() > maxFileSize) {
+			return null;
+		}
+		FileTime lastModified = attributes.lastModifiedTime();
+		
+		CacheEntry entry;
+		synchronized (entries) {
+			entry = entries.get(path);
+		}
+		if (entry != null && entry.lastModified.equals(lastModified)
+				&& entry.content.length == attributes.size()) {
+			hits.incrementAndGet();
+			return entry.content;
+		}
+		
+		misses.incrementAndGet();
+		byte[] content = Files.readAllBytes(path);
+		if (content.length != attributes.size()) {
+			return content; // Modified while reading, so it is not cached yet.
+		}
+		
+		synchronized (entries) {
+			CacheEntry old = entries.put(path, new CacheEntry(content, lastModified));
+			if (old != null) {
+				totalSize -= old.size();
+			}
+			totalSize += content.length;
+			evict();
+		}
+		return content;
+	}
+	
+	/**
+	 * Returns the gzip-compressed content of the file located at the given path,
+	 * or {@code null} if the file is too large to be cached, or if compression
+	 * does not make its content smaller.<br>
+	 * The content is compressed (with the best compression) only once, when it
+	 * is requested for the first time after the file has been cached.
+	 * 
+	 * @param path The given path.
+	 * @return The compressed content of the file, or {@code null}.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	public byte[] getCompressed(Path path) throws IOException {
+		byte[] content = get(path);
+		if (content == null) {
+			return null;
+		}
+		
+		CacheEntry entry;
+		synchronized (entries) {
+			entry = entries.get(path);
+			if (entry == null || entry.content != content) {
+				return null; // Not cached (e.g. it was modified while reading).
+			}
+			if (entry.compressed != null) {
+				return entry.compressed == content ? null : entry.compressed;
+			}
+		}
+		
+		byte[] compressed = compress(content);
+		if (compressed.length >= content.length) {
+			compressed = content; // Marks that the content is not compressible.
+		}
+		synchronized (entries) {
+			if (entry.compressed == null && entries.get(path) == entry) {
+				entry.compressed = compressed;
+				totalSize += entry.size() - content.length;
+				evict();
+			}
+		}
+		return compressed == content ? null : compressed;
+	}
+	
+	/**
+	 * Compresses the given content using the gzip format.
+	 * 
+	 * @param content The given content.
+	 * @return The compressed content.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private static byte[] compress(byte[] content) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(content.length / 2 + 32);
+		try (GZIPOutputStream gzip = new GZIPOutputStream(bos) {
+			{
+				def.setLevel(Deflater.BEST_COMPRESSION);
+			}
+		}) {
+			gzip.write(content);
+		}
+		return bos.toByteArray();
+	}
+	
+	/**
+	 * Returns the number of cache hits.
+	 * 
+	 * @return The number of cache hits.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+	
+	/**
+	 * Returns the number of cache misses.
+	 * 
+	 * @return The number of cache misses.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+	
+	/**
+	 * Returns the total size (in bytes) of the currently cached contents
+	 * (including the compressed ones).
+	 * 
+	 * @return The total size of the cached contents.
+	 */
+	public long size() {
+		synchronized (entries) {
+			return totalSize;
+		}
+	}
+	
+	/**
+	 * Evicts the least recently used entries until the total size of the cached
+	 * contents fits the capacity. Should be called only while holding the lock.
+	 */
+	private void evict() {
+		Iterator<CacheEntry> it = entries.values().iterator();
+		while (totalSize > capacity && it.hasNext()) {
+			totalSize -= it.next().size();
+			it.remove();
+		}
+	}
+	
+	/**
+	 * Cached file content with the last modification time of its file.
+	 * 
+	 * @author Mate Gasparini
+	 */
+	private static class CacheEntry {
+		
+		/** Content of the file. */
+		byte[] content;
+		
+		/** Last modification time of the file at the moment of reading. */
+		FileTime lastModified;
+		
+		/**
+		 * Compressed content of the file (or {@code null} if it has not been
+		 * compressed yet, or the content itself if it is not compressible).
+		 */
+		byte[] compressed;
+		
+		/**
+		 * Constructor specifying the file content and the modification time.
+		 * 
+		 * @param content The file content.
+		 * @param lastModified The last modification time of the file.
+		 */
+		public CacheEntry(byte[] content, FileTime lastModified) {
+			this.content = content;
+			this.lastModified = lastModified;
+		}
+		
+		/**
+		 * Returns the total size (in bytes) of the cached contents of this entry.
+		 * 
+		 * @return The size of this entry.
+		 */
+		int size() {
+			return content.length
+				+ (compressed == null || compressed == content ? 0 : compressed.length);
+		}
+	}
+}
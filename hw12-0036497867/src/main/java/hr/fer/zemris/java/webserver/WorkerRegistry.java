@@ -0,0 +1,346 @@
+package hr.fer.zemris.java.webserver;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+import hr.fer.zemris.java.webserver.WorkerScope.Scope;
+
+/**
+ * Concurrent registry of {@link IWebWorker} classes which are called by the
+ * convention-based URL path ({@code /ext/<Name>}).<br>
+ * Every worker class is loaded and its constructor is resolved only once,
+ * so later requests cost only a map lookup. Instances are created, shared or
+ * pooled as declared by the worker's {@link WorkerScope} annotation, and their
+ * responses are cached as declared by its {@link Cacheable} annotation.<br>
+ * Names which do not denote a valid worker class are also remembered (up to
+ * {@code MAX_UNKNOWN_NAMES} of them), so requests with such names do not
+ * reach the class loader again.
+ * 
+ * @author Mate Gasparini
+ */
+public class WorkerRegistry {
+	
+	/** Maximum number of remembered unknown worker names. */
+	private static final int MAX_UNKNOWN_NAMES = 1024;
+	
+	/** Pool size of the pooled workers whose pool size is not declared. */
+	private static final int DEFAULT_POOL_SIZE = 8;
+	
+	/** Package of the convention-based workers (ending with a dot). */
+	private final String workersPackage;
+	
+	/** Class loader used for loading the worker classes. */
+	private final ClassLoader classLoader;
+	
+	/** Factories of the resolved workers (mapped using their simple class names). */
+	private final Map<String, WorkerFactory> factories = new ConcurrentHashMap<>();
+	
+	/** Names which do not denote a valid worker class. */
+	private final Set<String> unknownNames = ConcurrentHashMap.newKeySet();
+	
+	/**
+	 * Constructor specifying the workers package and the class loader.
+	 * 
+	 * @param workersPackage The package of the workers (ending with a dot).
+	 * @param classLoader The class loader used for loading the worker classes.
+	 */
+	public WorkerRegistry(String workersPackage, ClassLoader classLoader) {
+		this.workersPackage = workersPackage;
+		this.classLoader = classLoader;
+	}
+	
+	/**
+	 * Returns the factory of the worker with the given simple class name.<br>
+	 * If the name does not denote a valid worker class, {@code null} is returned.
+	 * 
+	 * @param className The given simple class name.
+	 * @return The worker factory (or {@code null}).
+	 */
+	public WorkerFactory resolve(String className) {
+		WorkerFactory factory = factories.get(className);
+		if (factory != null || unknownNames.contains(className)) {
+			return factory;
+		}
+		
+		Class<?> workerClass = isValidName(className) ?
+				loadClass(workersPackage + className) : null;
+		factory = workerClass == null ? null : createFactory(workerClass, Scope.PROTOTYPE);
+		if (factory == null) {
+			if (unknownNames.size() >= MAX_UNKNOWN_NAMES) {
+				unknownNames.clear();
+			}
+			unknownNames.add(className);
+			return null;
+		}
+		
+		WorkerFactory existing = factories.putIfAbsent(className, factory);
+		return existing != null ? existing : factory;
+	}
+	
+	/**
+	 * Creates the factory of the given worker class, using the scope declared
+	 * by its {@link WorkerScope} annotation, or the given default scope.<br>
+	 * If the class is not an instantiable worker class, {@code null} is returned.
+	 * 
+	 * @param workerClass The given worker class.
+	 * @param defaultScope The scope used if the class is not annotated.
+	 * @return The worker factory (or {@code null}).
+	 */
+	public static WorkerFactory createFactory(Class<?> workerClass, Scope defaultScope) {
+		if (!IWebWorker.class.isAssignableFrom(workerClass)
+				|| workerClass.isInterface()
+				|| Modifier.isAbstract(workerClass.getModifiers())) {
+			return null;
+		}
+		
+		MethodHandle constructor;
+		try {
+			constructor = MethodHandles.publicLookup()
+					.findConstructor(workerClass, MethodType.methodType(void.class))
+					.asType(MethodType.methodType(IWebWorker.class));
+		} catch (ReflectiveOperationException ex) {
+			return null;
+		}
+		
+		CachePolicy cachePolicy = CachePolicy.of(workerClass);
+		WorkerScope annotation = workerClass.getAnnotation(WorkerScope.class);
+		Scope scope = annotation == null ? defaultScope : annotation.value();
+		switch (scope) {
+			case SINGLETON:
+				return new SingletonFactory(newInstance(constructor), cachePolicy);
+			case POOLED:
+				return new PooledFactory(
+					constructor, annotation == null ? DEFAULT_POOL_SIZE : annotation.poolSize(),
+					cachePolicy
+				);
+			default:
+				return new PrototypeFactory(constructor, cachePolicy);
+		}
+	}
+	
+	/**
+	 * Creates the factory which shares the given worker instance among all requests.
+	 * 
+	 * @param worker The given worker instance.
+	 * @return The worker factory.
+	 */
+	public static WorkerFactory singletonFactory(IWebWorker worker) {
+		return new SingletonFactory(worker, CachePolicy.of(worker.getClass()));
+	}
+	
+	/**
+	 * Returns {@code true} if the given name is a valid simple class name.
+	 * 
+	 * @param className The given name.
+	 * @return {@code true} if the name is a valid simple class name.
+	 */
+	private static boolean isValidName(String className) {
+		if (className.isEmpty() || !Character.isJavaIdentifierStart(className.charAt(0))) {
+			return false;
+		}
+		for (int i = 1, length = className.length(); i < length; i ++) {
+			if (!Character.isJavaIdentifierPart(className.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Loads the class with the given fully qualified name.<br>
+	 * If no such class exists, {@code null} is returned.
+	 * 
+	 * @param fqcn The given fully qualified class name.
+	 * @return The loaded class (or {@code null}).
+	 */
+	private Class<?> loadClass(String fqcn) {
+		try {
+			return classLoader.loadClass(fqcn);
+		} catch (ClassNotFoundException | LinkageError ex) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Creates a new worker instance using the given constructor handle.
+	 * 
+	 * @param constructor The given constructor handle.
+	 * @return The new worker instance.
+	 * @throws IllegalStateException If the constructor throws an exception.
+	 */
+	private static IWebWorker newInstance(MethodHandle constructor) {
+		try {
+			return (IWebWorker) constructor.invokeExact();
+		} catch (RuntimeException | Error ex) {
+			throw ex;
+		} catch (Throwable ex) {
+			throw new IllegalStateException("Worker could not be instantiated.", ex);
+		}
+	}
+	
+	/**
+	 * Factory which provides the worker instances for single requests.<br>
+	 * Every acquired instance must be released after the request is processed.
+	 * 
+	 * @author Mate Gasparini
+	 */
+	public interface WorkerFactory {
+		
+		/**
+		 * Returns a worker instance which can be used for processing a request.
+		 * 
+		 * @return The worker instance.
+		 */
+		IWebWorker acquire();
+		
+		/**
+		 * Releases the given worker instance after the request is processed.
+		 * 
+		 * @param worker The given worker instance.
+		 */
+		void release(IWebWorker worker);
+		
+		/**
+		 * Returns the policy of caching the worker's responses.
+		 * 
+		 * @return The cache policy, or {@code null} if the responses are not cacheable.
+		 */
+		CachePolicy getCachePolicy();
+	}
+	
+	/**
+	 * Base class of the factories, which holds the cache policy of the worker.
+	 * 
+	 * @author Mate Gasparini
+	 */
+	private static abstract class AbstractFactory implements WorkerFactory {
+		
+		/** Policy of caching the worker's responses (or {@code null}). */
+		private final CachePolicy cachePolicy;
+		
+		/**
+		 * Constructor specifying the cache policy of the worker.
+		 * 
+		 * @param cachePolicy The cache policy (or {@code null}).
+		 */
+		protected AbstractFactory(CachePolicy cachePolicy) {
+			this.cachePolicy = cachePolicy;
+		}
+		
+		@Override
+		public CachePolicy getCachePolicy() {
+			return cachePolicy;
+		}
+	}
+	
+	/**
+	 * Factory which creates a new worker instance for every request.
+	 * 
+	 * @author Mate Gasparini
+	 */
+	private static class PrototypeFactory extends AbstractFactory {
+		
+		/** Constructor handle of the worker class. */
+		private final MethodHandle constructor;
+		
+		/**
+		 * Constructor specifying the constructor handle of the worker class
+		 * and its cache policy.
+		 * 
+		 * @param constructor The constructor handle.
+		 * @param cachePolicy The cache policy (or {@code null}).
+		 */
+		public PrototypeFactory(MethodHandle constructor, CachePolicy cachePolicy) {
+			super(cachePolicy);
+			this.constructor = constructor;
+		}
+		
+		@Override
+		public IWebWorker acquire() {
+			return newInstance(constructor);
+		}
+		
+		@Override
+		public void release(IWebWorker worker) {
+		}
+	}
+	
+	/**
+	 * Factory which shares a single worker instance among all requests.
+	 * 
+	 * @author Mate Gasparini
+	 */
+	private static class SingletonFactory extends AbstractFactory {
+		
+		/** The shared worker instance. */
+		private final IWebWorker instance;
+		
+		/**
+		 * Constructor specifying the shared worker instance and its cache policy.
+		 * 
+		 * @param instance The shared worker instance.
+		 * @param cachePolicy The cache policy (or {@code null}).
+		 */
+		public SingletonFactory(IWebWorker instance, CachePolicy cachePolicy) {
+			super(cachePolicy);
+			this.instance = instance;
+		}
+		
+		@Override
+		public IWebWorker acquire() {
+			return instance;
+		}
+		
+		@Override
+		public void release(IWebWorker worker) {
+		}
+	}
+	
+	/**
+	 * Factory which keeps a bounded pool of idle worker instances.<br>
+	 * If the pool is empty, a new instance is created, and if the pool is full,
+	 * the released instance is discarded.
+	 * 
+	 * @author Mate Gasparini
+	 */
+	private static class PooledFactory extends AbstractFactory {
+		
+		/** Constructor handle of the worker class. */
+		private final MethodHandle constructor;
+		
+		/** Idle worker instances. */
+		private final Queue<IWebWorker> pool;
+		
+		/**
+		 * Constructor specifying the constructor handle, the pool size
+		 * and the cache policy.
+		 * 
+		 * @param constructor The constructor handle.
+		 * @param poolSize The maximum number of idle instances.
+		 * @param cachePolicy The cache policy (or {@code null}).
+		 */
+		public PooledFactory(MethodHandle constructor, int poolSize, CachePolicy cachePolicy) {
+			super(cachePolicy);
+			this.constructor = constructor;
+			this.pool = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+		}
+		
+		@Override
+		public IWebWorker acquire() {
+			IWebWorker worker = pool.poll();
+			return worker != null ? worker : newInstance(constructor);
+		}
+		
+		@Override
+		public void release(IWebWorker worker) {
+			pool.offer(worker);
+		}
+	}
+}
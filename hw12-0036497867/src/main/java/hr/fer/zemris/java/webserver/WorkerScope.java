@@ -0,0 +1,53 @@
+package hr.fer.zemris.java.webserver;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation which declares how the {@link SmartHttpServer} instantiates
+ * an {@link IWebWorker}.<br>
+ * If a worker is not annotated, workers mapped in the workers configuration file
+ * are treated as singletons, and workers called by the convention-based URL path
+ * ({@code /ext/<Name>}) are instantiated for every request.
+ * 
+ * @author Mate Gasparini
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface WorkerScope {
+	
+	/**
+	 * Returns the scope of the worker instances.
+	 * 
+	 * @return The scope of the worker instances.
+	 */
+	Scope value();
+	
+	/**
+	 * Returns the maximum number of idle instances kept by a pooled worker.
+	 * 
+	 * @return The maximum number of pooled instances.
+	 */
+	int poolSize() default 8;
+	
+	/**
+	 * Scope of the worker instances.
+	 * 
+	 * @author Mate Gasparini
+	 */
+	enum Scope {
+		
+		/** A new instance is created for every request. */
+		PROTOTYPE,
+		
+		/** A single instance is shared by all requests. */
+		SINGLETON,
+		
+		/** Every request borrows an instance from a pool of reusable instances. */
+		POOLED
+	}
+}
@@ -0,0 +1,289 @@
+package hr.fer.zemris.java.webserver.log;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous access log of the served requests.<br>
+ * The worker threads store the records of the requests into the slots of a
+ * bounded ring buffer without locking (a slot is claimed using an atomic
+ * counter and published by writing its sequence number). A single daemon
+ * thread drains the buffer in batches, formats the records using the
+ * {@link AccessLogFormat} and appends every batch to the log file with one
+ * write.<br>
+ * If the buffer is full, the record is dropped and counted instead of
+ * waiting for the drainer, so logging never stalls a request.<br>
+ * When the log file reaches its maximum size, it is rotated: {@code <file>}
+ * is renamed to {@code <file>.1}, {@code <file>.1} to {@code <file>.2} etc.,
+ * and the oldest file is deleted.
+ * 
+ * @author Mate Gasparini
+ */
+public class AccessLog {
+	
+	/** Maximum number of records formatted and written together. */
+	private static final int BATCH_SIZE = 256;
+	
+	/** Duration (in ns) of waiting for new records when the buffer is empty. */
+	private static final long IDLE_WAIT = TimeUnit.MILLISECONDS.toNanos(10);
+	
+	/** Slots of the ring buffer. */
+	private final AccessRecord[] slots;
+	
+	/** Mask which maps a sequence number to the index of its slot. */
+	private final int mask;
+	
+	/** Sequence number of the next claimed slot. */
+	private final AtomicLong claimed = new AtomicLong();
+	
+	/** Sequence number of the next drained slot. */
+	private volatile long drained;
+	
+	/** Counter of the dropped records. */
+	private final LongAdder dropped;
+	
+	/** Format of the log lines. */
+	private final AccessLogFormat format;
+	
+	/** Path to the log file. */
+	private final Path file;
+	
+	/** Maximum size (in bytes) of the log file (or 0 if it is never rotated). */
+	private final long maxFileSize;
+	
+	/** Number of kept rotated log files. */
+	private final int maxFiles;
+	
+	/** Opened log file. */
+	private FileChannel channel;
+	
+	/** Current size (in bytes) of the log file. */
+	private long fileSize;
+	
+	/** Thread which drains the buffer (or {@code null} if it has not been started). */
+	private Thread drainer;
+	
+	/** Marks that the log is being closed. */
+	private volatile boolean closed;
+	
+	/**
+	 * Constructor specifying the log file and its rotation, the format,
+	 * the capacity of the buffer and the counter of the dropped records.
+	 * 
+	 * @param file The path to the log file.
+	 * @param format The format of the log lines.
+	 * @param capacity The minimum number of buffered records (rounded up
+	 * 			to a power of two).
+	 * @param maxFileSize The maximum size (in bytes) of the log file
+	 * 			(or 0 if it is never rotated).
+	 * @param maxFiles The number of kept rotated log files.
+	 * @param dropped The counter of the dropped records.
+	 * @throws IllegalArgumentException If the capacity is not positive, or if
+	 * 			the maximum file size or the number of files is negative.
+	 */
+	public AccessLog(Path file, AccessLogFormat format, int capacity, long maxFileSize,
+			int maxFiles, LongAdder dropped) {
+		if (capacity < 1 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("Access log capacity must be positive.");
+		}
+		if (maxFileSize < 0 || maxFiles < 0) {
+			throw new IllegalArgumentException("Access log rotation limits must not be negative.");
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		this.slots = new AccessRecord[size];
+		for (int i = 0; i < size; i ++) {
+			slots[i] = new AccessRecord();
+		}
+		this.mask = size - 1;
+		this.file = file;
+		this.format = format;
+		this.maxFileSize = maxFileSize;
+		this.maxFiles = maxFiles;
+		this.dropped = dropped;
+	}
+	
+	/**
+	 * Opens the log file (appending to it) and starts the daemonic drainer thread.
+	 * 
+	 * @throws IOException If the log file cannot be opened.
+	 */
+	public void start() throws IOException {
+		open();
+		drainer = new Thread(this::drain, "access-log");
+		drainer.setDaemon(true);
+		drainer.start();
+	}
+	
+	/**
+	 * Stops the drainer thread after it writes all the buffered records,
+	 * and closes the log file.
+	 */
+	public void close() {
+		closed = true;
+		if (drainer != null) {
+			LockSupport.unpark(drainer);
+			try {
+				drainer.join();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	/**
+	 * Records the served request with the given properties, or drops the record
+	 * (and counts it) if the buffer is full.
+	 * 
+	 * @param client The client address.
+	 * @param method The request method (or {@code null} if the request is invalid).
+	 * @param path The request path (or {@code null} if the request is invalid).
+	 * @param query The request query (or {@code null} if there is none).
+	 * @param status The response status code.
+	 * @param bytes The number of bytes written to the client.
+	 * @param nanos The duration (in ns) of serving the request.
+	 * @param sid The session ID (or {@code null} if there is none).
+	 * @return {@code true} if the request has been recorded.
+	 */
+	public boolean log(InetAddress client, String method, String path, String query,
+			int status, long bytes, long nanos, String sid) {
+		long sequence;
+		do {
+			sequence = claimed.get();
+			if (sequence - drained >= slots.length) {
+				dropped.increment();
+				return false;
+			}
+		} while (!claimed.compareAndSet(sequence, sequence + 1));
+		
+		AccessRecord record = slots[(int) sequence & mask];
+		record.time = System.currentTimeMillis();
+		record.client = client;
+		record.method = method;
+		record.path = path;
+		record.query = query;
+		record.status = status;
+		record.bytes = bytes;
+		record.nanos = nanos;
+		record.sid = sid;
+		record.sequence = sequence;
+		return true;
+	}
+	
+	/**
+	 * Drains the buffer in batches until the log is closed and all the claimed
+	 * records are written. Published records are drained in order, so a record
+	 * which is still being stored delays the records claimed after it.
+	 */
+	private void drain() {
+		StringBuilder builder = new StringBuilder(BATCH_SIZE * 128);
+		while (true) {
+			long next = drained;
+			int count = 0;
+			for (AccessRecord record; count < BATCH_SIZE
+					&& (record = slots[(int) next & mask]).sequence == next; count ++) {
+				format.append(builder, record);
+				record.clear();
+				drained = ++ next;
+			}
+			
+			if (count > 0) {
+				write(builder);
+				builder.setLength(0);
+			} else if (closed && next == claimed.get()) {
+				break;
+			} else {
+				LockSupport.parkNanos(this, IDLE_WAIT);
+			}
+		}
+		
+		try {
+			channel.close();
+		} catch (IOException ignorable) {}
+	}
+	
+	/**
+	 * Appends the given formatted records to the log file, and rotates it
+	 * if it has reached its maximum size.<br>
+	 * If the records cannot be written, the error is reported and they are lost
+	 * (and the log file is reopened if it has been closed).
+	 * 
+	 * @param builder The given formatted records.
+	 */
+	private void write(StringBuilder builder) {
+		ByteBuffer buffer = ByteBuffer.wrap(builder.toString().getBytes(StandardCharsets.UTF_8));
+		try {
+			while (buffer.hasRemaining()) {
+				fileSize += channel.write(buffer);
+			}
+			if (maxFileSize > 0 && fileSize >= maxFileSize) {
+				rotate();
+			}
+		} catch (IOException ex) {
+			System.err.println("Access log records could not be written: " + ex.getMessage());
+			if (!channel.isOpen()) {
+				try {
+					open();
+				} catch (IOException ignorable) {}
+			}
+		}
+	}
+	
+	/**
+	 * Renames the log file and its rotated files, deletes the oldest one,
+	 * and opens a new log file.
+	 * 
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private void rotate() throws IOException {
+		channel.close();
+		if (maxFiles == 0) {
+			Files.delete(file);
+		} else {
+			Files.deleteIfExists(rotated(maxFiles));
+			for (int i = maxFiles - 1; i >= 1; i --) {
+				if (Files.exists(rotated(i))) {
+					Files.move(rotated(i), rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+			Files.move(file, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+		}
+		open();
+	}
+	
+	/**
+	 * Returns the path to the rotated log file with the given index.
+	 * 
+	 * @param index The given index.
+	 * @return The path to the rotated log file.
+	 */
+	private Path rotated(int index) {
+		return file.resolveSibling(file.getFileName() + "." + index);
+	}
+	
+	/**
+	 * Opens the log file for appending (creating its directory if needed).
+	 * 
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private void open() throws IOException {
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		channel = FileChannel.open(
+			file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND
+		);
+		fileSize = channel.size();
+	}
+}
@@ -0,0 +1,168 @@
+package hr.fer.zemris.java.webserver.log;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Format of the {@link AccessLog} lines, given by a pattern in which the
+ * following directives are replaced by the values of the logged request:
+ * <ul>
+ * <li>{@code %h} - client address</li>
+ * <li>{@code %t} - time at which the request was served</li>
+ * <li>{@code %m} - request method</li>
+ * <li>{@code %U} - request path</li>
+ * <li>{@code %q} - request query (prefixed by {@code ?}, or empty if there is none)</li>
+ * <li>{@code %s} - response status code</li>
+ * <li>{@code %b} - number of bytes written to the client</li>
+ * <li>{@code %D} - duration of serving the request (in microseconds)</li>
+ * <li>{@code %S} - session ID</li>
+ * <li>{@code %%} - the percent sign</li>
+ * </ul>
+ * Missing values are written as {@code -}. Quotes, backslashes and control
+ * characters of the path and the query are escaped, so a request cannot
+ * forge log lines.
+ * 
+ * @author Mate Gasparini
+ */
+public class AccessLogFormat {
+	
+	/** Default pattern (similar to the common log format). */
+	public static final String DEFAULT_PATTERN = "%h [%t] \"%m %U%q\" %s %b %D %S";
+	
+	/** Format of the time. */
+	private static final DateTimeFormatter TIME_FORMAT =
+		DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.US)
+			.withZone(ZoneId.systemDefault());
+	
+	/** Digits used for escaping characters. */
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+	
+	/** Literal parts of the pattern, preceding every directive (and the last one after them). */
+	private final List<String> literals = new ArrayList<>();
+	
+	/** Directive characters. */
+	private final List<Character> directives = new ArrayList<>();
+	
+	/** Second (in ms since the epoch) of the last formatted time. */
+	private long formattedSecond = -1;
+	
+	/** Last formatted time. */
+	private String formattedTime;
+	
+	/**
+	 * Constructor specifying the pattern.
+	 * 
+	 * @param pattern The given pattern.
+	 * @throws IllegalArgumentException If the pattern contains an unknown directive.
+	 */
+	public AccessLogFormat(String pattern) {
+		StringBuilder literal = new StringBuilder();
+		for (int i = 0; i < pattern.length(); i ++) {
+			char c = pattern.charAt(i);
+			if (c != '%') {
+				literal.append(c);
+				continue;
+			}
+			if (++ i == pattern.length()) {
+				throw new IllegalArgumentException("Incomplete access log directive.");
+			}
+			char directive = pattern.charAt(i);
+			if (directive == '%') {
+				literal.append('%');
+			} else if ("htmUqsbDS".indexOf(directive) >= 0) {
+				literals.add(literal.toString());
+				directives.add(directive);
+				literal.setLength(0);
+			} else {
+				throw new IllegalArgumentException("Unknown access log directive: %" + directive);
+			}
+		}
+		literals.add(literal.toString());
+	}
+	
+	/**
+	 * Appends the line of the given record (with the line terminator) to the
+	 * given builder.<br>
+	 * It is called only by the thread which drains the log.
+	 * 
+	 * @param builder The given builder.
+	 * @param record The given record.
+	 */
+	void append(StringBuilder builder, AccessRecord record) {
+		for (int i = 0, n = directives.size(); i < n; i ++) {
+			builder.append(literals.get(i));
+			switch (directives.get(i)) {
+				case 'h':
+					builder.append(record.client == null ? "-" : record.client.getHostAddress());
+					break;
+				case 't':
+					builder.append(formatTime(record.time));
+					break;
+				case 'm':
+					builder.append(record.method == null ? "-" : record.method);
+					break;
+				case 'U':
+					appendEscaped(builder, record.path == null ? "-" : record.path);
+					break;
+				case 'q':
+					if (record.query != null) {
+						appendEscaped(builder.append('?'), record.query);
+					}
+					break;
+				case 's':
+					builder.append(record.status);
+					break;
+				case 'b':
+					builder.append(record.bytes);
+					break;
+				case 'D':
+					builder.append(record.nanos / 1000);
+					break;
+				case 'S':
+					builder.append(record.sid == null ? "-" : record.sid);
+					break;
+			}
+		}
+		builder.append(literals.get(literals.size() - 1)).append('\n');
+	}
+	
+	/**
+	 * Returns the formatted given time, reusing the last formatted time
+	 * if it is within the same second.
+	 * 
+	 * @param time The given time (in ms since the epoch).
+	 * @return The formatted time.
+	 */
+	private String formatTime(long time) {
+		long second = time - Math.floorMod(time, 1000L);
+		if (second != formattedSecond) {
+			formattedTime = TIME_FORMAT.format(Instant.ofEpochMilli(second));
+			formattedSecond = second;
+		}
+		return formattedTime;
+	}
+	
+	/**
+	 * Appends the given text to the given builder, escaping the quotes,
+	 * the backslashes and the control characters.
+	 * 
+	 * @param builder The given builder.
+	 * @param text The given text.
+	 */
+	private static void appendEscaped(StringBuilder builder, String text) {
+		for (int i = 0, n = text.length(); i < n; i ++) {
+			char c = text.charAt(i);
+			if (c == '"' || c == '\\') {
+				builder.append('\\').append(c);
+			} else if (c < 0x20 || c == 0x7f) {
+				builder.append("\\x").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+			} else {
+				builder.append(c);
+			}
+		}
+	}
+}
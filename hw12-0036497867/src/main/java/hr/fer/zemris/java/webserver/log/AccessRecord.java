@@ -0,0 +1,59 @@
+package hr.fer.zemris.java.webserver.log;
+
+import java.net.InetAddress;
+
+/**
+ * Single slot of the {@link AccessLog}'s ring buffer, which holds the record
+ * of a served request.<br>
+ * Slots are allocated once and reused, so recording a request only stores
+ * references to the already existing objects and a few numbers.
+ * 
+ * @author Mate Gasparini
+ */
+class AccessRecord {
+	
+	/**
+	 * Sequence number of the record currently stored in this slot, which is
+	 * written last by the producer, so it publishes all the other fields.
+	 */
+	volatile long sequence = -1;
+	
+	/** Time (in ms since the epoch) at which the request was served. */
+	long time;
+	
+	/** Client address. */
+	InetAddress client;
+	
+	/** Request method (or {@code null} if the request is invalid). */
+	String method;
+	
+	/** Request path (or {@code null} if the request is invalid). */
+	String path;
+	
+	/** Request query (or {@code null} if there is none). */
+	String query;
+	
+	/** Response status code. */
+	int status;
+	
+	/** Number of bytes written to the client. */
+	long bytes;
+	
+	/** Duration (in ns) of serving the request. */
+	long nanos;
+	
+	/** Session ID (or {@code null} if there is none). */
+	String sid;
+	
+	/**
+	 * Clears the references held by this slot, so the drained request's
+	 * objects can be garbage collected.
+	 */
+	void clear() {
+		client = null;
+		method = null;
+		path = null;
+		query = null;
+		sid = null;
+	}
+}
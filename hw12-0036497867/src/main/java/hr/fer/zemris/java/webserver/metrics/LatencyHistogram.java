@@ -0,0 +1,93 @@
+package hr.fer.zemris.java.webserver.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations with fixed bucket bounds.<br>
+ * Every bucket is a {@link LongAdder}, so concurrent recordings from many
+ * threads update different cells instead of contending on a single counter,
+ * and recording never blocks. Readings taken while durations are recorded
+ * are not an atomic snapshot, which is acceptable for monitoring.
+ * 
+ * @author Mate Gasparini
+ */
+public class LatencyHistogram {
+	
+	/** Upper bounds (in ns) of all buckets except the last (unbounded) one. */
+	private static final long[] BOUNDS = {
+		100_000L, 250_000L, 500_000L,
+		1_000_000L, 2_500_000L, 5_000_000L,
+		10_000_000L, 25_000_000L, 50_000_000L,
+		100_000_000L, 250_000_000L, 500_000_000L,
+		1_000_000_000L, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L
+	};
+	
+	/** Counts of the recorded durations per bucket (the last bucket is unbounded). */
+	private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+	
+	/** Sum (in ns) of all recorded durations. */
+	private final LongAdder sum = new LongAdder();
+	
+	/**
+	 * Constructor which creates an empty histogram.
+	 */
+	public LatencyHistogram() {
+		for (int i = 0; i < buckets.length; i ++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+	
+	/**
+	 * Records the given duration.
+	 * 
+	 * @param nanos The given duration (in ns).
+	 */
+	public void record(long nanos) {
+		int index = 0;
+		while (index < BOUNDS.length && nanos > BOUNDS[index]) {
+			index ++;
+		}
+		buckets[index].increment();
+		sum.add(nanos);
+	}
+	
+	/**
+	 * Returns the number of buckets (including the last, unbounded one).
+	 * 
+	 * @return The number of buckets.
+	 */
+	public int getBucketCount() {
+		return buckets.length;
+	}
+	
+	/**
+	 * Returns the upper bound (in ns) of the bucket with the given index,
+	 * or {@link Long#MAX_VALUE} for the last bucket.
+	 * 
+	 * @param index The given bucket index.
+	 * @return The upper bound of the bucket.
+	 */
+	public long getUpperBound(int index) {
+		return index < BOUNDS.length ? BOUNDS[index] : Long.MAX_VALUE;
+	}
+	
+	/**
+	 * Returns the number of durations recorded in the bucket with the given index
+	 * (i.e. the durations greater than the previous bound, up to its bound).
+	 * 
+	 * @param index The given bucket index.
+	 * @return The number of durations in the bucket.
+	 */
+	public long getBucket(int index) {
+		return buckets[index].sum();
+	}
+	
+	/**
+	 * Returns the sum (in ns) of all recorded durations.
+	 * 
+	 * @return The sum of all durations.
+	 */
+	public long getSum() {
+		return sum.sum();
+	}
+}
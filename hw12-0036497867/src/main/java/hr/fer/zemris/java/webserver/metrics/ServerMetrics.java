@@ -0,0 +1,293 @@
+package hr.fer.zemris.java.webserver.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Runtime metrics of the {@link hr.fer.zemris.java.webserver.SmartHttpServer}.<br>
+ * All counters are {@link LongAdder}s and all durations are recorded in
+ * {@link LatencyHistogram}s, so the worker threads update them without
+ * locking. The metrics can be written in the Prometheus text exposition
+ * format using {@link #writeTo(StringBuilder)}.
+ * 
+ * @author Mate Gasparini
+ */
+public class ServerMetrics {
+	
+	/** Prefix of all metric names. */
+	private static final String PREFIX = "smarthttp_";
+	
+	/**
+	 * Type of the route which served a request.
+	 * 
+	 * @author Mate Gasparini
+	 */
+	public enum Route {
+		
+		/** Worker mapped in the workers configuration file. */
+		WORKER,
+		
+		/** Worker called by the convention-based URL path ({@code /ext/<Name>}). */
+		EXT,
+		
+		/** Smart script. */
+		SCRIPT,
+		
+		/** Static file. */
+		STATIC;
+		
+		/** Label value of the route (used in the exported metrics). */
+		private final String label = name().toLowerCase();
+	}
+	
+	/**
+	 * Reason of rejecting a connection or a request.
+	 * 
+	 * @author Mate Gasparini
+	 */
+	public enum Rejection {
+		
+		/** The maximum number of open connections has been reached. */
+		CONNECTIONS,
+		
+		/** The maximum number of open connections from the client address has been reached. */
+		ADDRESS,
+		
+		/** The worker thread pool's queue is full (or all virtual thread permits are taken). */
+		QUEUE,
+		
+		/** The request header has not been received in time. */
+		TIMEOUT;
+		
+		/** Label value of the reason (used in the exported metrics). */
+		private final String label = name().toLowerCase();
+	}
+	
+	/** Number of accepted connections. */
+	private final LongAdder acceptedConnections = new LongAdder();
+	
+	/** Number of currently open connections. */
+	private final LongAdder activeConnections = new LongAdder();
+	
+	/** Number of tasks waiting in the worker thread pool's queue. */
+	private final LongAdder queuedTasks = new LongAdder();
+	
+	/** Number of bytes written to the clients. */
+	private final LongAdder bytesWritten = new LongAdder();
+	
+	/** Number of access log records dropped because the log's buffer was full. */
+	private final LongAdder accessLogDropped = new LongAdder();
+	
+	/** Numbers of rejections, per reason. */
+	private final Map<Rejection, LongAdder> rejections = new EnumMap<>(Rejection.class);
+	
+	/** Durations of waiting in the worker thread pool's queue. */
+	private final LatencyHistogram queueWait = new LatencyHistogram();
+	
+	/** Durations of the requests, per route type. */
+	private final Map<Route, LatencyHistogram> requestDurations = new EnumMap<>(Route.class);
+	
+	/** Supplier of the number of sessions. */
+	private final IntSupplier sessionCount;
+	
+	/**
+	 * Constructor specifying the supplier of the number of sessions.
+	 * 
+	 * @param sessionCount The supplier of the number of sessions.
+	 */
+	public ServerMetrics(IntSupplier sessionCount) {
+		this.sessionCount = sessionCount;
+		for (Route route : Route.values()) {
+			requestDurations.put(route, new LatencyHistogram());
+		}
+		for (Rejection reason : Rejection.values()) {
+			rejections.put(reason, new LongAdder());
+		}
+	}
+	
+	/**
+	 * Records that a connection has been accepted.
+	 */
+	public void connectionAccepted() {
+		acceptedConnections.increment();
+		activeConnections.increment();
+	}
+	
+	/**
+	 * Records that a connection has been closed.
+	 */
+	public void connectionClosed() {
+		activeConnections.decrement();
+	}
+	
+	/**
+	 * Records that a task has been submitted to the worker thread pool.
+	 */
+	public void taskQueued() {
+		queuedTasks.increment();
+	}
+	
+	/**
+	 * Records that a submitted task has been rejected by the worker thread pool
+	 * because its queue is full (or all virtual thread permits are taken).
+	 */
+	public void taskRejected() {
+		queuedTasks.decrement();
+		rejections.get(Rejection.QUEUE).increment();
+	}
+	
+	/**
+	 * Records that a connection has been rejected (or closed) for the given reason.
+	 * 
+	 * @param reason The given reason.
+	 */
+	public void connectionRejected(Rejection reason) {
+		rejections.get(reason).increment();
+	}
+	
+	/**
+	 * Records that a task has been taken from the worker thread pool's queue.
+	 * 
+	 * @param queuedAt The {@link System#nanoTime()} at which the task was queued.
+	 */
+	public void taskStarted(long queuedAt) {
+		queuedTasks.decrement();
+		queueWait.record(System.nanoTime() - queuedAt);
+	}
+	
+	/**
+	 * Returns the counter of bytes written to the clients.
+	 * 
+	 * @return The counter of written bytes.
+	 */
+	public LongAdder getBytesWritten() {
+		return bytesWritten;
+	}
+	
+	/**
+	 * Returns the counter of dropped access log records.
+	 * 
+	 * @return The counter of dropped access log records.
+	 */
+	public LongAdder getAccessLogDropped() {
+		return accessLogDropped;
+	}
+	
+	/**
+	 * Records the duration of a request served by the given route type.
+	 * 
+	 * @param route The given route type.
+	 * @param nanos The duration (in ns) of the request.
+	 */
+	public void requestServed(Route route, long nanos) {
+		requestDurations.get(route).record(nanos);
+	}
+	
+	/**
+	 * Appends all metrics to the given builder, using the Prometheus text
+	 * exposition format.
+	 * 
+	 * @param builder The given builder.
+	 */
+	public void writeTo(StringBuilder builder) {
+		writeMetric(builder, "connections_accepted_total", "counter",
+			"Number of accepted connections.", acceptedConnections.sum());
+		writeMetric(builder, "connections_active", "gauge",
+			"Number of currently open connections.", activeConnections.sum());
+		writeMetric(builder, "tasks_queued", "gauge",
+			"Number of tasks waiting for a worker thread.", queuedTasks.sum());
+		writeMetric(builder, "bytes_written_total", "counter",
+			"Number of bytes written to the clients.", bytesWritten.sum());
+		writeMetric(builder, "sessions", "gauge",
+			"Number of stored sessions.", sessionCount.getAsInt());
+		writeMetric(builder, "access_log_dropped_total", "counter",
+			"Number of access log records dropped because the log buffer was full.",
+			accessLogDropped.sum());
+		
+		writeHeader(builder, "rejections_total", "counter",
+			"Number of rejected connections and requests, per reason.");
+		for (Rejection reason : Rejection.values()) {
+			builder.append(PREFIX).append("rejections_total{reason=\"").append(reason.label)
+					.append("\"} ").append(rejections.get(reason).sum()).append('\n');
+		}
+		
+		writeHeader(builder, "queue_wait_seconds", "histogram",
+			"Time spent by the tasks waiting for a worker thread.");
+		writeHistogram(builder, "queue_wait_seconds", "", queueWait);
+		
+		writeHeader(builder, "request_duration_seconds", "histogram",
+			"Time spent processing the requests, per route type.");
+		for (Route route : Route.values()) {
+			writeHistogram(builder, "request_duration_seconds",
+				"route=\"" + route.label + "\"", requestDurations.get(route));
+		}
+	}
+	
+	/**
+	 * Appends the metric with the given name, type, description and value.
+	 * 
+	 * @param builder The builder.
+	 * @param name The metric name (without the prefix).
+	 * @param type The metric type.
+	 * @param help The metric description.
+	 * @param value The metric value.
+	 */
+	private static void writeMetric(StringBuilder builder, String name, String type,
+			String help, long value) {
+		writeHeader(builder, name, type, help);
+		builder.append(PREFIX).append(name).append(' ').append(value).append('\n');
+	}
+	
+	/**
+	 * Appends the description and the type of the metric with the given name.
+	 * 
+	 * @param builder The builder.
+	 * @param name The metric name (without the prefix).
+	 * @param type The metric type.
+	 * @param help The metric description.
+	 */
+	private static void writeHeader(StringBuilder builder, String name, String type,
+			String help) {
+		builder.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+		builder.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+	}
+	
+	/**
+	 * Appends the cumulative buckets, the sum and the count of the given histogram.
+	 * 
+	 * @param builder The builder.
+	 * @param name The metric name (without the prefix).
+	 * @param labels The labels (without braces) of all samples, possibly empty.
+	 * @param histogram The histogram.
+	 */
+	private static void writeHistogram(StringBuilder builder, String name, String labels,
+			LatencyHistogram histogram) {
+		String separator = labels.isEmpty() ? "" : ",";
+		long count = 0;
+		for (int i = 0, buckets = histogram.getBucketCount(); i < buckets; i ++) {
+			count += histogram.getBucket(i);
+			long bound = histogram.getUpperBound(i);
+			builder.append(PREFIX).append(name).append("_bucket{").append(labels)
+					.append(separator).append("le=\"")
+					.append(bound == Long.MAX_VALUE ? "+Inf" : toSeconds(bound))
+					.append("\"} ").append(count).append('\n');
+		}
+		String braced = labels.isEmpty() ? "" : "{" + labels + "}";
+		builder.append(PREFIX).append(name).append("_sum").append(braced).append(' ')
+				.append(toSeconds(histogram.getSum())).append('\n');
+		builder.append(PREFIX).append(name).append("_count").append(braced).append(' ')
+				.append(count).append('\n');
+	}
+	
+	/**
+	 * Converts the given duration to seconds.
+	 * 
+	 * @param nanos The given duration (in ns).
+	 * @return The duration in seconds.
+	 */
+	private static double toSeconds(long nanos) {
+		return nanos / 1e9;
+	}
+}
@@ -0,0 +1,75 @@
+package hr.fer.zemris.java.webserver.session;
+
+import java.util.Map;
+
+/**
+ * Interface representing a store of user sessions, mapped using session IDs.<br>
+ * Implementations must be thread-safe, because all methods (except
+ * {@link #removeExpired()}) are called concurrently by the worker threads.
+ * 
+ * @author Mate Gasparini
+ */
+public interface ISessionStore {
+	
+	/**
+	 * Returns the valid (not expired) session with the given session ID.<br>
+	 * If none found, {@code null} is returned instead.
+	 * 
+	 * @param sid The given session ID.
+	 * @return The session entry (or {@code null}).
+	 */
+	SessionEntry get(String sid);
+	
+	/**
+	 * Creates a new session which can be added to this store.<br>
+	 * By default, a plain {@link SessionEntry} is created, but stores which
+	 * track the changes of the session maps create their own entries.
+	 * 
+	 * @param sid The session ID.
+	 * @param host The exact session host.
+	 * @param timeout The session timeout value (in seconds).
+	 * @param map The initial cookie map.
+	 * @return The created session entry.
+	 */
+	default SessionEntry create(String sid, String host, int timeout, Map<String, String> map) {
+		return new SessionEntry(sid, host, timeout, map);
+	}
+	
+	/**
+	 * Adds the given session (created by {@link #create(String, String, int, Map)})
+	 * to the store, unless a session with the same session ID already exists.
+	 * 
+	 * @param entry The given session entry.
+	 * @return {@code true} if the session has been added.
+	 */
+	boolean add(SessionEntry entry);
+	
+	/**
+	 * Extends the validity of the given session using the given timeout value.
+	 * 
+	 * @param entry The given session entry.
+	 * @param timeout The session timeout value (in seconds).
+	 */
+	void touch(SessionEntry entry, int timeout);
+	
+	/**
+	 * Removes the session with the given session ID (if it exists).
+	 * 
+	 * @param sid The given session ID.
+	 */
+	void remove(String sid);
+	
+	/**
+	 * Removes the expired sessions.<br>
+	 * Called periodically by the server's session cleaner thread.
+	 */
+	void removeExpired();
+	
+	/**
+	 * Returns the number of stored sessions (possibly including the expired
+	 * sessions which have not been removed yet).
+	 * 
+	 * @return The number of stored sessions.
+	 */
+	int size();
+}
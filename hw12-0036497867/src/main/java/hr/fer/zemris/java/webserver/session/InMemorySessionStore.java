@@ -0,0 +1,124 @@
+package hr.fer.zemris.java.webserver.session;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Default {@link ISessionStore} which keeps all sessions in the server's memory.<br>
+ * Sessions are kept in a {@link ConcurrentHashMap}, so looking up and touching
+ * a session does not take any lock. Expiry is handled by a {@link TimingWheel}:
+ * a session is scheduled once (when added), and when its deadline is reached it
+ * is either removed or (if it has been touched in the meantime) rescheduled to
+ * its new deadline, so the whole map is never scanned.
+ * 
+ * @author Mate Gasparini
+ */
+public class InMemorySessionStore implements ISessionStore {
+	
+	/** Duration (in ms) of a single tick of the expiry wheel. */
+	private static final long TICK_DURATION = 1000;
+	
+	/** Map containing all sessions (mapped using session IDs). */
+	private final Map<String, SessionEntry> sessions = new ConcurrentHashMap<>();
+	
+	/** Clock returning the current time (in ms). */
+	private final LongSupplier clock;
+	
+	/** Wheel used for scheduling the session expiry. */
+	private final TimingWheel<SessionEntry> expiryWheel;
+	
+	/**
+	 * Default constructor, which uses the system clock.
+	 */
+	public InMemorySessionStore() {
+		this(System::currentTimeMillis);
+	}
+	
+	/**
+	 * Constructor specifying the clock used for the session validity and expiry
+	 * (so the expiry can be tested without waiting).
+	 * 
+	 * @param clock The clock returning the current time (in ms).
+	 */
+	InMemorySessionStore(LongSupplier clock) {
+		this.clock = clock;
+		this.expiryWheel = new TimingWheel<>(TICK_DURATION, clock.getAsLong());
+	}
+	
+	@Override
+	public SessionEntry create(String sid, String host, int timeout, Map<String, String> map) {
+		SessionEntry entry = new SessionEntry(sid, host, timeout, map);
+		entry.setValidUntil(clock.getAsLong() / 1000L + timeout);
+		return entry;
+	}
+	
+	@Override
+	public SessionEntry get(String sid) {
+		SessionEntry entry = sessions.get(sid);
+		if (entry == null) {
+			return null;
+		}
+		if (!isValid(entry)) {
+			sessions.remove(sid, entry);
+			return null;
+		}
+		return entry;
+	}
+	
+	@Override
+	public boolean add(SessionEntry entry) {
+		if (sessions.putIfAbsent(entry.getSid(), entry) != null) {
+			return false;
+		}
+		expiryWheel.schedule(entry, entry.getValidUntil() * 1000L);
+		return true;
+	}
+	
+	@Override
+	public void touch(SessionEntry entry, int timeout) {
+		entry.setValidUntil(clock.getAsLong() / 1000L + timeout);
+	}
+	
+	@Override
+	public void remove(String sid) {
+		sessions.remove(sid);
+	}
+	
+	@Override
+	public void removeExpired() {
+		expiryWheel.advance(clock.getAsLong(), this::expire);
+	}
+	
+	/**
+	 * Removes the given session whose scheduled deadline has been reached,
+	 * or reschedules it if it has been touched in the meantime.
+	 * 
+	 * @param entry The given session entry.
+	 */
+	private void expire(SessionEntry entry) {
+		if (sessions.get(entry.getSid()) != entry) {
+			return; // Already removed.
+		}
+		if (isValid(entry)) {
+			expiryWheel.schedule(entry, entry.getValidUntil() * 1000L);
+		} else {
+			sessions.remove(entry.getSid(), entry);
+		}
+	}
+	
+	/**
+	 * Returns {@code true} if the given session is still valid.
+	 * 
+	 * @param entry The given session entry.
+	 * @return {@code true} if the session has not expired.
+	 */
+	private boolean isValid(SessionEntry entry) {
+		return clock.getAsLong() / 1000L < entry.getValidUntil();
+	}
+	
+	@Override
+	public int size() {
+		return sessions.size();
+	}
+}
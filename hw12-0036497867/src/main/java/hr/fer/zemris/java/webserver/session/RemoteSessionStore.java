@@ -0,0 +1,639 @@
+package hr.fer.zemris.java.webserver.session;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link ISessionStore} which keeps the sessions in a {@link SessionStoreServer}
+ * shared by several servers, so the requests of a session can be served by any
+ * server behind a load balancer.<br>
+ * Every server keeps a near-cache of the sessions it has used. A cached session
+ * is used without contacting the store for {@code session.store.nearCacheTtl}
+ * milliseconds, and afterwards it is revalidated using its version (its map is
+ * transferred only if it has been changed in the meantime). Therefore, changes
+ * made by another server become visible after at most the near-cache TTL.<br>
+ * New sessions, changes of the session maps and touches are not sent to the
+ * store immediately: they are collected by the cached sessions and written back
+ * in batches every {@code session.store.flushPeriod} milliseconds. Only the
+ * changed keys are sent, so concurrent changes of different keys made by
+ * different servers are merged by the store. If the store is unreachable,
+ * the cached sessions are still used and their changes are retried, and if
+ * the store has lost a session (e.g. by being restarted), it is written again.
+ * An outage is logged only when it begins and when it ends.
+ * <p>
+ * The store is configured using the following server properties:
+ * <ul>
+ * <li>{@code session.store.address} - host and port of the store
+ * (by default {@code 127.0.0.1:5730})</li>
+ * <li>{@code session.store.nearCacheTtl} - near-cache TTL (by default 1000 ms)</li>
+ * <li>{@code session.store.flushPeriod} - write-back period (by default 50 ms)</li>
+ * <li>{@code session.store.connections} - maximum number of idle connections
+ * (by default 8)</li>
+ * </ul>
+ * 
+ * @author Mate Gasparini
+ */
+public class RemoteSessionStore implements ISessionStore {
+	
+	/** Timeout (in ms) of connecting to the store and of reading its responses. */
+	private static final int SOCKET_TIMEOUT = 2000;
+	
+	/** Address of the store. */
+	private final InetSocketAddress address;
+	
+	/** Duration (in ms) in which a cached session is used without revalidation. */
+	private final long nearCacheTtl;
+	
+	/** Duration (in ms) of the interval between every write-back. */
+	private final long flushPeriod;
+	
+	/** Cached sessions (mapped using session IDs). */
+	private final Map<String, RemoteEntry> nearCache = new ConcurrentHashMap<>();
+	
+	/** Cached sessions whose changes have not been written back yet. */
+	private final Queue<RemoteEntry> pending = new ConcurrentLinkedQueue<>();
+	
+	/** Idle connections to the store. */
+	private final BlockingQueue<Connection> idleConnections;
+	
+	/** Marks that the last exchange with the store has succeeded. */
+	private final AtomicBoolean reachable = new AtomicBoolean(true);
+	
+	/**
+	 * Constructor specifying the server properties, which starts the daemonic
+	 * thread writing back the changes.
+	 * 
+	 * @param properties The server properties.
+	 * @throws IllegalArgumentException If the properties are invalid.
+	 */
+	public RemoteSessionStore(Properties properties) {
+		String[] address = properties.getProperty("session.store.address", "127.0.0.1:"
+				+ SessionStoreServer.DEFAULT_PORT).trim().split(":");
+		if (address.length != 2) {
+			throw new IllegalArgumentException("Session store address must be host:port.");
+		}
+		this.address = new InetSocketAddress(address[0], Integer.parseInt(address[1]));
+		this.nearCacheTtl = Long.parseLong(
+			properties.getProperty("session.store.nearCacheTtl", "1000").trim()
+		);
+		this.flushPeriod = Long.parseLong(
+			properties.getProperty("session.store.flushPeriod", "50").trim()
+		);
+		int connections = Integer.parseInt(
+			properties.getProperty("session.store.connections", "8").trim()
+		);
+		if (nearCacheTtl < 0 || flushPeriod < 1 || connections < 1) {
+			throw new IllegalArgumentException("Invalid session store properties.");
+		}
+		this.idleConnections = new ArrayBlockingQueue<>(connections);
+		
+		Thread flusher = new Thread(() -> {
+			while (true) {
+				try {
+					Thread.sleep(flushPeriod);
+				} catch (InterruptedException ignorable) {}
+				flush();
+			}
+		}, "session-store-flusher");
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+	
+	@Override
+	public SessionEntry create(String sid, String host, int timeout, Map<String, String> map) {
+		return new RemoteEntry(sid, host, timeout, 0, map, true);
+	}
+	
+	@Override
+	public SessionEntry get(String sid) {
+		RemoteEntry entry = nearCache.get(sid);
+		if (entry != null && (entry.isDirty()
+				|| System.currentTimeMillis() - entry.fetchedAt < nearCacheTtl)) {
+			return entry.isValid() ? entry : null;
+		}
+		
+		try {
+			entry = fetch(sid, entry);
+		} catch (IOException ex) {
+			unreachable(ex);
+		}
+		return entry != null && entry.isValid() ? entry : null;
+	}
+	
+	/**
+	 * Fetches the session with the given session ID from the store, or only
+	 * revalidates the given cached session if it has not been changed.
+	 * 
+	 * @param sid The given session ID.
+	 * @param cached The cached session (or {@code null} if there is none).
+	 * @return The current session (or {@code null} if it does not exist).
+	 * @throws IOException If the store is unreachable.
+	 */
+	private RemoteEntry fetch(String sid, RemoteEntry cached) throws IOException {
+		Connection connection = borrow();
+		try {
+			connection.out.writeByte(SessionProtocol.GET);
+			connection.out.writeUTF(sid);
+			connection.out.writeLong(cached == null ? -1 : cached.version);
+			connection.out.flush();
+			
+			RemoteEntry entry;
+			switch (connection.in.readByte()) {
+				case SessionProtocol.MISSING:
+					entry = null;
+					if (cached != null && cached.isValid()) {
+						// The store has lost a live session (e.g. by being restarted).
+						cached.reseed();
+						entry = cached;
+					} else if (cached != null) {
+						nearCache.remove(sid, cached);
+					}
+					break;
+				case SessionProtocol.NOT_MODIFIED:
+					entry = cached;
+					entry.updateValidUntil(remaining(connection.in.readLong()));
+					entry.fetchedAt = System.currentTimeMillis();
+					break;
+				case SessionProtocol.FOUND:
+					String host = connection.in.readUTF();
+					int timeout = remaining(connection.in.readLong());
+					long version = connection.in.readLong();
+					Map<String, String> map = new HashMap<>();
+					SessionProtocol.readMap(connection.in, map);
+					entry = new RemoteEntry(sid, host, timeout, version, map, false);
+					if (cached == null) {
+						RemoteEntry previous = nearCache.putIfAbsent(sid, entry);
+						entry = previous == null ? entry : previous;
+					} else if (!nearCache.replace(sid, cached, entry)) {
+						entry = nearCache.getOrDefault(sid, entry);
+					}
+					break;
+				default:
+					throw new IOException("Invalid session store response.");
+			}
+			release(connection);
+			return entry;
+		} catch (IOException ex) {
+			connection.close();
+			throw ex;
+		}
+	}
+	
+	@Override
+	public boolean add(SessionEntry entry) {
+		if (!(entry instanceof RemoteEntry)) {
+			throw new IllegalArgumentException("Session must be created by this store.");
+		}
+		RemoteEntry remote = (RemoteEntry) entry;
+		if (nearCache.putIfAbsent(remote.getSid(), remote) != null) {
+			return false;
+		}
+		remote.enqueue();
+		return true;
+	}
+	
+	@Override
+	public void touch(SessionEntry entry, int timeout) {
+		long validUntil = entry.getValidUntil();
+		entry.updateValidUntil(timeout);
+		if (entry.getValidUntil() != validUntil && entry instanceof RemoteEntry) {
+			RemoteEntry remote = (RemoteEntry) entry;
+			remote.touched = true;
+			remote.enqueue();
+		}
+	}
+	
+	@Override
+	public void remove(String sid) {
+		nearCache.remove(sid);
+		try {
+			Connection connection = borrow();
+			try {
+				connection.out.writeByte(SessionProtocol.REMOVE);
+				connection.out.writeUTF(sid);
+				connection.out.flush();
+				connection.in.readByte();
+				release(connection);
+			} catch (IOException ex) {
+				connection.close();
+				throw ex;
+			}
+		} catch (IOException ex) {
+			unreachable(ex); // The session is expired by the store later.
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}<br>
+	 * Only the cached copies of the sessions are removed (the store removes
+	 * the expired sessions by itself), unless they have unwritten changes.
+	 */
+	@Override
+	public void removeExpired() {
+		nearCache.values().removeIf(entry -> !entry.isDirty() && !entry.isValid());
+	}
+	
+	/**
+	 * {@inheritDoc}<br>
+	 * If the store is unreachable, the number of cached sessions is returned instead.
+	 */
+	@Override
+	public int size() {
+		try {
+			Connection connection = borrow();
+			try {
+				connection.out.writeByte(SessionProtocol.SIZE);
+				connection.out.flush();
+				int size = connection.in.readInt();
+				release(connection);
+				return size;
+			} catch (IOException ex) {
+				connection.close();
+				throw ex;
+			}
+		} catch (IOException ex) {
+			unreachable(ex);
+			return nearCache.size();
+		}
+	}
+	
+	/**
+	 * Writes back the changes of all the pending sessions in a single batch.<br>
+	 * If the batch cannot be written, the changes are kept and retried later.
+	 */
+	private void flush() {
+		List<RemoteEntry> entries = new ArrayList<>();
+		List<Map<String, String>> changes = new ArrayList<>();
+		for (RemoteEntry entry; (entry = pending.poll()) != null; ) {
+			entry.syncing = true;
+			entry.queued.set(false);
+			entries.add(entry);
+			changes.add(entry.takeChanges());
+		}
+		if (entries.isEmpty()) {
+			return;
+		}
+		
+		try {
+			long[] versions = sync(entries, changes);
+			for (int i = 0; i < versions.length; i ++) {
+				RemoteEntry entry = entries.get(i);
+				long expected = entry.version + (changes.get(i).isEmpty() ? 0 : 1);
+				entry.created = false;
+				if (versions[i] < 0) {
+					entry.reseed();
+				} else if (versions[i] == expected) {
+					entry.version = expected;
+				} else {
+					entry.fetchedAt = 0; // Changed by another server, so it is refetched.
+				}
+				entry.syncing = false;
+			}
+		} catch (IOException ex) {
+			unreachable(ex);
+			for (int i = 0; i < entries.size(); i ++) {
+				RemoteEntry entry = entries.get(i);
+				entry.restoreChanges(changes.get(i));
+				entry.touched = true;
+				entry.syncing = false;
+				entry.enqueue();
+			}
+		}
+	}
+	
+	/**
+	 * Sends the given sessions with their changes to the store.
+	 * 
+	 * @param entries The given sessions.
+	 * @param changes The changes of the given sessions' maps (new values,
+	 * 			or {@code null} for removed keys).
+	 * @return The new versions of the sessions (or -1 for sessions which no longer exist).
+	 * @throws IOException If the store is unreachable.
+	 */
+	private long[] sync(List<RemoteEntry> entries, List<Map<String, String>> changes)
+			throws IOException {
+		Connection connection = borrow();
+		try {
+			DataOutputStream out = connection.out;
+			out.writeByte(SessionProtocol.SYNC);
+			out.writeInt(entries.size());
+			for (int i = 0; i < entries.size(); i ++) {
+				RemoteEntry entry = entries.get(i);
+				out.writeUTF(entry.getSid());
+				out.writeBoolean(entry.created);
+				out.writeUTF(entry.getHost());
+				out.writeInt(entry.created || entry.touched ? remaining(entry.getValidUntil()) : 0);
+				entry.touched = false;
+				out.writeInt(changes.get(i).size());
+				for (Map.Entry<String, String> change : changes.get(i).entrySet()) {
+					out.writeUTF(change.getKey());
+					SessionProtocol.writeNullable(out, change.getValue());
+				}
+			}
+			out.flush();
+			
+			long[] versions = new long[entries.size()];
+			for (int i = 0; i < versions.length; i ++) {
+				versions[i] = connection.in.readLong();
+			}
+			release(connection);
+			return versions;
+		} catch (IOException ex) {
+			connection.close();
+			throw ex;
+		}
+	}
+	
+	/**
+	 * Returns the number of seconds remaining until the given timestamp
+	 * (at least one second, so the session is not expired by the store
+	 * before it is cleaned up).
+	 * 
+	 * @param validUntil The given timestamp (in seconds).
+	 * @return The remaining number of seconds.
+	 */
+	private static int remaining(long validUntil) {
+		long now = System.currentTimeMillis() / 1000L;
+		return (int) Math.max(1, Math.min(Integer.MAX_VALUE, validUntil - now));
+	}
+	
+	/**
+	 * Returns an idle connection to the store, or opens a new one if there is none.
+	 * 
+	 * @return The connection.
+	 * @throws IOException If the store is unreachable.
+	 */
+	private Connection borrow() throws IOException {
+		Connection connection = idleConnections.poll();
+		return connection != null ? connection : new Connection(address);
+	}
+	
+	/**
+	 * Returns the given connection (after a successful exchange) to the idle
+	 * connections, or closes it if there are too many of them.
+	 * 
+	 * @param connection The given connection.
+	 */
+	private void release(Connection connection) {
+		if (!reachable.get() && reachable.compareAndSet(false, true)) {
+			System.err.println("Session store " + address + " is reachable again.");
+		}
+		if (!idleConnections.offer(connection)) {
+			connection.close();
+		}
+	}
+	
+	/**
+	 * Marks the store as unreachable after a failed exchange. Only the first
+	 * failure of an outage is logged, so the requests (which fall back to the
+	 * cached sessions) do not flood the log while the store is down.
+	 * 
+	 * @param ex The exception thrown by the failed exchange.
+	 */
+	private void unreachable(IOException ex) {
+		if (reachable.get() && reachable.compareAndSet(true, false)) {
+			System.err.println("Session store " + address + " is unreachable, "
+					+ "the cached sessions are used until it is back: " + ex.getMessage());
+		}
+	}
+	
+	/**
+	 * Cached session which collects its changes until they are written back.
+	 * 
+	 * @author Mate Gasparini
+	 */
+	private class RemoteEntry extends SessionEntry {
+		
+		/** Version of the session in the store (which the cached map corresponds to). */
+		volatile long version;
+		
+		/** Time (in ms) at which the session has been fetched or revalidated. */
+		volatile long fetchedAt = System.currentTimeMillis();
+		
+		/** Marks that the session has not been written to the store yet. */
+		volatile boolean created;
+		
+		/** Marks that the session has been touched since the last write-back. */
+		volatile boolean touched;
+		
+		/** Marks that the session's changes are being written back. */
+		volatile boolean syncing;
+		
+		/** Marks that the session is in the queue of pending sessions. */
+		final AtomicBoolean queued = new AtomicBoolean();
+		
+		/** Keys changed since the last write-back. */
+		final Set<String> changedKeys = ConcurrentHashMap.newKeySet();
+		
+		/**
+		 * Constructor specifying the session, its version and whether it has
+		 * been created by this server.
+		 * 
+		 * @param sid The specified session ID.
+		 * @param host The exact specified session host.
+		 * @param timeout Session timeout value.
+		 * @param version The version of the session.
+		 * @param map The initial cookie map.
+		 * @param created {@code true} if the session has been created by this server.
+		 */
+		RemoteEntry(String sid, String host, int timeout, long version,
+				Map<String, String> map, boolean created) {
+			super(sid, host, timeout, new TrackingMap());
+			((TrackingMap) getMap()).owner = this;
+			this.version = version;
+			this.created = created;
+			((TrackingMap) getMap()).putAllUntracked(map);
+			if (created) {
+				changedKeys.addAll(map.keySet()); // Enqueued when it is added.
+			}
+		}
+		
+		/**
+		 * Returns {@code true} if the session has changes which have not been
+		 * written back yet.
+		 * 
+		 * @return {@code true} if the session has unwritten changes.
+		 */
+		boolean isDirty() {
+			return created || syncing || queued.get();
+		}
+		
+		/**
+		 * Adds the session to the queue of pending sessions (unless it is
+		 * already there).
+		 */
+		void enqueue() {
+			if (queued.compareAndSet(false, true)) {
+				pending.add(this);
+			}
+		}
+		
+		/**
+		 * Writes the whole session to the store again if it is still valid
+		 * (the store has lost it, e.g. by being restarted), or removes it
+		 * from the near-cache otherwise.
+		 */
+		void reseed() {
+			if (!isValid()) {
+				nearCache.remove(getSid(), this);
+				return;
+			}
+			created = true;
+			touched = true;
+			version = -1; // So the written session is refetched, even if its version matches.
+			changedKeys.addAll(getMap().keySet());
+			enqueue();
+		}
+		
+		/**
+		 * Returns the changes since the last write-back (new values of the changed
+		 * keys, or {@code null} for the removed keys), and clears them.
+		 * 
+		 * @return The changes of the session's map.
+		 */
+		Map<String, String> takeChanges() {
+			Map<String, String> changes = new HashMap<>();
+			for (String key : changedKeys) {
+				changedKeys.remove(key);
+				changes.put(key, getMap().get(key));
+			}
+			return changes;
+		}
+		
+		/**
+		 * Marks the keys of the given changes (which could not be written back)
+		 * as changed again.
+		 * 
+		 * @param changes The given changes.
+		 */
+		void restoreChanges(Map<String, String> changes) {
+			changedKeys.addAll(changes.keySet());
+		}
+	}
+	
+	/**
+	 * Session map which marks the changed keys of its session, and adds the
+	 * session to the queue of pending sessions.<br>
+	 * The server changes the session maps only using {@link #put(String, String)}
+	 * and {@link #remove(Object)}, which are tracked together with
+	 * {@link #putAll(Map)} and {@link #clear()}.
+	 * 
+	 * @author Mate Gasparini
+	 */
+	private static class TrackingMap extends ConcurrentHashMap<String, String> {
+		
+		/** Serial version UID. */
+		private static final long serialVersionUID = 1L;
+		
+		/** Session which owns the map. */
+		transient RemoteEntry owner;
+		
+		@Override
+		public String put(String key, String value) {
+			String previous = super.put(key, value);
+			changed(key);
+			return previous;
+		}
+		
+		@Override
+		public String remove(Object key) {
+			String previous = super.remove(key);
+			if (previous != null) {
+				changed((String) key);
+			}
+			return previous;
+		}
+		
+		@Override
+		public void putAll(Map<? extends String, ? extends String> map) {
+			map.forEach(this::put);
+		}
+		
+		@Override
+		public void clear() {
+			keySet().forEach(this::remove);
+		}
+		
+		/**
+		 * Puts all entries of the given map without marking them as changed.
+		 * 
+		 * @param map The given map.
+		 */
+		void putAllUntracked(Map<String, String> map) {
+			map.forEach(super::put);
+		}
+		
+		/**
+		 * Marks the given key as changed.
+		 * 
+		 * @param key The given key.
+		 */
+		private void changed(String key) {
+			owner.changedKeys.add(key);
+			owner.enqueue();
+		}
+	}
+	
+	/**
+	 * Connection to the store.
+	 * 
+	 * @author Mate Gasparini
+	 */
+	private static class Connection {
+		
+		/** Socket connected to the store. */
+		private final Socket socket;
+		
+		/** Input stream of the socket. */
+		final DataInputStream in;
+		
+		/** Output stream of the socket. */
+		final DataOutputStream out;
+		
+		/**
+		 * Constructor which connects to the store with the given address.
+		 * 
+		 * @param address The given address.
+		 * @throws IOException If the store is unreachable.
+		 */
+		Connection(InetSocketAddress address) throws IOException {
+			socket = new Socket();
+			try {
+				socket.connect(address, SOCKET_TIMEOUT);
+				socket.setSoTimeout(SOCKET_TIMEOUT);
+				socket.setTcpNoDelay(true);
+				in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			} catch (IOException ex) {
+				close();
+				throw ex;
+			}
+		}
+		
+		/**
+		 * Closes the connection.
+		 */
+		void close() {
+			try {
+				socket.close();
+			} catch (IOException ignorable) {}
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package hr.fer.zemris.java.webserver.session;
+
+import java.util.Map;
+
+import hr.fer.zemris.java.webserver.SmartUtil;
+
+/**
+ * Entry representing a session with its session ID used as the key.
+ * 
+ * @author Mate Gasparini
+ */
+public class SessionEntry {
+	
+	/** Session ID. */
+	private final String sid;
+	
+	/** Exact session host. */
+	private final String host;
+	
+	/** Timestamp (in seconds) representing the time until the session is valid. */
+	private volatile long validUntil;
+	
+	/** Map of all session's cookies. */
+	private final Map<String, String> map;
+	
+	/**
+	 * Constructor specifying the session ID, the host, the cookie map and
+	 * the session timeout used for calculating the <i>valid until</i> timestamp.
+	 * 
+	 * @param sid The specified session ID.
+	 * @param host The exact specified session host.
+	 * @param timeout Session timeout value.
+	 * @param map The specified cookie map.
+	 */
+	public SessionEntry(String sid, String host, int timeout, Map<String, String> map) {
+		this.sid = sid;
+		this.host = host;
+		this.map = map;
+		updateValidUntil(timeout);
+	}
+	
+	/**
+	 * Returns the session ID.
+	 * 
+	 * @return The session ID.
+	 */
+	public String getSid() {
+		return sid;
+	}
+	
+	/**
+	 * Returns the exact session host.
+	 * 
+	 * @return The session host.
+	 */
+	public String getHost() {
+		return host;
+	}
+	
+	/**
+	 * Returns the timestamp (in seconds) until the session is valid.
+	 * 
+	 * @return The <i>valid until</i> timestamp.
+	 */
+	public long getValidUntil() {
+		return validUntil;
+	}
+	
+	/**
+	 * Returns the map of all session's cookies.
+	 * 
+	 * @return The cookie map.
+	 */
+	public Map<String, String> getMap() {
+		return map;
+	}
+	
+	/**
+	 * Returns {@code true} if the session is still valid.
+	 * 
+	 * @return {@code true} if the session has not expired.
+	 */
+	public boolean isValid() {
+		return SmartUtil.timestampStillValid(validUntil);
+	}
+	
+	/**
+	 * Updates the <i>valid until</i> timestamp using the given timeout value.
+	 * 
+	 * @param timeout The given timeout value.
+	 */
+	public void updateValidUntil(int timeout) {
+		validUntil = SmartUtil.generateUntilValidTimestamp(timeout);
+	}
+	
+	/**
+	 * Sets the <i>valid until</i> timestamp (in seconds).
+	 * 
+	 * @param validUntil The new <i>valid until</i> timestamp.
+	 */
+	void setValidUntil(long validUntil) {
+		this.validUntil = validUntil;
+	}
+}
@@ -0,0 +1,114 @@
+package hr.fer.zemris.java.webserver.session;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Binary protocol spoken between the {@link RemoteSessionStore} and the
+ * {@link SessionStoreServer} over a TCP connection.<br>
+ * Every request starts with an operation code, followed by its arguments.
+ * Strings are written in the modified UTF-8 format, and {@code null} strings
+ * are preceded by a {@code false} presence flag.
+ * <ul>
+ * <li>{@link #GET} {@code sid, knownVersion} - answered with {@link #MISSING},
+ * {@link #NOT_MODIFIED} followed by {@code validUntil} (if the session's version
+ * equals the known version), or {@link #FOUND} followed by {@code host,
+ * validUntil, version} and the map of the session.</li>
+ * <li>{@link #SYNC} {@code count} and {@code count} items {@code sid, create,
+ * host, timeout} followed by the changes of the session's map (the number of
+ * changed keys, and every key with its new value, or {@code null} if it has been
+ * removed) - answered with the new version of every session (or -1 if the session
+ * does not exist and the item does not create it).</li>
+ * <li>{@link #REMOVE} {@code sid} - answered with {@link #OK}.</li>
+ * <li>{@link #SIZE} - answered with the number of stored sessions.</li>
+ * </ul>
+ * 
+ * @author Mate Gasparini
+ */
+final class SessionProtocol {
+	
+	/** Operation which returns a session if it has been modified. */
+	static final byte GET = 1;
+	
+	/** Operation which creates, changes and touches a batch of sessions. */
+	static final byte SYNC = 2;
+	
+	/** Operation which removes a session. */
+	static final byte REMOVE = 3;
+	
+	/** Operation which returns the number of stored sessions. */
+	static final byte SIZE = 4;
+	
+	/** Response to {@link #GET} if the session does not exist. */
+	static final byte MISSING = 0;
+	
+	/** Response to {@link #GET} if the session has not been modified. */
+	static final byte NOT_MODIFIED = 1;
+	
+	/** Response to {@link #GET} if the session is returned. */
+	static final byte FOUND = 2;
+	
+	/** Response to {@link #REMOVE}. */
+	static final byte OK = 3;
+	
+	/**
+	 * Default private constructor.
+	 */
+	private SessionProtocol() {
+	}
+	
+	/**
+	 * Writes the given (possibly {@code null}) string.
+	 * 
+	 * @param out The output stream.
+	 * @param value The given string (or {@code null}).
+	 * @throws IOException If an I/O error occurs.
+	 */
+	static void writeNullable(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+	
+	/**
+	 * Reads a (possibly {@code null}) string.
+	 * 
+	 * @param in The input stream.
+	 * @return The read string (or {@code null}).
+	 * @throws IOException If an I/O error occurs.
+	 */
+	static String readNullable(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+	
+	/**
+	 * Writes the given map (its size, and every key with its value).
+	 * 
+	 * @param out The output stream.
+	 * @param map The given map.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	static void writeMap(DataOutputStream out, Map<String, String> map) throws IOException {
+		out.writeInt(map.size());
+		for (Map.Entry<String, String> entry : map.entrySet()) {
+			out.writeUTF(entry.getKey());
+			out.writeUTF(entry.getValue());
+		}
+	}
+	
+	/**
+	 * Reads the map and puts its entries into the given map.
+	 * 
+	 * @param in The input stream.
+	 * @param map The given map.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	static void readMap(DataInputStream in, Map<String, String> map) throws IOException {
+		for (int i = in.readInt(); i > 0; i --) {
+			map.put(in.readUTF(), in.readUTF());
+		}
+	}
+}
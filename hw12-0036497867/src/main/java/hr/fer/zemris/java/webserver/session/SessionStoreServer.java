@@ -0,0 +1,364 @@
+package hr.fer.zemris.java.webserver.session;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Standalone session store process shared by several servers, which access it
+ * using the {@link RemoteSessionStore}.<br>
+ * Sessions are kept in an {@link InMemorySessionStore}, and every session has
+ * a version which is incremented whenever its map is changed, so the servers
+ * can revalidate their cached copies without transferring the maps.<br>
+ * Every connection is served by its own thread, and it only accepts
+ * connections on the loopback address (or the given address).
+ * 
+ * @author Mate Gasparini
+ */
+public class SessionStoreServer {
+	
+	/** Default port of the session store. */
+	public static final int DEFAULT_PORT = 5730;
+	
+	/** Duration (in ms) of the interval between every removal of expired sessions. */
+	private static final long CLEANER_PERIOD = 1000;
+	
+	/** Store of the sessions. */
+	private final ISessionStore store = new InMemorySessionStore();
+	
+	/** Address on which the connections are accepted. */
+	private final InetAddress address;
+	
+	/** Port on which the connections are accepted. */
+	private final int port;
+	
+	/** Server socket accepting the connections (or {@code null} if it is not opened). */
+	private volatile ServerSocket serverSocket;
+	
+	/** Sockets of the served connections. */
+	private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+	
+	/** Thread accepting the connections (or {@code null} if it is not started). */
+	private volatile Thread acceptor;
+	
+	/** Marks that the session store has been closed. */
+	private volatile boolean closed;
+	
+	/**
+	 * Constructor specifying the address and the port.
+	 * 
+	 * @param address The address on which the connections are accepted.
+	 * @param port The port on which the connections are accepted
+	 * 			(or 0 for an automatically allocated port).
+	 */
+	public SessionStoreServer(InetAddress address, int port) {
+		this.address = address;
+		this.port = port;
+	}
+	
+	/**
+	 * Main method which starts the session store.
+	 * 
+	 * @param args Optional port, and optional address (loopback by default).
+	 * @throws IOException If the server socket cannot be opened.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length > 2) {
+			System.out.println("Expected at most 2 arguments (port and address).");
+			return;
+		}
+		
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		InetAddress address = args.length > 1
+			? InetAddress.getByName(args[1])
+			: InetAddress.getLoopbackAddress();
+		new SessionStoreServer(address, port).run();
+	}
+	
+	/**
+	 * Accepts the connections until the session store is closed, and serves
+	 * every connection using its own daemonic thread.
+	 * 
+	 * @throws IOException If the server socket cannot be opened.
+	 */
+	public void run() throws IOException {
+		accept(open());
+	}
+	
+	/**
+	 * Opens the server socket, and accepts the connections using a daemonic
+	 * thread until the session store is closed.
+	 * 
+	 * @return The port on which the connections are accepted.
+	 * @throws IOException If the server socket cannot be opened.
+	 */
+	public int start() throws IOException {
+		ServerSocket serverSocket = open();
+		acceptor = new Thread(() -> {
+			try {
+				accept(serverSocket);
+			} catch (IOException ex) {
+				System.err.println("Session store failed: " + ex.getMessage());
+			}
+		}, "session-store-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+		return serverSocket.getLocalPort();
+	}
+	
+	/**
+	 * Closes the session store, i.e. its server socket and all its connections.
+	 * The stored sessions are lost. If the session store has been started, this
+	 * method waits until its port is released.
+	 */
+	public void close() {
+		closed = true;
+		try {
+			if (serverSocket != null) {
+				serverSocket.close();
+			}
+		} catch (IOException ignorable) {}
+		for (Socket socket : sockets) {
+			try {
+				socket.close();
+			} catch (IOException ignorable) {}
+		}
+		
+		Thread acceptor = this.acceptor;
+		if (acceptor != null && acceptor != Thread.currentThread()) {
+			try {
+				acceptor.join();
+			} catch (InterruptedException ignorable) {}
+		}
+	}
+	
+	/**
+	 * Opens the server socket, and starts the daemonic thread which removes
+	 * the expired sessions.
+	 * 
+	 * @return The opened server socket.
+	 * @throws IOException If the server socket cannot be opened.
+	 */
+	private ServerSocket open() throws IOException {
+		serverSocket = new ServerSocket(port, 50, address);
+		System.out.println("Session store listening on " + serverSocket.getLocalSocketAddress());
+		
+		Thread cleaner = new Thread(() -> {
+			while (!closed) {
+				try {
+					Thread.sleep(CLEANER_PERIOD);
+				} catch (InterruptedException ignorable) {}
+				store.removeExpired();
+			}
+		}, "session-store-cleaner");
+		cleaner.setDaemon(true);
+		cleaner.start();
+		return serverSocket;
+	}
+	
+	/**
+	 * Accepts the connections using the given server socket until the session
+	 * store is closed, and serves every connection using its own daemonic thread.
+	 * 
+	 * @param serverSocket The given server socket.
+	 * @throws IOException If the connections cannot be accepted.
+	 */
+	private void accept(ServerSocket serverSocket) throws IOException {
+		try (ServerSocket s = serverSocket) {
+			while (true) {
+				Socket socket;
+				try {
+					socket = s.accept();
+				} catch (IOException ex) {
+					if (closed) return;
+					throw ex;
+				}
+				sockets.add(socket);
+				if (closed) {
+					socket.close();
+					return;
+				}
+				Thread connection = new Thread(() -> serve(socket), "session-store-connection");
+				connection.setDaemon(true);
+				connection.start();
+			}
+		}
+	}
+	
+	/**
+	 * Serves the requests received through the given socket until it is closed.
+	 * 
+	 * @param socket The given socket.
+	 */
+	private void serve(Socket socket) {
+		try (Socket s = socket) {
+			s.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+			while (true) {
+				byte operation;
+				try {
+					operation = in.readByte();
+				} catch (EOFException closed) {
+					return;
+				}
+				
+				switch (operation) {
+					case SessionProtocol.GET:
+						get(in, out);
+						break;
+					case SessionProtocol.SYNC:
+						sync(in, out);
+						break;
+					case SessionProtocol.REMOVE:
+						store.remove(in.readUTF());
+						out.writeByte(SessionProtocol.OK);
+						break;
+					case SessionProtocol.SIZE:
+						out.writeInt(store.size());
+						break;
+					default:
+						return; // Unknown operation, the stream cannot be resynchronized.
+				}
+				out.flush();
+			}
+		} catch (IOException ex) {
+			if (!closed) {
+				System.err.println("Session store connection failed: " + ex.getMessage());
+			}
+		} finally {
+			sockets.remove(socket);
+		}
+	}
+	
+	/**
+	 * Answers the {@link SessionProtocol#GET} operation.
+	 * 
+	 * @param in The input stream.
+	 * @param out The output stream.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private void get(DataInputStream in, DataOutputStream out) throws IOException {
+		String sid = in.readUTF();
+		long knownVersion = in.readLong();
+		StoredSession session = (StoredSession) store.get(sid);
+		if (session == null) {
+			out.writeByte(SessionProtocol.MISSING);
+			return;
+		}
+		
+		synchronized (session) {
+			if (session.version == knownVersion) {
+				out.writeByte(SessionProtocol.NOT_MODIFIED);
+				out.writeLong(session.getValidUntil());
+				return;
+			}
+			out.writeByte(SessionProtocol.FOUND);
+			out.writeUTF(session.getHost());
+			out.writeLong(session.getValidUntil());
+			out.writeLong(session.version);
+			SessionProtocol.writeMap(out, session.getMap());
+		}
+	}
+	
+	/**
+	 * Answers the {@link SessionProtocol#SYNC} operation, creating the sessions
+	 * which do not exist yet, and applying the changes of their maps.
+	 * 
+	 * @param in The input stream.
+	 * @param out The output stream.
+	 * @throws IOException If an I/O error occurs.
+	 */
+	private void sync(DataInputStream in, DataOutputStream out) throws IOException {
+		Map<String, String> changes = new LinkedHashMap<>();
+		for (int count = in.readInt(); count > 0; count --) {
+			String sid = in.readUTF();
+			boolean create = in.readBoolean();
+			String host = in.readUTF();
+			int timeout = in.readInt();
+			changes.clear();
+			for (int i = in.readInt(); i > 0; i --) {
+				changes.put(in.readUTF(), SessionProtocol.readNullable(in));
+			}
+			
+			StoredSession session = (StoredSession) store.get(sid);
+			if (session == null && create) {
+				// Locked until its map is written, so it is never read empty.
+				StoredSession created = new StoredSession(sid, host, timeout);
+				synchronized (created) {
+					if (store.add(created)) {
+						out.writeLong(update(created, changes, timeout));
+						continue;
+					}
+				}
+				session = (StoredSession) store.get(sid);
+			}
+			if (session == null) {
+				out.writeLong(-1);
+				continue;
+			}
+			out.writeLong(update(session, changes, timeout));
+		}
+	}
+	
+	/**
+	 * Applies the given changes to the given session's map, and touches it.
+	 * 
+	 * @param session The given session.
+	 * @param changes The given changes (new values, or {@code null} for removed keys).
+	 * @param timeout Session timeout value (or 0 if it is not touched).
+	 * @return The new version of the session.
+	 */
+	private long update(StoredSession session, Map<String, String> changes, int timeout) {
+		synchronized (session) {
+			Map<String, String> map = session.getMap();
+			for (Map.Entry<String, String> change : changes.entrySet()) {
+				if (change.getValue() == null) {
+					map.remove(change.getKey());
+				} else {
+					map.put(change.getKey(), change.getValue());
+				}
+			}
+			if (!changes.isEmpty()) {
+				session.version ++;
+			}
+			if (timeout > 0) {
+				store.touch(session, timeout);
+			}
+			return session.version;
+		}
+	}
+	
+	/**
+	 * Session kept by the session store, whose map is guarded by the session itself.
+	 * 
+	 * @author Mate Gasparini
+	 */
+	private static class StoredSession extends SessionEntry {
+		
+		/** Version of the session, incremented whenever its map is changed. */
+		long version;
+		
+		/**
+		 * Constructor specifying the session ID, the host and the session timeout.
+		 * 
+		 * @param sid The specified session ID.
+		 * @param host The exact specified session host.
+		 * @param timeout Session timeout value.
+		 */
+		StoredSession(String sid, String host, int timeout) {
+			super(sid, host, timeout, new HashMap<>());
+		}
+	}
+}
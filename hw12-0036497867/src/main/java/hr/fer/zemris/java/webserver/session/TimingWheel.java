@@ -0,0 +1,168 @@
+package hr.fer.zemris.java.webserver.session;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel which schedules items to expire at given deadlines.<br>
+ * Each level consists of {@code WHEEL_SIZE} buckets. A bucket of the lowest level
+ * covers a single tick, and a bucket of every higher level covers the whole
+ * lower level. When the time reaches a bucket of a higher level, its items are
+ * redistributed to the lower levels, so every operation takes constant time
+ * regardless of the number of scheduled items.<br>
+ * Items may be scheduled from any thread (without blocking), but the wheel
+ * must be advanced by a single thread.
+ * 
+ * @param <T> Type of the scheduled items.
+ * @author Mate Gasparini
+ */
+public class TimingWheel<T> {
+	
+	/** Number of bits of a tick number used for indexing a single level. */
+	private static final int BITS_PER_LEVEL = 6;
+	
+	/** Number of buckets of every level. */
+	private static final int WHEEL_SIZE = 1 << BITS_PER_LEVEL;
+	
+	/** Mask used for calculating the bucket index. */
+	private static final int MASK = WHEEL_SIZE - 1;
+	
+	/** Number of levels (4 levels of 64 buckets cover 2^24 ticks). */
+	private static final int LEVELS = 4;
+	
+	/** Duration (in ms) of a single tick. */
+	private final long tickDuration;
+	
+	/** Buckets of all levels. */
+	private final Queue<Timeout<T>>[][] buckets;
+	
+	/** Items scheduled since the last advancement. */
+	private final Queue<Timeout<T>> scheduled = new ConcurrentLinkedQueue<>();
+	
+	/** Number of the last processed tick. */
+	private long currentTick;
+	
+	/**
+	 * Constructor specifying the tick duration and the current time.
+	 * 
+	 * @param tickDuration The duration (in ms) of a single tick.
+	 * @param now The current time (in ms).
+	 * @throws IllegalArgumentException If the tick duration is not positive.
+	 */
+	@SuppressWarnings("unchecked")
+	public TimingWheel(long tickDuration, long now) {
+		if (tickDuration < 1) {
+			throw new IllegalArgumentException("Tick duration must be positive.");
+		}
+		this.tickDuration = tickDuration;
+		this.currentTick = now / tickDuration;
+		this.buckets = new Queue[LEVELS][WHEEL_SIZE];
+		for (int level = 0; level < LEVELS; level ++) {
+			for (int i = 0; i < WHEEL_SIZE; i ++) {
+				buckets[level][i] = new ArrayDeque<>();
+			}
+		}
+	}
+	
+	/**
+	 * Schedules the given item to expire at the given deadline.<br>
+	 * Can be called from any thread.
+	 * 
+	 * @param item The given item.
+	 * @param deadline The deadline (in ms).
+	 */
+	public void schedule(T item, long deadline) {
+		scheduled.add(new Timeout<>(item, deadline / tickDuration));
+	}
+	
+	/**
+	 * Advances the wheel to the given time and passes every item whose deadline
+	 * has been reached to the given action.<br>
+	 * Must not be called concurrently.
+	 * 
+	 * @param now The current time (in ms).
+	 * @param action The action which processes the expired items.
+	 */
+	public void advance(long now, Consumer<T> action) {
+		Timeout<T> timeout;
+		while ((timeout = scheduled.poll()) != null) {
+			insert(timeout, action);
+		}
+		
+		long targetTick = now / tickDuration;
+		while (currentTick < targetTick) {
+			currentTick ++;
+			for (int level = LEVELS - 1; level > 0; level --) {
+				int shift = BITS_PER_LEVEL * level;
+				if ((currentTick & ((1L << shift) - 1)) == 0) {
+					Queue<Timeout<T>> bucket = buckets[level][(int) (currentTick >>> shift) & MASK];
+					while ((timeout = bucket.poll()) != null) {
+						insert(timeout, action);
+					}
+				}
+			}
+			
+			Queue<Timeout<T>> bucket = buckets[0][(int) currentTick & MASK];
+			while ((timeout = bucket.poll()) != null) {
+				action.accept(timeout.item);
+			}
+		}
+	}
+	
+	/**
+	 * Inserts the given timeout into the bucket which is reached right before
+	 * (or exactly at) its deadline. If the deadline has already been reached,
+	 * the item is passed to the given action immediately.
+	 * 
+	 * @param timeout The given timeout.
+	 * @param action The action which processes the expired items.
+	 */
+	private void insert(Timeout<T> timeout, Consumer<T> action) {
+		long delta = timeout.deadlineTick - currentTick;
+		if (delta <= 0) {
+			action.accept(timeout.item);
+			return;
+		}
+		
+		for (int level = 0; level < LEVELS; level ++) {
+			int shift = BITS_PER_LEVEL * level;
+			if (delta < (1L << (shift + BITS_PER_LEVEL))) {
+				buckets[level][(int) (timeout.deadlineTick >>> shift) & MASK].add(timeout);
+				return;
+			}
+		}
+		
+		// Beyond the range of the wheel: placed in the last reached top-level bucket,
+		// from which it is redistributed (and possibly placed there again).
+		int shift = BITS_PER_LEVEL * (LEVELS - 1);
+		buckets[LEVELS - 1][(int) ((currentTick >>> shift) - 1) & MASK].add(timeout);
+	}
+	
+	/**
+	 * Scheduled item with its deadline.
+	 * 
+	 * @param <T> Type of the item.
+	 * @author Mate Gasparini
+	 */
+	private static class Timeout<T> {
+		
+		/** Scheduled item. */
+		T item;
+		
+		/** Number of the tick at which the item expires. */
+		long deadlineTick;
+		
+		/**
+		 * Constructor specifying the item and its deadline tick.
+		 * 
+		 * @param item The scheduled item.
+		 * @param deadlineTick The number of the tick at which the item expires.
+		 */
+		public Timeout(T item, long deadlineTick) {
+			this.item = item;
+			this.deadlineTick = deadlineTick;
+		}
+	}
+}
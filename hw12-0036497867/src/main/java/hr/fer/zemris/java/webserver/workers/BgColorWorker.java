@@ -2,6 +2,8 @@ package hr.fer.zemris.java.webserver.workers;
 
 import hr.fer.zemris.java.webserver.IWebWorker;
 import hr.fer.zemris.java.webserver.RequestContext;
+import hr.fer.zemris.java.webserver.WorkerScope;
+import hr.fer.zemris.java.webserver.WorkerScope.Scope;
 
 /**
  * {@link IWebWorker} that checks if the background color context parameter is valid and,
@@ -11,13 +13,14 @@ import hr.fer.zemris.java.webserver.RequestContext;
  * 
  * @author Mate Gasparini
  */
+@WorkerScope(Scope.POOLED)
 public class BgColorWorker implements IWebWorker {
 	
 	/** Context (persistent) parameters map's background color key. */
 	private static final String BG_COLOR_KEY = "bgcolor";
 	
 	@Override
-	public synchronized void processRequest(RequestContext context) throws Exception {
+	public void processRequest(RequestContext context) throws Exception {
 		String colorCode = context.getParameter(BG_COLOR_KEY);
 		context.setMimeType("text/html");
 		StringBuilder sb = new StringBuilder(
@@ -7,8 +7,11 @@ import java.io.IOException;
 
 import javax.imageio.ImageIO;
 
+import hr.fer.zemris.java.webserver.Cacheable;
 import hr.fer.zemris.java.webserver.IWebWorker;
 import hr.fer.zemris.java.webserver.RequestContext;
+import hr.fer.zemris.java.webserver.WorkerScope;
+import hr.fer.zemris.java.webserver.WorkerScope.Scope;
 
 /**
  * {@link IWebWorker} that creates a {@link BufferedImage} with a simple circle
@@ -17,10 +20,12 @@ import hr.fer.zemris.java.webserver.RequestContext;
  * 
  * @author Mate Gasparini
  */
+@WorkerScope(Scope.POOLED)
+@Cacheable(ttl = 3600)
 public class CircleWorker implements IWebWorker {
 	
 	@Override
-	public synchronized void processRequest(RequestContext context) throws Exception {
+	public void processRequest(RequestContext context) throws Exception {
 		BufferedImage bim = new BufferedImage(200, 200, BufferedImage.TYPE_3BYTE_BGR);
 		
 		Graphics2D g2d = bim.createGraphics();
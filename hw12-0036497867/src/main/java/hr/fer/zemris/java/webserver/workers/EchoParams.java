@@ -4,6 +4,8 @@ import java.util.Set;
 
 import hr.fer.zemris.java.webserver.IWebWorker;
 import hr.fer.zemris.java.webserver.RequestContext;
+import hr.fer.zemris.java.webserver.WorkerScope;
+import hr.fer.zemris.java.webserver.WorkerScope.Scope;
 
 /**
  * {@link IWebWorker} that generates HTML content containing a table
@@ -11,10 +13,11 @@ import hr.fer.zemris.java.webserver.RequestContext;
  * 
  * @author Mate Gasparini
  */
+@WorkerScope(Scope.POOLED)
 public class EchoParams implements IWebWorker {
 	
 	@Override
-	public synchronized void processRequest(RequestContext context) throws Exception {
+	public void processRequest(RequestContext context) throws Exception {
 		context.setMimeType("text/html");
 		StringBuilder sb = new StringBuilder(
 			"<html><head><title>EchoParams</title></head><body>"
@@ -4,8 +4,11 @@ import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
+import hr.fer.zemris.java.webserver.Cacheable;
 import hr.fer.zemris.java.webserver.IWebWorker;
 import hr.fer.zemris.java.webserver.RequestContext;
+import hr.fer.zemris.java.webserver.WorkerScope;
+import hr.fer.zemris.java.webserver.WorkerScope.Scope;
 
 /**
  * {@link IWebWorker} that displays the current time and date.<br>
@@ -13,10 +16,12 @@ import hr.fer.zemris.java.webserver.RequestContext;
  * 
  * @author Mate Gasparini
  */
+@WorkerScope(Scope.POOLED)
+@Cacheable(ttl = 1, parameters = "name")
 public class HelloWorker implements IWebWorker {
 	
 	@Override
-	public synchronized void processRequest(RequestContext context) throws Exception {
+	public void processRequest(RequestContext context) throws Exception {
 		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 		Date now = new Date();
 		
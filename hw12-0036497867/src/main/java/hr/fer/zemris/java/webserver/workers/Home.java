@@ -1,8 +1,11 @@
 package hr.fer.zemris.java.webserver.workers;
 
+import hr.fer.zemris.java.webserver.Cacheable;
 import hr.fer.zemris.java.webserver.IDispatcher;
 import hr.fer.zemris.java.webserver.IWebWorker;
 import hr.fer.zemris.java.webserver.RequestContext;
+import hr.fer.zemris.java.webserver.WorkerScope;
+import hr.fer.zemris.java.webserver.WorkerScope.Scope;
 
 /**
  * {@link IWebWorker} that sets the context's temporary background color
@@ -12,6 +15,8 @@ import hr.fer.zemris.java.webserver.RequestContext;
  * 
  * @author Mate Gasparini
  */
+@WorkerScope(Scope.POOLED)
+@Cacheable(ttl = 60, persistentParameters = "bgcolor")
 public class Home implements IWebWorker {
 	
 	/** The default home page background color. */
@@ -24,7 +29,7 @@ public class Home implements IWebWorker {
 	private static final String TEMPORARY_BG_COLOR_KEY = "background";
 	
 	@Override
-	public synchronized void processRequest(RequestContext context) throws Exception {
+	public void processRequest(RequestContext context) throws Exception {
 		String loadedColor = context.getPersistentParameter(PERSISTENT_BG_COLOR_KEY);
 		context.setTemporaryParameter(
 			TEMPORARY_BG_COLOR_KEY,
@@ -0,0 +1,36 @@
+package hr.fer.zemris.java.webserver.workers;
+
+import hr.fer.zemris.java.webserver.IWebWorker;
+import hr.fer.zemris.java.webserver.RequestContext;
+import hr.fer.zemris.java.webserver.metrics.ServerMetrics;
+
+/**
+ * Built-in web worker which writes the server's runtime metrics using the
+ * Prometheus text exposition format, so they can be scraped by monitoring tools.
+ * 
+ * @author Mate Gasparini
+ */
+public class MetricsWorker implements IWebWorker {
+	
+	/** Metrics of the server. */
+	private final ServerMetrics metrics;
+	
+	/**
+	 * Constructor specifying the server's metrics.
+	 * 
+	 * @param metrics The server's metrics.
+	 */
+	public MetricsWorker(ServerMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	@Override
+	public void processRequest(RequestContext context) throws Exception {
+		StringBuilder builder = new StringBuilder(4096);
+		metrics.writeTo(builder);
+		
+		context.setMimeType("text/plain; version=0.0.4");
+		context.addHeader("Cache-Control", "no-cache");
+		context.write(builder.toString());
+	}
+}
@@ -0,0 +1,67 @@
+package hr.fer.zemris.java.webserver.workers;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import hr.fer.zemris.java.custom.scripting.exec.ScriptProfile;
+import hr.fer.zemris.java.webserver.IWebWorker;
+import hr.fer.zemris.java.webserver.RequestContext;
+import hr.fer.zemris.java.webserver.SmartScriptCache;
+
+/**
+ * Built-in web worker which writes the hot-spot report of the profiled smart
+ * scripts (the scripts taking the most time first), so it can be seen which
+ * scripts and which of their loops are burning the server's time.
+ * 
+ * @author Mate Gasparini
+ */
+public class ScriptProfileWorker implements IWebWorker {
+	
+	/** Cache of the profiled scripts. */
+	private final SmartScriptCache scriptCache;
+	
+	/** Document root, relative to which the scripts are named. */
+	private final Path documentRoot;
+	
+	/**
+	 * Constructor specifying the cache of the profiled scripts and the document root.
+	 * 
+	 * @param scriptCache The cache of the profiled scripts.
+	 * @param documentRoot The document root.
+	 */
+	public ScriptProfileWorker(SmartScriptCache scriptCache, Path documentRoot) {
+		this.scriptCache = scriptCache;
+		this.documentRoot = documentRoot.toAbsolutePath().normalize();
+	}
+	
+	@Override
+	public void processRequest(RequestContext context) throws Exception {
+		Map<Path, ScriptProfile> profiles = scriptCache.getProfiles();
+		
+		// The profiles keep being updated by other requests, so their times are
+		// sorted as a snapshot (live values could break the comparator's contract).
+		Map<Path, Long> nanos = new HashMap<>();
+		for (Map.Entry<Path, ScriptProfile> profile : profiles.entrySet()) {
+			nanos.put(profile.getKey(), profile.getValue().getNanos());
+		}
+		List<Path> paths = new ArrayList<>(profiles.keySet());
+		paths.sort((a, b) -> Long.compare(nanos.get(b), nanos.get(a)));
+		
+		StringBuilder builder = new StringBuilder(4096);
+		for (Path script : paths) {
+			Path path = script.toAbsolutePath().normalize();
+			String name = path.startsWith(documentRoot)
+				? "/" + documentRoot.relativize(path).toString().replace('\\', '/')
+				: path.toString();
+			profiles.get(script).writeReport(builder, name);
+			builder.append('\n');
+		}
+		
+		context.setMimeType("text/plain");
+		context.addHeader("Cache-Control", "no-cache");
+		context.write(builder.toString());
+	}
+}
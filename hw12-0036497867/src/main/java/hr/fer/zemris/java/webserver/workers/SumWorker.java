@@ -1,8 +1,11 @@
 package hr.fer.zemris.java.webserver.workers;
 
+import hr.fer.zemris.java.webserver.Cacheable;
 import hr.fer.zemris.java.webserver.IDispatcher;
 import hr.fer.zemris.java.webserver.IWebWorker;
 import hr.fer.zemris.java.webserver.RequestContext;
+import hr.fer.zemris.java.webserver.WorkerScope;
+import hr.fer.zemris.java.webserver.WorkerScope.Scope;
 
 /**
  * {@link IWebWorker} that acquires two context parameters (a and b),
@@ -14,6 +17,8 @@ import hr.fer.zemris.java.webserver.RequestContext;
  * 
  * @author Mate Gasparini
  */
+@WorkerScope(Scope.POOLED)
+@Cacheable(ttl = 60, parameters = {"a", "b"})
 public class SumWorker implements IWebWorker {
 	
 	/** Key for the first parameter (a). */
@@ -32,7 +37,7 @@ public class SumWorker implements IWebWorker {
 	private static final int DEFAULT_B = 2;
 	
 	@Override
-	public synchronized void processRequest(RequestContext context) throws Exception {
+	public void processRequest(RequestContext context) throws Exception {
 		int a = DEFAULT_A;
 		int b = DEFAULT_B;
 		
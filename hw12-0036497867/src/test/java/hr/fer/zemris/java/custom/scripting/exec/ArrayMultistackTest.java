@@ -0,0 +1,172 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Testing class for the {@code ArrayMultistack} class.
+ * 
+ * @author Mate Gasparini
+ */
+public class ArrayMultistackTest {
+	
+	private ArrayMultistack multistack;
+	
+	@Before
+	public void setUp() {
+		multistack = new ArrayMultistack();
+	}
+	
+	@Test
+	public void testIds() {
+		int a = multistack.id("a");
+		int b = multistack.id("b");
+		assertTrue(a != b);
+		assertEquals(a, multistack.id("a"));
+		assertEquals(b, multistack.lookup("b"));
+		assertTrue(multistack.isEmpty(a));
+		
+		// More stacks than the initial capacity.
+		for (int i = 0; i < 100; i ++) {
+			int id = multistack.id("s" + i);
+			multistack.push(id, i);
+		}
+		for (int i = 0; i < 100; i ++) {
+			assertEquals(i, multistack.peekValue(multistack.lookup("s" + i)));
+		}
+		assertEquals(a, multistack.lookup("a"));
+	}
+	
+	@Test(expected = NonExistentStackException.class)
+	public void testLookupOfUnmappedStack() {
+		multistack.id("a");
+		multistack.lookup("b");
+	}
+	
+	@Test(expected = NullPointerException.class)
+	public void testNullName() {
+		multistack.id(null);
+	}
+	
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testUnmappedId() {
+		multistack.id("a");
+		multistack.push(1, 0);
+	}
+	
+	@Test
+	public void testPushPopAcrossGrowth() {
+		int id = multistack.id("numbers");
+		for (int i = 0; i < 100; i ++) {
+			multistack.push(id, i);
+			assertEquals(i, multistack.peekValue(id));
+		}
+		for (int i = 99; i >= 0; i --) {
+			assertEquals(i, multistack.peekValue(id));
+			assertEquals(i, multistack.pop(id));
+		}
+		assertTrue(multistack.isEmpty(id));
+	}
+	
+	@Test
+	public void testInterleavedStacks() {
+		int a = multistack.id("a");
+		int b = multistack.id("b");
+		for (int i = 0; i < 33; i ++) {
+			multistack.push(a, "a" + i);
+			if (i % 3 == 0) {
+				multistack.push(b, "b" + i);
+			}
+		}
+		for (int i = 32; i >= 0; i --) {
+			assertEquals("a" + i, multistack.pop(a));
+			if (i % 3 == 0) {
+				assertEquals("b" + i, multistack.pop(b));
+			}
+		}
+		assertTrue(multistack.isEmpty(a));
+		assertTrue(multistack.isEmpty(b));
+	}
+	
+	@Test
+	public void testReusedWrappers() {
+		int id = multistack.id("i");
+		for (int i = 0; i < 10; i ++) {
+			multistack.push(id, i);
+		}
+		ValueWrapper top = multistack.peek(id);
+		multistack.add(id, 5);
+		assertEquals(14, multistack.peekValue(id));
+		for (int i = 0; i < 10; i ++) {
+			multistack.pop(id);
+		}
+		
+		// Pushing reuses the popped wrappers, without the values computed in them.
+		for (int i = 0; i < 10; i ++) {
+			multistack.push(id, "x" + i);
+		}
+		assertTrue(top == multistack.peek(id));
+		assertEquals("x9", multistack.pop(id));
+		multistack.push(id, 2.5);
+		multistack.add(id, 1);
+		assertEquals(3.5, multistack.pop(id));
+		multistack.push(id, null);
+		assertEquals(0, multistack.numCompare(id, 0));
+		assertEquals(null, multistack.pop(id));
+		for (int i = 8; i >= 0; i --) {
+			assertEquals("x" + i, multistack.pop(id));
+		}
+	}
+	
+	@Test
+	public void testAddAndCompareTopValue() {
+		int id = multistack.id("i");
+		multistack.push(id, 1);
+		multistack.push(id, "2");
+		multistack.add(id, 3);
+		assertEquals(0, multistack.numCompare(id, 5));
+		assertTrue(multistack.numCompare(id, 5.5) < 0);
+		assertEquals(5, multistack.pop(id));
+		assertEquals(1, multistack.pop(id));
+	}
+	
+	@Test
+	public void testPopAfterEmptying() {
+		int id = multistack.id("numbers");
+		multistack.push(id, 1);
+		multistack.pop(id);
+		assertTrue(multistack.isEmpty(id));
+		try {
+			multistack.pop(id);
+		} catch (EmptyStackException expected) {
+			assertTrue(multistack.isEmpty(id));
+			multistack.push(id, 2);
+			assertFalse(multistack.isEmpty(id));
+			assertEquals(2, multistack.pop(id));
+			return;
+		}
+		throw new AssertionError("Empty stack was popped.");
+	}
+	
+	@Test(expected = EmptyStackException.class)
+	public void testPopFromEmptyStack() {
+		multistack.pop(multistack.id("numbers"));
+	}
+	
+	@Test(expected = EmptyStackException.class)
+	public void testPeekEmptyStack() {
+		multistack.peek(multistack.id("numbers"));
+	}
+	
+	@Test(expected = EmptyStackException.class)
+	public void testAddToEmptyStack() {
+		int id = multistack.id("numbers");
+		multistack.push(id, 1);
+		multistack.pop(id);
+		multistack.add(id, 1);
+	}
+}
@@ -0,0 +1,192 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParserException;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Testing class for the {@code SmartScriptCompiler} class, which executes
+ * every script using the {@code SmartScriptEngine} and as a compiled script
+ * (with and without instrumentation), and compares the responses.
+ * 
+ * @author Mate Gasparini
+ */
+public class SmartScriptCompilerTest {
+	
+	private static final String[] ENCODINGS = {"UTF-8", "ISO-8859-2"};
+	
+	private static final String[] WORDS = {
+		"i", "j", "3", "-2", "4.5", "0", "\"7\"", "\"x\"", "\"0.#\"", "\"čž€\"",
+		"@sin", "@dup", "@swap", "@decfmt", "+", "-", "*", "/",
+		"@paramGet", "@tparamSet", "@tparamGet", "@pparamGet", "@pparamSet", "@pparamDel",
+		"@setMimeType", "\"text/plain\"", "\"a\"", "\"b\"", "@nope"
+	};
+	
+	@Test
+	public void testWebrootScripts() throws IOException {
+		List<Path> scripts;
+		try (Stream<Path> paths = Files.walk(Paths.get("webroot"))) {
+			scripts = paths.filter(path -> path.toString().endsWith(".smscr"))
+					.sorted()
+					.collect(Collectors.toList());
+		}
+		assertFalse(scripts.isEmpty());
+		
+		for (Path script : scripts) {
+			assertSameResponses(new String(Files.readAllBytes(script), StandardCharsets.UTF_8));
+		}
+	}
+	
+	@Test
+	public void testGeneratedScripts() {
+		Random random = new Random(7);
+		int compared = 0;
+		while (compared < 2000) {
+			String script = generate(random);
+			try {
+				new SmartScriptParser(script);
+			} catch (SmartScriptParserException ex) {
+				continue;
+			}
+			assertSameResponses(script);
+			compared ++;
+		}
+	}
+	
+	@Test
+	public void testVariablesOutsideOfTheirLoops() {
+		assertSameResponses("{$= i $}{$ FOR i 1 2 1 $}{$END$}");
+		assertSameResponses("{$ FOR i 1 2 1 $}{$END$}{$= i $}");
+		assertSameResponses("{$ FOR j 1 2 1 $}{$= i $}{$ FOR i 1 0 1 $}{$END$}{$END$}");
+		assertSameResponses("{$ FOR j 1 0 1 $}{$ FOR i 1 1 1 $}{$END$}{$END$}{$= i $}");
+		assertSameResponses("{$ FOR i i 3 1 $}{$END$}");
+		assertSameResponses("{$ FOR i 1 1 1 $}{$ FOR i i 3 1 $}{$= i $}{$END$}{$END$}");
+	}
+	
+	@Test
+	public void testFoldedExpressions() {
+		assertSameResponses("{$= 1 2 + 3 * \"0.00\" @decfmt $}{$= \"4\" 2.5 / @sin $}{$= 1 0 / $}");
+		assertSameResponses("{$ FOR i 1 3 1 $}{$= i 2 * \"x\" 1 + $}{$END$}");
+		assertSameResponses("{$ FOR i 1 3 2 $}{$= 1 2 + $}č{$END$}");
+		assertSameResponses("{$ FOR i 3 1 -1 $}{$= i -2 * -1.5 + $}{$END$}");
+	}
+	
+	private static void assertSameResponses(String script) {
+		DocumentNode document = new SmartScriptParser(script).getDocumentNode();
+		for (String encoding : ENCODINGS) {
+			Response expected = execute(document, 0, encoding);
+			for (int mode = 1; mode <= 3; mode ++) {
+				Response actual = execute(document, mode, encoding);
+				String message = "Mode " + mode + ", " + encoding + ":\n" + script;
+				assertEquals(message, expected.exception, actual.exception);
+				assertArrayEquals(message, expected.output, actual.output);
+			}
+		}
+	}
+	
+	// Executes the script using the engine (mode 0), the compiled script (mode 1),
+	// or the instrumented compiled script without (mode 2) and with (mode 3) a budget.
+	private static Response execute(DocumentNode document, int mode, String encoding) {
+		Map<String, String> parameters = new HashMap<>();
+		parameters.put("a", "3");
+		parameters.put("b", "4.5");
+		Map<String, String> persistentParameters = new HashMap<>();
+		persistentParameters.put("brojPoziva", "2");
+		Map<String, String> temporaryParameters = new HashMap<>();
+		temporaryParameters.put("zbroj", "7");
+		
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		RequestContext context = new RequestContext(output, parameters, persistentParameters,
+				new ArrayList<>(), temporaryParameters, null);
+		context.setEncoding(encoding);
+		
+		Response response = new Response();
+		try {
+			switch (mode) {
+				case 0:
+					new SmartScriptEngine(document, context).execute();
+					break;
+				case 1:
+					SmartScriptCompiler.compile(document).execute(context);
+					break;
+				case 2:
+					SmartScriptCompiler.compile(document, 0, 0).execute(context);
+					break;
+				default:
+					SmartScriptCompiler.compile(document, 1_000_000, 60_000).execute(context);
+			}
+		} catch (RuntimeException ex) {
+			response.exception = ex.getClass();
+		}
+		try {
+			context.finish();
+		} catch (IOException ex) {
+			throw new AssertionError(ex);
+		}
+		response.output = output.toByteArray();
+		return response;
+	}
+	
+	private static String generate(Random random) {
+		StringBuilder builder = new StringBuilder();
+		int depth = 0;
+		for (int parts = random.nextInt(25); parts > 0; parts --) {
+			int kind = random.nextInt(6);
+			if (kind < 2) {
+				for (int i = random.nextInt(30); i > 0; i --) {
+					builder.append(random.nextInt(10) == 0 ? 'č' : (char) ('a' + random.nextInt(26)));
+				}
+			} else if (kind < 4) {
+				builder.append("{$=");
+				for (int i = random.nextInt(6); i > 0; i --) {
+					int bound = random.nextInt(3) == 0 ? WORDS.length : 18;
+					builder.append(' ').append(WORDS[random.nextInt(bound)]);
+				}
+				builder.append(" $}");
+			} else if (kind == 4) {
+				builder.append("{$ FOR ").append(random.nextBoolean() ? "i" : "j")
+						.append(" 1 ").append(random.nextInt(4));
+				if (random.nextBoolean()) {
+					builder.append(' ').append(1 + random.nextInt(2));
+				}
+				builder.append(" $}");
+				depth ++;
+			} else if (depth > 0) {
+				builder.append("{$END$}");
+				depth --;
+			}
+		}
+		for (; depth > 0; depth --) {
+			builder.append("{$END$}");
+		}
+		return builder.toString();
+	}
+	
+	private static class Response {
+		
+		private byte[] output;
+		
+		private Class<?> exception;
+	}
+}
@@ -0,0 +1,577 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * Testing class for the {@code ValueWrapper} class, which also checks that
+ * the operations on the unboxed values match the operations on the boxed ones.
+ * 
+ * @author Mate Gasparini
+ */
+public class ValueWrapperTest {
+	
+	private ValueWrapper v1;
+	private ValueWrapper v2;
+	
+	@Test
+	public void convertNullToZero() {
+		v1 = new ValueWrapper(null);
+		v2 = new ValueWrapper(null);
+		
+		v1.add(v2.getValue());
+		assertEquals(0, v1.getValue());
+		
+		v1 = new ValueWrapper(null);
+		
+		v1.subtract(v2.getValue());
+		assertEquals(0, v1.getValue());
+		
+		v1 = new ValueWrapper(null);
+		
+		v1.multiply(v2.getValue());
+		assertEquals(0, v1.getValue());
+		
+		assertEquals(null, v2.getValue());
+	}
+	
+	@Test
+	public void addIntegerIntegerTest() {
+		v1 = new ValueWrapper(Integer.valueOf(1));
+		v2 = new ValueWrapper(Integer.valueOf(2));
+		
+		v1.add(v2.getValue());
+		assertEquals(Integer.valueOf(3), v1.getValue());
+	}
+	
+	@Test
+	public void addIntegerDoubleTest() {
+		v1 = new ValueWrapper(Integer.valueOf(1));
+		v2 = new ValueWrapper(Double.valueOf(2.0));
+		
+		v1.add(v2.getValue());
+		assertEquals(Double.valueOf(3.0), v1.getValue());
+	}
+	
+	@Test
+	public void addDoubleIntegerTest() {
+		v1 = new ValueWrapper(Double.valueOf(1.0));
+		v2 = new ValueWrapper(Integer.valueOf(2));
+		
+		v1.add(v2.getValue());
+		assertEquals(Double.valueOf(3.0), v1.getValue());
+	}
+	
+	@Test
+	public void addDoubleDoubleTest() {
+		v1 = new ValueWrapper(Double.valueOf(1.0));
+		v2 = new ValueWrapper(Double.valueOf(2.0));
+		
+		v1.add(v2.getValue());
+		assertEquals(Double.valueOf(3.0), v1.getValue());
+	}
+	
+	@Test
+	public void addStringStringTest() {
+		v1 = new ValueWrapper("1");
+		v2 = new ValueWrapper("2");
+		
+		v1.add(v2.getValue());
+		assertEquals(Integer.valueOf(3), v1.getValue());
+		
+		v1 = new ValueWrapper("1.0");
+		v2 = new ValueWrapper("2");
+		
+		v1.add(v2.getValue());
+		assertEquals(Double.valueOf(3.0), v1.getValue());
+		
+		v1 = new ValueWrapper("1");
+		v2 = new ValueWrapper("2.0");
+		
+		v1.add(v2.getValue());
+		assertEquals(Double.valueOf(3.0), v1.getValue());
+		
+		v1 = new ValueWrapper("1.0");
+		v2 = new ValueWrapper("2.0");
+		
+		v1.add(v2.getValue());
+		assertEquals(Double.valueOf(3.0), v1.getValue());
+	}
+	
+	@Test
+	public void subtractIntegerIntegerTest() {
+		v1 = new ValueWrapper(Integer.valueOf(1));
+		v2 = new ValueWrapper(Integer.valueOf(2));
+		
+		v1.subtract(v2.getValue());
+		assertEquals(Integer.valueOf(-1), v1.getValue());
+	}
+	
+	@Test
+	public void subtractIntegerDoubleTest() {
+		v1 = new ValueWrapper(Integer.valueOf(1));
+		v2 = new ValueWrapper(Double.valueOf(2.0));
+		
+		v1.subtract(v2.getValue());
+		assertEquals(Double.valueOf(-1.0), v1.getValue());
+	}
+	
+	@Test
+	public void subtractDoubleIntegerTest() {
+		v1 = new ValueWrapper(Double.valueOf(1.0));
+		v2 = new ValueWrapper(Integer.valueOf(2));
+		
+		v1.subtract(v2.getValue());
+		assertEquals(Double.valueOf(-1.0), v1.getValue());
+	}
+	
+	@Test
+	public void subtractDoubleDoubleTest() {
+		v1 = new ValueWrapper(Double.valueOf(1.0));
+		v2 = new ValueWrapper(Double.valueOf(2.0));
+		
+		v1.subtract(v2.getValue());
+		assertEquals(Double.valueOf(-1.0), v1.getValue());
+	}
+	
+	@Test
+	public void subtractStringStringTest() {
+		v1 = new ValueWrapper("1");
+		v2 = new ValueWrapper("2");
+		
+		v1.subtract(v2.getValue());
+		assertEquals(Integer.valueOf(-1), v1.getValue());
+		
+		v1 = new ValueWrapper("1.0");
+		v2 = new ValueWrapper("2");
+		
+		v1.subtract(v2.getValue());
+		assertEquals(Double.valueOf(-1.0), v1.getValue());
+		
+		v1 = new ValueWrapper("1");
+		v2 = new ValueWrapper("2.0");
+		
+		v1.subtract(v2.getValue());
+		assertEquals(Double.valueOf(-1.0), v1.getValue());
+		
+		v1 = new ValueWrapper("1.0");
+		v2 = new ValueWrapper("2.0");
+		
+		v1.subtract(v2.getValue());
+		assertEquals(Double.valueOf(-1.0), v1.getValue());
+	}
+	
+	@Test
+	public void multiplyIntegerIntegerTest() {
+		v1 = new ValueWrapper(Integer.valueOf(1));
+		v2 = new ValueWrapper(Integer.valueOf(2));
+		
+		v1.multiply(v2.getValue());
+		assertEquals(Integer.valueOf(2), v1.getValue());
+	}
+	
+	@Test
+	public void multiplyIntegerDoubleTest() {
+		v1 = new ValueWrapper(Integer.valueOf(1));
+		v2 = new ValueWrapper(Double.valueOf(2.0));
+		
+		v1.multiply(v2.getValue());
+		assertEquals(Double.valueOf(2.0), v1.getValue());
+	}
+	
+	@Test
+	public void multiplyDoubleIntegerTest() {
+		v1 = new ValueWrapper(Double.valueOf(1.0));
+		v2 = new ValueWrapper(Integer.valueOf(2));
+		
+		v1.multiply(v2.getValue());
+		assertEquals(Double.valueOf(2.0), v1.getValue());
+	}
+	
+	@Test
+	public void multiplyDoubleDoubleTest() {
+		v1 = new ValueWrapper(Double.valueOf(1.0));
+		v2 = new ValueWrapper(Double.valueOf(2.0));
+		
+		v1.multiply(v2.getValue());
+		assertEquals(Double.valueOf(2.0), v1.getValue());
+	}
+	
+	@Test
+	public void multiplyStringStringTest() {
+		v1 = new ValueWrapper("1");
+		v2 = new ValueWrapper("2");
+		
+		v1.multiply(v2.getValue());
+		assertEquals(Integer.valueOf(2), v1.getValue());
+		
+		v1 = new ValueWrapper("1.0");
+		v2 = new ValueWrapper("2");
+		
+		v1.multiply(v2.getValue());
+		assertEquals(Double.valueOf(2.0), v1.getValue());
+		
+		v1 = new ValueWrapper("1");
+		v2 = new ValueWrapper("2.0");
+		
+		v1.multiply(v2.getValue());
+		assertEquals(Double.valueOf(2.0), v1.getValue());
+		
+		v1 = new ValueWrapper("1.0");
+		v2 = new ValueWrapper("2.0");
+		
+		v1.multiply(v2.getValue());
+		assertEquals(Double.valueOf(2.0), v1.getValue());
+	}
+	
+	@Test
+	public void divideIntegerIntegerTest() {
+		ValueWrapper v1 = new ValueWrapper(Integer.valueOf(1));
+		ValueWrapper v2 = new ValueWrapper(Integer.valueOf(2));
+		
+		v1.divide(v2.getValue());
+		assertEquals(Integer.valueOf(0), v1.getValue());
+	}
+	
+	@Test
+	public void divideIntegerDoubleTest() {
+		v1 = new ValueWrapper(Integer.valueOf(1));
+		v2 = new ValueWrapper(Double.valueOf(2.0));
+		
+		v1.divide(v2.getValue());
+		assertEquals(Double.valueOf(0.5), v1.getValue());
+	}
+	
+	@Test
+	public void divideDoubleIntegerTest() {
+		v1 = new ValueWrapper(Double.valueOf(1.0));
+		v2 = new ValueWrapper(Integer.valueOf(2));
+		
+		v1.divide(v2.getValue());
+		assertEquals(Double.valueOf(0.5), v1.getValue());
+	}
+	
+	@Test
+	public void divideDoubleDoubleTest() {
+		v1 = new ValueWrapper(Double.valueOf(1.0));
+		v2 = new ValueWrapper(Double.valueOf(2.0));
+		
+		v1.divide(v2.getValue());
+		assertEquals(Double.valueOf(0.5), v1.getValue());
+	}
+	
+	@Test
+	public void divideStringStringTest() {
+		v1 = new ValueWrapper("1");
+		v2 = new ValueWrapper("2");
+		
+		v1.divide(v2.getValue());
+		assertEquals(Integer.valueOf(0), v1.getValue());
+		
+		v1 = new ValueWrapper("1.0");
+		v2 = new ValueWrapper("2");
+		
+		v1.divide(v2.getValue());
+		assertEquals(Double.valueOf(0.5), v1.getValue());
+		
+		v1 = new ValueWrapper("1");
+		v2 = new ValueWrapper("2.0");
+		
+		v1.divide(v2.getValue());
+		assertEquals(Double.valueOf(0.5), v1.getValue());
+		
+		v1 = new ValueWrapper("1.0");
+		v2 = new ValueWrapper("2.0");
+		
+		v1.divide(v2.getValue());
+		assertEquals(Double.valueOf(0.5), v1.getValue());
+	}
+	
+	@Test
+	public void numCompareIntegerIntegerTest() {
+		v1 = new ValueWrapper(Integer.valueOf(1));
+		v2 = new ValueWrapper(Integer.valueOf(2));
+		
+		assertTrue(v1.numCompare(v2.getValue()) < 0);
+		
+		v1 = new ValueWrapper(Integer.valueOf(3));
+		v2 = new ValueWrapper(Integer.valueOf(3));
+		
+		assertTrue(v1.numCompare(v2.getValue()) == 0);
+	}
+	
+	@Test
+	public void numCompareIntegerDoubleTest() {
+		v1 = new ValueWrapper(Integer.valueOf(1));
+		v2 = new ValueWrapper(Double.valueOf(2.0));
+		
+		assertTrue(v1.numCompare(v2.getValue()) < 0);
+	}
+	
+	@Test
+	public void numCompareDoubleIntegerTest() {
+		v1 = new ValueWrapper(Double.valueOf(1.0));
+		v2 = new ValueWrapper(Integer.valueOf(2));
+		
+		assertTrue(v1.numCompare(v2.getValue()) < 0);
+	}
+	
+	@Test
+	public void numCompareDoubleDoubleTest() {
+		v1 = new ValueWrapper(Double.valueOf(1.0));
+		v2 = new ValueWrapper(Double.valueOf(2.0));
+		
+		assertTrue(v1.numCompare(v2.getValue()) < 0);
+		
+		v1 = new ValueWrapper(Double.valueOf(3.0));
+		v2 = new ValueWrapper(Double.valueOf(3.0));
+		
+		assertTrue(v1.numCompare(v2.getValue()) == 0);
+	}
+	
+	@Test
+	public void numCompareStringStringTest() {
+		v1 = new ValueWrapper("1");
+		v2 = new ValueWrapper("2");
+		
+		assertTrue(v1.numCompare(v2.getValue()) < 0);
+		
+		v1 = new ValueWrapper("1.0");
+		v2 = new ValueWrapper("2");
+		
+		assertTrue(v1.numCompare(v2.getValue()) < 0);
+		
+		v1 = new ValueWrapper("1");
+		v2 = new ValueWrapper("2.0");
+		
+		assertTrue(v1.numCompare(v2.getValue()) < 0);
+		
+		v1 = new ValueWrapper("1.0");
+		v2 = new ValueWrapper("2.0");
+		
+		assertTrue(v1.numCompare(v2.getValue()) < 0);
+		
+		v1 = new ValueWrapper("3");
+		v2 = new ValueWrapper("3");
+		
+		assertTrue(v1.numCompare(v2.getValue()) == 0);
+	}
+	
+	@Test
+	public void numCompareNullNullTest() {
+		v1 = new ValueWrapper(null);
+		v2 = new ValueWrapper(null);
+		
+		assertTrue(v1.numCompare(v2.getValue()) == 0);
+	}
+	
+	@Test
+	public void numCompareIntegerNullTest() {
+		v1 = new ValueWrapper(Integer.valueOf(0));
+		v2 = new ValueWrapper(null);
+		
+		assertTrue(v1.numCompare(v2.getValue()) == 0);
+	}
+	
+	@Test
+	public void numCompareDoubleNullTest() {
+		v1 = new ValueWrapper(null);
+		v2 = new ValueWrapper(Double.valueOf(0.0));
+		
+		assertTrue(v1.numCompare(v2.getValue()) == 0);
+	}
+	
+	@Test
+	public void integerDivisionTest() {
+		v1 = new ValueWrapper(7);
+		v1.divide(2);
+		assertEquals(Integer.valueOf(3), v1.getValue());
+		
+		v1 = new ValueWrapper(-7);
+		v1.divide("2");
+		assertEquals(Integer.valueOf(-3), v1.getValue());
+		
+		v1 = new ValueWrapper("7");
+		v1.divide(2.0);
+		assertEquals(Double.valueOf(3.5), v1.getValue());
+		
+		v1 = new ValueWrapper(1.0);
+		v1.divide(0);
+		assertEquals(Double.valueOf(Double.POSITIVE_INFINITY), v1.getValue());
+	}
+	
+	@Test
+	public void divideByZeroKeepsValue() {
+		v1 = new ValueWrapper(5);
+		v1.add(2);
+		for (Object zero : new Object[] {0, "0", null}) {
+			try {
+				v1.divide(zero);
+				fail();
+			} catch (ArithmeticException expected) {
+			}
+		}
+		assertEquals(Integer.valueOf(7), v1.getValue());
+	}
+	
+	@Test
+	public void convertNullToZeroInAllOperations() {
+		v1 = new ValueWrapper(null);
+		v1.add(null);
+		assertEquals(Integer.valueOf(0), v1.getValue());
+		
+		v1 = new ValueWrapper(null);
+		v1.add(2.5);
+		assertEquals(Double.valueOf(2.5), v1.getValue());
+		
+		v1 = new ValueWrapper(3);
+		v1.subtract(null);
+		v1.multiply(1);
+		assertEquals(Integer.valueOf(3), v1.getValue());
+		
+		v1 = new ValueWrapper(null);
+		v1.divide(4);
+		assertEquals(Integer.valueOf(0), v1.getValue());
+		assertTrue(v1.numCompare(null) == 0);
+		assertTrue(v1.numCompare("-0.5") > 0);
+	}
+	
+	@Test
+	public void convertStringsToNumbers() {
+		assertEquals(Integer.valueOf(-12), ValueWrapper.asNumber("-12"));
+		assertEquals(Integer.valueOf(0), ValueWrapper.asNumber(null));
+		assertEquals(Double.valueOf(1000.0), ValueWrapper.asNumber("1E3"));
+		assertEquals(Double.valueOf(0.5), ValueWrapper.asNumber(".5"));
+		assertEquals(Double.valueOf(2.5), ValueWrapper.asNumber(2.5));
+		
+		v1 = new ValueWrapper("1E1");
+		v1.add("2");
+		assertEquals(Double.valueOf(12.0), v1.getValue());
+	}
+	
+	@Test
+	public void invalidOperandsKeepValue() {
+		Object[] invalid = {"", "abc", "1e3", "1.2.3", "2147483648", 5L, 1.5f, new Object()};
+		for (Object operand : invalid) {
+			v1 = new ValueWrapper(4);
+			v1.add(1);
+			try {
+				v1.add(operand);
+				fail(String.valueOf(operand));
+			} catch (IllegalArgumentException expected) {
+			}
+			try {
+				v1.numCompare(operand);
+				fail(String.valueOf(operand));
+			} catch (IllegalArgumentException expected) {
+			}
+			assertEquals(Integer.valueOf(5), v1.getValue());
+			
+			// An invalid wrapped value fails every time.
+			v1 = new ValueWrapper(operand);
+			for (int i = 0; i < 2; i ++) {
+				try {
+					v1.add(1);
+					fail(String.valueOf(operand));
+				} catch (IllegalArgumentException expected) {
+				}
+			}
+			assertTrue(operand == v1.getValue());
+		}
+	}
+	
+	@Test
+	public void comparisonKeepsWrappedObject() {
+		String value = "5";
+		v1 = new ValueWrapper(value);
+		assertTrue(v1.numCompare(5) == 0);
+		assertTrue(v1.numCompare(5.5) < 0);
+		assertTrue(value == v1.getValue());
+		
+		v1.add(0);
+		assertEquals(Integer.valueOf(5), v1.getValue());
+		assertTrue(v1.getValue() == v1.getValue());
+	}
+	
+	@Test
+	public void setValueAfterOperations() {
+		v1 = new ValueWrapper(1);
+		v1.add(1);
+		v1.setValue("2.5");
+		v1.add(1);
+		assertEquals(Double.valueOf(3.5), v1.getValue());
+		
+		v1.setValue(null);
+		v1.multiply("3");
+		assertEquals(Integer.valueOf(0), v1.getValue());
+		
+		v1.setValue("x");
+		assertEquals("x", v1.getValue());
+	}
+	
+	@Test
+	public void integerOverflowWraps() {
+		v1 = new ValueWrapper(Integer.MAX_VALUE);
+		v1.add(1);
+		assertEquals(Integer.valueOf(Integer.MIN_VALUE), v1.getValue());
+		
+		v1 = new ValueWrapper(Integer.MIN_VALUE);
+		v1.divide(-1);
+		assertEquals(Integer.valueOf(Integer.MIN_VALUE), v1.getValue());
+	}
+	
+	@Test
+	public void chainedOperationsMatchSingleOperations() {
+		Object[] values = {null, 0, 7, -3, 2.5, -0.5, "4", "-6", "1.5", "2E1"};
+		String[] operations = {"add", "subtract", "multiply", "divide", "numCompare"};
+		
+		// The same String instance is used repeatedly (and parsed only once by the wrapper).
+		for (Object initial : values) {
+			ValueWrapper chained = new ValueWrapper(initial);
+			Object expected = initial;
+			for (int i = 0; i < 200; i ++) {
+				String operation = operations[i % operations.length];
+				Object operand = values[(i * 7 + 3) % values.length];
+				
+				ValueWrapper single = new ValueWrapper(expected);
+				Object singleResult = apply(single, operation, operand);
+				Object chainedResult = apply(chained, operation, operand);
+				String message = initial + ": " + expected + " " + operation + " " + operand;
+				assertEquals(message, singleResult, chainedResult);
+				
+				expected = single.getValue();
+				if (i % 3 == 0) {
+					assertEquals(message, expected, chained.getValue());
+				}
+			}
+			assertEquals(expected, chained.getValue());
+		}
+	}
+	
+	// Applies the given operation to the wrapper and returns the comparison result or the thrown exception type.
+	private static Object apply(ValueWrapper wrapper, String operation, Object operand) {
+		try {
+			switch (operation) {
+			case "add":
+				wrapper.add(operand);
+				return null;
+			case "subtract":
+				wrapper.subtract(operand);
+				return null;
+			case "multiply":
+				wrapper.multiply(operand);
+				return null;
+			case "divide":
+				wrapper.divide(operand);
+				return null;
+			default:
+				return Integer.signum(wrapper.numCompare(operand));
+			}
+		} catch (RuntimeException ex) {
+			return ex.getClass();
+		}
+	}
+}
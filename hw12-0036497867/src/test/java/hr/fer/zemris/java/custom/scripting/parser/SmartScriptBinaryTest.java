@@ -0,0 +1,196 @@
+package hr.fer.zemris.java.custom.scripting.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import hr.fer.zemris.java.custom.scripting.elems.Element;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantDouble;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantInteger;
+import hr.fer.zemris.java.custom.scripting.elems.ElementFunction;
+import hr.fer.zemris.java.custom.scripting.elems.ElementOperator;
+import hr.fer.zemris.java.custom.scripting.elems.ElementString;
+import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
+import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
+import hr.fer.zemris.java.custom.scripting.nodes.Node;
+import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
+
+/**
+ * Testing class for the {@code SmartScriptBinary} class.
+ * 
+ * @author Mate Gasparini
+ */
+public class SmartScriptBinaryTest {
+	
+	private static final String SCRIPT = "Text \\{$ čž€ \\\\ \r\n"
+			+ "{$= $}{$= i -1 2 -2.5 0.125 \"\" \"s\\\"t\\n\\\\ čž€\" @sin @decfmt + - * / ^ $}"
+			+ "{$ FOR i -1 10 2 $}{$ FOR j \"1\" i $}{$= i j * $}{$END$}{$END$}"
+			+ "{$ FOR sco_re 0.5 2.5 $}{$END$}end";
+	
+	@Test
+	public void testRoundTripOfAllNodesAndElements() {
+		DocumentNode document = new SmartScriptParser(SCRIPT).getDocumentNode();
+		DocumentNode read = SmartScriptBinary.deserialize(SmartScriptBinary.serialize(document, 17, 42), 17, 42);
+		assertTrue(SmartScriptBinary.equalTrees(document, read));
+		
+		assertEquals(6, read.numberOfChildren());
+		assertEquals("Text {$ čž€ \\ \r\n", ((TextNode) read.getChild(0)).getText());
+		assertEquals(0, ((EchoNode) read.getChild(1)).getElements().length);
+		
+		Element[] elements = ((EchoNode) read.getChild(2)).getElements();
+		assertEquals("i", ((ElementVariable) elements[0]).getName());
+		assertEquals(-1, ((ElementConstantInteger) elements[1]).getValue());
+		assertEquals(2, ((ElementConstantInteger) elements[2]).getValue());
+		assertEquals(-2.5, ((ElementConstantDouble) elements[3]).getValue(), 0);
+		assertEquals(0.125, ((ElementConstantDouble) elements[4]).getValue(), 0);
+		assertEquals("", ((ElementString) elements[5]).getValue());
+		assertEquals("s\"t\n\\ čž€", ((ElementString) elements[6]).getValue());
+		assertEquals("sin", ((ElementFunction) elements[7]).getName());
+		assertEquals("decfmt", ((ElementFunction) elements[8]).getName());
+		assertEquals("^", ((ElementOperator) elements[13]).getSymbol());
+		
+		ForLoopNode outer = (ForLoopNode) read.getChild(3);
+		assertEquals("i", outer.getVariable().getName());
+		assertEquals(-1, ((ElementConstantInteger) outer.getStartExpression()).getValue());
+		assertEquals(2, ((ElementConstantInteger) outer.getStepExpression()).getValue());
+		ForLoopNode inner = (ForLoopNode) outer.getChild(0);
+		assertEquals("1", ((ElementString) inner.getStartExpression()).getValue());
+		assertEquals("i", ((ElementVariable) inner.getEndExpression()).getName());
+		assertNull(inner.getStepExpression());
+		assertEquals(1, inner.numberOfChildren());
+		
+		ForLoopNode empty = (ForLoopNode) read.getChild(4);
+		assertEquals(0.5, ((ElementConstantDouble) empty.getStartExpression()).getValue(), 0);
+		assertNull(empty.getStepExpression());
+		assertEquals(0, empty.numberOfChildren());
+		assertEquals("end", ((TextNode) read.getChild(5)).getText());
+	}
+	
+	@Test
+	public void testRoundTripOfLongText() {
+		char[] chars = new char[300_000];
+		Arrays.fill(chars, 'ž');
+		DocumentNode document = new DocumentNode();
+		document.addChildNode(new TextNode(new String(chars)));
+		document.addChildNode(new TextNode(""));
+		
+		DocumentNode read = SmartScriptBinary.deserialize(SmartScriptBinary.serialize(document, 1, 1), 1, 1);
+		assertTrue(SmartScriptBinary.equalTrees(document, read));
+	}
+	
+	@Test
+	public void testRoundTripOfWebrootScripts() throws IOException {
+		List<Path> scripts;
+		try (Stream<Path> paths = Files.walk(Paths.get("webroot"))) {
+			scripts = paths.filter(path -> path.toString().endsWith(".smscr"))
+					.sorted()
+					.collect(Collectors.toList());
+		}
+		assertFalse(scripts.isEmpty());
+		
+		for (Path script : scripts) {
+			DocumentNode document = new SmartScriptParser(
+				new String(Files.readAllBytes(script), StandardCharsets.UTF_8)
+			).getDocumentNode();
+			byte[] data = SmartScriptBinary.serialize(document, Files.size(script), 5);
+			assertTrue(SmartScriptBinary.equalTrees(
+				document, SmartScriptBinary.deserialize(data, Files.size(script), 5)
+			));
+		}
+	}
+	
+	@Test
+	public void testStaleBinaryIsNotLoaded() {
+		DocumentNode document = new SmartScriptParser(SCRIPT).getDocumentNode();
+		byte[] data = SmartScriptBinary.serialize(document, 17, 42);
+		assertNull(SmartScriptBinary.deserialize(data, 18, 42));
+		assertNull(SmartScriptBinary.deserialize(data, 17, 43));
+	}
+	
+	@Test(expected = SmartScriptParserException.class)
+	public void testOtherFormatIsRejected() {
+		SmartScriptBinary.deserialize(SCRIPT.getBytes(StandardCharsets.UTF_8), 17, 42);
+	}
+	
+	@Test(expected = SmartScriptParserException.class)
+	public void testTrailingDataIsRejected() {
+		byte[] data = SmartScriptBinary.serialize(new SmartScriptParser(SCRIPT).getDocumentNode(), 17, 42);
+		SmartScriptBinary.deserialize(Arrays.copyOf(data, data.length + 1), 17, 42);
+	}
+	
+	@Test
+	public void testMissingElementsAreRejected() {
+		DocumentNode echo = new DocumentNode();
+		echo.addChildNode(new EchoNode(new Element[] {new ElementConstantInteger(1), null}));
+		assertRejected(SmartScriptBinary.serialize(echo, 17, 42));
+		
+		DocumentNode loop = new DocumentNode();
+		loop.addChildNode(new ForLoopNode(new ElementVariable("i"), null, new ElementConstantInteger(1), null));
+		assertRejected(SmartScriptBinary.serialize(loop, 17, 42));
+	}
+	
+	@Test
+	public void testCorruptedBinaryIsRejected() {
+		byte[] data = SmartScriptBinary.serialize(new SmartScriptParser(SCRIPT).getDocumentNode(), 17, 42);
+		
+		for (int length = 0; length < data.length; length ++) {
+			assertRejected(Arrays.copyOf(data, length));
+		}
+		for (int i = 0; i < data.length; i ++) {
+			for (int value : new int[] {0, 1, 2, 3, 4, 5, 6, 7, 0x7F, 0x80, 0xFF}) {
+				byte[] corrupted = data.clone();
+				corrupted[i] = (byte) value;
+				assertLoadedOrRejected(corrupted);
+			}
+		}
+	}
+	
+	private static void assertRejected(byte[] data) {
+		try {
+			SmartScriptBinary.deserialize(data, 17, 42);
+		} catch (SmartScriptParserException expected) {
+			return;
+		}
+		throw new AssertionError("Invalid binary was loaded: " + Arrays.toString(data));
+	}
+	
+	// A corrupted binary is either rejected, or loaded as a tree which can be parsed,
+	// i.e. its loops have variables and start and end expressions.
+	private static void assertLoadedOrRejected(byte[] data) {
+		DocumentNode document;
+		try {
+			document = SmartScriptBinary.deserialize(data, 17, 42);
+		} catch (SmartScriptParserException expected) {
+			return;
+		}
+		if (document != null) {
+			assertValidLoops(document);
+		}
+	}
+	
+	private static void assertValidLoops(Node node) {
+		if (node instanceof ForLoopNode) {
+			ForLoopNode loop = (ForLoopNode) node;
+			assertTrue(loop.getVariable() != null && loop.getStartExpression() != null
+					&& loop.getEndExpression() != null);
+		}
+		for (int i = 0; i < node.numberOfChildren(); i ++) {
+			assertValidLoops(node.getChild(i));
+		}
+	}
+}
@@ -0,0 +1,288 @@
+package hr.fer.zemris.java.custom.scripting.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import hr.fer.zemris.java.custom.scripting.elems.Element;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantDouble;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantInteger;
+import hr.fer.zemris.java.custom.scripting.elems.ElementOperator;
+import hr.fer.zemris.java.custom.scripting.elems.ElementString;
+import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
+import hr.fer.zemris.java.custom.scripting.lexer.Lexer;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
+import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
+import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Testing class for the {@code SmartScriptParser} class, which compares the
+ * trees parsed from strings with the trees parsed through small windows.
+ * 
+ * @author Mate Gasparini
+ */
+public class SmartScriptParserTest {
+	
+	private static final int[] WINDOW_SIZES = {16, 17, 23, 64};
+	
+	private static final String[] TAG_WORDS = {
+		"i", "j_1", "A2", "3", "42", "4.5", "0.25", "\"\"", "\"s\"", "\"a\\\"b\"", "\"\\n\\r\\t\\\\\"",
+		"\"{$ $}\"", "@sin", "@decfmt", "+", "-", "*", "/", "^", "\t", "\r\n"
+	};
+	
+	private static final String[] TEXT_PARTS = {
+		"a", "čž", " ", "\n", "\\{", "\\\\", "{", "$", "}", "$}", "{ $"
+	};
+	
+	@Test
+	public void testWebrootScripts() throws IOException {
+		List<Path> scripts;
+		try (Stream<Path> paths = Files.walk(Paths.get("webroot"))) {
+			scripts = paths.filter(path -> path.toString().endsWith(".smscr"))
+					.sorted()
+					.collect(Collectors.toList());
+		}
+		assertFalse(scripts.isEmpty());
+		
+		for (Path script : scripts) {
+			assertSameTrees(new String(Files.readAllBytes(script), StandardCharsets.UTF_8));
+		}
+	}
+	
+	@Test
+	public void testGeneratedScripts() {
+		Random random = new Random(21);
+		for (int i = 0; i < 3000; i ++) {
+			assertSameTrees(generate(random));
+		}
+	}
+	
+	@Test
+	public void testTextLongerThanWindowIsOneNode() {
+		StringBuilder source = new StringBuilder();
+		StringBuilder text = new StringBuilder();
+		Random random = new Random(3);
+		while (text.length() < 30000) {
+			String part = TEXT_PARTS[random.nextInt(6)];
+			source.append(part);
+			text.append(part.startsWith("\\") ? part.substring(1) : part);
+		}
+		String script = source + "{$= 1 $}" + source;
+		
+		DocumentNode document = new SmartScriptParser(new StringReader(script)).getDocumentNode();
+		assertEquals(3, document.numberOfChildren());
+		assertEquals(text.toString(), ((TextNode) document.getChild(0)).getText());
+		assertEquals(text.toString(), ((TextNode) document.getChild(2)).getText());
+		
+		for (int windowSize : WINDOW_SIZES) {
+			DocumentNode windowed = parse(script, windowSize, random);
+			assertTrue(SmartScriptBinary.equalTrees(document, windowed));
+		}
+	}
+	
+	@Test
+	public void testEscapesStraddlingWindowBoundary() {
+		for (int windowSize : WINDOW_SIZES) {
+			for (int offset = 0; offset < 2 * windowSize; offset ++) {
+				String prefix = repeat('a', offset);
+				assertTextAndEcho(prefix + "\\{$x\\\\y{$= \"s\\\"t\" $}", windowSize, prefix + "{$x\\y", "s\"t");
+				assertTextAndEcho(prefix + "{$= \"s\\\"t\" $}", windowSize, offset == 0 ? null : prefix, "s\"t");
+				assertTextAndEcho(prefix + "\\\\{$= \"\\\\\" $}", windowSize, prefix + "\\", "\\");
+			}
+		}
+		
+		// Default window of the lexer.
+		for (int offset = 8180; offset < 8200; offset ++) {
+			String prefix = repeat('a', offset);
+			String script = prefix + "\\{$x\\\\y{$= \"s\\\"t\" $}";
+			assertTextAndEcho(script, 0, prefix + "{$x\\y", "s\"t");
+			DocumentNode document = new SmartScriptParser(new StringReader(script)).getDocumentNode();
+			assertTrue(SmartScriptBinary.equalTrees(new SmartScriptParser(script).getDocumentNode(), document));
+		}
+	}
+	
+	@Test
+	public void testStreamingExecution() throws IOException {
+		String script = "{$= \"text/plain\" @setMimeType $}" + repeat('x', 20000)
+				+ "{$ FOR i 1 3 1 $}{$= i \"0.0\" @decfmt $}\\{{$END$}" + repeat('y', 9000);
+		assertEquals(execute(script, null), execute(script, new TrickleReadable(script, new Random(5))));
+		assertEquals(execute(script, null), execute(script, new StringReader(script)));
+		assertEquals(execute(script, null), execute(script, CharBuffer.wrap(script)));
+	}
+	
+	@Test
+	public void testStreamingExecutionOfInvalidScript() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		RequestContext context = new RequestContext(output, null, null, null);
+		try {
+			new SmartScriptEngine(context).execute(new StringReader("abc{$= 1 2 + $}{$END$}def"));
+			fail();
+		} catch (SmartScriptParserException expected) {
+		}
+		context.finish();
+		assertTrue(new String(output.toByteArray(), StandardCharsets.UTF_8).endsWith("\r\n\r\nabc3"));
+	}
+	
+	@Test
+	public void testNegativeNumbers() {
+		DocumentNode document = new SmartScriptParser("{$= -1 -2.5 3 - 1 -x $}").getDocumentNode();
+		Element[] elements = ((EchoNode) document.getChild(0)).getElements();
+		assertEquals(7, elements.length);
+		assertEquals(-1, ((ElementConstantInteger) elements[0]).getValue());
+		assertEquals(-2.5, ((ElementConstantDouble) elements[1]).getValue(), 0);
+		assertEquals(3, ((ElementConstantInteger) elements[2]).getValue());
+		assertEquals("-", ((ElementOperator) elements[3]).getSymbol());
+		assertEquals(1, ((ElementConstantInteger) elements[4]).getValue());
+		assertEquals("-", ((ElementOperator) elements[5]).getSymbol());
+		assertEquals("x", ((ElementVariable) elements[6]).getName());
+		
+		for (int windowSize : WINDOW_SIZES) {
+			for (int offset = 0; offset < windowSize; offset ++) {
+				String script = repeat('a', offset) + "{$ FOR i 3 1 -1 $}{$END$}";
+				ForLoopNode loop = (ForLoopNode) parse(script, windowSize, new Random(offset)).getChild(offset == 0 ? 0 : 1);
+				assertEquals(-1, ((ElementConstantInteger) loop.getStepExpression()).getValue());
+			}
+		}
+	}
+	
+	private static void assertSameTrees(String script) {
+		DocumentNode expected;
+		try {
+			expected = new SmartScriptParser(script).getDocumentNode();
+		} catch (SmartScriptParserException ex) {
+			for (int windowSize : WINDOW_SIZES) {
+				try {
+					parse(script, windowSize, new Random(windowSize));
+					fail("Windowed parsing succeeded:\n" + script);
+				} catch (SmartScriptParserException expectedException) {
+				}
+			}
+			return;
+		}
+		
+		for (int windowSize : WINDOW_SIZES) {
+			DocumentNode actual = parse(script, windowSize, new Random(windowSize));
+			assertTrue("Window " + windowSize + ":\n" + script, SmartScriptBinary.equalTrees(expected, actual));
+		}
+	}
+	
+	// Checks that the script is parsed into the given text node (unless it is null)
+	// followed by an echo node with the given string, using the given window size
+	// (or the default window if it is 0).
+	private static void assertTextAndEcho(String script, int windowSize, String text, String string) {
+		DocumentNode document = windowSize == 0
+				? new SmartScriptParser(new TrickleReadable(script, new Random(windowSize))).getDocumentNode()
+				: parse(script, windowSize, new Random(windowSize));
+		int index = 0;
+		if (text != null) {
+			assertEquals(text, ((TextNode) document.getChild(index ++)).getText());
+		}
+		Element[] elements = ((EchoNode) document.getChild(index ++)).getElements();
+		assertEquals(string, ((ElementString) elements[0]).getValue());
+		assertEquals(index, document.numberOfChildren());
+	}
+	
+	private static DocumentNode parse(String script, int windowSize, Random random) {
+		return new SmartScriptParser(new Lexer(new TrickleReadable(script, random), windowSize)).getDocumentNode();
+	}
+	
+	// Executes the script, parsed in advance if the source is null, or in the streaming mode.
+	private static String execute(String script, Readable source) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		RequestContext context = new RequestContext(output, null, null, null);
+		if (source == null) {
+			new SmartScriptEngine(new SmartScriptParser(script).getDocumentNode(), context).execute();
+		} else {
+			new SmartScriptEngine(context).execute(source);
+		}
+		context.finish();
+		return new String(output.toByteArray(), StandardCharsets.UTF_8);
+	}
+	
+	private static String generate(Random random) {
+		StringBuilder builder = new StringBuilder();
+		int depth = 0;
+		for (int parts = random.nextInt(30); parts > 0; parts --) {
+			int kind = random.nextInt(8);
+			if (kind < 3) {
+				for (int i = random.nextInt(random.nextInt(4) == 0 ? 80 : 10); i > 0; i --) {
+					builder.append(TEXT_PARTS[random.nextInt(random.nextInt(10) == 0 ? TEXT_PARTS.length : 6)]);
+				}
+			} else if (kind < 5) {
+				builder.append(random.nextBoolean() ? "{$=" : "{$ = ");
+				for (int i = random.nextInt(6); i > 0; i --) {
+					builder.append(random.nextBoolean() ? " " : "").append(TAG_WORDS[random.nextInt(TAG_WORDS.length)]);
+				}
+				builder.append(random.nextBoolean() ? " $}" : "$}");
+			} else if (kind == 5) {
+				builder.append("{$ FOR ").append(random.nextBoolean() ? "i" : "sco_re");
+				for (int i = 2 + random.nextInt(2); i > 0; i --) {
+					builder.append(' ').append(TAG_WORDS[random.nextInt(11)]);
+				}
+				builder.append(" $}");
+				depth ++;
+			} else if (kind == 6 && (depth > 0 || random.nextInt(20) == 0)) {
+				builder.append(random.nextBoolean() ? "{$END$}" : "{$ end $}");
+				depth --;
+			}
+		}
+		for (; depth > 0; depth --) {
+			builder.append("{$END$}");
+		}
+		return builder.toString();
+	}
+	
+	private static String repeat(char c, int count) {
+		char[] chars = new char[count];
+		Arrays.fill(chars, c);
+		return new String(chars);
+	}
+	
+	/**
+	 * Source which returns the data in chunks of pseudorandom (small) lengths.
+	 */
+	private static class TrickleReadable implements Readable {
+		
+		private final String data;
+		
+		private final Random random;
+		
+		private int position;
+		
+		private TrickleReadable(String data, Random random) {
+			this.data = data;
+			this.random = random;
+		}
+		
+		@Override
+		public int read(CharBuffer buffer) {
+			if (position == data.length()) {
+				return -1;
+			}
+			int length = Math.min(Math.min(1 + random.nextInt(7), buffer.remaining()), data.length() - position);
+			buffer.put(data, position, position + length);
+			position += length;
+			return length;
+		}
+	}
+}
@@ -0,0 +1,230 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Testing class for the {@code ByteRange} class, which also checks the
+ * responses of the {@code SmartHttpServer} to the range requests.
+ * 
+ * @author Mate Gasparini
+ */
+public class ByteRangeTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testSingleRanges() {
+		assertRanges("bytes=0-0", 1000, 0, 0);
+		assertRanges("bytes=10-19", 1000, 10, 19);
+		assertRanges("bytes=990-2000", 1000, 990, 999);
+		assertRanges("BYTES= 5-5 ", 1000, 5, 5);
+		assertRanges("bytes=5-9,", 1000, 5, 9);
+	}
+	
+	@Test
+	public void testOpenRanges() {
+		assertRanges("bytes=0-", 1000, 0, 999);
+		assertRanges("bytes=999-", 1000, 999, 999);
+		assertRanges("bytes=0-", 1, 0, 0);
+	}
+	
+	@Test
+	public void testSuffixRanges() {
+		assertRanges("bytes=-1", 1000, 999, 999);
+		assertRanges("bytes=-100", 1000, 900, 999);
+		assertRanges("bytes=-1000", 1000, 0, 999);
+		assertRanges("bytes=-5000", 1000, 0, 999);
+	}
+	
+	@Test
+	public void testMultipleRanges() {
+		assertRanges("bytes=0-9,20-29, -10", 1000, 0, 9, 20, 29, 990, 999);
+		assertRanges("bytes=900-,0-0", 1000, 0, 0, 900, 999);
+	}
+	
+	@Test
+	public void testOverlappingRangesAreCoalesced() {
+		assertRanges("bytes=0-9,5-14", 1000, 0, 14);
+		assertRanges("bytes=0-9,10-19", 1000, 0, 19);
+		assertRanges("bytes=0-9,11-19", 1000, 0, 9, 11, 19);
+		assertRanges("bytes=100-199,0-500,-1", 1000, 0, 500, 999, 999);
+		assertRanges("bytes=0-,0-,0-,-1000", 1000, 0, 999);
+		assertRanges("bytes=500-600,550-", 1000, 500, 999);
+	}
+	
+	@Test
+	public void testUnsatisfiableRanges() {
+		assertRanges("bytes=1000-", 1000);
+		assertRanges("bytes=1000-2000", 1000);
+		assertRanges("bytes=-0", 1000);
+		assertRanges("bytes=0-", 0);
+		assertRanges("bytes=-10", 0);
+		
+		// Only the satisfiable ranges are kept.
+		assertRanges("bytes=2000-,10-19", 1000, 10, 19);
+	}
+	
+	@Test
+	public void testInvalidHeadersAreIgnored() {
+		String[] headers = {
+			"items=0-9", "bytes 0-9", "bytes=", "bytes=-", "bytes=5", "bytes=9-0", "bytes=a-9",
+			"bytes=0-b", "bytes=+1-5", "bytes=1-+5", "bytes=--5", "bytes=0 - 9",
+			"bytes=99999999999999999999-"
+		};
+		for (String header : headers) {
+			assertNull(header, ByteRange.parse(header, 1000));
+		}
+	}
+	
+	@Test
+	public void testRangeCount() {
+		StringBuilder builder = new StringBuilder("bytes=");
+		for (int i = 0; i < 16; i ++) {
+			builder.append(i == 0 ? "" : ",").append(10 * i).append('-').append(10 * i + 4);
+		}
+		assertEquals(16, ByteRange.parse(builder.toString(), 1000).size());
+		assertNull(ByteRange.parse(builder + ",500-504", 1000));
+	}
+	
+	@Test
+	public void testContentRange() {
+		ByteRange range = ByteRange.parse("bytes=-100", 1000).get(0);
+		assertEquals(100, range.length());
+		assertEquals("bytes 900-999/1000", range.toContentRange(1000));
+	}
+	
+	@Test
+	public void testRangeResponses() throws IOException {
+		byte[] data = new byte[1000];
+		for (int i = 0; i < data.length; i ++) {
+			data[i] = (byte) ('a' + i % 26);
+		}
+		Path root = folder.newFolder("webroot").toPath();
+		Files.write(root.resolve("data.txt"), data);
+		
+		SmartHttpServer server = new SmartHttpServer(writeConfig(root).toString());
+		server.start();
+		try {
+			while (server.getPort() == 0) {
+				Thread.sleep(5);
+			}
+			int port = server.getPort();
+			
+			Response response = request(port, "bytes=10-19");
+			assertEquals(206, response.status);
+			assertTrue(response.header.contains("Content-Range: bytes 10-19/1000\r\n"));
+			assertArrayEquals(Arrays.copyOfRange(data, 10, 20), response.body);
+			
+			response = request(port, "bytes=1000-");
+			assertEquals(416, response.status);
+			assertTrue(response.header.contains("Content-Range: bytes */1000\r\n"));
+			assertEquals(0, response.body.length);
+			
+			response = request(port, "bytes=0-9,5-14,-100");
+			assertEquals(206, response.status);
+			assertTrue(response.header.contains("Content-Type: multipart/byteranges; boundary="));
+			String body = new String(response.body, StandardCharsets.ISO_8859_1);
+			assertTrue(body.contains("Content-Range: bytes 0-14/1000\r\n\r\n"
+					+ new String(data, 0, 15, StandardCharsets.ISO_8859_1) + "\r\n--"));
+			assertTrue(body.contains("Content-Range: bytes 900-999/1000\r\n\r\n"
+					+ new String(data, 900, 100, StandardCharsets.ISO_8859_1) + "\r\n--"));
+			assertEquals(2, body.split("Content-Range: ", -1).length - 1);
+			
+			response = request(port, "bytes=9-0");
+			assertEquals(200, response.status);
+			assertArrayEquals(data, response.body);
+		} catch (InterruptedException ex) {
+			throw new AssertionError(ex);
+		} finally {
+			server.stop();
+		}
+	}
+	
+	// Checks that the given header is parsed into the given pairs of first and last positions.
+	private static void assertRanges(String header, long size, long... positions) {
+		List<ByteRange> ranges = ByteRange.parse(header, size);
+		assertEquals(header, positions.length / 2, ranges.size());
+		for (int i = 0; i < ranges.size(); i ++) {
+			assertEquals(header, positions[2 * i], ranges.get(i).getFirst());
+			assertEquals(header, positions[2 * i + 1], ranges.get(i).getLast());
+		}
+	}
+	
+	// Writes the bundled server configuration with the given document root and an ephemeral port.
+	private Path writeConfig(Path root) throws IOException {
+		Path configDir = Paths.get("config").toAbsolutePath();
+		Properties properties = new Properties();
+		try (InputStream is = Files.newInputStream(configDir.resolve("server.properties"))) {
+			properties.load(is);
+		}
+		properties.setProperty("server.port", "0");
+		properties.setProperty("server.documentRoot", root.toString());
+		properties.setProperty("server.mimeConfig", configDir.resolve("mime.properties").toString());
+		properties.setProperty("server.workers", configDir.resolve("workers.properties").toString());
+		properties.setProperty("server.responseCacheConfig", configDir.resolve("cache.properties").toString());
+		properties.setProperty("server.accessLog", "");
+		
+		Path config = folder.newFile("server.properties").toPath();
+		try (OutputStream os = Files.newOutputStream(config)) {
+			properties.store(os, null);
+		}
+		return config;
+	}
+	
+	// Requests the test file with the given Range header and reads the whole response.
+	private static Response request(int port, String range) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+			socket.setSoTimeout(10000);
+			socket.getOutputStream().write((
+				"GET /data.txt HTTP/1.1\r\nHost: localhost\r\nRange: " + range + "\r\nConnection: close\r\n\r\n"
+			).getBytes(StandardCharsets.ISO_8859_1));
+			InputStream input = socket.getInputStream();
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = input.read(buffer)) >= 0) {
+				output.write(buffer, 0, read);
+			}
+		}
+		
+		byte[] bytes = output.toByteArray();
+		String text = new String(bytes, StandardCharsets.ISO_8859_1);
+		int headerEnd = text.indexOf("\r\n\r\n") + 4;
+		Response response = new Response();
+		response.header = text.substring(0, headerEnd);
+		response.status = Integer.parseInt(response.header.split(" ")[1]);
+		response.body = Arrays.copyOfRange(bytes, headerEnd, bytes.length);
+		return response;
+	}
+	
+	private static class Response {
+		
+		private int status;
+		
+		private String header;
+		
+		private byte[] body;
+	}
+}
@@ -0,0 +1,230 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import hr.fer.zemris.java.webserver.HttpRequestParser.Result;
+
+/**
+ * Testing class for the {@code HttpRequestParser} class.
+ * 
+ * @author Mate Gasparini
+ */
+public class HttpRequestParserTest {
+	
+	private static final String REQUEST = "GET /dir/file.html?a=1 HTTP/1.1\r\n"
+			+ "Host:  www.localhost.com \r\n"
+			+ "Accept-Encoding:gzip\r\n"
+			+ "X-Empty:\r\n"
+			+ "\r\n";
+	
+	@Test
+	public void testCompleteRequest() throws IOException {
+		HttpRequestParser parser = new HttpRequestParser(1024, 10);
+		assertTrue(parser.isEmpty());
+		assertEquals(Result.COMPLETE, parse(parser, REQUEST));
+		
+		assertEquals("GET", parser.getMethod());
+		assertEquals("/dir/file.html", parser.getPath());
+		assertEquals("a=1", parser.getQuery());
+		assertEquals("HTTP/1.1", parser.getVersion());
+		assertEquals(3, parser.getHeaderCount());
+		assertEquals("Host", parser.getHeaderName(0));
+		assertEquals("www.localhost.com", parser.getHeaderValue(0));
+		assertEquals("gzip", parser.getHeader("accept-encoding"));
+		assertEquals("", parser.getHeader("X-EMPTY"));
+		assertEquals(-1, parser.indexOfHeader("Accept"));
+		assertNull(parser.getHeader("Accept"));
+	}
+	
+	@Test
+	public void testLenientRequest() throws IOException {
+		HttpRequestParser parser = new HttpRequestParser(1024, 10);
+		assertEquals(Result.COMPLETE, parse(parser, "\r\n\nPOST  /  HTTP/1.0 \nA: b\n\n"));
+		assertEquals("POST", parser.getMethod());
+		assertEquals("/", parser.getPath());
+		assertNull(parser.getQuery());
+		assertEquals("HTTP/1.0", parser.getVersion());
+		assertEquals("b", parser.getHeader("A"));
+	}
+	
+	@Test
+	public void testInvalidRequestLines() throws IOException {
+		String[] lines = {
+			" GET / HTTP/1.1",
+			"G(T / HTTP/1.1",
+			"GET\t/ HTTP/1.1",
+			"GET / ",
+			"GET /\u0001 HTTP/1.1",
+			"GET /\u007F HTTP/1.1",
+			"GET / HTTP/1.1 x",
+			"GET / HTTP/\u00011",
+			"ÿ"
+		};
+		for (String line : lines) {
+			assertEquals(line, Result.INVALID, parse(new HttpRequestParser(1024, 10), line + "\r\nHost: h\r\n\r\n"));
+		}
+		assertEquals(Result.INVALID, parse(new HttpRequestParser(1024, 10), "GET / HTTP/1.1\rHost: h\r\n\r\n"));
+	}
+	
+	@Test
+	public void testInvalidHeaders() throws IOException {
+		String[] headers = {
+			"Host localhost\r\n",
+			"Ho st: localhost\r\n",
+			": localhost\r\n",
+			"Ä: x\r\n",
+			" folded: x\r\n",
+			"Host: a\u0001b\r\n",
+			"Host: a\rb\r\n",
+			"Host: a\r\n\rx"
+		};
+		for (String header : headers) {
+			assertEquals(header, Result.INVALID, parse(new HttpRequestParser(1024, 10), "GET / HTTP/1.1\r\n" + header + "\r\n"));
+		}
+	}
+	
+	@Test
+	public void testHeaderSizeLimit() throws IOException {
+		int size = REQUEST.length();
+		assertEquals(Result.COMPLETE, parse(new HttpRequestParser(size, 10), REQUEST));
+		assertEquals(Result.TOO_LARGE, parse(new HttpRequestParser(size - 1, 10), REQUEST));
+		
+		// The buffer is full one byte before the end of the header.
+		HttpRequestParser parser = new HttpRequestParser(size - 1, 10);
+		assertEquals(Result.TOO_LARGE, parse(parser, REQUEST.substring(0, size - 1)));
+		parser.next();
+		assertTrue(parser.isEmpty());
+	}
+	
+	@Test
+	public void testHeaderCountLimit() throws IOException {
+		assertEquals(Result.COMPLETE, parse(new HttpRequestParser(1024, 3), REQUEST));
+		assertEquals(Result.TOO_LARGE, parse(new HttpRequestParser(1024, 2), REQUEST));
+		
+		// Folded lines do not count as header fields.
+		HttpRequestParser parser = new HttpRequestParser(1024, 1);
+		assertEquals(Result.COMPLETE, parse(parser, "GET / HTTP/1.1\r\nA: 1\r\n 2\r\n\r\n"));
+		assertEquals(1, parser.getHeaderCount());
+	}
+	
+	@Test
+	public void testFoldedHeaders() throws IOException {
+		HttpRequestParser parser = new HttpRequestParser(1024, 10);
+		assertEquals(Result.COMPLETE, parse(parser, "GET / HTTP/1.1\r\n"
+				+ "X-Long: a\r\n b\r\n\tc \r\n"
+				+ "X-Later:\r\n   value\r\n"
+				+ "Host: h\r\n"
+				+ "\r\n"));
+		assertEquals(3, parser.getHeaderCount());
+		assertEquals("a b\tc", parser.getHeader("X-Long"));
+		assertEquals("value", parser.getHeader("X-Later"));
+		assertEquals("h", parser.getHeader("Host"));
+	}
+	
+	@Test
+	public void testPipelinedRequests() throws IOException {
+		HttpRequestParser parser = new HttpRequestParser(1024, 10);
+		String second = "HEAD /second HTTP/1.1\r\nHost: b\r\n\r\n";
+		String third = "GET /third HTTP/1.1\r\nHo";
+		assertEquals(Result.COMPLETE, parse(parser, REQUEST + second + third));
+		assertEquals("/dir/file.html", parser.getPath());
+		assertEquals("www.localhost.com", parser.getHeader("Host"));
+		
+		parser.next();
+		assertFalse(parser.isEmpty());
+		assertEquals(Result.COMPLETE, parser.parse());
+		assertEquals("HEAD", parser.getMethod());
+		assertEquals("/second", parser.getPath());
+		assertEquals("b", parser.getHeader("Host"));
+		
+		parser.next();
+		assertEquals(Result.INCOMPLETE, parser.parse());
+		assertEquals(Result.COMPLETE, parse(parser, "st: c\r\n\r\n"));
+		assertEquals("/third", parser.getPath());
+		assertEquals("c", parser.getHeader("Host"));
+		
+		parser.next();
+		assertTrue(parser.isEmpty());
+		assertEquals(Result.INCOMPLETE, parser.parse());
+	}
+	
+	@Test
+	public void testRequestSplitAcrossReads() throws IOException {
+		for (int split = 0; split <= REQUEST.length(); split ++) {
+			HttpRequestParser parser = new HttpRequestParser(1024, 10);
+			Result first = parse(parser, REQUEST.substring(0, split));
+			assertEquals(split == REQUEST.length() ? Result.COMPLETE : Result.INCOMPLETE, first);
+			assertEquals(Result.COMPLETE, parse(parser, REQUEST.substring(split)));
+			assertEquals("/dir/file.html", parser.getPath());
+			assertEquals("www.localhost.com", parser.getHeader("Host"));
+			assertEquals("", parser.getHeader("X-Empty"));
+		}
+		
+		HttpRequestParser parser = new HttpRequestParser(1024, 10);
+		for (byte b : REQUEST.getBytes(StandardCharsets.ISO_8859_1)) {
+			parser.read(Channels.newChannel(new ByteArrayInputStream(new byte[] {b})));
+			parser.parse();
+		}
+		assertEquals(Result.COMPLETE, parser.parse());
+		assertEquals("gzip", parser.getHeader("Accept-Encoding"));
+	}
+	
+	@Test
+	public void testParseParameters() throws IOException {
+		Map<String, String> parameters = parameters(
+			"a=1&b=x+y&c=%41%c4%8D&d=&e&f=100%&g=%zz&h=%4&i=a=b&&=v&%2B=%26%3D"
+		);
+		Map<String, String> expected = new HashMap<>();
+		expected.put("a", "1");
+		expected.put("b", "x y");
+		expected.put("c", "Ač");
+		expected.put("d", "");
+		expected.put("e", null);
+		expected.put("f", "100%");
+		expected.put("g", "%zz");
+		expected.put("h", "%4");
+		expected.put("i", "a=b");
+		expected.put("", "v");
+		expected.put("+", "&=");
+		assertEquals(expected, parameters);
+		
+		assertEquals(new HashMap<>(), parameters(""));
+		assertEquals(new HashMap<>(), parameters("&&"));
+		
+		HttpRequestParser parser = new HttpRequestParser(1024, 10);
+		parse(parser, "GET /path HTTP/1.1\r\n\r\n");
+		parser.parseParameters(parameters);
+		assertEquals(expected, parameters);
+	}
+	
+	// Parses the parameters of the request with the given query.
+	private static Map<String, String> parameters(String query) throws IOException {
+		HttpRequestParser parser = new HttpRequestParser(1024, 10);
+		assertEquals(Result.COMPLETE, parse(parser, "GET /path?" + query + " HTTP/1.1\r\n\r\n"));
+		assertEquals(query, parser.getQuery());
+		Map<String, String> parameters = new HashMap<>();
+		parser.parseParameters(parameters);
+		return parameters;
+	}
+	
+	// Reads the given data into the parser (as far as it fits) and parses it.
+	private static Result parse(HttpRequestParser parser, String data) throws IOException {
+		InputStream input = new ByteArrayInputStream(data.getBytes(StandardCharsets.ISO_8859_1));
+		while (input.available() > 0 && parser.read(input) > 0) {
+		}
+		return parser.parse();
+	}
+}
@@ -0,0 +1,183 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Testing class for the {@code RequestContext} class.
+ * 
+ * @author Mate Gasparini
+ */
+public class RequestContextTest {
+	
+	private ByteArrayOutputStream output;
+	
+	private RequestContext context;
+	
+	private ByteArrayOutputStream expected;
+	
+	private Random random = new Random(42);
+	
+	@Before
+	public void setUp() {
+		output = new ByteArrayOutputStream();
+		context = new RequestContext(output, null, null, null);
+		context.setKeepAlive(true);
+		expected = new ByteArrayOutputStream();
+	}
+	
+	@Test
+	public void testSmallBodyHasContentLength() throws IOException {
+		write(100);
+		context.finish();
+		
+		String header = header();
+		assertTrue(header.contains("Content-Length: 100\r\n"));
+		assertArrayEquals(expected.toByteArray(), rawBody());
+	}
+	
+	@Test
+	public void testLargeWriteIsChunked() throws IOException {
+		write(40000);
+		context.finish();
+		
+		assertTrue(header().contains("Transfer-Encoding: chunked\r\n"));
+		assertArrayEquals(expected.toByteArray(), decodeChunks(rawBody()));
+	}
+	
+	@Test
+	public void testLargeWritesAfterHeaderAreChunked() throws IOException {
+		write(20000);
+		write(40000);
+		write(16384);
+		context.finish();
+		
+		assertTrue(header().contains("Transfer-Encoding: chunked\r\n"));
+		assertArrayEquals(expected.toByteArray(), decodeChunks(rawBody()));
+	}
+	
+	@Test
+	public void testMixedWritesAreChunked() throws IOException {
+		for (int i = 0; i < 200; i ++) {
+			write(random.nextBoolean() ? random.nextInt(100) : 16384 + random.nextInt(30000));
+		}
+		context.write("čćžšđ");
+		expected.write("čćžšđ".getBytes(StandardCharsets.UTF_8));
+		context.finish();
+		
+		assertTrue(header().contains("Transfer-Encoding: chunked\r\n"));
+		assertArrayEquals(expected.toByteArray(), decodeChunks(rawBody()));
+	}
+	
+	@Test
+	public void testCompressedWritesAreChunked() throws IOException {
+		context.setCompression(type -> true, 0, true);
+		for (int i = 0; i < 50; i ++) {
+			write(random.nextBoolean() ? random.nextInt(100) : 16384 + random.nextInt(30000));
+		}
+		context.finish();
+		
+		String header = header();
+		assertTrue(header.contains("Transfer-Encoding: chunked\r\n"));
+		assertTrue(header.contains("Content-Encoding: gzip\r\n"));
+		assertArrayEquals(expected.toByteArray(), gunzip(decodeChunks(rawBody())));
+	}
+	
+	@Test
+	public void testSmallCompressedBody() throws IOException {
+		context.setCompression(type -> true, 0, true);
+		write(100);
+		context.finish();
+		
+		String header = header();
+		assertTrue(header.contains("Content-Encoding: gzip\r\n"));
+		assertArrayEquals(expected.toByteArray(), gunzip(decodeBody(header, rawBody())));
+	}
+	
+	// Writes the given number of bytes both to the context and to the expected body.
+	private void write(int length) throws IOException {
+		byte[] data = new byte[length];
+		random.nextBytes(data);
+		context.write(data);
+		expected.write(data);
+	}
+	
+	private String header() {
+		byte[] bytes = output.toByteArray();
+		return new String(bytes, 0, headerEnd(bytes), StandardCharsets.ISO_8859_1);
+	}
+	
+	private byte[] rawBody() {
+		byte[] bytes = output.toByteArray();
+		int start = headerEnd(bytes);
+		byte[] body = new byte[bytes.length - start];
+		System.arraycopy(bytes, start, body, 0, body.length);
+		return body;
+	}
+	
+	private static int headerEnd(byte[] bytes) {
+		for (int i = 0; i + 3 < bytes.length; i ++) {
+			if (bytes[i] == '\r' && bytes[i + 1] == '\n' && bytes[i + 2] == '\r' && bytes[i + 3] == '\n') {
+				return i + 4;
+			}
+		}
+		throw new AssertionError("Header is not terminated.");
+	}
+	
+	private static byte[] decodeBody(String header, byte[] body) {
+		return header.contains("Transfer-Encoding: chunked\r\n") ? decodeChunks(body) : body;
+	}
+	
+	// Decodes the given body, which must be exactly a sequence of chunks ending with the last chunk.
+	private static byte[] decodeChunks(byte[] body) {
+		ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+		int position = 0;
+		while (true) {
+			int lineEnd = position;
+			while (body[lineEnd] != '\r') {
+				lineEnd ++;
+			}
+			assertEquals('\n', body[lineEnd + 1]);
+			int size = Integer.parseInt(
+				new String(body, position, lineEnd - position, StandardCharsets.ISO_8859_1), 16
+			);
+			position = lineEnd + 2;
+			if (size == 0) {
+				assertEquals('\r', body[position]);
+				assertEquals('\n', body[position + 1]);
+				assertEquals(body.length, position + 2);
+				return decoded.toByteArray();
+			}
+			
+			decoded.write(body, position, size);
+			position += size;
+			assertEquals('\r', body[position]);
+			assertEquals('\n', body[position + 1]);
+			position += 2;
+		}
+	}
+	
+	private static byte[] gunzip(byte[] data) throws IOException {
+		ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+		try (InputStream input = new GZIPInputStream(new ByteArrayInputStream(data))) {
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = input.read(buffer)) >= 0) {
+				decoded.write(buffer, 0, read);
+			}
+		}
+		return decoded.toByteArray();
+	}
+}
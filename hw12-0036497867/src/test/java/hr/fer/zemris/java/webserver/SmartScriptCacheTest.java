@@ -0,0 +1,227 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import hr.fer.zemris.java.custom.scripting.exec.CompiledScript;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptBinary;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParserException;
+
+/**
+ * Testing class for the {@code SmartScriptCache} class, which checks that the
+ * precompiled scripts are loaded, that the stale or corrupted ones are
+ * replaced by parsing the scripts, and that modified scripts are detected
+ * and concurrent misses collapsed.
+ * 
+ * @author Mate Gasparini
+ */
+public class SmartScriptCacheTest {
+	
+	private static final String SCRIPT = "a{$ FOR i 1 3 1 $}{$= i \"0.0\" @decfmt $}č{$END$}z";
+	
+	private static final String OUTPUT = "a1.0č2.0č3.0čz";
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private Path root;
+	
+	private Path script;
+	
+	private Path binary;
+	
+	@Before
+	public void setUp() throws IOException {
+		root = folder.newFolder("webroot").toPath();
+		script = root.resolve("scripts").resolve("test" + SmartScriptCache.SCRIPT_EXTENSION);
+		binary = root.resolve("scripts").resolve("test" + SmartScriptCache.PRECOMPILED_EXTENSION);
+		Files.createDirectories(script.getParent());
+		writeScript(SCRIPT, FileTime.fromMillis(1_500_000_000_000L));
+	}
+	
+	@Test
+	public void testPrecompiledScriptIsWritten() throws IOException {
+		assertEquals(OUTPUT, execute(new SmartScriptCache(4, null, root).get(script)));
+		assertValidBinary(SCRIPT);
+	}
+	
+	@Test
+	public void testPrecompiledScriptIsLoaded() throws IOException {
+		new SmartScriptCache(4, null, root).get(script);
+		
+		// A binary of another tree, which matches the script, is loaded instead of parsing it.
+		DocumentNode other = new SmartScriptParser("other").getDocumentNode();
+		Files.write(binary, SmartScriptBinary.serialize(
+			other, Files.size(script), Files.getLastModifiedTime(script).toMillis()
+		));
+		assertEquals("other", execute(new SmartScriptCache(4, null, root).get(script)));
+	}
+	
+	@Test
+	public void testPrecompiledScriptsInDirectory() throws IOException {
+		Path precompiledDir = folder.newFolder("precompiled").toPath();
+		assertEquals(OUTPUT, execute(new SmartScriptCache(4, precompiledDir, root).get(script)));
+		assertFalse(Files.exists(binary));
+		
+		binary = precompiledDir.resolve("scripts").resolve("test" + SmartScriptCache.PRECOMPILED_EXTENSION);
+		assertEquals(binary, SmartScriptCache.precompiledPath(script, root, precompiledDir));
+		assertValidBinary(SCRIPT);
+		assertEquals(OUTPUT, execute(new SmartScriptCache(4, precompiledDir, root).get(script)));
+	}
+	
+	@Test
+	public void testStalePrecompiledScriptIsReplaced() throws IOException {
+		new SmartScriptCache(4, null, root).get(script);
+		byte[] stale = Files.readAllBytes(binary);
+		
+		// Same size, another modification time.
+		String modified = SCRIPT.replace('a', 'b');
+		writeScript(modified, FileTime.fromMillis(1_500_000_010_000L));
+		assertEquals(OUTPUT.replace('a', 'b'), execute(new SmartScriptCache(4, null, root).get(script)));
+		assertValidBinary(modified);
+		
+		// Same modification time, another size.
+		Files.write(binary, stale);
+		modified = SCRIPT + "!";
+		writeScript(modified, FileTime.fromMillis(1_500_000_000_000L));
+		assertEquals(OUTPUT + "!", execute(new SmartScriptCache(4, null, root).get(script)));
+		assertValidBinary(modified);
+	}
+	
+	@Test
+	public void testCorruptedPrecompiledScriptIsReplaced() throws IOException {
+		new SmartScriptCache(4, null, root).get(script);
+		byte[] data = Files.readAllBytes(binary);
+		
+		byte[] trailing = Arrays.copyOf(data, data.length + 1);
+		byte[] flipped = data.clone();
+		flipped[flipped.length - 2] ^= 0x55;
+		byte[][] corruptions = {
+			new byte[0],
+			SCRIPT.getBytes(StandardCharsets.UTF_8),
+			Arrays.copyOf(data, data.length / 2),
+			Arrays.copyOf(data, data.length - 1),
+			trailing,
+			flipped
+		};
+		for (byte[] corrupted : corruptions) {
+			Files.write(binary, corrupted);
+			assertEquals(OUTPUT, execute(new SmartScriptCache(4, null, root).get(script)));
+			assertValidBinary(SCRIPT);
+		}
+	}
+	
+	@Test
+	public void testCachedScriptIsReloadedWhenModified() throws IOException {
+		SmartScriptCache cache = new SmartScriptCache(4, null, root);
+		CompiledScript compiled = cache.get(script);
+		assertTrue(compiled == cache.get(script));
+		
+		writeScript("new", FileTime.fromMillis(1_500_000_020_000L));
+		assertEquals("new", execute(cache.get(script)));
+		assertValidBinary("new");
+	}
+	
+	@Test
+	public void testRewriteWithSameModificationTimeIsDetected() throws IOException {
+		SmartScriptCache cache = new SmartScriptCache(4);
+		assertEquals(OUTPUT, execute(cache.get(script)));
+		
+		writeScript(SCRIPT + "!", FileTime.fromMillis(1_500_000_000_000L));
+		assertEquals(OUTPUT + "!", execute(cache.get(script)));
+		assertEquals(2, cache.getMisses());
+	}
+	
+	@Test
+	public void testConcurrentMissesAreCollapsed() throws Exception {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 20000; i ++) {
+			builder.append("{$= ").append(i).append(" \"x\" $}");
+		}
+		writeScript(builder.toString(), FileTime.fromMillis(1_500_000_030_000L));
+		
+		SmartScriptCache cache = new SmartScriptCache(4);
+		int threads = 8;
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<CompiledScript>> results = new ArrayList<>();
+			for (int i = 0; i < threads; i ++) {
+				results.add(executor.submit(() -> {
+					start.await();
+					return cache.get(script);
+				}));
+			}
+			start.countDown();
+			CompiledScript compiled = results.get(0).get();
+			for (Future<CompiledScript> result : results) {
+				assertTrue(compiled == result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(1, cache.getMisses());
+		assertEquals(threads, cache.getHits() + cache.getMisses() + cache.getCollapsed());
+	}
+	
+	@Test
+	public void testFailingScriptIsNotCached() throws Exception {
+		writeScript("{$ END $}" + SCRIPT, FileTime.fromMillis(1_500_000_040_000L));
+		SmartScriptCache cache = new SmartScriptCache(4);
+		for (int i = 0; i < 2; i ++) {
+			try {
+				cache.get(script);
+				fail();
+			} catch (SmartScriptParserException expected) {
+			}
+		}
+		assertEquals(2, cache.getMisses());
+		assertEquals(0, cache.size());
+	}
+	
+	private void writeScript(String text, FileTime lastModified) throws IOException {
+		Files.write(script, text.getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(script, lastModified);
+	}
+	
+	// Checks that the precompiled file matches the script and contains the tree of the given text.
+	private void assertValidBinary(String text) throws IOException {
+		DocumentNode document = SmartScriptBinary.deserialize(
+			Files.readAllBytes(binary), Files.size(script), Files.getLastModifiedTime(script).toMillis()
+		);
+		assertTrue(SmartScriptBinary.equalTrees(new SmartScriptParser(text).getDocumentNode(), document));
+	}
+	
+	// Executes the compiled script and returns the body of the response.
+	private static String execute(CompiledScript compiled) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		RequestContext context = new RequestContext(output, null, null, null);
+		compiled.execute(context);
+		context.finish();
+		String response = new String(output.toByteArray(), StandardCharsets.UTF_8);
+		return response.substring(response.indexOf("\r\n\r\n") + 4);
+	}
+}
@@ -0,0 +1,179 @@
+package hr.fer.zemris.java.webserver.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Testing class for the {@code InMemorySessionStore} class, which drives
+ * the expiry with a manually advanced clock.
+ * 
+ * @author Mate Gasparini
+ */
+public class InMemorySessionStoreTest {
+	
+	private static final long START = 1_500_000_000_000L;
+	
+	private AtomicLong clock;
+	
+	private InMemorySessionStore store;
+	
+	@Before
+	public void setUp() {
+		clock = new AtomicLong(START);
+		store = new InMemorySessionStore(clock::get);
+	}
+	
+	@Test
+	public void testSessionExpires() {
+		SessionEntry entry = add("a", 10);
+		assertEquals(START / 1000 + 10, entry.getValidUntil());
+		
+		advance(9_999);
+		assertTrue(entry == store.get("a"));
+		assertEquals(1, store.size());
+		
+		advance(1);
+		assertEquals(0, store.size());
+		assertNull(store.get("a"));
+	}
+	
+	@Test
+	public void testExpiredSessionIsNotReturned() {
+		add("a", 10);
+		clock.addAndGet(10_000);
+		assertNull(store.get("a"));
+		assertEquals(0, store.size());
+		
+		// The stale timeout is skipped.
+		advance(0);
+		assertEquals(0, store.size());
+	}
+	
+	@Test
+	public void testTouchRefreshesSession() {
+		SessionEntry entry = add("a", 10);
+		for (int i = 0; i < 5; i ++) {
+			advance(6_000);
+			assertTrue(entry == store.get("a"));
+			store.touch(entry, 10);
+		}
+		
+		// The session is rescheduled at its first deadline, and expires 10 s after the last touch.
+		advance(9_999);
+		assertTrue(entry == store.get("a"));
+		advance(1);
+		assertNull(store.get("a"));
+		assertEquals(0, store.size());
+	}
+	
+	@Test
+	public void testExpiryAcrossWheelRotations() {
+		// Timeouts around the rotations of the first two levels (64 and 4096 ticks).
+		int[] timeouts = {1, 63, 64, 65, 4095, 4096, 4097, 100_000};
+		for (int timeout : timeouts) {
+			add("s" + timeout, timeout);
+		}
+		
+		long elapsed = 0;
+		for (int timeout : timeouts) {
+			advance(timeout * 1000L - 1 - elapsed);
+			assertTrue(store.get("s" + timeout) != null);
+			advance(1);
+			elapsed = timeout * 1000L;
+			assertNull(store.get("s" + timeout));
+		}
+		assertEquals(0, store.size());
+	}
+	
+	@Test
+	public void testRemovedSessionIsNotExpiredAgain() {
+		add("a", 10);
+		store.remove("a");
+		assertNull(store.get("a"));
+		
+		// Another session with the same id outlives the timeout of the removed one.
+		advance(5_000);
+		SessionEntry replacement = add("a", 10);
+		advance(5_000);
+		assertTrue(replacement == store.get("a"));
+		advance(4_999);
+		assertTrue(replacement == store.get("a"));
+		advance(1);
+		assertNull(store.get("a"));
+	}
+	
+	@Test
+	public void testDuplicateSessionIsNotAdded() {
+		SessionEntry entry = add("a", 10);
+		assertFalse(store.add(store.create("a", "host", 100, new HashMap<>())));
+		assertTrue(entry == store.get("a"));
+	}
+	
+	@Test
+	public void testRemovalRacingWithExpiry() throws InterruptedException {
+		int threads = 4;
+		int sessions = 50;
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> workers = new ArrayList<>();
+		for (int t = 0; t < threads; t ++) {
+			String prefix = "t" + t + "-";
+			Thread worker = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException ex) {
+					return;
+				}
+				for (int round = 0; round < 200; round ++) {
+					for (int i = 0; i < sessions; i ++) {
+						store.remove(prefix + i);
+						store.add(store.create(prefix + i, "host", round % 5 + 1, new HashMap<>()));
+					}
+				}
+				// Final sessions outlive the racing expiry.
+				for (int i = 0; i < sessions; i ++) {
+					store.remove(prefix + i);
+					store.add(store.create(prefix + i, "host", 1000, new HashMap<>()));
+				}
+			});
+			workers.add(worker);
+			worker.start();
+		}
+		
+		start.countDown();
+		for (int i = 0; i < 100; i ++) {
+			advance(1000);
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		
+		advance(0);
+		assertEquals(threads * sessions, store.size());
+		advance(1_000_000);
+		assertEquals(0, store.size());
+	}
+	
+	// Creates and adds a session with the given id and timeout (in seconds).
+	private SessionEntry add(String sid, int timeout) {
+		SessionEntry entry = store.create(sid, "host", timeout, new HashMap<>());
+		assertTrue(store.add(entry));
+		return entry;
+	}
+	
+	// Moves the clock by the given number of milliseconds and removes the expired sessions.
+	private void advance(long millis) {
+		clock.addAndGet(millis);
+		store.removeExpired();
+	}
+}
@@ -0,0 +1,189 @@
+package hr.fer.zemris.java.webserver.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Testing class for the {@code RemoteSessionStore} class, which runs
+ * a {@code SessionStoreServer} shared by two nodes.
+ * 
+ * @author Mate Gasparini
+ */
+public class RemoteSessionStoreTest {
+	
+	private static final long NEAR_CACHE_TTL = 300;
+	
+	private static final long FLUSH_PERIOD = 20;
+	
+	private SessionStoreServer server;
+	
+	private int port;
+	
+	private RemoteSessionStore nodeA;
+	
+	private RemoteSessionStore nodeB;
+	
+	@Before
+	public void setUp() throws IOException {
+		server = new SessionStoreServer(InetAddress.getLoopbackAddress(), 0);
+		port = server.start();
+		nodeA = newNode();
+		nodeB = newNode();
+	}
+	
+	@After
+	public void tearDown() {
+		server.close();
+	}
+	
+	@Test
+	public void testSessionCreatedByOneNodeIsReadByAnother() {
+		createSession(nodeA, "SID", "a", "1");
+		
+		long start = System.currentTimeMillis();
+		assertTrue(waitFor(() -> nodeB.get("SID") != null, NEAR_CACHE_TTL));
+		assertTrue(System.currentTimeMillis() - start < NEAR_CACHE_TTL);
+		assertEquals("1", nodeB.get("SID").getMap().get("a"));
+		
+		nodeA.get("SID").getMap().put("a", "2");
+		assertTrue(waitFor(
+			() -> "2".equals(nodeB.get("SID").getMap().get("a")), NEAR_CACHE_TTL + 2 * FLUSH_PERIOD
+		));
+	}
+	
+	@Test
+	public void testWritesToDifferentKeysAreMerged() {
+		createSession(nodeA, "SID", "a", "1");
+		assertTrue(waitFor(() -> nodeB.get("SID") != null, NEAR_CACHE_TTL));
+		
+		nodeA.get("SID").getMap().put("x", "fromA");
+		nodeB.get("SID").getMap().put("y", "fromB");
+		
+		RemoteSessionStore nodeC = newNode();
+		assertTrue(waitFor(() -> {
+			SessionEntry entry = nodeC.get("SID");
+			return entry != null && entry.getMap().containsKey("x") && entry.getMap().containsKey("y");
+		}, NEAR_CACHE_TTL + 4 * FLUSH_PERIOD));
+		assertTrue(waitFor(() -> nodeA.get("SID").getMap().containsKey("y")
+				&& nodeB.get("SID").getMap().containsKey("x"), 2 * NEAR_CACHE_TTL));
+		
+		Map<String, String> expected = new HashMap<>();
+		expected.put("a", "1");
+		expected.put("x", "fromA");
+		expected.put("y", "fromB");
+		assertEquals(expected, new HashMap<>(nodeA.get("SID").getMap()));
+		assertEquals(expected, new HashMap<>(nodeB.get("SID").getMap()));
+	}
+	
+	@Test
+	public void testRestartedStoreIsReseeded() throws IOException {
+		createSession(nodeA, "SID1", "a", "1");
+		createSession(nodeB, "SID2", "b", "2");
+		assertTrue(waitFor(() -> nodeB.get("SID1") != null && nodeA.get("SID2") != null, NEAR_CACHE_TTL));
+		
+		server.close();
+		server = new SessionStoreServer(InetAddress.getLoopbackAddress(), port);
+		server.start();
+		assertEquals(0, newNode().size());
+		
+		// The nodes keep serving requests of their sessions.
+		RemoteSessionStore nodeC = newNode();
+		assertTrue(waitFor(() -> {
+			assertNotNull(nodeA.get("SID1"));
+			assertNotNull(nodeA.get("SID2"));
+			assertNotNull(nodeB.get("SID1"));
+			assertNotNull(nodeB.get("SID2"));
+			return nodeC.get("SID1") != null && nodeC.get("SID2") != null;
+		}, 4 * NEAR_CACHE_TTL));
+		assertEquals("1", nodeC.get("SID1").getMap().get("a"));
+		assertEquals("2", nodeC.get("SID2").getMap().get("b"));
+		
+		nodeB.get("SID1").getMap().put("c", "3");
+		assertTrue(waitFor(
+			() -> "3".equals(nodeA.get("SID1").getMap().get("c")), NEAR_CACHE_TTL + 4 * FLUSH_PERIOD
+		));
+	}
+	
+	@Test
+	public void testOutageIsLoggedOnce() throws IOException, InterruptedException {
+		PrintStream err = System.err;
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		System.setErr(new PrintStream(log, true));
+		try {
+			server.close();
+			RemoteSessionStore nodeC = newNode();
+			createSession(nodeC, "SID", "a", "1");
+			for (int i = 0; i < 20; i ++) {
+				nodeC.get("SID").getMap().put("a", Integer.toString(i));
+				assertTrue(nodeC.get("SID2") == null);
+				nodeC.remove("SID3");
+				assertEquals(1, nodeC.size());
+			}
+			// The write-back is retried several times during the outage.
+			Thread.sleep(5 * FLUSH_PERIOD);
+			
+			server = new SessionStoreServer(InetAddress.getLoopbackAddress(), port);
+			server.start();
+			RemoteSessionStore nodeD = newNode();
+			assertTrue(waitFor(() -> {
+				SessionEntry entry = nodeD.get("SID");
+				return entry != null && "19".equals(entry.getMap().get("a"))
+						&& log.toString().contains("reachable again");
+			}, NEAR_CACHE_TTL + 4 * FLUSH_PERIOD));
+			assertTrue(nodeC.get("SID2") == null);
+		} finally {
+			System.setErr(err);
+		}
+		
+		String output = log.toString();
+		assertEquals(output, 1, count(output, "127.0.0.1:" + port + " is unreachable"));
+		assertEquals(output, 1, count(output, "127.0.0.1:" + port + " is reachable again"));
+	}
+	
+	private RemoteSessionStore newNode() {
+		Properties properties = new Properties();
+		properties.setProperty("session.store.address", "127.0.0.1:" + port);
+		properties.setProperty("session.store.nearCacheTtl", Long.toString(NEAR_CACHE_TTL));
+		properties.setProperty("session.store.flushPeriod", Long.toString(FLUSH_PERIOD));
+		return new RemoteSessionStore(properties);
+	}
+	
+	private static void createSession(RemoteSessionStore node, String sid, String key, String value) {
+		Map<String, String> map = new HashMap<>();
+		map.put(key, value);
+		assertTrue(node.add(node.create(sid, "localhost", 600, map)));
+	}
+	
+	// Counts the occurrences of the given part in the given text.
+	private static int count(String text, String part) {
+		return text.split(part, -1).length - 1;
+	}
+	
+	// Polls the given condition until it holds or the given time (in ms) elapses.
+	private static boolean waitFor(BooleanSupplier condition, long millis) {
+		long deadline = System.currentTimeMillis() + millis;
+		while (!condition.getAsBoolean()) {
+			if (System.currentTimeMillis() > deadline) {
+				return false;
+			}
+			try {
+				Thread.sleep(5);
+			} catch (InterruptedException ignorable) {}
+		}
+		return true;
+	}
+}
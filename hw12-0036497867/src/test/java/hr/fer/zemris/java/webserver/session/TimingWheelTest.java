@@ -0,0 +1,142 @@
+package hr.fer.zemris.java.webserver.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Testing class for the {@code TimingWheel} class, which advances the wheel
+ * tick by tick and across the rotations of all its levels.
+ * 
+ * @author Mate Gasparini
+ */
+public class TimingWheelTest {
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidTickDuration() {
+		new TimingWheel<String>(0, 0);
+	}
+	
+	@Test
+	public void testItemExpiresAtItsTick() {
+		TimingWheel<String> wheel = new TimingWheel<>(1000, 10_500);
+		wheel.schedule("a", 13_999);
+		wheel.schedule("b", 14_000);
+		
+		assertEquals(Arrays.asList(), advance(wheel, 12_999));
+		assertEquals(Arrays.asList("a"), advance(wheel, 13_000));
+		assertEquals(Arrays.asList(), advance(wheel, 13_999));
+		assertEquals(Arrays.asList("b"), advance(wheel, 14_000));
+		assertEquals(Arrays.asList(), advance(wheel, 100_000));
+	}
+	
+	@Test
+	public void testReachedDeadlineExpiresOnNextAdvance() {
+		TimingWheel<String> wheel = new TimingWheel<>(1, 100);
+		wheel.schedule("past", 50);
+		wheel.schedule("now", 100);
+		assertEquals(Arrays.asList("past", "now"), advance(wheel, 100));
+		
+		// The wheel is not moved backwards.
+		wheel.schedule("later", 101);
+		assertEquals(Arrays.asList(), advance(wheel, 0));
+		assertEquals(Arrays.asList("later"), advance(wheel, 101));
+	}
+	
+	@Test
+	public void testDeadlinesAcrossRotations() {
+		long[] deadlines = {
+			1, 63, 64, 65, 127, 128, 4095, 4096, 4097, 4159, 4160,
+			262_143, 262_144, 262_145, 266_240, 16_777_215, 16_777_216, 16_777_217, 16_777_300
+		};
+		for (long start : new long[] {0, 1, 63, 4095, 4097, 262_143, 16_777_200}) {
+			for (long deadline : deadlines) {
+				TimingWheel<Long> wheel = new TimingWheel<>(1, start);
+				wheel.schedule(deadline, start + deadline);
+				
+				// Advanced in one step right before the deadline, then to the deadline.
+				String message = start + " + " + deadline;
+				assertEquals(message, Arrays.asList(), advance(wheel, start + deadline - 1));
+				assertEquals(message, Arrays.asList(deadline), advance(wheel, start + deadline));
+			}
+		}
+	}
+	
+	@Test
+	public void testTickByTickAcrossRotations() {
+		TimingWheel<Long> wheel = new TimingWheel<>(1, 4000);
+		long[] deadlines = {4001, 4032, 4095, 4096, 4097, 8191, 8192, 8200, 262_144, 270_000};
+		for (long deadline : deadlines) {
+			wheel.schedule(deadline, deadline);
+		}
+		
+		List<Long> expired = new ArrayList<>();
+		for (long now = 4001; now <= 300_000; now ++) {
+			long tick = now;
+			wheel.advance(now, item -> {
+				assertEquals((long) item, tick);
+				expired.add(item);
+			});
+		}
+		assertEquals(deadlines.length, expired.size());
+		for (int i = 0; i < deadlines.length; i ++) {
+			assertEquals(deadlines[i], (long) expired.get(i));
+		}
+	}
+	
+	@Test
+	public void testRandomSchedule() {
+		Random random = new Random(42);
+		long now = 1_000_000 + random.nextInt(1 << 20);
+		TimingWheel<Integer> wheel = new TimingWheel<>(1, now);
+		Map<Integer, Long> pending = new HashMap<>();
+		
+		int next = 0;
+		for (int step = 0; step < 2000; step ++) {
+			for (int i = random.nextInt(20); i > 0; i --) {
+				long deadline = now + delay(random);
+				pending.put(next, deadline);
+				wheel.schedule(next ++, deadline);
+			}
+			
+			// Every item expires in the first advancement which reaches its deadline.
+			long target = now + (random.nextInt(8) == 0 ? random.nextInt(1 << 18) : random.nextInt(512));
+			for (int item : advance(wheel, target)) {
+				assertTrue(item + " expired early", pending.remove(item) <= target);
+			}
+			for (long deadline : pending.values()) {
+				assertTrue("Missed deadline " + deadline, deadline > target);
+			}
+			now = target;
+		}
+	}
+	
+	// Returns a random delay, which mostly stays in the lower levels of the wheel.
+	private static long delay(Random random) {
+		switch (random.nextInt(4)) {
+		case 0:
+			return random.nextInt(64);
+		case 1:
+			return random.nextInt(4096);
+		case 2:
+			return random.nextInt(1 << 18);
+		default:
+			return random.nextInt(1 << 25);
+		}
+	}
+	
+	// Advances the wheel and returns the expired items.
+	private static <T> List<T> advance(TimingWheel<T> wheel, long now) {
+		List<T> expired = new ArrayList<>();
+		wheel.advance(now, expired::add);
+		return expired;
+	}
+}